@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.xylia.microservices.odata.benchmark.entities.Medium;
+import org.xylia.microservices.odata.benchmark.entities.Narrow;
+import org.xylia.microservices.odata.benchmark.entities.Wide;
+import org.xylia.microservices.odata.framework.edm.GenericEdmProvider;
+import org.xylia.microservices.odata.framework.edm.ServiceMetadataHolder;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistry;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Synthetic rows and the smallest application context the EDM is built
+ * from: the registry, the EDM provider and the metadata holder, with a
+ * provider for each synthetic entity class.
+ */
+
+public final class BenchmarkData {
+
+	public static final Class<?>[] ENTITY_CLASSES = { Narrow.class, Medium.class, Wide.class };
+
+	private BenchmarkData() {
+	}
+
+	public static Class<?> entityClass(String simpleName) {
+
+		for (Class<?> entityClass : ENTITY_CLASSES) {
+			if (entityClass.getSimpleName().equals(simpleName))
+				return entityClass;
+		}
+		throw new IllegalArgumentException("No synthetic entity " + simpleName);
+	}
+
+	/*
+	 * Creates count rows of the entity class with distinct values.
+	 */
+	public static List<Object> rows(Class<?> entityClass, int count) {
+
+		try {
+			Constructor<?> constructor = entityClass.getConstructor(int.class);
+
+			List<Object> rows = new ArrayList<Object>(count);
+			for (int i = 0; i < count; i++)
+				rows.add(constructor.newInstance(i));
+			return rows;
+
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * Starts a context with a provider for each of the given entity classes.
+	 */
+	public static AnnotationConfigApplicationContext context(Class<?>... entityClasses) {
+
+		AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext();
+		for (Class<?> entityClass : entityClasses)
+			ctx.getBeanFactory().registerSingleton(entityClass.getSimpleName() + "Provider",
+					new BenchmarkEntityProvider(entityClass));
+
+		ctx.register(EntityProviderRegistry.class, GenericEdmProvider.class, ServiceMetadataHolder.class);
+		ctx.refresh();
+		return ctx;
+	}
+
+	/*
+	 * Output stream that only counts the bytes written to it.
+	 */
+	public static final class CountingSink extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) throws IOException {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			count += len;
+		}
+
+		public long getCount() {
+			return count;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.benchmark;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.Column;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.core.data.EntityImpl;
+import org.apache.olingo.commons.core.data.PropertyImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xylia.microservices.odata.framework.util.CoreEntityListProcessor;
+import org.xylia.microservices.odata.framework.util.EntityRowMapper;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Mapping of query rows to entities: the generated row mappers against the
+ * per row reflection they replaced, and the mapping of projected rows.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+	@Param({ "Narrow", "Medium", "Wide" })
+	private String entity;
+
+	@Param({ "1000", "100000" })
+	private int rowCount;
+
+	private List<Object> rows;
+
+	private List<Object[]> projectedRows;
+
+	private String[] selections;
+
+	@Setup
+	public void setUp() {
+
+		rows = BenchmarkData.rows(BenchmarkData.entityClass(entity), rowCount);
+
+		EntityRowMapper mapper = EntityRowMapper.forClass(rows.get(0).getClass());
+		selections = mapper.getColumnNames().toArray(new String[mapper.getColumnCount()]);
+
+		projectedRows = new ArrayList<Object[]>(rowCount);
+		for (Object row : rows) {
+
+			Object[] values = new Object[selections.length];
+			for (int i = 0; i < values.length; i++)
+				values[i] = mapper.getValue(row, i);
+			projectedRows.add(values);
+		}
+	}
+
+	@Benchmark
+	public List<Entity> buildEntities() throws IllegalAccessException {
+
+		List<Entity> entities = new ArrayList<Entity>(rowCount);
+		CoreEntityListProcessor.buildEntities(entities, rows);
+		return entities;
+	}
+
+	/*
+	 * The mapping before the row mappers, field lookup and reflective reads
+	 * for every row.
+	 */
+	@Benchmark
+	public List<Entity> buildEntitiesReflective() throws IllegalAccessException {
+
+		List<Entity> entities = new ArrayList<Entity>(rowCount);
+		for (Object row : rows) {
+
+			EntityImpl entityRowImpl = new EntityImpl();
+			for (Field field : row.getClass().getDeclaredFields()) {
+
+				field.setAccessible(true);
+				if (field.getAnnotation(Column.class) != null)
+					entityRowImpl.addProperty(
+							new PropertyImpl(null, field.getName(), ValueType.PRIMITIVE, field.get(row)));
+			}
+			entities.add(entityRowImpl);
+		}
+		return entities;
+	}
+
+	@Benchmark
+	public List<Entity> buildPrimitive() throws IllegalAccessException {
+
+		List<Entity> entities = new ArrayList<Entity>(rowCount);
+		CoreEntityListProcessor.buildPrimitive(entities, projectedRows, selections);
+		return entities;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.olingo.commons.api.ODataException;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.edm.provider.EntityType;
+import org.apache.olingo.server.api.edm.provider.Schema;
+import org.apache.olingo.server.api.edmx.EdmxReference;
+import org.apache.olingo.server.core.ODataHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.xylia.microservices.odata.framework.edm.GenericEdmProvider;
+import org.xylia.microservices.odata.framework.edm.ServiceMetadataHolder;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistry;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Construction of the EDM over all synthetic entities: the reflective
+ * entity types of the providers, the schemas of the EDM provider and the
+ * complete service metadata. perRequestHandler is the handler every
+ * request used to build with its own service metadata, sharedHandler the
+ * handler bound to the metadata of the holder.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataBenchmark {
+
+	private AnnotationConfigApplicationContext ctx;
+
+	private GenericEdmProvider edmProvider;
+
+	private ServiceMetadataHolder serviceMetadataHolder;
+
+	private List<EntityProvider> entityProviders;
+
+	@Setup
+	public void setUp() {
+
+		ctx = BenchmarkData.context(BenchmarkData.ENTITY_CLASSES);
+		edmProvider = ctx.getBean(GenericEdmProvider.class);
+		serviceMetadataHolder = ctx.getBean(ServiceMetadataHolder.class);
+		entityProviders = new ArrayList<EntityProvider>(
+				ctx.getBean(EntityProviderRegistry.class).getEntityProviders());
+	}
+
+	@TearDown
+	public void tearDown() {
+		ctx.close();
+	}
+
+	@Benchmark
+	public List<EntityType> getEntityType() {
+
+		List<EntityType> entityTypes = new ArrayList<EntityType>(entityProviders.size());
+		for (EntityProvider entityProvider : entityProviders)
+			entityTypes.add(entityProvider.getEntityType());
+		return entityTypes;
+	}
+
+	@Benchmark
+	public List<Schema> getSchemas() throws ODataException {
+		return edmProvider.getSchemas();
+	}
+
+	@Benchmark
+	public ServiceMetadata createServiceMetadata() {
+
+		ServiceMetadata serviceMetadata = OData.newInstance().createServiceMetadata(edmProvider,
+				new ArrayList<EdmxReference>());
+		serviceMetadata.getEdm().getSchemas();
+		return serviceMetadata;
+	}
+
+	@Benchmark
+	public ODataHandler perRequestHandler() {
+
+		OData odata = OData.newInstance();
+		ServiceMetadata serviceMetadata = odata.createServiceMetadata(edmProvider, new ArrayList<EdmxReference>());
+		serviceMetadata.getEdm().getSchemas();
+		return new ODataHandler(odata, serviceMetadata);
+	}
+
+	@Benchmark
+	public ODataHandler sharedHandler() {
+		return serviceMetadataHolder.createHandler();
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.core.uri.parser.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.xylia.microservices.odata.benchmark.entities.Narrow;
+import org.xylia.microservices.odata.framework.edm.ServiceMetadataHolder;
+import org.xylia.microservices.odata.framework.persistence.criteria.SortKey;
+import org.xylia.microservices.odata.framework.persistence.repository.CoreEntityRepositoryProcessorImpl;
+import org.xylia.microservices.odata.framework.persistence.repository.EntityQuery;
+import org.xylia.microservices.odata.framework.persistence.repository.QueryTemplateCache;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * A $select read with a $filter and an $orderby through the repository, on
+ * an empty embedded H2 table so that the query itself costs next to
+ * nothing. Every invocation reads another of a set of requests of the same
+ * shape that only differ in their literals. With a cache size of 1000 the
+ * reads are hits of the QueryTemplateCache, bound to the cached query text;
+ * with a cache size of 0 the cache is off and every read is a miss that
+ * builds and renders the criteria query.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryCacheBenchmark {
+
+	private static final int REQUESTS = 16;
+
+	private static final String[] SELECTIONS = { "id", "column1", "column2" };
+
+	@Param({ "1000", "0" })
+	private String cacheSize;
+
+	private AnnotationConfigApplicationContext ctx;
+
+	private CoreEntityRepositoryProcessorImpl repository;
+
+	private List<EntityQuery> queries;
+
+	private int next;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		ctx = new AnnotationConfigApplicationContext();
+		ctx.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+				Collections.<String, Object> singletonMap("odata.query.cache-size", cacheSize)));
+		ctx.register(PersistenceConfig.class, QueryTemplateCache.class, CoreEntityRepositoryProcessorImpl.class);
+		ctx.refresh();
+		repository = ctx.getBean(CoreEntityRepositoryProcessorImpl.class);
+
+		try (AnnotationConfigApplicationContext edmContext = BenchmarkData.context(Narrow.class)) {
+
+			Edm edm = edmContext.getBean(ServiceMetadataHolder.class).getServiceMetadata().getEdm();
+			queries = new ArrayList<EntityQuery>(REQUESTS);
+			for (int i = 0; i < REQUESTS; i++)
+				queries.add(query(edm, i));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		ctx.close();
+	}
+
+	@Benchmark
+	public List<Object[]> findWithSelections() throws ODataApplicationException {
+		return repository.findWithSelections(queries.get(next++ % REQUESTS));
+	}
+
+	private static EntityQuery query(Edm edm, int i) throws Exception {
+
+		String filter = String.format(Locale.ENGLISH,
+				"$filter=column2%%20gt%%20%d.5%%20and%%20startswith(column1,'narrow-%d')&$orderby=column1", i, i);
+		UriInfo uriInfo = new Parser().parseUri(Narrow.class.getSimpleName(), filter, null, edm);
+
+		return new EntityQuery().setEntityName(Narrow.class.getName()).setSelections(SELECTIONS)
+				.setFilterOption(uriInfo.getFilterOption())
+				.setSortKeys(SortKey.of(uriInfo.getOrderByOption(), "id", attribute -> !"id".equals(attribute)))
+				.setMaxResults(100);
+	}
+
+	/*
+	 * An entity manager over the synthetic entities on an embedded H2
+	 * database.
+	 */
+	@Configuration
+	static class PersistenceConfig {
+
+		@Bean
+		public static PropertySourcesPlaceholderConfigurer placeholders() {
+			return new PropertySourcesPlaceholderConfigurer();
+		}
+
+		@Bean
+		public DataSource dataSource() {
+			return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName("query-cache").build();
+		}
+
+		@Bean
+		public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+
+			Properties properties = new Properties();
+			properties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+
+			LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+			entityManagerFactory.setDataSource(dataSource);
+			entityManagerFactory.setPackagesToScan(Narrow.class.getPackage().getName());
+			entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+			entityManagerFactory.setJpaProperties(properties);
+			return entityManagerFactory;
+		}
+	}
+}
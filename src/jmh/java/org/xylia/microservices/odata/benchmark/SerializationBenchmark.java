@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.olingo.commons.api.data.ContextURL;
+import org.apache.olingo.commons.api.data.EntitySet;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.format.ODataFormat;
+import org.apache.olingo.commons.core.data.EntitySetImpl;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
+import org.apache.olingo.server.api.serializer.ODataSerializer;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.xylia.microservices.odata.framework.edm.GenericEdmProvider;
+import org.xylia.microservices.odata.framework.edm.ServiceMetadataHolder;
+import org.xylia.microservices.odata.framework.edm.serializer.DirectJsonSerializer;
+import org.xylia.microservices.odata.framework.util.BufferPool;
+import org.xylia.microservices.odata.framework.util.CoreEntityListProcessor;
+import org.xylia.microservices.odata.framework.util.EntityRowMapper;
+import org.xylia.microservices.odata.framework.util.StreamingEntitySet;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * JSON serialization of entity collections: Olingo over entities built up
+ * front, Olingo including the mapping of the rows, and the direct
+ * serializer writing the rows. The setup checks that the direct serializer
+ * writes the same bytes as Olingo.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	@Param({ "Narrow", "Medium", "Wide" })
+	private String entity;
+
+	@Param({ "1000", "100000" })
+	private int rowCount;
+
+	private AnnotationConfigApplicationContext ctx;
+
+	private ODataSerializer serializer;
+
+	private EdmEntitySet edmEntitySet;
+
+	private EntityCollectionSerializerOptions options;
+
+	private List<Object> rows;
+
+	private EntitySet entitySet;
+
+	private String[] columns;
+
+	private EntityRowMapper mapper;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		Class<?> entityClass = BenchmarkData.entityClass(entity);
+		ctx = BenchmarkData.context(entityClass);
+
+		ServiceMetadata serviceMetadata = ctx.getBean(ServiceMetadataHolder.class).getServiceMetadata();
+		serializer = ctx.getBean(ServiceMetadataHolder.class).getOData().createSerializer(ODataFormat.JSON);
+		edmEntitySet = serviceMetadata.getEdm().getEntityContainer(GenericEdmProvider.CONTAINER)
+				.getEntitySet(entity);
+		options = EntityCollectionSerializerOptions.with()
+				.contextURL(ContextURL.with().entitySet(edmEntitySet).build()).build();
+
+		rows = BenchmarkData.rows(entityClass, rowCount);
+		entitySet = new EntitySetImpl();
+		CoreEntityListProcessor.buildEntities(entitySet.getEntities(), rows);
+
+		mapper = EntityRowMapper.forClass(entityClass);
+		columns = mapper.getColumnNames().toArray(new String[mapper.getColumnCount()]);
+
+		ByteArrayOutputStream olingo = new ByteArrayOutputStream();
+		ByteArrayOutputStream direct = new ByteArrayOutputStream();
+		BufferPool.shared().copy(serializer.entityCollection(edmEntitySet.getEntityType(), entitySet, options),
+				olingo);
+		write(direct);
+
+		if (!Arrays.equals(olingo.toByteArray(), direct.toByteArray()))
+			throw new IllegalStateException("The direct serializer output of " + entity + " differs from Olingo");
+	}
+
+	@TearDown
+	public void tearDown() {
+		ctx.close();
+	}
+
+	@Benchmark
+	public long olingo() throws IOException, SerializerException {
+		return drain(serializer.entityCollection(edmEntitySet.getEntityType(), entitySet, options));
+	}
+
+	@Benchmark
+	public long olingoWithMapping() throws IOException, SerializerException, IllegalAccessException {
+
+		EntitySet mapped = new EntitySetImpl();
+		CoreEntityListProcessor.buildEntities(mapped.getEntities(), rows);
+		return drain(serializer.entityCollection(edmEntitySet.getEntityType(), mapped, options));
+	}
+
+	@Benchmark
+	public long direct() throws IOException, SerializerException {
+
+		BenchmarkData.CountingSink sink = new BenchmarkData.CountingSink();
+		write(sink);
+		return sink.getCount();
+	}
+
+	private void write(OutputStream out) throws IOException, SerializerException {
+
+		StreamingEntitySet<Object> streamed = new StreamingEntitySet<Object>(rows.iterator(),
+				CoreEntityListProcessor::buildEntity, -1, null);
+		streamed.setColumns(columns, mapper::getValue);
+
+		new DirectJsonSerializer(ODataFormat.JSON).entityCollection(edmEntitySet.getEntityType(), streamed, options)
+				.writeTo(out);
+	}
+
+	private static long drain(InputStream content) throws IOException {
+
+		try {
+			return BufferPool.shared().copy(content, new BenchmarkData.CountingSink());
+		} finally {
+			content.close();
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.xylia.microservices.odata.benchmark.entities.Generated;
+import org.xylia.microservices.odata.benchmark.entities.Narrow;
+import org.xylia.microservices.odata.framework.persistence.repository.CoreEntityRepositoryProcessorImpl;
+import org.xylia.microservices.odata.framework.persistence.repository.JdbcBatchingConfigurer;
+import org.xylia.microservices.odata.framework.persistence.repository.QueryTemplateCache;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * A bulk create of 500 rows through the repository in one transaction on
+ * an embedded H2 database, rolled back so that the table stays empty. A
+ * write batch size of 50 flushes the inserts as JDBC batches of 50, a
+ * write batch size of 1 sends them one by one. The Narrow entity has an
+ * assigned key, the Generated entity an IDENTITY key whose inserts
+ * Hibernate does not batch at either size.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBatchBenchmark {
+
+	private static final int ROWS = 500;
+
+	@Param({ "50", "1" })
+	private String batchSize;
+
+	@Param({ "Narrow", "Generated" })
+	private String entity;
+
+	private AnnotationConfigApplicationContext ctx;
+
+	private CoreEntityRepositoryProcessorImpl repository;
+
+	private TransactionTemplate transaction;
+
+	private String entityName;
+
+	private List<Map<String, Object>> rows;
+
+	@Setup
+	public void setUp() {
+
+		ctx = new AnnotationConfigApplicationContext();
+		ctx.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+				Collections.<String, Object> singletonMap("odata.write.batch-size", batchSize)));
+		ctx.register(PersistenceConfig.class, JdbcBatchingConfigurer.class, QueryTemplateCache.class,
+				CoreEntityRepositoryProcessorImpl.class);
+		ctx.refresh();
+		repository = ctx.getBean(CoreEntityRepositoryProcessorImpl.class);
+		transaction = new TransactionTemplate(ctx.getBean(PlatformTransactionManager.class));
+
+		boolean generated = Generated.class.getSimpleName().equals(entity);
+		entityName = generated ? Generated.class.getName() : Narrow.class.getName();
+
+		rows = new ArrayList<Map<String, Object>>(ROWS);
+		for (int i = 0; i < ROWS; i++) {
+			Map<String, Object> row = new LinkedHashMap<String, Object>();
+			if (!generated)
+				row.put("id", i);
+			row.put("column1", entity + "-" + i + "-1");
+			row.put("column2", i * 2 + 0.25);
+			row.put("column4", entity + "-" + i + "-4");
+			rows.add(row);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		ctx.close();
+	}
+
+	@Benchmark
+	public int create() {
+
+		return transaction.execute(status -> {
+			status.setRollbackOnly();
+			try {
+				return repository.create(entityName, rows).size();
+			} catch (ClassNotFoundException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	/*
+	 * An entity manager over the synthetic entities on an embedded H2
+	 * database, with its transaction manager.
+	 */
+	@Configuration
+	static class PersistenceConfig {
+
+		@Bean
+		public static PropertySourcesPlaceholderConfigurer placeholders() {
+			return new PropertySourcesPlaceholderConfigurer();
+		}
+
+		@Bean
+		public DataSource dataSource() {
+			return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName("write-batch").build();
+		}
+
+		@Bean
+		public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+
+			Properties properties = new Properties();
+			properties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+
+			LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+			entityManagerFactory.setDataSource(dataSource);
+			entityManagerFactory.setPackagesToScan(Narrow.class.getPackage().getName());
+			entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+			entityManagerFactory.setJpaProperties(properties);
+			return entityManagerFactory;
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+			return new JpaTransactionManager(entityManagerFactory);
+		}
+	}
+}
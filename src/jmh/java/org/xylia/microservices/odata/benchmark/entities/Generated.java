@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.benchmark.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Synthetic entity with an IDENTITY key and 3 columns besides it.
+ */
+
+@Entity
+public class Generated {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column
+	private Integer id;
+
+	@Column
+	private String column1;
+
+	@Column
+	private Double column2;
+
+	@Column
+	private String column4;
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getColumn1() {
+		return column1;
+	}
+
+	public Double getColumn2() {
+		return column2;
+	}
+
+	public String getColumn4() {
+		return column4;
+	}
+}
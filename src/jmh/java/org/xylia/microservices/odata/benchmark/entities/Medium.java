@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.benchmark.entities;
+
+import java.sql.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Synthetic entity with 12 columns besides its key.
+ */
+
+@Entity
+public class Medium {
+
+	private static final long DAY = 86400000L;
+
+	@Id
+	@Column
+	private Integer id;
+
+	@Column
+	private String column1;
+
+	@Column
+	private Double column2;
+
+	@Column
+	private Date column3;
+
+	@Column
+	private String column4;
+
+	@Column
+	private Double column5;
+
+	@Column
+	private Date column6;
+
+	@Column
+	private String column7;
+
+	@Column
+	private Double column8;
+
+	@Column
+	private Date column9;
+
+	@Column
+	private String column10;
+
+	@Column
+	private Double column11;
+
+	@Column
+	private Date column12;
+
+	public Medium() {
+	}
+
+	public Medium(int id) {
+		this.id = id;
+		this.column1 = "medium-" + id + "-1";
+		this.column2 = id * 2 + 0.25;
+		this.column3 = new Date(DAY * (id % 3650 + 3));
+		this.column4 = "medium-" + id + "-4";
+		this.column5 = id * 5 + 0.25;
+		this.column6 = new Date(DAY * (id % 3650 + 6));
+		this.column7 = "medium-" + id + "-7";
+		this.column8 = id * 8 + 0.25;
+		this.column9 = new Date(DAY * (id % 3650 + 9));
+		this.column10 = "medium-" + id + "-10";
+		this.column11 = id * 11 + 0.25;
+		this.column12 = new Date(DAY * (id % 3650 + 12));
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getColumn1() {
+		return column1;
+	}
+
+	public Double getColumn2() {
+		return column2;
+	}
+
+	public Date getColumn3() {
+		return column3;
+	}
+
+	public String getColumn4() {
+		return column4;
+	}
+
+	public Double getColumn5() {
+		return column5;
+	}
+
+	public Date getColumn6() {
+		return column6;
+	}
+
+	public String getColumn7() {
+		return column7;
+	}
+
+	public Double getColumn8() {
+		return column8;
+	}
+
+	public Date getColumn9() {
+		return column9;
+	}
+
+	public String getColumn10() {
+		return column10;
+	}
+
+	public Double getColumn11() {
+		return column11;
+	}
+
+	public Date getColumn12() {
+		return column12;
+	}
+}
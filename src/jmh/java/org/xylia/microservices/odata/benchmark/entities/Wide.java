@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.benchmark.entities;
+
+import java.sql.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Synthetic entity with 32 columns besides its key.
+ */
+
+@Entity
+public class Wide {
+
+	private static final long DAY = 86400000L;
+
+	@Id
+	@Column
+	private Integer id;
+
+	@Column
+	private String column1;
+
+	@Column
+	private Double column2;
+
+	@Column
+	private Date column3;
+
+	@Column
+	private String column4;
+
+	@Column
+	private Double column5;
+
+	@Column
+	private Date column6;
+
+	@Column
+	private String column7;
+
+	@Column
+	private Double column8;
+
+	@Column
+	private Date column9;
+
+	@Column
+	private String column10;
+
+	@Column
+	private Double column11;
+
+	@Column
+	private Date column12;
+
+	@Column
+	private String column13;
+
+	@Column
+	private Double column14;
+
+	@Column
+	private Date column15;
+
+	@Column
+	private String column16;
+
+	@Column
+	private Double column17;
+
+	@Column
+	private Date column18;
+
+	@Column
+	private String column19;
+
+	@Column
+	private Double column20;
+
+	@Column
+	private Date column21;
+
+	@Column
+	private String column22;
+
+	@Column
+	private Double column23;
+
+	@Column
+	private Date column24;
+
+	@Column
+	private String column25;
+
+	@Column
+	private Double column26;
+
+	@Column
+	private Date column27;
+
+	@Column
+	private String column28;
+
+	@Column
+	private Double column29;
+
+	@Column
+	private Date column30;
+
+	@Column
+	private String column31;
+
+	@Column
+	private Double column32;
+
+	public Wide() {
+	}
+
+	public Wide(int id) {
+		this.id = id;
+		this.column1 = "wide-" + id + "-1";
+		this.column2 = id * 2 + 0.25;
+		this.column3 = new Date(DAY * (id % 3650 + 3));
+		this.column4 = "wide-" + id + "-4";
+		this.column5 = id * 5 + 0.25;
+		this.column6 = new Date(DAY * (id % 3650 + 6));
+		this.column7 = "wide-" + id + "-7";
+		this.column8 = id * 8 + 0.25;
+		this.column9 = new Date(DAY * (id % 3650 + 9));
+		this.column10 = "wide-" + id + "-10";
+		this.column11 = id * 11 + 0.25;
+		this.column12 = new Date(DAY * (id % 3650 + 12));
+		this.column13 = "wide-" + id + "-13";
+		this.column14 = id * 14 + 0.25;
+		this.column15 = new Date(DAY * (id % 3650 + 15));
+		this.column16 = "wide-" + id + "-16";
+		this.column17 = id * 17 + 0.25;
+		this.column18 = new Date(DAY * (id % 3650 + 18));
+		this.column19 = "wide-" + id + "-19";
+		this.column20 = id * 20 + 0.25;
+		this.column21 = new Date(DAY * (id % 3650 + 21));
+		this.column22 = "wide-" + id + "-22";
+		this.column23 = id * 23 + 0.25;
+		this.column24 = new Date(DAY * (id % 3650 + 24));
+		this.column25 = "wide-" + id + "-25";
+		this.column26 = id * 26 + 0.25;
+		this.column27 = new Date(DAY * (id % 3650 + 27));
+		this.column28 = "wide-" + id + "-28";
+		this.column29 = id * 29 + 0.25;
+		this.column30 = new Date(DAY * (id % 3650 + 30));
+		this.column31 = "wide-" + id + "-31";
+		this.column32 = id * 32 + 0.25;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getColumn1() {
+		return column1;
+	}
+
+	public Double getColumn2() {
+		return column2;
+	}
+
+	public Date getColumn3() {
+		return column3;
+	}
+
+	public String getColumn4() {
+		return column4;
+	}
+
+	public Double getColumn5() {
+		return column5;
+	}
+
+	public Date getColumn6() {
+		return column6;
+	}
+
+	public String getColumn7() {
+		return column7;
+	}
+
+	public Double getColumn8() {
+		return column8;
+	}
+
+	public Date getColumn9() {
+		return column9;
+	}
+
+	public String getColumn10() {
+		return column10;
+	}
+
+	public Double getColumn11() {
+		return column11;
+	}
+
+	public Date getColumn12() {
+		return column12;
+	}
+
+	public String getColumn13() {
+		return column13;
+	}
+
+	public Double getColumn14() {
+		return column14;
+	}
+
+	public Date getColumn15() {
+		return column15;
+	}
+
+	public String getColumn16() {
+		return column16;
+	}
+
+	public Double getColumn17() {
+		return column17;
+	}
+
+	public Date getColumn18() {
+		return column18;
+	}
+
+	public String getColumn19() {
+		return column19;
+	}
+
+	public Double getColumn20() {
+		return column20;
+	}
+
+	public Date getColumn21() {
+		return column21;
+	}
+
+	public String getColumn22() {
+		return column22;
+	}
+
+	public Double getColumn23() {
+		return column23;
+	}
+
+	public Date getColumn24() {
+		return column24;
+	}
+
+	public String getColumn25() {
+		return column25;
+	}
+
+	public Double getColumn26() {
+		return column26;
+	}
+
+	public Date getColumn27() {
+		return column27;
+	}
+
+	public String getColumn28() {
+		return column28;
+	}
+
+	public Double getColumn29() {
+		return column29;
+	}
+
+	public Date getColumn30() {
+		return column30;
+	}
+
+	public String getColumn31() {
+		return column31;
+	}
+
+	public Double getColumn32() {
+		return column32;
+	}
+}
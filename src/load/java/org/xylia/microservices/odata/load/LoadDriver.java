@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.xylia.microservices.odata.load.LoadReport.Kind;
+import org.xylia.microservices.odata.load.LoadReport.Recorder;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Drives concurrent OData traffic through the HTTP stack: $select pages of
+ * the entity sets, $filter pages of one query shape with random literals,
+ * key reads, property reads and $metadata, mixed by the given weights over
+ * random entity sets and keys. A warmup period runs
+ * first and is not recorded.
+ */
+
+public class LoadDriver {
+
+	private static final Logger logger = LoggerFactory.getLogger(LoadDriver.class);
+
+	private final String serviceUrl;
+
+	private final SyntheticEntities entities;
+
+	private final int rows;
+
+	private final int pageSize;
+
+	private final Map<Kind, Integer> weights;
+
+	private final int totalWeight;
+
+	public LoadDriver(String serviceUrl, SyntheticEntities entities, int rows, int pageSize,
+			Map<Kind, Integer> weights) {
+		this.serviceUrl = serviceUrl;
+		this.entities = entities;
+		this.rows = rows;
+		this.pageSize = pageSize;
+		this.weights = weights;
+
+		int sum = 0;
+		for (int weight : weights.values())
+			sum += weight;
+		this.totalWeight = sum;
+
+		if (totalWeight <= 0)
+			throw new IllegalArgumentException("The traffic mix has no weight");
+	}
+
+	public LoadReport run(int threads, int warmupSeconds, int durationSeconds) throws Exception {
+
+		logger.info("Warming up for " + warmupSeconds + "s");
+		drive(threads, warmupSeconds);
+
+		logger.info("Running " + threads + " threads for " + durationSeconds + "s");
+		long start = System.nanoTime();
+		List<Map<Kind, Recorder>> recorders = drive(threads, durationSeconds);
+
+		return new LoadReport((System.nanoTime() - start) / 1e9, recorders);
+	}
+
+	private List<Map<Kind, Recorder>> drive(int threads, int seconds) throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("load-"));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+		try {
+			List<Future<Map<Kind, Recorder>>> workers = new ArrayList<Future<Map<Kind, Recorder>>>();
+			for (int i = 0; i < threads; i++)
+				workers.add(executor.submit(() -> work(deadline)));
+
+			List<Map<Kind, Recorder>> recorders = new ArrayList<Map<Kind, Recorder>>();
+			for (Future<Map<Kind, Recorder>> worker : workers)
+				recorders.add(worker.get());
+			return recorders;
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Map<Kind, Recorder> work(long deadline) {
+
+		Map<Kind, Recorder> recorders = new EnumMap<Kind, Recorder>(Kind.class);
+		for (Kind kind : Kind.values())
+			recorders.put(kind, new Recorder());
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (System.nanoTime() < deadline) {
+
+			Kind kind = pick(random.nextInt(totalWeight));
+			String url = url(kind, random);
+			Recorder recorder = recorders.get(kind);
+
+			long start = System.nanoTime();
+			try {
+				if (get(url, kind == Kind.METADATA ? "application/xml" : "application/json") < 400)
+					recorder.record(System.nanoTime() - start);
+				else
+					recorder.error();
+			} catch (IOException e) {
+				logger.debug(url + " failed: " + e.getLocalizedMessage());
+				recorder.error();
+			}
+		}
+		return recorders;
+	}
+
+	private Kind pick(int value) {
+
+		for (Map.Entry<Kind, Integer> weight : weights.entrySet()) {
+			value -= weight.getValue();
+			if (value < 0)
+				return weight.getKey();
+		}
+		throw new IllegalStateException();
+	}
+
+	private String url(Kind kind, ThreadLocalRandom random) {
+
+		int index = random.nextInt(entities.size());
+		String entitySet = entities.getEntitySetName(index);
+		int width = entities.getWidth(index);
+
+		switch (kind) {
+		case COLLECTION:
+			return serviceUrl + entitySet + "?$select=" + SyntheticEntities.column(1) + ","
+					+ SyntheticEntities.column(Math.min(2, width)) + "&$top=" + pageSize + "&$skip="
+					+ random.nextInt(Math.max(1, rows - pageSize));
+		case FILTER:
+			int from = random.nextInt(Math.max(1, rows - pageSize));
+			return serviceUrl + entitySet + "?$filter=id%20ge%20" + from + "%20and%20id%20lt%20" + (from + pageSize)
+					+ "&$orderby=id%20desc&$top=" + pageSize;
+		case KEY:
+			return serviceUrl + entitySet + "(" + random.nextInt(rows) + ")";
+		case PROPERTY:
+			return serviceUrl + entitySet + "(" + random.nextInt(rows) + ")/"
+					+ SyntheticEntities.column(1 + random.nextInt(width));
+		default:
+			return serviceUrl + "$metadata";
+		}
+	}
+
+	/*
+	 * Gets the URL and reads the response to its end, so that the connection
+	 * is kept alive for the next request.
+	 */
+	private static int get(String url, String accept) throws IOException {
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestProperty("Accept", accept);
+
+		int status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		if (in != null) {
+			byte[] buffer = new byte[8192];
+			try {
+				while (in.read(buffer) >= 0)
+					;
+			} finally {
+				in.close();
+			}
+		}
+		return status;
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.load;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+import org.xylia.microservices.odata.framework.persistence.repository.QueryTemplateCache;
+import org.xylia.microservices.odata.load.LoadReport.Kind;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * End to end load harness. Boots the framework on a random port against an
+ * embedded H2 database with generated entity sets, drives mixed traffic
+ * through EDMController and reports throughput and latency percentiles,
+ * with the per phase means of the pipeline metrics and the hit rate of the
+ * query cache. Settings are passed as --load.* arguments:
+ *
+ *   load.widths                 columns of the generated entity sets (4,16,64)
+ *   load.rows                   rows per entity set (10000)
+ *   load.threads                concurrent clients (16)
+ *   load.warmup-seconds         unrecorded warmup (10)
+ *   load.duration-seconds       recorded run (30)
+ *   load.page-size              $top of the collection reads (100)
+ *   load.mix                    weights of the request kinds (collection:40,key:30,property:20,metadata:10),
+ *                               filter pages are added with e.g. filter:40
+ *   load.baseline               baseline properties (src/load/resources/load-baseline.properties)
+ *   load.tolerance              allowed regression against the baseline (0.2)
+ *   load.update-baseline        stores the run as the baseline (false)
+ *   load.check                  fails the run when there is no baseline (true when load.baseline is given)
+ *
+ * The process exits with status 1 when the run regresses past the baseline,
+ * or when a check is requested and there is no baseline to check against.
+ */
+
+@SpringBootApplication(scanBasePackages = "org.xylia.microservices.odata")
+public class LoadHarness {
+
+	private static final Logger logger = LoggerFactory.getLogger(LoadHarness.class);
+
+	public static void main(String[] args) throws Exception {
+
+		Properties defaults = new Properties();
+		defaults.setProperty("server.port", "0");
+		defaults.setProperty("logging.level.root", "WARN");
+		defaults.setProperty("logging.level.org.springframework", "WARN");
+		defaults.setProperty("logging.level.org.xylia", "WARN");
+		defaults.setProperty("logging.level.org.xylia.microservices.odata.load", "INFO");
+
+		SpringApplication application = new SpringApplication(LoadHarness.class);
+		application.setDefaultProperties(defaults);
+		application.addInitializers(new SyntheticEntityInitializer());
+
+		int status;
+		try (ConfigurableApplicationContext ctx = application.run(args)) {
+
+			Environment env = ctx.getEnvironment();
+			int threads = env.getProperty("load.threads", Integer.class, 16);
+			int rows = env.getProperty("load.rows", Integer.class, 10000);
+
+			/* the default keep alive cache holds only 5 connections per host */
+			System.setProperty("http.maxConnections", String.valueOf(threads));
+
+			SyntheticEntities entities = ctx.getBean(SyntheticEntities.class);
+			entities.load(ctx.getBean(DataSource.class), rows);
+
+			String serviceUrl = "http://localhost:" + env.getProperty("local.server.port") + "/odata/";
+			LoadDriver driver = new LoadDriver(serviceUrl, entities, rows,
+					env.getProperty("load.page-size", Integer.class, 100),
+					mix(env.getProperty("load.mix", "collection:40,key:30,property:20,metadata:10")));
+
+			LoadReport report = driver.run(threads, env.getProperty("load.warmup-seconds", Integer.class, 10),
+					env.getProperty("load.duration-seconds", Integer.class, 30));
+
+			report.print(System.out);
+			printPhases(ctx.getBean(MetricRegistry.class));
+			System.out.println(String.format(Locale.ENGLISH, "query cache hit rate %.3f",
+					ctx.getBean(QueryTemplateCache.class).getQueryStringStats().hitRate()));
+
+			status = compare(report, env) ? 0 : 1;
+		}
+		System.exit(status);
+	}
+
+	private static Map<Kind, Integer> mix(String mix) {
+
+		Map<Kind, Integer> weights = new LinkedHashMap<Kind, Integer>();
+		for (String entry : StringUtils.commaDelimitedListToStringArray(mix)) {
+
+			String[] weight = entry.trim().split(":");
+			weights.put(Kind.valueOf(weight[0].trim().toUpperCase(Locale.ENGLISH)), Integer.valueOf(weight[1].trim()));
+		}
+		return weights;
+	}
+
+	/*
+	 * Prints the mean time per request of each phase of the pipeline.
+	 */
+	private static void printPhases(MetricRegistry metricRegistry) {
+
+		for (Map.Entry<String, Timer> timer : metricRegistry.getTimers().entrySet()) {
+
+			if (!timer.getKey().startsWith("odata."))
+				continue;
+
+			Snapshot snapshot = timer.getValue().getSnapshot();
+			System.out.println(String.format(Locale.ENGLISH, "%-48s %10d %10.3f ms", timer.getKey(),
+					timer.getValue().getCount(), snapshot.getMean() / 1000000d));
+		}
+	}
+
+	/*
+	 * Compares the run with the stored baseline, or stores it as the
+	 * baseline. Returns false when the run has regressed, or when a check is
+	 * requested and there is no baseline.
+	 */
+	private static boolean compare(LoadReport report, Environment env) throws IOException {
+
+		File baseline = new File(env.getProperty("load.baseline", "src/load/resources/load-baseline.properties"));
+
+		if (env.getProperty("load.update-baseline", Boolean.class, false)) {
+
+			baseline.getAbsoluteFile().getParentFile().mkdirs();
+			try (OutputStream out = new FileOutputStream(baseline)) {
+				report.toProperties().store(out, "Load harness baseline");
+			}
+			logger.info("Stored the baseline in " + baseline);
+			return true;
+		}
+
+		if (!baseline.isFile()) {
+
+			if (env.getProperty("load.check", Boolean.class, env.containsProperty("load.baseline"))) {
+				logger.error("No baseline at " + baseline + " to check the run against, store one with"
+						+ " --load.update-baseline=true");
+				return false;
+			}
+			logger.warn("No baseline at " + baseline + ", the run is not checked for regressions");
+			return true;
+		}
+
+		Properties expected = new Properties();
+		try (InputStream in = new FileInputStream(baseline)) {
+			expected.load(in);
+		}
+
+		List<String> regressions = report.regressions(expected, env.getProperty("load.tolerance", Double.class, 0.2));
+		for (String regression : regressions)
+			logger.error("Regression: " + regression);
+
+		return regressions.isEmpty();
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.load;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Throughput and latency percentiles of a load run, per request kind and in
+ * total, and their comparison with a baseline of an earlier run. All
+ * latencies are recorded, so the percentiles are exact.
+ */
+
+public class LoadReport {
+
+	public enum Kind {
+		COLLECTION, FILTER, KEY, PROPERTY, METADATA
+	}
+
+	private static final String TOTAL = "total";
+
+	private final double seconds;
+
+	private final Map<Kind, Recorder> recorders = new EnumMap<Kind, Recorder>(Kind.class);
+
+	private final Recorder total = new Recorder();
+
+	public LoadReport(double seconds, List<Map<Kind, Recorder>> threads) {
+
+		this.seconds = seconds;
+		for (Kind kind : Kind.values())
+			recorders.put(kind, new Recorder());
+
+		for (Map<Kind, Recorder> thread : threads) {
+			for (Map.Entry<Kind, Recorder> entry : thread.entrySet()) {
+				recorders.get(entry.getKey()).addAll(entry.getValue());
+				total.addAll(entry.getValue());
+			}
+		}
+		for (Recorder recorder : recorders.values())
+			recorder.sort();
+		total.sort();
+	}
+
+	public void print(PrintStream out) {
+
+		out.println(String.format(Locale.ENGLISH, "%-12s %10s %8s %10s %10s %10s %10s", "kind", "requests", "errors",
+				"req/s", "p50 ms", "p99 ms", "p99.9 ms"));
+		for (Kind kind : Kind.values())
+			print(out, kind.name().toLowerCase(Locale.ENGLISH), recorders.get(kind));
+		print(out, TOTAL, total);
+	}
+
+	private void print(PrintStream out, String name, Recorder recorder) {
+
+		out.println(String.format(Locale.ENGLISH, "%-12s %10d %8d %10.1f %10.3f %10.3f %10.3f", name,
+				recorder.size, recorder.errors, recorder.size / seconds, recorder.percentile(0.5),
+				recorder.percentile(0.99), recorder.percentile(0.999)));
+	}
+
+	/*
+	 * Gets the figures of the run as baseline properties.
+	 */
+	public Properties toProperties() {
+
+		Properties properties = new Properties();
+		for (Kind kind : Kind.values())
+			put(properties, kind.name().toLowerCase(Locale.ENGLISH), recorders.get(kind));
+		put(properties, TOTAL, total);
+		return properties;
+	}
+
+	private void put(Properties properties, String name, Recorder recorder) {
+
+		if (recorder.size == 0)
+			return;
+
+		properties.setProperty(name + ".rps", format(recorder.size / seconds));
+		properties.setProperty(name + ".p50", format(recorder.percentile(0.5)));
+		properties.setProperty(name + ".p99", format(recorder.percentile(0.99)));
+		properties.setProperty(name + ".p999", format(recorder.percentile(0.999)));
+	}
+
+	/*
+	 * Compares the run with a baseline, a run regresses when its throughput
+	 * is lower or its p50 or p99 latency is higher than the baseline by more
+	 * than the tolerance. Errors are always a regression.
+	 */
+	public List<String> regressions(Properties baseline, double tolerance) {
+
+		List<String> regressions = new ArrayList<String>();
+		if (total.errors > 0)
+			regressions.add(total.errors + " requests failed");
+
+		Properties current = toProperties();
+		for (String name : baseline.stringPropertyNames()) {
+
+			String value = current.getProperty(name);
+			if (value == null)
+				continue;
+
+			double expected = Double.parseDouble(baseline.getProperty(name));
+			double actual = Double.parseDouble(value);
+
+			if (name.endsWith(".rps") && actual < expected * (1 - tolerance))
+				regressions.add(name + " dropped to " + value + " from " + baseline.getProperty(name));
+			else if ((name.endsWith(".p50") || name.endsWith(".p99")) && actual > expected * (1 + tolerance))
+				regressions.add(name + " rose to " + value + "ms from " + baseline.getProperty(name) + "ms");
+		}
+		return regressions;
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ENGLISH, "%.3f", value);
+	}
+
+	/*
+	 * Latencies and errors of one kind of request recorded by one thread.
+	 */
+	public static final class Recorder {
+
+		private long[] nanos = new long[1024];
+
+		private int size;
+
+		private long errors;
+
+		public void record(long elapsed) {
+
+			if (size == nanos.length)
+				nanos = Arrays.copyOf(nanos, size * 2);
+			nanos[size++] = elapsed;
+		}
+
+		public void error() {
+			errors++;
+		}
+
+		private void addAll(Recorder recorder) {
+
+			if (size + recorder.size > nanos.length)
+				nanos = Arrays.copyOf(nanos, Math.max(nanos.length * 2, size + recorder.size));
+			System.arraycopy(recorder.nanos, 0, nanos, size, recorder.size);
+			size += recorder.size;
+			errors += recorder.errors;
+		}
+
+		private void sort() {
+			Arrays.sort(nanos, 0, size);
+		}
+
+		/*
+		 * Gets the latency percentile in milliseconds.
+		 */
+		private double percentile(double percentile) {
+
+			if (size == 0)
+				return 0d;
+
+			int index = (int) Math.ceil(percentile * size) - 1;
+			return nanos[Math.max(0, Math.min(index, size - 1))] / 1000000d;
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.load;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.sql.DataSource;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.StringMemberValue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Synthetic @Entity classes generated at startup, one per configured width,
+ * named Synthetic<width> with an Integer key and width columns cycling
+ * through String, Double and Date. The classes are defined in the class
+ * loader of the framework, so that they resolve by name like the entity
+ * classes of an application.
+ */
+
+public class SyntheticEntities {
+
+	private static final Logger logger = LoggerFactory.getLogger(SyntheticEntities.class);
+
+	public static final String PACKAGE = "org.xylia.microservices.odata.load.entities";
+
+	private static final long DAY = 86400000L;
+
+	private static final int INSERT_BATCH_SIZE = 1000;
+
+	private final List<Class<?>> entityClasses;
+
+	private final List<Integer> widths;
+
+	private SyntheticEntities(List<Class<?>> entityClasses, List<Integer> widths) {
+		this.entityClasses = Collections.unmodifiableList(entityClasses);
+		this.widths = Collections.unmodifiableList(widths);
+	}
+
+	/*
+	 * Generates an entity class for each width.
+	 */
+	public static SyntheticEntities generate(List<Integer> widths, ClassLoader classLoader) {
+
+		ClassPool pool = ClassPool.getDefault();
+		List<Class<?>> entityClasses = new ArrayList<Class<?>>();
+
+		try {
+			for (int width : widths)
+				entityClasses.add(generate(pool, classLoader, width));
+		} catch (CannotCompileException | NotFoundException e) {
+			throw new IllegalStateException("Unable to generate the synthetic entities", e);
+		}
+		return new SyntheticEntities(entityClasses, widths);
+	}
+
+	public List<Class<?>> getEntityClasses() {
+		return entityClasses;
+	}
+
+	public String getEntitySetName(int index) {
+		return entityClasses.get(index).getSimpleName();
+	}
+
+	public int getWidth(int index) {
+		return widths.get(index);
+	}
+
+	public int size() {
+		return entityClasses.size();
+	}
+
+	public static String column(int column) {
+		return "column" + column;
+	}
+
+	/*
+	 * Inserts rows rows into the table of every entity, through JDBC batches.
+	 */
+	public void load(DataSource dataSource, int rows) {
+
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+		for (int index = 0; index < size(); index++) {
+
+			long start = System.nanoTime();
+			int width = getWidth(index);
+
+			StringBuilder columns = new StringBuilder("id");
+			StringBuilder parameters = new StringBuilder("?");
+			for (int column = 1; column <= width; column++) {
+				columns.append(", ").append(column(column));
+				parameters.append(", ?");
+			}
+			String insert = "insert into " + tableName(width) + " (" + columns + ") values (" + parameters + ")";
+
+			List<Object[]> batch = new ArrayList<Object[]>(INSERT_BATCH_SIZE);
+			for (int id = 0; id < rows; id++) {
+
+				Object[] values = new Object[width + 1];
+				values[0] = id;
+				for (int column = 1; column <= width; column++)
+					values[column] = value(id, column);
+				batch.add(values);
+
+				if (batch.size() == INSERT_BATCH_SIZE || id == rows - 1) {
+					jdbcTemplate.batchUpdate(insert, batch);
+					batch.clear();
+				}
+			}
+
+			logger.info("Loaded " + rows + " rows into " + getEntitySetName(index) + " in "
+					+ (System.nanoTime() - start) / 1000000 + "ms");
+		}
+	}
+
+	private static Class<?> generate(ClassPool pool, ClassLoader classLoader, int width)
+			throws CannotCompileException, NotFoundException {
+
+		CtClass entity = pool.makeClass(PACKAGE + ".Synthetic" + width);
+		ConstPool constPool = entity.getClassFile().getConstPool();
+
+		AnnotationsAttribute annotations = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+		annotations.addAnnotation(new Annotation(Entity.class.getName(), constPool));
+		Annotation table = new Annotation(Table.class.getName(), constPool);
+		table.addMemberValue("name", new StringMemberValue(tableName(width), constPool));
+		annotations.addAnnotation(table);
+		entity.getClassFile().addAttribute(annotations);
+
+		addField(entity, pool.get(Integer.class.getName()), "id", Id.class, Column.class);
+		for (int column = 1; column <= width; column++)
+			addField(entity, pool.get(columnType(column).getName()), column(column), Column.class);
+
+		entity.addConstructor(CtNewConstructor.defaultConstructor(entity));
+		return entity.toClass(classLoader, null);
+	}
+
+	private static void addField(CtClass entity, CtClass type, String name, Class<?>... annotationTypes)
+			throws CannotCompileException {
+
+		ConstPool constPool = entity.getClassFile().getConstPool();
+
+		CtField field = new CtField(type, name, entity);
+		field.setModifiers(Modifier.PRIVATE);
+
+		AnnotationsAttribute annotations = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+		for (Class<?> annotationType : annotationTypes)
+			annotations.addAnnotation(new Annotation(annotationType.getName(), constPool));
+		field.getFieldInfo().addAttribute(annotations);
+		entity.addField(field);
+
+		String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		entity.addMethod(CtNewMethod.getter("get" + suffix, field));
+		entity.addMethod(CtNewMethod.setter("set" + suffix, field));
+	}
+
+	private static String tableName(int width) {
+		return "synthetic_" + width;
+	}
+
+	private static Class<?> columnType(int column) {
+
+		switch (column % 3) {
+		case 1:
+			return String.class;
+		case 2:
+			return Double.class;
+		default:
+			return Date.class;
+		}
+	}
+
+	private static Object value(int id, int column) {
+
+		switch (column % 3) {
+		case 1:
+			return "value-" + id + "-" + column;
+		case 2:
+			return id * column + 0.25;
+		default:
+			return new Date(DAY * (id % 3650 + column));
+		}
+	}
+}
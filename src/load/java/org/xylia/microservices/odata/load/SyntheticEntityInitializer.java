@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.MutablePersistenceUnitInfo;
+import org.springframework.util.StringUtils;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Generates the synthetic entities of load.widths before the context is
+ * refreshed, registers an entity provider bean for each of them and adds
+ * them to the persistence unit, as the generated classes cannot be found by
+ * scanning.
+ */
+
+public class SyntheticEntityInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+	@Override
+	public void initialize(ConfigurableApplicationContext ctx) {
+
+		List<Integer> widths = new ArrayList<Integer>();
+		for (String width : StringUtils
+				.commaDelimitedListToStringArray(ctx.getEnvironment().getProperty("load.widths", "4,16,64")))
+			widths.add(Integer.valueOf(width.trim()));
+
+		SyntheticEntities entities = SyntheticEntities.generate(widths, SyntheticEntityProvider.class.getClassLoader());
+		ctx.getBeanFactory().registerSingleton("syntheticEntities", entities);
+
+		BeanDefinitionRegistry registry = (BeanDefinitionRegistry) ctx;
+		for (Class<?> entityClass : entities.getEntityClasses()) {
+
+			RootBeanDefinition provider = new RootBeanDefinition(SyntheticEntityProvider.class);
+			provider.getConstructorArgumentValues().addIndexedArgumentValue(0, entityClass);
+			registry.registerBeanDefinition(entityClass.getSimpleName() + "Provider", provider);
+		}
+
+		ctx.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+
+				if (bean instanceof LocalContainerEntityManagerFactoryBean)
+					((LocalContainerEntityManagerFactoryBean) bean)
+							.setPersistenceUnitPostProcessors((MutablePersistenceUnitInfo persistenceUnit) -> {
+								for (Class<?> entityClass : entities.getEntityClasses())
+									persistenceUnit.addManagedClassName(entityClass.getName());
+							});
+				return bean;
+			}
+
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+				return bean;
+			}
+		});
+	}
+}
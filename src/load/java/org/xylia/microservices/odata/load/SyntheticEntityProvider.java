@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.load;
+
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.xylia.microservices.odata.edm.framework.providers.entity.BaseEntityProviderProcessorImpl;
+import org.xylia.microservices.odata.framework.edm.GenericEdmProvider;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Entity provider of a synthetic entity class, with the entity set named
+ * after the class.
+ */
+
+public class SyntheticEntityProvider extends BaseEntityProviderProcessorImpl implements EntityProvider {
+
+	private final Class<?> entityClass;
+
+	public SyntheticEntityProvider(Class<?> entityClass) {
+		this.entityClass = entityClass;
+	}
+
+	@Override
+	public String getEntityNameSpace() {
+		return SyntheticEntities.PACKAGE;
+	}
+
+	@Override
+	public FullQualifiedName getFullyQualifiedEntityName() {
+		return new FullQualifiedName(GenericEdmProvider.NAMESPACE, getProducerEntityName());
+	}
+
+	@Override
+	public FullQualifiedName getContainer() {
+		return GenericEdmProvider.CONTAINER;
+	}
+
+	@Override
+	public String getProducerEntitySetName() {
+		return entityClass.getSimpleName();
+	}
+
+	@Override
+	public String getProducerEntityName() {
+		return entityClass.getSimpleName();
+	}
+
+	@Override
+	public String getFullQualifiedEntityName() {
+		return entityClass.getName();
+	}
+}
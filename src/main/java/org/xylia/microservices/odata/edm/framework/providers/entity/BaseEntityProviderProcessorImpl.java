@@ -21,9 +21,14 @@
 package org.xylia.microservices.odata.edm.framework.providers.entity;
 
 import java.lang.reflect.Field;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import javax.persistence.Column;
 import javax.persistence.Id;
@@ -32,27 +37,47 @@ import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.EntitySet;
 import org.apache.olingo.commons.api.edm.EdmEntitySet;
 import org.apache.olingo.commons.api.edm.EdmEntityType;
-import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
 import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.commons.core.data.EntityImpl;
 import org.apache.olingo.commons.core.data.EntitySetImpl;
 import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
 import org.apache.olingo.server.api.edm.provider.EntityType;
 import org.apache.olingo.server.api.edm.provider.Property;
 import org.apache.olingo.server.api.edm.provider.PropertyRef;
 import org.apache.olingo.server.api.serializer.SerializerException;
 import org.apache.olingo.server.api.uri.UriInfo;
-import org.apache.olingo.server.api.uri.UriParameter;
 import org.apache.olingo.server.api.uri.UriResource;
 import org.apache.olingo.server.api.uri.UriResourceEntitySet;
 import org.apache.olingo.server.api.uri.queryoption.CountOption;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
 import org.apache.olingo.server.api.uri.queryoption.SelectOption;
-import org.apache.olingo.server.api.uri.queryoption.TopOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.xylia.microservices.odata.framework.controller.ResponseCache;
+import org.xylia.microservices.odata.framework.edm.descriptor.EntityDescriptor;
+import org.xylia.microservices.odata.framework.edm.descriptor.EntityDescriptors;
+import org.xylia.microservices.odata.framework.edm.paging.PageRequest;
+import org.xylia.microservices.odata.framework.edm.types.PropertyCodecs;
+import org.xylia.microservices.odata.framework.persistence.criteria.SortKey;
+import org.xylia.microservices.odata.framework.persistence.repository.CountMode;
+import org.xylia.microservices.odata.framework.persistence.repository.EntityCache;
+import org.xylia.microservices.odata.framework.persistence.repository.EntityCountCache;
+import org.xylia.microservices.odata.framework.persistence.repository.EntityCursor;
+import org.xylia.microservices.odata.framework.persistence.repository.EntityQuery;
 import org.xylia.microservices.odata.framework.persistence.repository.CoreEntityRepositoryProcessorImpl;
 import org.xylia.microservices.odata.framework.util.CoreEntityListProcessor;
+import org.xylia.microservices.odata.framework.util.EntityRowMapper;
+import org.xylia.microservices.odata.framework.util.EntityRowWriter;
+import org.xylia.microservices.odata.framework.util.EntityTag;
+import org.xylia.microservices.odata.framework.util.StreamingEntitySet;
+import org.xylia.microservices.odata.framework.util.TaggedEntitySet;
 
 /**
  * @author Rajesh Iyer
@@ -66,6 +91,48 @@ public abstract class BaseEntityProviderProcessorImpl {
 	@Autowired
 	private CoreEntityRepositoryProcessorImpl entityRepository;
 
+	@Autowired
+	private EntityCountCache countCache;
+
+	@Autowired
+	private EntityCache entityCache;
+
+	@Autowired
+	private ResponseCache responseCache;
+
+	@Value("${odata.paging.max-page-size:1000}")
+	private int maxPageSize;
+
+	@Value("${odata.count.mode:EXACT}")
+	private CountMode countMode;
+
+	@Value("${odata.count.cache-ttl-seconds:30}")
+	private long countCacheTtl;
+
+	@Value("${odata.streaming.threshold:5000}")
+	private int streamingThreshold;
+
+	@Value("${odata.streaming.fetch-size:500}")
+	private int streamingFetchSize;
+
+	@Value("${odata.streaming.clear-interval:1000}")
+	private int streamingClearInterval;
+
+	@Value("${odata.serializer.direct:false}")
+	private boolean directSerialization;
+
+	@Value("${odata.entity-cache.size:0}")
+	private long entityCacheSize;
+
+	@Value("${odata.entity-cache.ttl-seconds:300}")
+	private long entityCacheTtl;
+
+	@Value("${odata.response-cache.ttl-seconds:0}")
+	private long responseCacheTtl;
+
+	@Value("${odata.cache-control:}")
+	private String cacheControl;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -80,41 +147,35 @@ public abstract class BaseEntityProviderProcessorImpl {
 		/* create PropertyRef for Key element */
 		PropertyRef propertyRef = new PropertyRef();
 
-		String className = getEntityNameSpace() + "." + getProducerEntitySetName();
+		/* an entity with a generated descriptor is described without reflection */
+		EntityDescriptor descriptor = EntityDescriptors.forName(getFullQualifiedEntityName());
+		if (descriptor != null) {
 
-		try {
-			for (Field field : Class.forName(className).getDeclaredFields()) {
+			properties.addAll(descriptor.getProperties());
+			if (descriptor.getId() != null)
+				propertyRef.setPropertyName(descriptor.getId().getName());
 
-				Id idColumn = field.getAnnotation(javax.persistence.Id.class);
-
-				if (idColumn != null)
-					propertyRef.setPropertyName(field.getName());
-
-				Column column = field.getAnnotation(Column.class);
-				Property property = null;
+		} else {
 
-				// logger.debug("Field name:" + field.getName() + "is of type:"
-				// + field.getType());
+			String className = getEntityNameSpace() + "." + getProducerEntitySetName();
 
-				if (column != null) {
+			try {
+				for (Field field : Class.forName(className).getDeclaredFields()) {
 
-					if (field.getType().getName().equals("java.lang.String"))
+					Id idColumn = field.getAnnotation(javax.persistence.Id.class);
 
-						property = new Property().setName(field.getName())
-								.setType(EdmPrimitiveTypeKind.String.getFullQualifiedName());
-					else if (field.getType().getName().equals("java.sql.Date"))
+					if (idColumn != null)
+						propertyRef.setPropertyName(field.getName());
 
-						property = new Property().setName(field.getName())
-								.setType(EdmPrimitiveTypeKind.Date.getFullQualifiedName());
-					else
-						property = new Property().setName(field.getName())
-								.setType(EdmPrimitiveTypeKind.Double.getFullQualifiedName());
+					Column column = field.getAnnotation(Column.class);
 
-					properties.add(property);
+					/* the EDM type and facets of the column come from the codec of its Java type */
+					if (column != null)
+						properties.add(PropertyCodecs.shared().property(field));
 				}
+			} catch (SecurityException | ClassNotFoundException e) {
+				logger.debug(e.getLocalizedMessage());
 			}
-		} catch (SecurityException | ClassNotFoundException e) {
-			logger.debug(e.getLocalizedMessage());
 		}
 
 		// configure EntityType
@@ -132,11 +193,12 @@ public abstract class BaseEntityProviderProcessorImpl {
 	 * 
 	 * @see
 	 * com.unum.microservices.odata.edm.providers.EntityProvider#getEntitySet
-	 * (org.apache.olingo.server.api.uri.UriInfo)
+	 * (org.apache.olingo.server.api.uri.UriInfo,
+	 * org.xylia.microservices.odata.framework.edm.paging.PageRequest)
 	 */
-	public EntitySet getEntitySet(UriInfo uriInfo) throws IllegalArgumentException, IllegalAccessException {
+	public EntitySet getEntitySet(UriInfo uriInfo, PageRequest pageRequest)
+			throws IllegalArgumentException, IllegalAccessException, ODataApplicationException {
 
-		int topValue = 0;
 		boolean count = false;
 		List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
 
@@ -146,10 +208,6 @@ public abstract class BaseEntityProviderProcessorImpl {
 		SelectOption selectOption = uriInfo.getSelectOption();
 		logger.debug("$select option:" + selectOption);
 
-		TopOption topOption = uriInfo.getTopOption();
-		if (topOption != null)
-			topValue = topOption.getValue();
-
 		CountOption countOption = uriInfo.getCountOption();
 		if (countOption != null)
 			count = countOption.getValue();
@@ -176,20 +234,155 @@ public abstract class BaseEntityProviderProcessorImpl {
 				/** Multiple selections **/
 
 				String[] selections = selectList.split(",");
-				return getData(edmEntitySet, selections, topValue, count);
+				return getData(edmEntitySet, selections, uriInfo, pageRequest, count);
 			} else {
 				/** Single selection **/
-				return getDataSingleValue(edmEntitySet, selectList, topValue, count);
+				return getDataSingleValue(edmEntitySet, selectList, uriInfo, pageRequest, count);
 
 			}
 
 		} else {
 
 			EdmEntitySet edmEntitySet = uriResourceEntitySet.getEntitySet();
-			return getData(edmEntitySet, null, topValue, count);
+			return getData(edmEntitySet, null, uriInfo, pageRequest, count);
+		}
+	}
+
+	/**
+	 * Counts the entities of the entity set matching the $filter of the
+	 * request, in a query separate from the page fetch. Depending on the
+	 * count mode of the entity set the count is read from the count cache or
+	 * estimated from the planner statistics of the database.
+	 */
+	public long getCount(UriInfo uriInfo) throws ODataApplicationException {
+
+		FilterOption filterOption = uriInfo.getFilterOption();
+		String filter = filterOption != null ? filterOption.getText() : null;
+
+		EntityQuery entityQuery = new EntityQuery().setEntityName(getFullQualifiedEntityName())
+				.setFilterOption(filterOption);
+
+		switch (getCountMode()) {
+		case ESTIMATED:
+			if (filter == null) {
+				Long estimate = entityRepository.estimateCount(getFullQualifiedEntityName());
+				if (estimate != null)
+					return estimate;
+			}
+			// no estimate available, use a cached count
+		case CACHED:
+			Long cached = countCache.get(getEntitySetName(), filter, getCountCacheTtl());
+			if (cached == null) {
+				cached = entityRepository.count(entityQuery);
+				countCache.put(getEntitySetName(), filter, getCountCacheTtl(), cached);
+			}
+			return cached;
+		default:
+			return entityRepository.count(entityQuery);
 		}
 	}
 
+	/**
+	 * Gets how $count is answered for this entity set. Defaults to the
+	 * framework wide odata.count.mode property.
+	 */
+	public CountMode getCountMode() {
+		return countMode;
+	}
+
+	/**
+	 * Gets the time to live in seconds of cached counts of this entity set.
+	 * Defaults to the framework wide odata.count.cache-ttl-seconds property.
+	 */
+	public long getCountCacheTtl() {
+		return countCacheTtl;
+	}
+
+	/**
+	 * Gets the maximum number of entities returned in one page of this entity
+	 * set before a next link is emitted. Defaults to the framework wide
+	 * odata.paging.max-page-size property, 0 disables server driven paging.
+	 */
+	public int getMaxPageSize() {
+		return maxPageSize;
+	}
+
+	/**
+	 * Gets the number of rows above which a page of this entity set is
+	 * streamed from a scrolling cursor instead of being read into a list.
+	 * Unbounded reads are always streamed, a negative threshold disables
+	 * streaming. A streamed page in a JSON format is written straight from
+	 * the rows, so its memory use does not depend on the number of rows; the
+	 * Olingo serializer, used for the other formats, holds the whole
+	 * document. Defaults to the framework wide odata.streaming.threshold
+	 * property.
+	 */
+	public int getStreamingThreshold() {
+		return streamingThreshold;
+	}
+
+	/**
+	 * Gets the JDBC fetch size of streamed reads.
+	 */
+	public int getStreamingFetchSize() {
+		return streamingFetchSize;
+	}
+
+	/**
+	 * Gets the number of streamed rows after which the persistence context is
+	 * cleared.
+	 */
+	public int getStreamingClearInterval() {
+		return streamingClearInterval;
+	}
+
+	/**
+	 * Checks whether every collection of this entity set is written as JSON
+	 * straight from the rows of the query, without building entities, and
+	 * not only the pages above the streaming threshold. Such collections are
+	 * always read from a scrolling cursor. Defaults to the framework wide
+	 * odata.serializer.direct property.
+	 */
+	public boolean isDirectSerialization() {
+		return directSerialization;
+	}
+
+	/**
+	 * Gets the maximum number of entities of this entity set kept in the
+	 * entity-by-key cache, 0 disables the cache. Reference data read by key
+	 * far more often than it changes is worth caching. Defaults to the
+	 * framework wide odata.entity-cache.size property.
+	 */
+	public long getEntityCacheSize() {
+		return entityCacheSize;
+	}
+
+	/**
+	 * Gets the time to live in seconds of cached entities of this entity set.
+	 * Defaults to the framework wide odata.entity-cache.ttl-seconds property.
+	 */
+	public long getEntityCacheTtl() {
+		return entityCacheTtl;
+	}
+
+	/**
+	 * Gets how long serialized collection responses of this entity set are
+	 * cached, 0 disables response caching. Defaults to the framework wide
+	 * odata.response-cache.ttl-seconds property.
+	 */
+	public long getResponseCacheTtl() {
+		return responseCacheTtl;
+	}
+
+	/**
+	 * Gets the Cache-Control header sent with reads of this entity set, for
+	 * example "private, max-age=60". Defaults to the framework wide
+	 * odata.cache-control property.
+	 */
+	public String getCacheControl() {
+		return cacheControl;
+	}
+
 	/**
 	 * Helper method for providing some sample data.
 	 *
@@ -199,24 +392,47 @@ public abstract class BaseEntityProviderProcessorImpl {
 	 * @throws IllegalAccessException
 	 * @throws IllegalArgumentException
 	 */
-	private EntitySet getData(EdmEntitySet edmEntitySet, String[] selections, int topValue, boolean count)
-			throws IllegalArgumentException, IllegalAccessException {
+	private EntitySet getData(EdmEntitySet edmEntitySet, String[] selections, UriInfo uriInfo,
+			PageRequest pageRequest, boolean count)
+			throws IllegalArgumentException, IllegalAccessException, ODataApplicationException {
 
-		EntitySet entitySet = new EntitySetImpl();
+		if (isStreamed(pageRequest))
+			return getStream(selections, uriInfo, pageRequest, count);
+
+		TaggedEntitySet entitySet = new TaggedEntitySet();
 
 		List<Entity> entityList = entitySet.getEntities();
 
+		EntityQuery entityQuery = pagedQuery(uriInfo, pageRequest);
+
+		/* the weak entity tag of the page, folded from the rows as they are mapped */
+		EntityTag eTag = new EntityTag();
+
 		if (selections == null) {
 
 			@SuppressWarnings("unchecked")
-			List<Object> entities = (List<Object>) (Object) entityRepository.findAll(getFullQualifiedEntityName());
-			CoreEntityListProcessor.buildEntities(entityList, entities);
+			List<Object> entities = (List<Object>) (Object) entityRepository.findAll(entityQuery);
+			List<Object> rows = page(entities, entityQuery, pageRequest, entitySet, this::getAttributeValue);
+			CoreEntityListProcessor.buildEntities(entityList, rows);
+			rows.forEach(eTag::updateEntity);
 		} else {
-			@SuppressWarnings("unchecked")
-			List<Object[]> comments = entityRepository.findWithSelections(getFullQualifiedEntityName(), selections);
-			CoreEntityListProcessor.buildPrimitive(entityList, comments, selections);
+
+			/* the sort keys are read along with the selections to build the keyset of the next page */
+			String[] querySelections = withSortKeys(selections, entityQuery, pageRequest);
+
+			List<Object[]> comments = entityRepository.findWithSelections(entityQuery.setSelections(querySelections));
+			List<Object[]> rows = page(comments, entityQuery, pageRequest, entitySet,
+					(row, attribute) -> row[indexOf(querySelections, attribute)]);
+			CoreEntityListProcessor.buildPrimitive(entityList, rows, selections);
+			rows.forEach(eTag::updateRow);
 		}
 
+		/* $count=true runs a separate count query over the whole filtered entity set */
+		if (count)
+			entitySet.setCount((int) getCount(uriInfo));
+
+		entitySet.setETag(eTag.update(entitySet.getCount()).update(entitySet.getNext()).toWeak());
+
 		return entitySet;
 	}
 
@@ -229,30 +445,257 @@ public abstract class BaseEntityProviderProcessorImpl {
 	 * @throws IllegalAccessException
 	 * @throws IllegalArgumentException
 	 */
-	private EntitySet getDataSingleValue(EdmEntitySet edmEntitySet, String selections, int topValue, boolean count)
-			throws IllegalArgumentException, IllegalAccessException {
+	private EntitySet getDataSingleValue(EdmEntitySet edmEntitySet, String selections, UriInfo uriInfo,
+			PageRequest pageRequest, boolean count)
+			throws IllegalArgumentException, IllegalAccessException, ODataApplicationException {
 
-		EntitySet entitySet = new EntitySetImpl();
+		if (isStreamed(pageRequest))
+			return getStream(selections == null ? null : new String[] { selections }, uriInfo, pageRequest, count);
+
+		TaggedEntitySet entitySet = new TaggedEntitySet();
 
 		List<Entity> entityList = entitySet.getEntities();
 		logger.debug("Size of the entities:" + entityList.size());
 
+		EntityTag eTag = new EntityTag();
+
 		if (selections == null) {
 
+			EntityQuery entityQuery = pagedQuery(uriInfo, pageRequest);
+
 			@SuppressWarnings("unchecked")
-			List<Object> entities = (List<Object>) (Object) entityRepository.findAll(getFullQualifiedEntityName());
-			CoreEntityListProcessor.buildEntities(entityList, entities);
+			List<Object> entities = (List<Object>) (Object) entityRepository.findAll(entityQuery);
+			List<Object> rows = page(entities, entityQuery, pageRequest, entitySet, this::getAttributeValue);
+			CoreEntityListProcessor.buildEntities(entityList, rows);
+			rows.forEach(eTag::updateEntity);
 
 		} else {
 
-			@SuppressWarnings("unchecked")
-			List<Object> valueString = entityRepository.findWithSelection(getFullQualifiedEntityName(), selections);
-			CoreEntityListProcessor.buildSinglePrimitive(entityList, valueString, selections);
+			EntityQuery entityQuery = pagedQuery(uriInfo, pageRequest);
+
+			if (withSortKeys(new String[] { selections }, entityQuery, pageRequest).length > 1)
+				return getData(edmEntitySet, new String[] { selections }, uriInfo, pageRequest, count);
+
+			List<Object> valueString = entityRepository
+					.findWithSelection(entityQuery.setSelections(new String[] { selections }));
+			List<Object> rows = page(valueString, entityQuery, pageRequest, entitySet, (row, attribute) -> row);
+			CoreEntityListProcessor.buildSinglePrimitive(entityList, rows, selections);
+			rows.forEach(eTag::update);
 		}
 
+		if (count)
+			entitySet.setCount((int) getCount(uriInfo));
+
+		entitySet.setETag(eTag.update(entitySet.getCount()).update(entitySet.getNext()).toWeak());
+
 		return entitySet;
 	}
 
+	private boolean isStreamed(PageRequest pageRequest) {
+
+		int maxResults = pageRequest.getMaxResults();
+		if (maxResults == 0)
+			return false;
+
+		return isDirectSerialization()
+				|| getStreamingThreshold() >= 0 && (maxResults < 0 || maxResults > getStreamingThreshold());
+	}
+
+	/**
+	 * Streams the rows of the requested page from a scrolling cursor. The
+	 * rows carry their columns, so that a JSON response is written straight
+	 * from them while it is sent and memory use does not depend on the number
+	 * of rows. The Olingo serializer, used for other formats, builds the
+	 * entities while it iterates the rows but holds the whole document. The
+	 * returned entity set has to be serialized within the transaction of the
+	 * request, and then closed.
+	 */
+	private EntitySet getStream(String[] selections, UriInfo uriInfo, PageRequest pageRequest, boolean count)
+			throws ODataApplicationException {
+
+		EntityQuery entityQuery = pagedQuery(uriInfo, pageRequest);
+		int limit = pageRequest.getMaxResults();
+
+		/* counted up front, some drivers cannot run a query while a result set is streamed */
+		Long total = count ? getCount(uriInfo) : null;
+
+		StreamingEntitySet<?> entitySet;
+
+		if (selections == null) {
+
+			EntityCursor<Object> rows = entityRepository.scroll(entityQuery, getStreamingFetchSize(),
+					getStreamingClearInterval());
+			StreamingEntitySet<Object> entities = new StreamingEntitySet<Object>(rows,
+					CoreEntityListProcessor::buildEntity, limit,
+					nextLink(entityQuery, pageRequest, this::getAttributeValue));
+
+			EntityRowMapper mapper = getRowMapper();
+			if (mapper != null)
+				entities.setColumns(mapper.getColumnNames().toArray(new String[mapper.getColumnCount()]),
+						mapper::getValue);
+
+			entitySet = entities;
+		} else {
+
+			String[] querySelections = withSortKeys(selections, entityQuery, pageRequest);
+			entityQuery.setSelections(querySelections);
+
+			if (querySelections.length == 1) {
+
+				EntityCursor<Object> rows = entityRepository.scroll(entityQuery, getStreamingFetchSize(),
+						getStreamingClearInterval());
+				StreamingEntitySet<Object> values = new StreamingEntitySet<Object>(rows,
+						row -> CoreEntityListProcessor.buildSinglePrimitive(row, querySelections[0]), limit,
+						nextLink(entityQuery, pageRequest, (row, attribute) -> row));
+
+				values.setColumns(querySelections, (row, column) -> row);
+
+				entitySet = values;
+			} else {
+
+				EntityCursor<Object[]> rows = entityRepository.scroll(entityQuery, getStreamingFetchSize(),
+						getStreamingClearInterval());
+				StreamingEntitySet<Object[]> values = new StreamingEntitySet<Object[]>(rows,
+						row -> CoreEntityListProcessor.buildPrimitive(row, selections), limit,
+						nextLink(entityQuery, pageRequest, (row, attribute) -> row[indexOf(querySelections, attribute)]));
+
+				values.setColumns(querySelections, (row, column) -> row[column]);
+
+				entitySet = values;
+			}
+		}
+
+		if (total != null)
+			entitySet.setCount(total.intValue());
+
+		return entitySet;
+	}
+
+	private <T> Function<T, URI> nextLink(EntityQuery entityQuery, PageRequest pageRequest,
+			BiFunction<T, String, Object> attributeValue) {
+		return last -> pageRequest.getNextLink(entityQuery.getSortKeys(),
+				sortKeyValues(last, entityQuery.getSortKeys(), attributeValue));
+	}
+
+	/**
+	 * Creates the repository query for the filtered and sorted rows of the
+	 * requested page. The $orderby keys are followed by the @Id attribute so
+	 * that the order is stable, and a page following a keyset skip token is
+	 * read with a seek from the sort key values of the previous page instead
+	 * of an offset. Sort orders on nullable attributes, and skip tokens of
+	 * another sort order, are paged by offset. One row more than the page is
+	 * fetched to detect a following page.
+	 */
+	private EntityQuery pagedQuery(UriInfo uriInfo, PageRequest pageRequest) {
+
+		EntityRowMapper mapper = getRowMapper();
+		String idAttribute = mapper != null && mapper.getIdColumn() != null ? mapper.getIdColumn()
+				: getKeyName(uriInfo);
+		List<SortKey> sortKeys = SortKey.of(uriInfo.getOrderByOption(), idAttribute,
+				attribute -> mapper == null || mapper.isNullable(attribute));
+
+		EntityQuery entityQuery = new EntityQuery().setEntityName(getFullQualifiedEntityName())
+				.setFilterOption(uriInfo.getFilterOption()).setSortKeys(sortKeys)
+				.setMaxResults(pageRequest.getFetchSize());
+
+		List<Object> seekValues = SortKey.isSeekable(sortKeys) ? pageRequest.getSeekValues(sortKeys) : null;
+		if (seekValues != null)
+			return entityQuery.setSeekValues(seekValues);
+
+		return entityQuery.setFirstResult(pageRequest.getFirstResult());
+	}
+
+	/**
+	 * Trims the extra row fetched by pagedQuery and sets the next link of the
+	 * entity set when there is a following page. The next link carries the
+	 * sort key values of the last row of the page when they can be read.
+	 */
+	private <T> List<T> page(List<T> rows, EntityQuery entityQuery, PageRequest pageRequest, EntitySet entitySet,
+			BiFunction<T, String, Object> attributeValue) {
+
+		if (rows != null && pageRequest.hasNextPage(rows.size())) {
+
+			List<T> page = rows.subList(0, pageRequest.getMaxResults());
+			entitySet.setNext(pageRequest.getNextLink(entityQuery.getSortKeys(),
+					sortKeyValues(page.get(page.size() - 1), entityQuery.getSortKeys(), attributeValue)));
+			return page;
+		}
+		return rows;
+	}
+
+	private <T> List<Object> sortKeyValues(T row, List<SortKey> sortKeys,
+			BiFunction<T, String, Object> attributeValue) {
+
+		if (!SortKey.isSeekable(sortKeys))
+			return null;
+
+		List<Object> values = new ArrayList<Object>();
+		for (SortKey sortKey : sortKeys) {
+
+			Object value = attributeValue.apply(row, sortKey.getAttribute());
+			if (value == null)
+				return null;
+			values.add(value);
+		}
+		return values;
+	}
+
+	/**
+	 * Appends the sort key attributes missing from the selections, when the
+	 * page may need a keyset next link.
+	 */
+	private String[] withSortKeys(String[] selections, EntityQuery entityQuery, PageRequest pageRequest) {
+
+		if (!pageRequest.isPaged() || !SortKey.isSeekable(entityQuery.getSortKeys()))
+			return selections;
+
+		List<String> querySelections = new ArrayList<String>(Arrays.asList(selections));
+		for (SortKey sortKey : entityQuery.getSortKeys()) {
+			if (!querySelections.contains(sortKey.getAttribute()))
+				querySelections.add(sortKey.getAttribute());
+		}
+		return querySelections.toArray(new String[querySelections.size()]);
+	}
+
+	/*
+	 * Gets the name of the key property of the addressed entity set, the
+	 * tiebreak of the sort order when the entity class has no row mapper.
+	 */
+	private static String getKeyName(UriInfo uriInfo) {
+
+		List<UriResource> resourceParts = uriInfo.getUriResourceParts();
+		if (resourceParts.isEmpty() || !(resourceParts.get(0) instanceof UriResourceEntitySet))
+			return null;
+
+		List<String> keyNames = ((UriResourceEntitySet) resourceParts.get(0)).getEntitySet().getEntityType()
+				.getKeyPredicateNames();
+		return keyNames.isEmpty() ? null : keyNames.get(0);
+	}
+
+	private static int indexOf(String[] selections, String attribute) {
+		return Arrays.asList(selections).indexOf(attribute);
+	}
+
+	private Object getAttributeValue(Object row, String attribute) {
+
+		EntityRowMapper mapper = EntityRowMapper.forClass(row.getClass());
+		return mapper.hasAttribute(attribute) ? mapper.getAttributeValue(row, attribute) : null;
+	}
+
+	private EntityRowMapper getRowMapper() {
+
+		EntityDescriptor descriptor = EntityDescriptors.forName(getFullQualifiedEntityName());
+		if (descriptor != null)
+			return EntityRowMapper.forClass(descriptor.getEntityClass());
+
+		try {
+			return EntityRowMapper.forClass(Class.forName(getFullQualifiedEntityName()));
+		} catch (ClassNotFoundException e) {
+			logger.debug(e.getLocalizedMessage());
+			return null;
+		}
+	}
+
 	public EntitySet getEntity(UriInfo uriInfo) throws IllegalArgumentException, IllegalAccessException {
 
 		logger.debug("Get Entity method getting called");
@@ -263,24 +706,262 @@ public abstract class BaseEntityProviderProcessorImpl {
 		UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) resourcePaths.get(0);
 		EdmEntitySet edmEntitySet = uriResourceEntitySet.getEntitySet();
 
-		// get the key being requested from the below call
-		List<UriParameter> keyPredicates = uriResourceEntitySet.getKeyPredicates();
+		// get the key being requested, converted to the type of the @Id
+		Object id = toId(getKey(uriInfo));
 
-		String idKey = keyPredicates.get(0).getText();
-		int id = new Integer(idKey).intValue();
+		/* $select reads only the selected columns, unless the entity is served from the cache */
+		String[] selections = getSelections(uriInfo, edmEntitySet);
+		if (selections != null && getEntityCacheSize() <= 0)
+			return getEntity(uriInfo, selections);
 
 		EntitySet entitySet = new EntitySetImpl();
 
 		List<Entity> entityList = entitySet.getEntities();
 
+		if (getEntityCacheSize() > 0) {
+
+			/* read through the entity-by-key cache of the entity set */
+			Entity entity = entityCache.get(getEntitySetName(), id, getEntityCacheSize(), getEntityCacheTtl(),
+					key -> loadEntity(id));
+			if (entity != null)
+				entityList.add(entity);
+
+			return entitySet;
+		}
+
 		/* go the database to retrieve by ID */
-		@SuppressWarnings("unchecked")
-		List<Object> entities = (List<Object>) (Object) entityRepository.findById(getFullQualifiedEntityName(), id);
-		CoreEntityListProcessor.buildEntities(entityList, entities);
+		List<?> entities = entityRepository.findById(getFullQualifiedEntityName(), id);
+		if (entities != null) {
+			for (Object entity : entities)
+				entityList.add(CoreEntityListProcessor.buildTaggedEntity(entity));
+		}
+
+		return entitySet;
+	}
+
+	/**
+	 * Reads the given properties of the entity addressed by the key predicate
+	 * with a key filtered projection query, fetching only those columns and
+	 * the @Id and @Version the entity tag is built from. With the entity
+	 * cache enabled the cached entity is read instead.
+	 */
+	public EntitySet getEntity(UriInfo uriInfo, String[] selections)
+			throws IllegalArgumentException, IllegalAccessException {
 
+		if (getEntityCacheSize() > 0)
+			return getEntity(uriInfo);
+
+		EntityRowMapper mapper = getRowMapper();
+		boolean versioned = mapper != null && mapper.hasVersion() && mapper.getIdColumn() != null;
+
+		String[] columns = selections;
+		if (versioned) {
+			columns = Arrays.copyOf(selections, selections.length + 2);
+			columns[selections.length] = mapper.getIdColumn();
+			columns[selections.length + 1] = mapper.getVersionColumn();
+		}
+
+		Object[] row = null;
+		try {
+			row = entityRepository.findByIdWithSelections(getFullQualifiedEntityName(), getKey(uriInfo), columns);
+		} catch (ClassNotFoundException e) {
+			logger.debug(e.getLocalizedMessage());
+		}
+
+		EntitySet entitySet = new EntitySetImpl();
+		if (row == null)
+			return entitySet;
+
+		EntityImpl entity = (EntityImpl) CoreEntityListProcessor.buildPrimitive(row, selections);
+		if (versioned)
+			entity.setETag(new EntityTag().updateVersion(row[selections.length], row[selections.length + 1])
+					.toStrong());
+
+		entitySet.getEntities().add(entity);
 		return entitySet;
 	}
 
+	/*
+	 * Gets the properties of $select, or null if there is no $select or it
+	 * selects all properties.
+	 */
+	private static String[] getSelections(UriInfo uriInfo, EdmEntitySet edmEntitySet) {
+
+		SelectOption selectOption = uriInfo.getSelectOption();
+		if (selectOption == null)
+			return null;
+
+		String selectList = null;
+		try {
+			selectList = OData.newInstance().createUriHelper()
+					.buildContextURLSelectList(edmEntitySet.getEntityType(), null, selectOption);
+		} catch (SerializerException e) {
+			logger.debug(e.getLocalizedMessage());
+		}
+
+		if (selectList == null || selectList.isEmpty() || selectList.contains("*"))
+			return null;
+
+		String[] selections = selectList.split(",");
+		for (int i = 0; i < selections.length; i++)
+			selections[i] = selections[i].trim();
+		return selections;
+	}
+
+	private Entity loadEntity(Object id) {
+
+		List<?> entities = entityRepository.findById(getFullQualifiedEntityName(), id);
+		if (entities == null || entities.isEmpty())
+			return null;
+
+		return CoreEntityListProcessor.buildTaggedEntity(entities.get(0));
+	}
+
+	/**
+	 * Creates entities from the property values of a write request. The rows
+	 * of a bulk write are persisted through the JDBC batches of the
+	 * repository.
+	 */
+	public List<Entity> createEntities(List<Map<String, Object>> rows) throws ODataApplicationException {
+
+		List<Object> created;
+		try {
+			created = entityRepository.create(getFullQualifiedEntityName(), rows);
+		} catch (ClassNotFoundException e) {
+			throw new ODataApplicationException("Entity " + getFullQualifiedEntityName() + " is not mapped.",
+					HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+		} catch (IllegalArgumentException e) {
+			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(),
+					Locale.ENGLISH);
+		}
+
+		invalidateCaches(null);
+
+		List<Entity> entities = new ArrayList<Entity>(created.size());
+		for (Object row : created)
+			entities.add(CoreEntityListProcessor.buildTaggedEntity(row));
+		return entities;
+	}
+
+	/**
+	 * Updates the entity addressed by the key predicate, replacing it when
+	 * the request is a PUT. A non empty If-Match must match the entity tag of
+	 * the current entity.
+	 */
+	public void updateEntity(UriInfo uriInfo, Map<String, Object> values, boolean replace, List<String> ifMatch)
+			throws ODataApplicationException {
+
+		String key = getKey(uriInfo);
+		Object row = findForWrite(key, ifMatch);
+
+		try {
+			entityRepository.update(row, values, replace);
+		} catch (IllegalArgumentException e) {
+			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(),
+					Locale.ENGLISH);
+		}
+
+		invalidateCaches(key);
+	}
+
+	/**
+	 * Deletes the entity addressed by the key predicate. A non empty If-Match
+	 * must match the entity tag of the current entity.
+	 */
+	public void deleteEntity(UriInfo uriInfo, List<String> ifMatch) throws ODataApplicationException {
+
+		String key = getKey(uriInfo);
+		entityRepository.delete(findForWrite(key, ifMatch));
+
+		invalidateCaches(key);
+	}
+
+	private Object findForWrite(String key, List<String> ifMatch) throws ODataApplicationException {
+
+		Object row;
+		try {
+			row = entityRepository.find(getFullQualifiedEntityName(), key);
+		} catch (ClassNotFoundException e) {
+			throw new ODataApplicationException("Entity " + getFullQualifiedEntityName() + " is not mapped.",
+					HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+		} catch (IllegalArgumentException e) {
+			throw new ODataApplicationException("Invalid key " + key + ".", HttpStatusCode.BAD_REQUEST.getStatusCode(),
+					Locale.ENGLISH);
+		}
+
+		if (row == null)
+			throw new ODataApplicationException("Entity " + key + " not found.",
+					HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ENGLISH);
+
+		if (ifMatch != null && !ifMatch.isEmpty() && !EntityTag.matches(ifMatch, EntityTag.of(row)))
+			throw new ODataApplicationException("The entity has been modified.",
+					HttpStatusCode.PRECONDITION_FAILED.getStatusCode(), Locale.ENGLISH);
+
+		return row;
+	}
+
+	/*
+	 * Gets the text of the key predicate, without the quotes of a string key.
+	 */
+	private static String getKey(UriInfo uriInfo) {
+
+		UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) uriInfo.getUriResourceParts().get(0);
+		String key = uriResourceEntitySet.getKeyPredicates().get(0).getText();
+
+		if (key.length() > 1 && key.startsWith("'") && key.endsWith("'"))
+			key = key.substring(1, key.length() - 1).replace("''", "'");
+		return key;
+	}
+
+	/*
+	 * Converts the text of a key predicate to the type of the @Id, the value
+	 * the entity cache is keyed by.
+	 *
+	 * @throws IllegalArgumentException if the key does not convert
+	 */
+	private Object toId(String key) {
+
+		try {
+			return EntityRowWriter.forClass(Class.forName(getFullQualifiedEntityName())).toId(key);
+		} catch (ClassNotFoundException e) {
+			logger.debug(e.getLocalizedMessage());
+			return key;
+		}
+	}
+
+	/*
+	 * Evicts the cached counts, responses and the written entity of this
+	 * entity set once the write is committed, so that a concurrent read
+	 * cannot cache the state before the commit again.
+	 */
+	private void invalidateCaches(String key) {
+
+		Runnable invalidation = () -> {
+			countCache.invalidate(getEntitySetName());
+			responseCache.invalidate(getEntitySetName());
+
+			/* the entity cache is keyed by the converted key of getEntity */
+			try {
+				if (key != null)
+					entityCache.invalidate(getEntitySetName(), toId(key));
+			} catch (IllegalArgumentException e) {
+				entityCache.invalidateAll(getEntitySetName());
+			}
+		};
+
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			invalidation.run();
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				invalidation.run();
+			}
+		});
+	}
+
 	public String getEntitySetName() {
 		return getProducerEntitySetName();
 	}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.edm.framework.providers.entity;
+
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.xylia.microservices.odata.framework.edm.GenericEdmProvider;
+import org.xylia.microservices.odata.framework.edm.descriptor.EntityDescriptor;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Entity provider of an entity with a generated EntityDescriptor, named by
+ * the descriptor instead of a hand written subclass. It is registered by the
+ * EntityDescriptorRegistrar.
+ */
+
+public class DescriptorEntityProvider extends BaseEntityProviderProcessorImpl implements EntityProvider {
+
+	private final EntityDescriptor descriptor;
+
+	private final FullQualifiedName fullyQualifiedEntityName;
+
+	public DescriptorEntityProvider(EntityDescriptor descriptor) {
+		this.descriptor = descriptor;
+		this.fullyQualifiedEntityName = new FullQualifiedName(GenericEdmProvider.NAMESPACE,
+				descriptor.getEntityName());
+	}
+
+	public EntityDescriptor getDescriptor() {
+		return descriptor;
+	}
+
+	@Override
+	public String getEntityNameSpace() {
+		return descriptor.getEntityClass().getPackage().getName();
+	}
+
+	@Override
+	public FullQualifiedName getFullyQualifiedEntityName() {
+		return fullyQualifiedEntityName;
+	}
+
+	@Override
+	public FullQualifiedName getContainer() {
+		return GenericEdmProvider.CONTAINER;
+	}
+
+	@Override
+	public String getProducerEntitySetName() {
+		return descriptor.getEntitySetName();
+	}
+
+	@Override
+	public String getProducerEntityName() {
+		return descriptor.getEntityName();
+	}
+
+	@Override
+	public String getFullQualifiedEntityName() {
+		return descriptor.getEntityClass().getName();
+	}
+}
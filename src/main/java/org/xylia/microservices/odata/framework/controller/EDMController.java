@@ -20,22 +20,22 @@
 package org.xylia.microservices.odata.framework.controller;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.olingo.commons.api.http.HttpHeader;
 import org.apache.olingo.commons.api.http.HttpMethod;
-import org.apache.olingo.server.api.OData;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
 import org.apache.olingo.server.api.ODataRequest;
 import org.apache.olingo.server.api.ODataResponse;
 import org.apache.olingo.server.api.ODataTranslatedException;
-import org.apache.olingo.server.api.ServiceMetadata;
-import org.apache.olingo.server.api.edm.provider.EdmProvider;
-import org.apache.olingo.server.api.edmx.EdmxReference;
 import org.apache.olingo.server.api.processor.EntityCollectionProcessor;
 import org.apache.olingo.server.api.processor.EntityProcessor;
 import org.apache.olingo.server.api.processor.PrimitiveProcessor;
@@ -44,14 +44,20 @@ import org.apache.olingo.server.core.ODataHandler;
 import org.apache.olingo.server.core.ODataHandlerException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.util.MultiValueMap;
-import org.springframework.util.StreamUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.xylia.microservices.odata.framework.controller.batch.BatchFormat;
+import org.xylia.microservices.odata.framework.controller.batch.BatchHandler;
+import org.xylia.microservices.odata.framework.edm.ServiceMetadataHolder;
+import org.xylia.microservices.odata.framework.edm.serializer.StreamingContent;
 import org.xylia.microservices.odata.framework.exception.EdmException;
+import org.xylia.microservices.odata.framework.util.BufferPool;
+import org.xylia.microservices.odata.framework.util.EntityTag;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics;
+
+import com.google.common.io.CountingOutputStream;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -71,9 +77,9 @@ public class EDMController {
 	@Autowired
 	private ApplicationContext ctx;
 
-	/** The edm provider. */
+	/** The shared OData and service metadata. */
 	@Autowired
-	private EdmProvider edmProvider;
+	private ServiceMetadataHolder serviceMetadataHolder;
 
 	/** The entity collection processor. */
 	@Autowired
@@ -86,6 +92,45 @@ public class EDMController {
 	/** The entity processor. */
 	@Autowired
 	private PrimitiveProcessor primitiveProcessor;
+
+	/** The response cache of collection reads. */
+	@Autowired
+	private ResponseCache responseCache;
+
+	/** The executor of requests in async mode. */
+	@Autowired
+	private RequestExecutor requestExecutor;
+
+	/** The latency metrics of the pipeline. */
+	@Autowired
+	private PipelineMetrics pipelineMetrics;
+
+	/** The rendered $metadata and service documents. */
+	@Autowired
+	private MetadataDocuments metadataDocuments;
+
+	/** The compression of response bodies. */
+	@Autowired
+	private ResponseCompression responseCompression;
+
+	/** The handler of $batch requests. */
+	@Autowired
+	private BatchHandler batchHandler;
+
+	/** The read only transaction reads are processed and written in. */
+	private TransactionTemplate readTransaction;
+
+	/**
+	 * Sets the transaction manager.
+	 *
+	 * @param transactionManager
+	 *            the transaction manager
+	 */
+	@Autowired
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.readTransaction = new TransactionTemplate(transactionManager);
+		this.readTransaction.setReadOnly(true);
+	}
 	
 
 	/**
@@ -93,34 +138,184 @@ public class EDMController {
 	 *
 	 * @param req
 	 *            the req
-	 * @return the response entity
+	 * @param resp
+	 *            the resp
 	 */
 	@RequestMapping(value = "/**")
-	public ResponseEntity<String> process(HttpServletRequest req) {
+	public void process(HttpServletRequest req, HttpServletResponse resp) {
 
 		try {
 
-			OData odata = OData.newInstance();
-			ServiceMetadata edm = odata.createServiceMetadata(edmProvider, new ArrayList<EdmxReference>());
+			ODataRequest request = createODataRequest(req, split);
+
+			ResponseCache.Key key = null;
+			if (request.getMethod() == HttpMethod.GET) {
 
-			ODataHandler handler = new ODataHandler(odata, edm);
-			handler.register(enityCollectionProcessor);
-			handler.register(entityProcessor);
-			handler.register(primitiveProcessor);
+				/* $metadata and the service document are served from the bytes rendered for the EDM version */
+				ODataResponse document = metadataDocuments.get(request);
+				if (document != null) {
+					try (PipelineMetrics.Scope scope = pipelineMetrics.begin(request)) {
+						writeResponse(request, document, resp);
+					}
+					return;
+				}
 
-			ODataResponse response = handler.process(createODataRequest(req, split));
-			String responseStr = StreamUtils.copyToString(response.getContent(), Charset.defaultCharset());
-			MultiValueMap<String, String> headers = new HttpHeaders();
-			for (String key : response.getHeaders().keySet()) {
-				headers.add(key, response.getHeaders().get(key).toString());
+				key = responseCache.key(request);
+				ODataResponse cached = key != null ? responseCache.get(key) : null;
+				if (cached != null) {
+					try (PipelineMetrics.Scope scope = pipelineMetrics.begin(request)) {
+						writeResponse(request, notModified(request, cached), resp);
+					}
+					return;
+				}
 			}
-			return new ResponseEntity<String>(responseStr, headers, HttpStatus.valueOf(response.getStatusCode()));
+
+			/* in async mode the container thread is left free for cheap requests */
+			ResponseCache.Key responseKey = key;
+			if (requestExecutor.isAsync(request))
+				requestExecutor.dispatch(req, resp, response -> process(request, responseKey, response));
+			else
+				process(request, responseKey, resp);
+
 		} catch (Exception ex) {
 			throw new EdmException();
 		}
 
 	}
 
+	/**
+	 * Processes the request through the OData handler and writes the response.
+	 *
+	 * @param request
+	 *            the OData request
+	 * @param key
+	 *            the response cache key of the request, or null
+	 * @param resp
+	 *            the servlet response
+	 * @throws Exception
+	 *             the exception of the handler
+	 */
+	private void process(ODataRequest request, ResponseCache.Key key, HttpServletResponse resp) throws Exception {
+
+		ODataHandler handler = createHandler();
+
+		if (request.getMethod() == HttpMethod.GET) {
+
+			/* streamed content reads from a cursor that is open as long as the transaction */
+			readTransaction.execute(status -> {
+				try (PipelineMetrics.Scope scope = pipelineMetrics.begin(request)) {
+					ODataResponse response = handler.process(request);
+					writeResponse(request, key != null ? responseCache.put(key, response) : response, resp);
+				} catch (IOException e) {
+					throw new EdmException();
+				}
+				return null;
+			});
+		} else if (request.getMethod() == HttpMethod.POST && BatchFormat.isBatch(request)) {
+			try (PipelineMetrics.Scope scope = pipelineMetrics.begin(request)) {
+				writeResponse(request, batchHandler.process(request, this::createHandler), resp);
+			}
+		} else {
+			try (PipelineMetrics.Scope scope = pipelineMetrics.begin(request)) {
+				writeResponse(request, handler.process(request), resp);
+			}
+		}
+	}
+
+	/**
+	 * Creates a handler with the processors of the service.
+	 *
+	 * @return the OData handler
+	 */
+	private ODataHandler createHandler() {
+		return serviceMetadataHolder.createHandler(enityCollectionProcessor, entityProcessor, primitiveProcessor);
+	}
+
+	/**
+	 * Answers a cached response with 304 Not Modified when the If-None-Match
+	 * header of the request matches its entity tag.
+	 *
+	 * @param request
+	 *            the OData request
+	 * @param cached
+	 *            the cached response
+	 * @return the response to write
+	 */
+	private ODataResponse notModified(final ODataRequest request, final ODataResponse cached) {
+
+		String eTag = cached.getHeaders().get(HttpHeader.ETAG);
+		if (!EntityTag.matches(request.getHeaders(HttpHeader.IF_NONE_MATCH), eTag))
+			return cached;
+
+		ODataResponse response = new ODataResponse();
+		response.setStatusCode(HttpStatusCode.NOT_MODIFIED.getStatusCode());
+		response.setHeader(HttpHeader.ETAG, eTag);
+
+		String cacheControl = cached.getHeaders().get(EntityTag.CACHE_CONTROL);
+		if (cacheControl != null)
+			response.setHeader(EntityTag.CACHE_CONTROL, cacheControl);
+
+		return response;
+	}
+
+	/**
+	 * Writes the OData response to the servlet response. The serialized bytes
+	 * are copied as they are through a pooled buffer, so the body is never
+	 * decoded or held in memory again, and without a Content-Length header the
+	 * container falls back to chunked transfer encoding. Streamed content is
+	 * produced directly into the servlet output stream. When the client
+	 * accepts it the body is compressed on its way to the output stream.
+	 *
+	 * @param request
+	 *            the OData request
+	 * @param response
+	 *            the OData response
+	 * @param resp
+	 *            the servlet response
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeResponse(final ODataRequest request, final ODataResponse response,
+			final HttpServletResponse resp) throws IOException {
+
+		PipelineMetrics.status(response.getStatusCode());
+
+		resp.setStatus(response.getStatusCode());
+		for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+			resp.setHeader(header.getKey(), header.getValue());
+		}
+
+		InputStream content = response.getContent();
+		if (content == null)
+			return;
+
+		String encoding = responseCompression.encoding(request, response, resp);
+		ResponseCompression.CompressingOutputStream compressing = null;
+
+		long start = PipelineMetrics.start();
+		try {
+			OutputStream out = resp.getOutputStream();
+			if (encoding != null)
+				out = compressing = responseCompression.compress(resp, encoding);
+
+			if (content instanceof StreamingContent) {
+				CountingOutputStream counting = new CountingOutputStream(out);
+				((StreamingContent) content).writeTo(counting);
+				PipelineMetrics.written(start, counting.getCount());
+			} else {
+				PipelineMetrics.written(start, BufferPool.shared().copy(content, out));
+			}
+
+			if (compressing != null)
+				compressing.finish();
+			resp.getOutputStream().flush();
+		} finally {
+			if (compressing != null)
+				compressing.close();
+			content.close();
+		}
+	}
+
 	/**
 	 * Creates the o data request.
 	 *
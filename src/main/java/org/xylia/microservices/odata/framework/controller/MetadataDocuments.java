@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.olingo.commons.api.format.ODataFormat;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.serializer.ODataSerializer;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.xylia.microservices.odata.framework.controller.batch.BatchFormat;
+import org.xylia.microservices.odata.framework.edm.ServiceMetadataHolder;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistryRefreshedEvent;
+import org.xylia.microservices.odata.framework.util.BufferPool;
+import org.xylia.microservices.odata.framework.util.EntityTag;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * The $metadata and service documents, rendered once per version of the
+ * service metadata and served from their bytes with a strong entity tag of
+ * their content, which is the same on every instance of the service.
+ * A document is rendered for each format, XML or JSON, the serializer
+ * supports; the service document, which names the service root, for each
+ * base URI as well. The documents are dropped and the $metadata document
+ * rendered again when the entity provider registry is refreshed. Requests
+ * whose format is not one of the plain JSON or XML ones, or that carry
+ * other query options, are left to the ODataHandler.
+ */
+
+@Component
+public class MetadataDocuments implements ApplicationListener<EntityProviderRegistryRefreshedEvent> {
+
+	private static final Logger logger = LoggerFactory.getLogger(MetadataDocuments.class);
+
+	private static final String METADATA = "$metadata";
+
+	private static final String JSON_CONTENT_TYPE = "application/json;odata.metadata=minimal";
+
+	private static final String XML_CONTENT_TYPE = "application/xml";
+
+	/* a format the serializer does not render the document in */
+	private static final Document UNSUPPORTED = new Document(null, null, null);
+
+	@Autowired
+	private ServiceMetadataHolder serviceMetadataHolder;
+
+	@Value("${odata.metadata-cache.enabled:true}")
+	private boolean enabled;
+
+	/* bounds the service documents of the base URIs clients address the service by */
+	@Value("${odata.metadata-cache.max-documents:64}")
+	private int maxDocuments;
+
+	private volatile Documents documents;
+
+	@Override
+	public void onApplicationEvent(EntityProviderRegistryRefreshedEvent event) {
+
+		if (!enabled)
+			return;
+
+		serviceMetadataHolder.refresh();
+		documents().get(METADATA, ODataFormat.XML, null);
+	}
+
+	/*
+	 * Gets the response of a $metadata or service document request, a 304
+	 * Not Modified if the If-None-Match header matches its entity tag. Null
+	 * if the request is not one for a cached document.
+	 */
+	public ODataResponse get(ODataRequest request) {
+
+		if (!enabled)
+			return null;
+
+		String path = request.getRawODataPath() == null ? "" : request.getRawODataPath();
+		path = path.startsWith("/") ? path.substring(1) : path;
+
+		boolean metadata = path.equals(METADATA);
+		if (!metadata && !path.isEmpty())
+			return null;
+
+		ODataFormat format = format(request, metadata ? ODataFormat.XML : ODataFormat.JSON);
+		if (format == null)
+			return null;
+
+		Document document = documents().get(metadata ? METADATA : "", format,
+				metadata ? null : request.getRawBaseUri());
+		if (document == null || document == UNSUPPORTED)
+			return null;
+
+		ODataResponse response = new ODataResponse();
+		response.setHeader(HttpHeader.ETAG, document.eTag);
+		response.setHeader(BatchFormat.ODATA_VERSION, "4.0");
+
+		if (EntityTag.matches(request.getHeaders(HttpHeader.IF_NONE_MATCH), document.eTag)) {
+			response.setStatusCode(HttpStatusCode.NOT_MODIFIED.getStatusCode());
+			return response;
+		}
+
+		response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+		response.setHeader(HttpHeader.CONTENT_TYPE, document.contentType);
+		response.setContent(new ByteArrayInputStream(document.body));
+		return response;
+	}
+
+	/*
+	 * Gets the documents of the current service metadata, dropping those of
+	 * a previous version.
+	 */
+	private Documents documents() {
+
+		long version = serviceMetadataHolder.getVersion();
+
+		Documents current = documents;
+		if (current == null || current.version != version) {
+			current = new Documents(version, serviceMetadataHolder.getServiceMetadata());
+			documents = current;
+		}
+		return current;
+	}
+
+	/*
+	 * Gets the format a document is requested in, from $format or else from
+	 * the Accept header. Null if the request asks for anything but plain
+	 * JSON or XML, or has other query options.
+	 */
+	private static ODataFormat format(ODataRequest request, ODataFormat defaultFormat) {
+
+		List<String> acceptCharset = request.getHeaders(HttpHeader.ACCEPT_CHARSET);
+		if (acceptCharset != null && !acceptCharset.isEmpty())
+			return null;
+
+		String query = request.getRawQueryPath();
+		if (query != null && !query.isEmpty()) {
+
+			if (query.indexOf('&') >= 0)
+				return null;
+
+			int separator = query.indexOf('=');
+			try {
+				if (separator < 0 || !"$format".equals(URLDecoder.decode(query.substring(0, separator), "UTF-8")))
+					return null;
+				return format(URLDecoder.decode(query.substring(separator + 1), "UTF-8"), null);
+			} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		List<String> accept = request.getHeaders(HttpHeader.ACCEPT);
+		return accept == null || accept.isEmpty() ? defaultFormat : format(String.join(",", accept), defaultFormat);
+	}
+
+	private static ODataFormat format(String requested, ODataFormat defaultFormat) {
+
+		String value = requested.toLowerCase(Locale.ENGLISH).trim();
+
+		/* only minimal metadata is rendered, other JSON variants are left to the handler */
+		if (value.contains("odata.metadata=") && !value.contains("odata.metadata=minimal"))
+			return null;
+
+		boolean json = value.equals("json") || value.contains("application/json");
+		boolean xml = value.equals("xml") || value.contains("application/xml");
+
+		if (json && !xml)
+			return ODataFormat.JSON;
+		if (xml && !json)
+			return ODataFormat.XML;
+		if (!json && (value.isEmpty() || value.equals("*/*")))
+			return defaultFormat;
+		return null;
+	}
+
+	/*
+	 * The documents rendered from one version of the service metadata.
+	 */
+	private final class Documents {
+
+		private final long version;
+
+		private final ServiceMetadata serviceMetadata;
+
+		private final ConcurrentMap<String, Document> rendered = new ConcurrentHashMap<String, Document>();
+
+		private Documents(long version, ServiceMetadata serviceMetadata) {
+			this.version = version;
+			this.serviceMetadata = serviceMetadata;
+		}
+
+		private Document get(String path, ODataFormat format, String baseUri) {
+
+			String key = path + ' ' + format + ' ' + (baseUri == null ? "" : baseUri);
+
+			Document document = rendered.get(key);
+			if (document != null)
+				return document;
+
+			document = render(path, format, baseUri);
+			if (rendered.size() < maxDocuments)
+				rendered.putIfAbsent(key, document);
+			return document;
+		}
+
+		private Document render(String path, ODataFormat format, String baseUri) {
+
+			long start = System.nanoTime();
+
+			ODataSerializer serializer;
+			InputStream content;
+			try {
+				serializer = serviceMetadataHolder.getOData().createSerializer(format);
+				content = METADATA.equals(path) ? serializer.metadataDocument(serviceMetadata)
+						: serializer.serviceDocument(serviceMetadata.getEdm(), baseUri);
+			} catch (SerializerException e) {
+				logger.debug("No " + format + " rendering of " + (path.isEmpty() ? "the service document" : path)
+						+ ": " + e.getLocalizedMessage());
+				return UNSUPPORTED;
+			}
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = content) {
+				BufferPool.shared().copy(in, body);
+			} catch (IOException e) {
+				logger.debug(e.getLocalizedMessage());
+				return UNSUPPORTED;
+			}
+
+			byte[] bytes = body.toByteArray();
+			String eTag = new EntityTag().updateBytes(bytes).toStrong();
+
+			logger.debug("Rendered " + (path.isEmpty() ? "service document" : path) + " as " + format + " for version "
+					+ version + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+
+			return new Document(bytes, format == ODataFormat.XML ? XML_CONTENT_TYPE : JSON_CONTENT_TYPE, eTag);
+		}
+	}
+
+	private static final class Document {
+
+		private final byte[] body;
+
+		private final String contentType;
+
+		private final String eTag;
+
+		private Document(byte[] body, String contentType, String eTag) {
+			this.body = body;
+			this.contentType = contentType;
+			this.eTag = eTag;
+		}
+	}
+}
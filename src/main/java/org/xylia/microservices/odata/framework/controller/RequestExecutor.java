@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.olingo.server.api.ODataRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Bounded executor requests are processed on in async mode, so that slow
+ * queries do not hold the container threads that cheap requests such as
+ * $metadata and the service document are answered on. The pool defaults to
+ * the size of the connection pool, as every query holds a connection. When
+ * its queue is full a request is rejected at once with a 503, or the status
+ * of odata.async.reject-status, and a Retry-After header instead of queueing
+ * up. A request that is not answered within odata.async.timeout milliseconds
+ * is completed by the container: with the reject status if it is still
+ * queued, with a 504 if its task is running and has not committed the
+ * response yet. The task is then cut off from the response, its next write
+ * fails and it gives its connection back. Its queries run with the same
+ * timeout as their JDBC query timeout, so that a query still running at
+ * that point is cancelled as well.
+ */
+
+@Component
+public class RequestExecutor implements PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(RequestExecutor.class);
+
+	private static final String RETRY_AFTER = "Retry-After";
+
+	@Value("${odata.async.enabled:false}")
+	private boolean enabled;
+
+	@Value("${odata.async.threads:${spring.datasource.tomcat.max-active:10}}")
+	private int threads;
+
+	@Value("${odata.async.queue-size:50}")
+	private int queueSize;
+
+	@Value("${odata.async.reject-status:503}")
+	private int rejectStatus;
+
+	@Value("${odata.async.retry-after-seconds:1}")
+	private int retryAfter;
+
+	@Value("${odata.async.timeout:60000}")
+	private long timeout;
+
+	private ThreadPoolExecutor executor;
+
+	private final LongAdder submitted = new LongAdder();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final LongAdder timedOut = new LongAdder();
+
+	private final LongAdder completed = new LongAdder();
+
+	private final LongAdder waitNanos = new LongAdder();
+
+	private final LongAdder runNanos = new LongAdder();
+
+	@PostConstruct
+	public void init() {
+
+		executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new CustomizableThreadFactory("odata-request-"),
+				new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/*
+	 * Checks whether the request is processed on the executor: in async mode
+	 * every request but the cheap $metadata and service document ones.
+	 */
+	public boolean isAsync(ODataRequest request) {
+
+		if (!enabled)
+			return false;
+
+		String path = request.getRawODataPath();
+		if (path == null)
+			return false;
+
+		path = path.startsWith("/") ? path.substring(1) : path;
+		return !path.isEmpty() && !path.startsWith("$metadata");
+	}
+
+	/*
+	 * Starts async processing of the servlet request and runs the task on the
+	 * executor, the container thread returns at once.
+	 */
+	public void dispatch(HttpServletRequest req, HttpServletResponse resp, Task task) {
+
+		AsyncContext async = req.startAsync(req, resp);
+		async.setTimeout(timeout);
+
+		/* the task writes through a response that is detached when the request times out */
+		TaskResponse response = new TaskResponse(resp);
+
+		long queued = System.nanoTime();
+		Runnable command = () -> {
+
+			long started = System.nanoTime();
+			waitNanos.add(started - queued);
+			try {
+				task.run(response);
+			} catch (Exception e) {
+				logger.debug("Request failed: " + e.getLocalizedMessage());
+				if (!response.isCommitted())
+					response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			} finally {
+				runNanos.add(System.nanoTime() - started);
+				completed.increment();
+				if (response.detach())
+					async.complete();
+			}
+		};
+
+		async.addListener(new AsyncListener() {
+
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+
+				if (!response.detach())
+					return;
+
+				timedOut.increment();
+				if (executor.remove(command)) {
+					resp.setStatus(rejectStatus);
+					resp.setHeader(RETRY_AFTER, String.valueOf(retryAfter));
+				} else if (!resp.isCommitted()) {
+					resp.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+				}
+				logger.debug("Request timed out after " + timeout + " ms");
+				async.complete();
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) {
+			}
+
+			@Override
+			public void onError(AsyncEvent event) {
+				response.detach();
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) {
+			}
+		});
+
+		try {
+			executor.execute(command);
+			submitted.increment();
+
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			resp.setStatus(rejectStatus);
+			resp.setHeader(RETRY_AFTER, String.valueOf(retryAfter));
+			async.complete();
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+
+		long completedCount = completed.sum();
+
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		metrics.add(new Metric<Integer>("odata.async.active", executor.getActiveCount()));
+		metrics.add(new Metric<Integer>("odata.async.queued", executor.getQueue().size()));
+		metrics.add(new Metric<Long>("odata.async.submitted", submitted.sum()));
+		metrics.add(new Metric<Long>("odata.async.rejected", rejected.sum()));
+		metrics.add(new Metric<Long>("odata.async.timed-out", timedOut.sum()));
+		metrics.add(new Metric<Long>("odata.async.completed", completedCount));
+		metrics.add(new Metric<Double>("odata.async.queue-wait-ms.mean",
+				completedCount == 0 ? 0d : waitNanos.sum() / 1000000d / completedCount));
+		metrics.add(new Metric<Double>("odata.async.time-ms.mean",
+				completedCount == 0 ? 0d : runNanos.sum() / 1000000d / completedCount));
+		return metrics;
+	}
+
+	/*
+	 * Request processing that is handed to the executor.
+	 */
+	public interface Task {
+
+		void run(HttpServletResponse resp) throws Exception;
+	}
+
+	/*
+	 * Response the task writes to. Once the request has timed out or
+	 * completed it is detached: the status and headers are dropped and writes
+	 * fail, so the task neither touches a response the container has recycled
+	 * nor keeps its query running. Writes and the detach are serialized on
+	 * the response, so a timeout never completes in the middle of a write.
+	 */
+	private static final class TaskResponse extends HttpServletResponseWrapper {
+
+		private boolean detached;
+
+		private ServletOutputStream out;
+
+		TaskResponse(HttpServletResponse resp) {
+			super(resp);
+		}
+
+		/*
+		 * Detaches the response, true for the one caller that has to complete
+		 * the request.
+		 */
+		synchronized boolean detach() {
+
+			if (detached)
+				return false;
+			detached = true;
+			return true;
+		}
+
+		@Override
+		public synchronized boolean isCommitted() {
+			return detached || super.isCommitted();
+		}
+
+		@Override
+		public synchronized void setStatus(int sc) {
+			if (!detached)
+				super.setStatus(sc);
+		}
+
+		@Override
+		public synchronized void setHeader(String name, String value) {
+			if (!detached)
+				super.setHeader(name, value);
+		}
+
+		@Override
+		public synchronized void addHeader(String name, String value) {
+			if (!detached)
+				super.addHeader(name, value);
+		}
+
+		@Override
+		public synchronized ServletOutputStream getOutputStream() throws IOException {
+
+			check();
+			if (out == null)
+				out = new TaskOutputStream(super.getOutputStream());
+			return out;
+		}
+
+		private void check() throws IOException {
+			if (detached)
+				throw new IOException("Request timed out");
+		}
+
+		private final class TaskOutputStream extends ServletOutputStream {
+
+			private final ServletOutputStream delegate;
+
+			TaskOutputStream(ServletOutputStream delegate) {
+				this.delegate = delegate;
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				synchronized (TaskResponse.this) {
+					check();
+					delegate.write(b);
+				}
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				synchronized (TaskResponse.this) {
+					check();
+					delegate.write(b, off, len);
+				}
+			}
+
+			@Override
+			public void flush() throws IOException {
+				synchronized (TaskResponse.this) {
+					check();
+					delegate.flush();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				synchronized (TaskResponse.this) {
+					if (!detached)
+						delegate.close();
+				}
+			}
+
+			@Override
+			public boolean isReady() {
+				return delegate.isReady();
+			}
+
+			@Override
+			public void setWriteListener(WriteListener writeListener) {
+				delegate.setWriteListener(writeListener);
+			}
+		}
+	}
+}
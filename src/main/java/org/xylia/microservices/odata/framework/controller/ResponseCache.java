@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.xylia.microservices.odata.framework.edm.paging.PageRequest;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistry;
+import org.xylia.microservices.odata.framework.edm.serializer.StreamingContent;
+import org.xylia.microservices.odata.framework.util.BufferPool;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Cache of serialized collection responses in front of the ODataHandler,
+ * for clients polling the same URLs. Responses are keyed by a canonical
+ * form of the request: base URI, path, the query options decoded and sorted
+ * and the headers that change the response. Entity sets opt in with a
+ * response cache time to live; all entries share one memory cap, and the
+ * entries of an entity set are evicted when it is written through the
+ * framework.
+ *
+ * Only bodies of at most odata.response-cache.max-entry-bytes are cached.
+ * Streamed content and larger bodies are written through as they are, so
+ * caching never holds more than that in memory per request. A write
+ * advances the generation of its entity set, and a response read under an
+ * older generation is not cached, so a read that started before a write
+ * cannot cache its stale body after the write has evicted the entity set.
+ */
+
+@Component
+public class ResponseCache {
+
+	@Autowired
+	private EntityProviderRegistry entityProviderRegistry;
+
+	@Value("${odata.response-cache.max-bytes:67108864}")
+	private long maximumBytes;
+
+	@Value("${odata.response-cache.max-entry-bytes:1048576}")
+	private int maximumEntryBytes;
+
+	private Cache<Key, CachedResponse> responses;
+
+	private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+
+	@PostConstruct
+	public void init() {
+
+		/* an entry weighs its body and key, which has to stay well within an int */
+		maximumEntryBytes = (int) Math.min(maximumEntryBytes, Math.min(maximumBytes, Integer.MAX_VALUE / 2));
+		responses = Caffeine.newBuilder().maximumWeight(maximumBytes)
+				.weigher((Key key, CachedResponse response) -> key.weight() + response.body.length).build();
+	}
+
+	/*
+	 * Gets the cache key of a collection read, or null if the response is not
+	 * cached because the entity set has no response cache time to live.
+	 */
+	public Key key(ODataRequest request) {
+
+		String entitySetName = entitySetName(request.getRawODataPath());
+		if (entitySetName == null)
+			return null;
+
+		EntityProvider entityProvider = entityProviderRegistry.getByEntitySetName(entitySetName);
+		if (entityProvider == null || entityProvider.getResponseCacheTtl() <= 0)
+			return null;
+
+		StringBuilder canonical = new StringBuilder(request.getRawBaseUri()).append(request.getRawODataPath());
+
+		List<String> options = canonicalOptions(request.getRawQueryPath());
+		if (options == null)
+			return null;
+		canonical.append('?').append(String.join("&", options));
+
+		for (String header : Arrays.asList(HttpHeader.ACCEPT, HttpHeader.ACCEPT_CHARSET, PageRequest.PREFER)) {
+			List<String> values = request.getHeaders(header);
+			if (values != null && !values.isEmpty())
+				canonical.append('\n').append(header.toLowerCase(Locale.ENGLISH)).append(':')
+						.append(String.join(",", values));
+		}
+
+		return new Key(entitySetName, canonical.toString(),
+				entityProvider.getResponseCacheTtl() * 1000000000L, generation(entitySetName).get());
+	}
+
+	/*
+	 * Gets the cached response for the key, or null if there is none or it
+	 * has expired.
+	 */
+	public ODataResponse get(Key key) {
+
+		CachedResponse cached = responses.getIfPresent(key);
+		if (cached == null)
+			return null;
+
+		if (System.nanoTime() - cached.created > key.ttlNanos) {
+			responses.invalidate(key);
+			return null;
+		}
+		return cached.toResponse();
+	}
+
+	/*
+	 * Caches a successful response. The content is read into memory up to
+	 * the entry limit and the returned response, to be written instead of the
+	 * given one, serves it from there. Streamed content, content past the
+	 * limit and responses read before a write of their entity set are not
+	 * cached; the returned response then writes the content through.
+	 */
+	public ODataResponse put(Key key, ODataResponse response) throws IOException {
+
+		InputStream content = response.getContent();
+		if (response.getStatusCode() != HttpStatusCode.OK.getStatusCode() || content == null
+				|| content instanceof StreamingContent || !isCurrent(key))
+			return response;
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = BufferPool.shared().acquire();
+		try {
+			int read;
+			while ((read = content.read(buffer, 0, Math.min(buffer.length, maximumEntryBytes + 1 - body.size()))) > 0) {
+				body.write(buffer, 0, read);
+
+				if (body.size() > maximumEntryBytes) {
+					/* too large to cache, the bytes read so far are followed by the rest of the content */
+					response.setContent(
+							new SequenceInputStream(new ByteArrayInputStream(body.toByteArray()), content));
+					return response;
+				}
+			}
+			content.close();
+		} catch (IOException e) {
+			content.close();
+			throw e;
+		} finally {
+			BufferPool.shared().release(buffer);
+		}
+
+		CachedResponse cached = new CachedResponse(response.getStatusCode(),
+				new HashMap<String, String>(response.getHeaders()), body.toByteArray());
+		responses.put(key, cached);
+
+		/* a write that advanced the generation meanwhile may have missed this entry */
+		if (!isCurrent(key))
+			responses.asMap().remove(key, cached);
+
+		return cached.toResponse();
+	}
+
+	/*
+	 * Evicts the cached responses of the entity set, and advances its
+	 * generation so that responses read before are not cached any more.
+	 */
+	public void invalidate(String entitySetName) {
+		generation(entitySetName).incrementAndGet();
+		responses.asMap().keySet().removeIf(key -> key.entitySetName.equals(entitySetName));
+	}
+
+	private boolean isCurrent(Key key) {
+		return generation(key.entitySetName).get() == key.generation;
+	}
+
+	private AtomicLong generation(String entitySetName) {
+		return generations.computeIfAbsent(entitySetName, name -> new AtomicLong());
+	}
+
+	/*
+	 * Gets the entity set of a collection or collection count path, null for
+	 * any other path.
+	 */
+	private static String entitySetName(String rawODataPath) {
+
+		if (rawODataPath == null)
+			return null;
+
+		String path = rawODataPath.startsWith("/") ? rawODataPath.substring(1) : rawODataPath;
+		if (path.endsWith("/$count"))
+			path = path.substring(0, path.length() - "/$count".length());
+
+		if (path.isEmpty() || path.startsWith("$") || path.indexOf('/') >= 0 || path.indexOf('(') >= 0)
+			return null;
+
+		return path;
+	}
+
+	/*
+	 * Decodes the query options and sorts them, with the items of $select
+	 * sorted as well since they do not change the response. Returns null if
+	 * the query cannot be decoded.
+	 */
+	private static List<String> canonicalOptions(String rawQueryPath) {
+
+		List<String> options = new ArrayList<String>();
+		if (rawQueryPath == null || rawQueryPath.isEmpty())
+			return options;
+
+		try {
+			for (String option : rawQueryPath.split("&")) {
+
+				if (option.isEmpty())
+					continue;
+
+				int separator = option.indexOf('=');
+				String name = decode(separator < 0 ? option : option.substring(0, separator)).trim();
+				String value = separator < 0 ? "" : decode(option.substring(separator + 1)).trim();
+
+				if ("$select".equals(name)) {
+					List<String> items = new ArrayList<String>();
+					for (String item : value.split(","))
+						items.add(item.trim());
+					Collections.sort(items);
+					value = String.join(",", items);
+				} else if ("$format".equals(name)) {
+					value = value.toLowerCase(Locale.ENGLISH);
+				}
+				options.add(name + "=" + value);
+			}
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return null;
+		}
+
+		Collections.sort(options);
+		return options;
+	}
+
+	private static String decode(String value) throws UnsupportedEncodingException {
+
+		/* a plus is a literal plus in OData URLs, not an encoded space */
+		return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+	}
+
+	/*
+	 * Canonical request of a cached response.
+	 */
+	public static final class Key {
+
+		private final String entitySetName;
+
+		private final String canonical;
+
+		private final long ttlNanos;
+
+		/* the generation of the entity set the response is read under, not part of the key */
+		private final long generation;
+
+		private Key(String entitySetName, String canonical, long ttlNanos, long generation) {
+			this.entitySetName = entitySetName;
+			this.canonical = canonical;
+			this.ttlNanos = ttlNanos;
+			this.generation = generation;
+		}
+
+		public String getEntitySetName() {
+			return entitySetName;
+		}
+
+		private int weight() {
+			return canonical.length() * 2;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && canonical.equals(((Key) other).canonical);
+		}
+
+		@Override
+		public int hashCode() {
+			return canonical.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return canonical;
+		}
+	}
+
+	private static final class CachedResponse {
+
+		private final int statusCode;
+
+		private final Map<String, String> headers;
+
+		private final byte[] body;
+
+		private final long created = System.nanoTime();
+
+		private CachedResponse(int statusCode, Map<String, String> headers, byte[] body) {
+			this.statusCode = statusCode;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		private ODataResponse toResponse() {
+
+			ODataResponse response = new ODataResponse();
+			response.setStatusCode(statusCode);
+			for (Map.Entry<String, String> header : headers.entrySet())
+				response.setHeader(header.getKey(), header.getValue());
+			response.setContent(new ByteArrayInputStream(body));
+			return response;
+		}
+	}
+}
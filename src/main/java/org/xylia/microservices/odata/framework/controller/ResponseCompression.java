@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.xylia.microservices.odata.framework.util.BufferPool;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics;
+
+import com.google.common.io.CountingOutputStream;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Negotiates gzip or deflate compression of a response from the
+ * Accept-Encoding header of its request. The body is compressed as it is
+ * written: the first odata.compression.min-size bytes are held back, and
+ * only a body that grows past them is compressed, so small responses are
+ * sent as they are. $count and $value responses are never compressed. The
+ * compression ratio and the CPU time spent compressing are recorded with
+ * the metrics of the request.
+ */
+
+@Component
+public class ResponseCompression {
+
+	private static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+	private static final String CONTENT_ENCODING = "Content-Encoding";
+
+	private static final String CONTENT_LENGTH = "Content-Length";
+
+	private static final String VARY = "Vary";
+
+	private static final String GZIP = "gzip";
+
+	private static final String DEFLATE = "deflate";
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	@Value("${odata.compression.enabled:true}")
+	private boolean enabled;
+
+	@Value("${odata.compression.min-size:2048}")
+	private int minSize;
+
+	@Value("${odata.compression.level:6}")
+	private int level;
+
+	/*
+	 * Gets the encoding to compress the response of a request with, null if
+	 * it is sent as it is. A response that could be compressed varies by
+	 * Accept-Encoding, whether it is compressed or not.
+	 */
+	public String encoding(ODataRequest request, ODataResponse response, HttpServletResponse resp) {
+
+		if (!enabled || response.getContent() == null)
+			return null;
+
+		if (response.getHeaders().containsKey(CONTENT_ENCODING) || response.getHeaders().containsKey(CONTENT_LENGTH))
+			return null;
+
+		String path = request.getRawODataPath();
+		if (path != null && (path.endsWith("$count") || path.endsWith("$value")))
+			return null;
+
+		resp.addHeader(VARY, ACCEPT_ENCODING);
+		return negotiate(request.getHeaders(ACCEPT_ENCODING));
+	}
+
+	/*
+	 * Chooses gzip or deflate by the quality values of the Accept-Encoding
+	 * headers, gzip when both are equally acceptable.
+	 */
+	static String negotiate(List<String> acceptEncodings) {
+
+		if (acceptEncodings == null)
+			return null;
+
+		double gzip = -1d;
+		double deflate = -1d;
+		double any = -1d;
+
+		for (String acceptEncoding : acceptEncodings) {
+			for (String coding : acceptEncoding.split(",")) {
+
+				String[] parameters = coding.split(";");
+				String name = parameters[0].trim().toLowerCase(Locale.ENGLISH);
+				double quality = quality(parameters);
+
+				if (name.equals(GZIP) || name.equals("x-gzip"))
+					gzip = quality;
+				else if (name.equals(DEFLATE))
+					deflate = quality;
+				else if (name.equals("*"))
+					any = quality;
+			}
+		}
+
+		gzip = gzip < 0d ? any : gzip;
+		deflate = deflate < 0d ? any : deflate;
+
+		if (gzip > 0d && gzip >= deflate)
+			return GZIP;
+		if (deflate > 0d)
+			return DEFLATE;
+		return null;
+	}
+
+	private static double quality(String[] parameters) {
+
+		for (int i = 1; i < parameters.length; i++) {
+
+			String parameter = parameters[i].trim();
+			if (parameter.startsWith("q=")) {
+				try {
+					return Double.parseDouble(parameter.substring(2));
+				} catch (NumberFormatException e) {
+					return 0d;
+				}
+			}
+		}
+		return 1d;
+	}
+
+	/*
+	 * Wraps the servlet output stream into a stream that compresses the body
+	 * once it is larger than the minimum size. The stream must be finished
+	 * once the body is written.
+	 */
+	public CompressingOutputStream compress(HttpServletResponse resp, String encoding) {
+		return new CompressingOutputStream(resp, encoding, level, Math.max(minSize, 0));
+	}
+
+	public static final class CompressingOutputStream extends OutputStream {
+
+		private final HttpServletResponse resp;
+
+		private final String encoding;
+
+		private final int level;
+
+		private final int minSize;
+
+		private final byte[] pending;
+
+		private final boolean pooled;
+
+		private int count;
+
+		private CountingOutputStream compressed;
+
+		private Compressor compressor;
+
+		private long written;
+
+		private long cpuNanos;
+
+		private boolean finished;
+
+		private boolean closed;
+
+		private CompressingOutputStream(HttpServletResponse resp, String encoding, int level, int minSize) {
+			this.resp = resp;
+			this.encoding = encoding;
+			this.level = level;
+			this.minSize = minSize;
+			this.pooled = minSize <= BufferPool.DEFAULT_BUFFER_SIZE;
+			this.pending = pooled ? BufferPool.shared().acquire() : new byte[minSize];
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+
+			written += len;
+
+			if (compressor != null) {
+				deflate(b, off, len);
+				return;
+			}
+
+			if (count + len <= minSize) {
+				System.arraycopy(b, off, pending, count, len);
+				count += len;
+				return;
+			}
+
+			/* the body is larger than the minimum size, it is sent compressed from here on */
+			resp.setHeader(CONTENT_ENCODING, encoding);
+			compressed = new CountingOutputStream(resp.getOutputStream());
+			compressor = new Compressor(compressed, GZIP.equals(encoding), level);
+
+			deflate(pending, 0, count);
+			deflate(b, off, len);
+		}
+
+		/*
+		 * Flushes the compressed body. Held back bytes of a body not known to
+		 * be compressed yet stay held back.
+		 */
+		@Override
+		public void flush() throws IOException {
+
+			if (compressor != null) {
+				long start = cpuTime();
+				compressor.flush();
+				cpuNanos += cpuTime() - start;
+			}
+		}
+
+		/*
+		 * Completes the body: a small body is written as it is, a compressed
+		 * one gets its trailer. The servlet output stream is left open.
+		 */
+		public void finish() throws IOException {
+
+			if (finished)
+				return;
+			finished = true;
+
+			if (compressor == null) {
+				resp.getOutputStream().write(pending, 0, count);
+				return;
+			}
+
+			long start = cpuTime();
+			compressor.finish();
+			cpuNanos += cpuTime() - start;
+			PipelineMetrics.compressed(written, compressed.getCount(), cpuNanos);
+		}
+
+		/*
+		 * Releases the deflater and the buffer, without completing the body
+		 * of a response that failed.
+		 */
+		@Override
+		public void close() {
+
+			if (closed)
+				return;
+			closed = true;
+
+			if (compressor != null)
+				compressor.end();
+			if (pooled)
+				BufferPool.shared().release(pending);
+		}
+
+		private void deflate(byte[] b, int off, int len) throws IOException {
+
+			if (len == 0)
+				return;
+
+			long start = cpuTime();
+			compressor.write(b, off, len);
+			cpuNanos += cpuTime() - start;
+		}
+
+		private static long cpuTime() {
+			return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+		}
+	}
+
+	/*
+	 * Deflates to the zlib format of the deflate coding, or to the raw
+	 * format with the gzip header and trailer. Unlike GZIPOutputStream it
+	 * takes a compression level, and its deflater is ended explicitly.
+	 */
+	private static final class Compressor extends DeflaterOutputStream {
+
+		private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+		private final CRC32 crc;
+
+		private Compressor(OutputStream out, boolean gzip, int level) throws IOException {
+
+			super(out, new Deflater(level, gzip), BufferPool.DEFAULT_BUFFER_SIZE, true);
+			this.crc = gzip ? new CRC32() : null;
+			if (gzip)
+				out.write(GZIP_HEADER);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+
+			super.write(b, off, len);
+			if (crc != null)
+				crc.update(b, off, len);
+		}
+
+		@Override
+		public void finish() throws IOException {
+
+			super.finish();
+			if (crc != null) {
+				writeInt(crc.getValue());
+				writeInt(def.getBytesRead());
+			}
+		}
+
+		private void writeInt(long value) throws IOException {
+
+			out.write((int) value & 0xff);
+			out.write((int) (value >>> 8) & 0xff);
+			out.write((int) (value >>> 16) & 0xff);
+			out.write((int) (value >>> 24) & 0xff);
+		}
+
+		private void end() {
+			def.end();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.xylia.microservices.odata.framework.util.BufferPool;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Wire format of $batch requests and responses, chosen by the Content-Type
+ * of the batch request: the multipart/mixed format of OData 4.0 or the JSON
+ * format of OData 4.01.
+ */
+
+public abstract class BatchFormat {
+
+	public static final String BATCH_PATH = "$batch";
+
+	public static final String ODATA_VERSION = "OData-Version";
+
+	/*
+	 * Gets the format of a batch request, or null if its Content-Type is not
+	 * a batch format.
+	 */
+	public static BatchFormat of(ODataRequest request) {
+
+		String contentType = header(request, HttpHeader.CONTENT_TYPE);
+		if (contentType == null)
+			return null;
+
+		String type = contentType.toLowerCase(Locale.ENGLISH);
+		if (type.startsWith("multipart/mixed")) {
+			String boundary = parameter(contentType, "boundary");
+			return boundary != null ? new MultipartBatchFormat(boundary) : null;
+		}
+		if (type.startsWith("application/json"))
+			return new JsonBatchFormat();
+
+		return null;
+	}
+
+	/*
+	 * Checks whether the request is a $batch request.
+	 */
+	public static boolean isBatch(ODataRequest request) {
+
+		String path = request.getRawODataPath();
+		return path != null && (path.equals(BATCH_PATH) || path.equals("/" + BATCH_PATH));
+	}
+
+	/*
+	 * Parses the parts of the batch request body, in request order.
+	 *
+	 * @throws IllegalArgumentException if the body is malformed
+	 */
+	public abstract List<BatchPart> parse(byte[] body);
+
+	/*
+	 * Writes the responses of the processed parts as the batch response.
+	 */
+	public abstract byte[] write(List<BatchPart> parts) throws IOException;
+
+	public abstract String getContentType();
+
+	/*
+	 * Creates the batch response from the processed parts.
+	 */
+	public ODataResponse createResponse(List<BatchPart> parts) throws IOException {
+
+		ODataResponse response = new ODataResponse();
+		response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+		response.setHeader(HttpHeader.CONTENT_TYPE, getContentType());
+		response.setHeader(ODATA_VERSION, "4.0");
+		response.setContent(new ByteArrayInputStream(write(parts)));
+		return response;
+	}
+
+	/*
+	 * Reads the buffered content of a part response.
+	 */
+	static byte[] content(ODataResponse response) throws IOException {
+		return read(response.getContent());
+	}
+
+	static byte[] read(InputStream content) throws IOException {
+
+		if (content == null)
+			return new byte[0];
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			BufferPool.shared().copy(content, out);
+		} finally {
+			content.close();
+		}
+		return out.toByteArray();
+	}
+
+	static String header(ODataRequest request, String name) {
+
+		List<String> values = request.getHeaders(name);
+		if (values == null || values.isEmpty())
+			values = request.getHeaders(name.toLowerCase(Locale.ENGLISH));
+
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	/*
+	 * Gets a parameter of a Content-Type header value, without quotes.
+	 */
+	static String parameter(String contentType, String name) {
+
+		for (String parameter : contentType.split(";")) {
+
+			int separator = parameter.indexOf('=');
+			if (separator < 0 || !parameter.substring(0, separator).trim().equalsIgnoreCase(name))
+				continue;
+
+			String value = parameter.substring(separator + 1).trim();
+			if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\""))
+				value = value.substring(1, value.length() - 1);
+			return value;
+		}
+		return null;
+	}
+}
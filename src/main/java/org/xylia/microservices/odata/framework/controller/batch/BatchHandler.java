@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.core.ODataHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Processes $batch requests. Parts are processed in request order, except
+ * that consecutive reads outside of change sets are independent of each
+ * other and run concurrently on a bounded executor, each in its own read
+ * only transaction and so its own persistence context. A write waits for
+ * the reads before it, and a change set is applied in one transaction that
+ * is rolled back if any of its requests fails.
+ */
+
+@Component
+public class BatchHandler implements PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchHandler.class);
+
+	@Value("${odata.batch.threads:8}")
+	private int threads;
+
+	@Value("${odata.batch.queue-size:256}")
+	private int queueSize;
+
+	@Autowired
+	private PipelineMetrics pipelineMetrics;
+
+	private ThreadPoolExecutor executor;
+
+	private TransactionTemplate readTransaction;
+
+	private TransactionTemplate writeTransaction;
+
+	private final LongAdder batches = new LongAdder();
+
+	private final LongAdder batchNanos = new LongAdder();
+
+	private final LongAdder parts = new LongAdder();
+
+	private final LongAdder partNanos = new LongAdder();
+
+	private final AtomicLong maxPartNanos = new AtomicLong();
+
+	@Autowired
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+
+		this.readTransaction = new TransactionTemplate(transactionManager);
+		this.readTransaction.setReadOnly(true);
+		this.writeTransaction = new TransactionTemplate(transactionManager);
+	}
+
+	@PostConstruct
+	public void init() {
+
+		/* a full queue runs the read on the request thread rather than rejecting it */
+		executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new CustomizableThreadFactory("odata-batch-"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/*
+	 * Processes a $batch request, each part with a handler from the supplier.
+	 */
+	public ODataResponse process(ODataRequest request, Supplier<ODataHandler> handlers) throws IOException {
+
+		long start = System.nanoTime();
+
+		BatchFormat format = BatchFormat.of(request);
+		if (format == null)
+			return error(HttpStatusCode.BAD_REQUEST, "Unsupported batch request content type");
+
+		List<BatchPart> requestParts;
+		try {
+			requestParts = format.parse(BatchFormat.read(request.getBody()));
+		} catch (IllegalArgumentException e) {
+			return error(HttpStatusCode.BAD_REQUEST, e.getMessage());
+		}
+
+		List<BatchPart> responseParts = new ArrayList<BatchPart>(requestParts.size());
+		List<Future<?>> reads = new ArrayList<Future<?>>();
+
+		int i = 0;
+		while (i < requestParts.size()) {
+
+			BatchPart part = requestParts.get(i);
+
+			if (!part.isChangeSet() && part.getMethod() == HttpMethod.GET) {
+				reads.add(executor.submit(() -> read(request, part, handlers)));
+				responseParts.add(part);
+				i++;
+				continue;
+			}
+
+			/* a write sees the outcome of every part before it */
+			await(reads);
+
+			if (!part.isChangeSet()) {
+				execute(request, part, null, handlers);
+				responseParts.add(part);
+				i++;
+				continue;
+			}
+
+			int end = i + 1;
+			while (end < requestParts.size()
+					&& part.getAtomicityGroup().equals(requestParts.get(end).getAtomicityGroup()))
+				end++;
+
+			responseParts.addAll(changeSet(request, requestParts.subList(i, end), handlers));
+			i = end;
+		}
+		await(reads);
+
+		for (BatchPart part : responseParts) {
+			if (part.getResponse() == null)
+				part.setResponse(error(HttpStatusCode.INTERNAL_SERVER_ERROR, "Batch part was not processed"));
+		}
+
+		batches.increment();
+		batchNanos.add(System.nanoTime() - start);
+
+		return format.createResponse(responseParts);
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+
+		long batchCount = batches.sum();
+		long partCount = parts.sum();
+
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		metrics.add(new Metric<Long>("odata.batch.count", batchCount));
+		metrics.add(new Metric<Double>("odata.batch.time-ms.mean",
+				batchCount == 0 ? 0d : batchNanos.sum() / 1000000d / batchCount));
+		metrics.add(new Metric<Long>("odata.batch.part.count", partCount));
+		metrics.add(new Metric<Double>("odata.batch.part.time-ms.mean",
+				partCount == 0 ? 0d : partNanos.sum() / 1000000d / partCount));
+		metrics.add(new Metric<Double>("odata.batch.part.time-ms.max", maxPartNanos.get() / 1000000d));
+		metrics.add(new Metric<Integer>("odata.batch.executor.active", executor.getActiveCount()));
+		metrics.add(new Metric<Integer>("odata.batch.executor.queued", executor.getQueue().size()));
+		return metrics;
+	}
+
+	private void read(ODataRequest batch, BatchPart part, Supplier<ODataHandler> handlers) {
+
+		try {
+			readTransaction.execute(status -> {
+				execute(batch, part, null, handlers);
+				return null;
+			});
+		} catch (RuntimeException e) {
+			logger.debug("Batch read " + part.getUrl() + " failed: " + e.getLocalizedMessage());
+			part.setResponse(error(HttpStatusCode.INTERNAL_SERVER_ERROR, e.getLocalizedMessage()));
+		}
+	}
+
+	/*
+	 * Applies the requests of a change set in one transaction. A failed
+	 * change set is rolled back and answered with the response of the
+	 * failed request alone. A change set that fails to commit, such as on a
+	 * constraint violation found by the flush, is answered with its last
+	 * request as the failed one.
+	 */
+	private List<BatchPart> changeSet(ODataRequest batch, List<BatchPart> group, Supplier<ODataHandler> handlers) {
+
+		BatchPart failed;
+		try {
+			failed = writeTransaction.execute(status -> {
+
+				/* the Location of a created entity is referenced as $<Content-ID> by later requests */
+				Map<String, String> locations = new HashMap<String, String>();
+
+				for (BatchPart part : group) {
+
+					execute(batch, part, locations, handlers);
+
+					ODataResponse response = part.getResponse();
+					if (response.getStatusCode() >= HttpStatusCode.BAD_REQUEST.getStatusCode()) {
+						status.setRollbackOnly();
+						return part;
+					}
+
+					String location = response.getHeaders().get(HttpHeader.LOCATION);
+					if (part.getContentId() != null && location != null)
+						locations.put(part.getContentId(), location);
+				}
+				return null;
+			});
+		} catch (RuntimeException e) {
+			logger.debug("Batch change set failed: " + e.getLocalizedMessage());
+			failed = group.get(group.size() - 1);
+			failed.setResponse(error(HttpStatusCode.INTERNAL_SERVER_ERROR, e.getLocalizedMessage()));
+		}
+
+		return failed == null ? group : Collections.singletonList(failed.standalone());
+	}
+
+	/*
+	 * Processes a part and buffers its response, so that streamed content is
+	 * produced while the transaction of the part is open.
+	 */
+	private void execute(ODataRequest batch, BatchPart part, Map<String, String> locations,
+			Supplier<ODataHandler> handlers) {
+
+		long start = System.nanoTime();
+		try {
+			ODataRequest request = part.createRequest(batch, locations);
+			try (PipelineMetrics.Scope scope = pipelineMetrics.begin(request)) {
+
+				ODataResponse response = handlers.get().process(request);
+				PipelineMetrics.status(response.getStatusCode());
+
+				long write = PipelineMetrics.start();
+				byte[] content = BatchFormat.content(response);
+				PipelineMetrics.written(write, content.length);
+
+				response.setContent(new ByteArrayInputStream(content));
+				part.setResponse(response);
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.debug("Batch part " + part.getUrl() + " failed: " + e.getLocalizedMessage());
+			part.setResponse(error(HttpStatusCode.INTERNAL_SERVER_ERROR, e.getLocalizedMessage()));
+		}
+
+		long elapsed = System.nanoTime() - start;
+		parts.increment();
+		partNanos.add(elapsed);
+		maxPartNanos.accumulateAndGet(elapsed, Math::max);
+
+		logger.debug("Batch part " + part.getMethod() + " " + part.getUrl() + " took " + elapsed / 1000000 + "ms");
+	}
+
+	private void await(List<Future<?>> reads) {
+
+		for (Future<?> read : reads) {
+			try {
+				read.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				logger.debug("Batch read failed: " + e.getLocalizedMessage());
+			}
+		}
+		reads.clear();
+	}
+
+	private static ODataResponse error(HttpStatusCode status, String message) {
+
+		ODataResponse response = new ODataResponse();
+		response.setStatusCode(status.getStatusCode());
+		if (message != null) {
+			response.setHeader(HttpHeader.CONTENT_TYPE, ContentType.TEXT_PLAIN.toContentTypeString());
+			response.setContent(new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8)));
+		}
+		return response;
+	}
+}
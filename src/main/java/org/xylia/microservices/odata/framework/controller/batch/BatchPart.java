@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller.batch;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * A single request of a $batch request and, once it is processed, its
+ * response. Consecutive parts with the same atomicity group form a change
+ * set, parts without one are processed on their own.
+ */
+
+public class BatchPart {
+
+	private final String contentId;
+
+	private final String atomicityGroup;
+
+	private final HttpMethod method;
+
+	private final String url;
+
+	private final Map<String, List<String>> headers;
+
+	private final byte[] body;
+
+	private ODataResponse response;
+
+	public BatchPart(String contentId, String atomicityGroup, String method, String url,
+			Map<String, List<String>> headers, byte[] body) {
+		this.contentId = contentId;
+		this.atomicityGroup = atomicityGroup;
+		this.method = HttpMethod.valueOf(method.trim().toUpperCase(Locale.ENGLISH));
+		this.url = url.trim();
+		this.headers = headers;
+		this.body = body;
+	}
+
+	public String getContentId() {
+		return contentId;
+	}
+
+	public String getAtomicityGroup() {
+		return atomicityGroup;
+	}
+
+	public HttpMethod getMethod() {
+		return method;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public ODataResponse getResponse() {
+		return response;
+	}
+
+	public void setResponse(ODataResponse response) {
+		this.response = response;
+	}
+
+	public boolean isChangeSet() {
+		return atomicityGroup != null;
+	}
+
+	/*
+	 * Gets the part outside of its change set, the single response a failed
+	 * change set is answered with.
+	 */
+	public BatchPart standalone() {
+
+		BatchPart part = new BatchPart(contentId, null, method.name(), url, headers, body);
+		part.setResponse(response);
+		return part;
+	}
+
+	/*
+	 * Creates the OData request of the part, relative to the service root of
+	 * the batch request. A URL starting with $<Content-ID> is resolved
+	 * against the Location of the earlier part of the change set with that
+	 * Content-ID.
+	 */
+	public ODataRequest createRequest(ODataRequest batch, Map<String, String> locations) {
+
+		String base = batch.getRawBaseUri();
+		String target = url;
+
+		if (target.startsWith("$") && locations != null) {
+			int end = target.indexOf('/');
+			String location = locations.get(end < 0 ? target.substring(1) : target.substring(1, end));
+			if (location != null)
+				target = location + (end < 0 ? "" : target.substring(end));
+		}
+
+		String path = relativePath(base, target);
+		String query = null;
+
+		int separator = path.indexOf('?');
+		if (separator >= 0) {
+			query = path.substring(separator + 1);
+			path = path.substring(0, separator);
+		}
+
+		String rawODataPath = (base.endsWith("/") ? "" : "/") + path;
+
+		ODataRequest request = new ODataRequest();
+		request.setMethod(method);
+		request.setRawBaseUri(base);
+		request.setRawODataPath(rawODataPath);
+		request.setRawQueryPath(query);
+		request.setRawRequestUri(base + rawODataPath + (query == null ? "" : "?" + query));
+		request.setRawServiceResolutionUri(batch.getRawServiceResolutionUri());
+
+		for (Map.Entry<String, List<String>> header : headers.entrySet())
+			request.addHeader(header.getKey(), header.getValue());
+
+		request.setBody(new ByteArrayInputStream(body != null ? body : new byte[0]));
+		return request;
+	}
+
+	/*
+	 * Gets the resource path and query of a part URL, which is either
+	 * relative to the service root, an absolute path or an absolute URL.
+	 */
+	private static String relativePath(String base, String target) {
+
+		if (target.startsWith(base))
+			return strip(target.substring(base.length()));
+
+		String path = target;
+		int scheme = target.indexOf("://");
+		if (scheme > 0) {
+			int start = target.indexOf('/', scheme + 3);
+			path = start < 0 ? "/" : target.substring(start);
+		}
+
+		if (path.startsWith("/")) {
+			String basePath = basePath(base);
+			if (path.startsWith(basePath))
+				path = path.substring(basePath.length());
+		}
+		return strip(path);
+	}
+
+	private static String basePath(String base) {
+
+		int scheme = base.indexOf("://");
+		int start = scheme > 0 ? base.indexOf('/', scheme + 3) : 0;
+		return start < 0 ? "/" : base.substring(start);
+	}
+
+	private static String strip(String path) {
+		return path.startsWith("/") ? path.substring(1) : path;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.server.api.ODataResponse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * The JSON batch format: a "requests" array of method, url, headers and
+ * body objects, where requests sharing an "atomicityGroup" form a change
+ * set. JSON bodies are embedded as JSON, other bodies as strings.
+ */
+
+public class JsonBatchFormat extends BatchFormat {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@Override
+	public String getContentType() {
+		return "application/json";
+	}
+
+	@Override
+	public List<BatchPart> parse(byte[] body) {
+
+		JsonNode requests;
+		try {
+			JsonNode root = MAPPER.readTree(body);
+			requests = root == null ? null : root.get("requests");
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Malformed JSON batch request", e);
+		}
+
+		if (requests == null || !requests.isArray())
+			throw new IllegalArgumentException("JSON batch request without a requests array");
+
+		List<BatchPart> parts = new ArrayList<BatchPart>();
+		for (JsonNode request : requests) {
+
+			String method = text(request, "method");
+			String url = text(request, "url");
+			if (method == null || url == null)
+				throw new IllegalArgumentException("JSON batch request without method or url");
+
+			Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+			JsonNode headerNode = request.get("headers");
+			if (headerNode != null) {
+				for (Iterator<Map.Entry<String, JsonNode>> fields = headerNode.fields(); fields.hasNext();) {
+					Map.Entry<String, JsonNode> header = fields.next();
+					headers.put(header.getKey(), Collections.singletonList(header.getValue().asText()));
+				}
+			}
+
+			parts.add(new BatchPart(text(request, "id"), text(request, "atomicityGroup"), method, url, headers,
+					body(request.get("body"), headers)));
+		}
+		return parts;
+	}
+
+	@Override
+	public byte[] write(List<BatchPart> parts) throws IOException {
+
+		ObjectNode root = MAPPER.createObjectNode();
+		ArrayNode responses = root.putArray("responses");
+
+		for (BatchPart part : parts) {
+
+			ODataResponse response = part.getResponse();
+			ObjectNode node = responses.addObject();
+
+			if (part.getContentId() != null)
+				node.put("id", part.getContentId());
+			if (part.getAtomicityGroup() != null)
+				node.put("atomicityGroup", part.getAtomicityGroup());
+			node.put("status", response.getStatusCode());
+
+			ObjectNode headers = node.putObject("headers");
+			for (Map.Entry<String, String> header : response.getHeaders().entrySet())
+				headers.put(header.getKey(), header.getValue());
+
+			byte[] content = content(response);
+			if (content.length == 0)
+				continue;
+
+			String contentType = response.getHeaders().get(HttpHeader.CONTENT_TYPE);
+			if (contentType != null && contentType.toLowerCase(Locale.ENGLISH).contains("json"))
+				node.set("body", MAPPER.readTree(content));
+			else
+				node.put("body", new String(content, StandardCharsets.UTF_8));
+		}
+		return MAPPER.writeValueAsBytes(root);
+	}
+
+	private static byte[] body(JsonNode body, Map<String, List<String>> headers) {
+
+		if (body == null || body.isNull())
+			return new byte[0];
+
+		if (body.isTextual())
+			return body.asText().getBytes(StandardCharsets.UTF_8);
+
+		/* a JSON body is sent as JSON unless the request says otherwise */
+		boolean typed = false;
+		for (String name : headers.keySet())
+			typed |= name.equalsIgnoreCase(HttpHeader.CONTENT_TYPE);
+		if (!typed)
+			headers.put(HttpHeader.CONTENT_TYPE, Collections.singletonList("application/json"));
+
+		try {
+			return MAPPER.writeValueAsBytes(body);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Malformed JSON batch request body", e);
+		}
+	}
+
+	private static String text(JsonNode node, String field) {
+
+		JsonNode value = node.get(field);
+		return value == null || value.isNull() ? null : value.asText();
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataResponse;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * The multipart/mixed batch format. Each part is an application/http
+ * request, a nested multipart/mixed part is a change set. The body is read
+ * as ISO-8859-1 so that part bodies are taken over byte for byte.
+ */
+
+public class MultipartBatchFormat extends BatchFormat {
+
+	private static final String CRLF = "\r\n";
+
+	private final String boundary;
+
+	private final String responseBoundary = "batchresponse_" + UUID.randomUUID();
+
+	public MultipartBatchFormat(String boundary) {
+		this.boundary = boundary;
+	}
+
+	@Override
+	public String getContentType() {
+		return "multipart/mixed; boundary=" + responseBoundary;
+	}
+
+	@Override
+	public List<BatchPart> parse(byte[] body) {
+
+		List<BatchPart> parts = new ArrayList<BatchPart>();
+		int changeSets = 0;
+
+		for (String part : split(new String(body, StandardCharsets.ISO_8859_1), boundary)) {
+
+			Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+			String content = readHeaders(part, headers, true);
+
+			String contentType = first(headers, "content-type");
+			if (contentType != null && contentType.toLowerCase(Locale.ENGLISH).startsWith("multipart/mixed")) {
+
+				String changeSetBoundary = parameter(contentType, "boundary");
+				if (changeSetBoundary == null)
+					throw new IllegalArgumentException("Change set without boundary");
+
+				String group = "changeset" + (++changeSets);
+				for (String request : split(content, changeSetBoundary))
+					parts.add(parseRequest(request, group));
+			} else {
+				parts.add(parseRequest(part, null));
+			}
+		}
+		return parts;
+	}
+
+	@Override
+	public byte[] write(List<BatchPart> parts) throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		int i = 0;
+		while (i < parts.size()) {
+
+			BatchPart part = parts.get(i);
+			write(out, "--" + responseBoundary + CRLF);
+
+			if (!part.isChangeSet()) {
+				writePart(out, part);
+				i++;
+				continue;
+			}
+
+			String changeSetBoundary = "changesetresponse_" + UUID.randomUUID();
+			write(out, "Content-Type: multipart/mixed; boundary=" + changeSetBoundary + CRLF + CRLF);
+
+			int end = i;
+			while (end < parts.size() && Objects.equals(parts.get(end).getAtomicityGroup(), part.getAtomicityGroup())) {
+				write(out, "--" + changeSetBoundary + CRLF);
+				writePart(out, parts.get(end++));
+			}
+			write(out, "--" + changeSetBoundary + "--" + CRLF);
+			i = end;
+		}
+		write(out, "--" + responseBoundary + "--" + CRLF);
+
+		return out.toByteArray();
+	}
+
+	private static BatchPart parseRequest(String part, String group) {
+
+		Map<String, List<String>> partHeaders = new LinkedHashMap<String, List<String>>();
+		String http = readHeaders(part, partHeaders, true);
+
+		int lineEnd = http.indexOf('\n');
+		String requestLine = (lineEnd < 0 ? http : http.substring(0, lineEnd)).trim();
+
+		String[] tokens = requestLine.split(" ");
+		if (tokens.length < 2)
+			throw new IllegalArgumentException("Malformed request line in batch part: " + requestLine);
+
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		String body = lineEnd < 0 ? "" : readHeaders(http.substring(lineEnd + 1), headers, false);
+
+		return new BatchPart(first(partHeaders, "content-id"), group, tokens[0], tokens[1], headers,
+				body.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static void writePart(ByteArrayOutputStream out, BatchPart part) throws IOException {
+
+		ODataResponse response = part.getResponse();
+
+		write(out, "Content-Type: application/http" + CRLF);
+		write(out, "Content-Transfer-Encoding: binary" + CRLF);
+		if (part.getContentId() != null)
+			write(out, "Content-ID: " + part.getContentId() + CRLF);
+		write(out, CRLF);
+
+		HttpStatusCode status = HttpStatusCode.fromStatusCode(response.getStatusCode());
+		write(out, "HTTP/1.1 " + response.getStatusCode() + (status != null ? " " + status.getInfo() : "") + CRLF);
+		for (Map.Entry<String, String> header : response.getHeaders().entrySet())
+			write(out, header.getKey() + ": " + header.getValue() + CRLF);
+		write(out, CRLF);
+
+		out.write(content(response));
+		write(out, CRLF);
+	}
+
+	/*
+	 * Splits a multipart body into its parts, without the delimiter lines.
+	 */
+	private static List<String> split(String text, String boundary) {
+
+		String delimiter = "--" + boundary;
+		List<String> parts = new ArrayList<String>();
+
+		int start = text.startsWith(delimiter) ? 0 : text.indexOf("\n" + delimiter) + 1;
+		if (start == 0 && !text.startsWith(delimiter))
+			throw new IllegalArgumentException("Missing multipart boundary " + boundary);
+
+		while (true) {
+
+			int from = start + delimiter.length();
+			if (text.startsWith("--", from))
+				return parts;
+
+			int lineEnd = text.indexOf('\n', from);
+			int next = lineEnd < 0 ? -1 : text.indexOf("\n" + delimiter, lineEnd);
+			if (next < 0)
+				throw new IllegalArgumentException("Missing close delimiter of multipart boundary " + boundary);
+
+			int end = next > lineEnd && text.charAt(next - 1) == '\r' ? next - 1 : next;
+			parts.add(text.substring(lineEnd + 1, Math.max(end, lineEnd + 1)));
+			start = next + 1;
+		}
+	}
+
+	/*
+	 * Reads the header lines up to the first empty line and returns the text
+	 * after it.
+	 */
+	private static String readHeaders(String text, Map<String, List<String>> headers, boolean lowerCase) {
+
+		int position = 0;
+		while (position < text.length()) {
+
+			int end = text.indexOf('\n', position);
+			if (end < 0)
+				end = text.length();
+
+			String line = text.substring(position, end);
+			if (line.endsWith("\r"))
+				line = line.substring(0, line.length() - 1);
+			position = Math.min(end + 1, text.length());
+
+			if (line.isEmpty())
+				return text.substring(position);
+
+			int separator = line.indexOf(':');
+			if (separator <= 0)
+				throw new IllegalArgumentException("Malformed header in batch part: " + line);
+
+			String name = line.substring(0, separator).trim();
+			headers.computeIfAbsent(lowerCase ? name.toLowerCase(Locale.ENGLISH) : name,
+					key -> new ArrayList<String>()).add(line.substring(separator + 1).trim());
+		}
+		return "";
+	}
+
+	private static String first(Map<String, List<String>> headers, String name) {
+
+		List<String> values = headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	private static void write(ByteArrayOutputStream out, String text) throws IOException {
+		out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+	}
+}
@@ -21,7 +21,6 @@ package org.xylia.microservices.odata.framework.edm;
 import java.util.ArrayList;
 
 import java.util.List;
-import java.util.Map;
 
 import org.apache.olingo.commons.api.ODataException;
 import org.apache.olingo.commons.api.edm.FullQualifiedName;
@@ -32,9 +31,9 @@ import org.apache.olingo.server.api.edm.provider.EntitySet;
 import org.apache.olingo.server.api.edm.provider.EntityType;
 import org.apache.olingo.server.api.edm.provider.Schema;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistry;
 
 /*
  * @author Rajesh Iyer
@@ -44,7 +43,7 @@ import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
 public class GenericEdmProvider extends EdmProvider {
 
 	@Autowired
-	private ApplicationContext ctx;
+	private EntityProviderRegistry entityProviderRegistry;
 
 	// Service Namespace
 	public static final String NAMESPACE = "com.unum.microservices.odata.producer.entities";
@@ -61,17 +60,8 @@ public class GenericEdmProvider extends EdmProvider {
 		Schema schema = new Schema();
 		schema.setNamespace(NAMESPACE);
 
-		Map<String, EntityProvider> entityProviders = ctx
-				.getBeansOfType(EntityProvider.class);
-
 		// add EntityTypes
-		List<EntityType> entityTypes = new ArrayList<EntityType>();
-		for (String entity : entityProviders.keySet()) {
-
-			EntityProvider entityProvider = entityProviders.get(entity);
-			entityTypes.add(entityProvider.getEntityType());
-
-		}
+		List<EntityType> entityTypes = new ArrayList<EntityType>(entityProviderRegistry.getEntityTypes());
 
 		schema.setEntityTypes(entityTypes);
 
@@ -89,21 +79,13 @@ public class GenericEdmProvider extends EdmProvider {
 	public EntityType getEntityType(FullQualifiedName entityTypeName)
 			throws ODataException {
 
-		EntityType result = null;
-		Map<String, EntityProvider> entityProviders = ctx
-				.getBeansOfType(EntityProvider.class);
-
-		for (String entity : entityProviders.keySet()) {
+		EntityProvider entityProvider = entityProviderRegistry
+				.getByFullQualifiedName(entityTypeName);
 
-			EntityProvider entityProvider = entityProviders.get(entity);
-			EntityType entityType = entityProvider.getEntityType();
-			if (entityType.getName().equals(entityTypeName.getName())) {
-				result = entityType;
-				break;
-			}
+		if (entityProvider != null)
+			return entityProviderRegistry.getEntityType(entityProvider);
 
-		}
-		return result;
+		return entityProviderRegistry.getEntityType(entityTypeName.getName());
 
 	}
 
@@ -112,20 +94,13 @@ public class GenericEdmProvider extends EdmProvider {
 			String entitySetName) throws ODataException {
 
 		EntitySet result = null;
-		Map<String, EntityProvider> entityProviders = ctx
-				.getBeansOfType(EntityProvider.class);
-
-		for (String entity : entityProviders.keySet()) {
-
-			EntityProvider entityProvider = entityProviders.get(entity);
-			EntityType entityType = entityProvider.getEntityType();
-			if (entityProvider.getEntitySetName().equals(entitySetName)) {
-				result = new EntitySet();
-				result.setName(entityProvider.getEntitySetName());
-				result.setType(entityProvider.getFullyQualifiedName());
-				break;
-			}
+		EntityProvider entityProvider = entityProviderRegistry
+				.getByEntitySetName(entitySetName);
 
+		if (entityProvider != null) {
+			result = new EntitySet();
+			result.setName(entityProvider.getEntitySetName());
+			result.setType(entityProvider.getFullyQualifiedName());
 		}
 		return result;
 
@@ -144,11 +119,8 @@ public class GenericEdmProvider extends EdmProvider {
 		// create EntitySets
 		List<EntitySet> entitySets = new ArrayList<EntitySet>();
 		
-		Map<String, EntityProvider> entityProviders = ctx
-				.getBeansOfType(EntityProvider.class);
-
-		for (String entity : entityProviders.keySet()) {
-			EntityProvider entityProvider = entityProviders.get(entity);
+		for (EntityProvider entityProvider : entityProviderRegistry
+				.getEntityProviders()) {
 			entitySets.add(getEntitySet(CONTAINER, entityProvider.getEntitySetName()));
 		}
 		
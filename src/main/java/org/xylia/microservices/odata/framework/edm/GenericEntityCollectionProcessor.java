@@ -18,9 +18,13 @@
  */
 package org.xylia.microservices.odata.framework.edm;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 
 import org.apache.olingo.commons.api.data.ContextURL;
 import org.apache.olingo.commons.api.data.EntitySet;
@@ -35,7 +39,7 @@ import org.apache.olingo.server.api.ODataApplicationException;
 import org.apache.olingo.server.api.ODataRequest;
 import org.apache.olingo.server.api.ODataResponse;
 import org.apache.olingo.server.api.ServiceMetadata;
-import org.apache.olingo.server.api.processor.EntityCollectionProcessor;
+import org.apache.olingo.server.api.processor.CountEntityCollectionProcessor;
 import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
 import org.apache.olingo.server.api.serializer.ODataSerializer;
 import org.apache.olingo.server.api.serializer.SerializerException;
@@ -46,9 +50,17 @@ import org.apache.olingo.server.api.uri.queryoption.SelectOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.xylia.microservices.odata.framework.edm.paging.PageRequest;
 import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistry;
+import org.xylia.microservices.odata.framework.edm.serializer.DirectJsonSerializer;
+import org.xylia.microservices.odata.framework.util.EntityTag;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics.Phase;
+import org.xylia.microservices.odata.framework.util.StreamingEntitySet;
+import org.xylia.microservices.odata.framework.util.TaggedEntitySet;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -56,10 +68,10 @@ import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
  * @author Rajesh Iyer
  */
 @Component
-public class GenericEntityCollectionProcessor implements EntityCollectionProcessor {
+public class GenericEntityCollectionProcessor implements CountEntityCollectionProcessor {
 
 	@Autowired
-	private ApplicationContext ctx;
+	private EntityProviderRegistry entityProviderRegistry;
 
 	/** The odata. */
 	private OData odata;
@@ -87,6 +99,7 @@ public class GenericEntityCollectionProcessor implements EntityCollectionProcess
 	 * org.apache.olingo.server.api.uri.UriInfo,
 	 * org.apache.olingo.commons.api.format.ContentType)
 	 */
+	@Transactional(readOnly = true)
 	public void readEntityCollection(ODataRequest request, ODataResponse response, UriInfo uriInfo,
 			ContentType responseFormat) throws ODataApplicationException, SerializerException {
 
@@ -99,12 +112,25 @@ public class GenericEntityCollectionProcessor implements EntityCollectionProcess
 		EntitySet entitySet = null;
 
 		try {
-			entitySet = getData(uriInfo);
+			entitySet = getData(request, response, uriInfo);
 		} catch (IllegalArgumentException | IllegalAccessException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 
+		/* streamed rows are counted as they are read */
+		if (entitySet != null && !(entitySet instanceof StreamingEntitySet))
+			PipelineMetrics.rows(entitySet.getEntities().size());
+
+		/* a materialized page carries its entity tag, a matching If-None-Match skips serializing it */
+		EntityProvider entityProvider = entityProviderRegistry.getByEntitySetName(edmEntitySet.getName());
+		String eTag = entitySet instanceof TaggedEntitySet ? ((TaggedEntitySet) entitySet).getETag() : null;
+		if (EntityTag.notModified(request, response, eTag,
+				entityProvider != null ? entityProvider.getCacheControl() : null)) {
+			close(entitySet);
+			return;
+		}
+
 		// 3rd: create a serializer based on the requested format (json)
 		ODataFormat format = ODataFormat.fromContentType(responseFormat);
 		ODataSerializer serializer = odata.createSerializer(format);
@@ -115,8 +141,24 @@ public class GenericEntityCollectionProcessor implements EntityCollectionProcess
 		ContextURL contextUrl = ContextURL.with().entitySet(edmEntitySet).build();
 
 		EntityCollectionSerializerOptions opts = EntityCollectionSerializerOptions.with().contextURL(contextUrl)
-				.select(selectOption).build();
-		InputStream serializedContent = serializer.entityCollection(edmEntityType, entitySet, opts);
+				.select(selectOption).count(uriInfo.getCountOption()).build();
+		InputStream serializedContent;
+		if (entitySet instanceof StreamingEntitySet && ((StreamingEntitySet<?>) entitySet).hasColumns()
+				&& DirectJsonSerializer.supports(format)) {
+
+			/* written from the rows while the response is sent, the content closes the entity set */
+			serializedContent = new DirectJsonSerializer(format).entityCollection(edmEntityType,
+					(StreamingEntitySet<?>) entitySet, opts);
+		} else {
+			long start = PipelineMetrics.start();
+			try {
+				serializedContent = serializer.entityCollection(edmEntityType, entitySet, opts);
+				PipelineMetrics.record(Phase.SERIALIZE, start);
+			} finally {
+				/* streamed entity sets hold an open cursor until they are closed */
+				close(entitySet);
+			}
+		}
 
 		// Finally: configure the response object: set the body, headers and
 		// status code
@@ -125,16 +167,59 @@ public class GenericEntityCollectionProcessor implements EntityCollectionProcess
 		response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.olingo.server.api.processor.CountEntityCollectionProcessor#
+	 * countEntityCollection(org.apache.olingo.server.api.ODataRequest,
+	 * org.apache.olingo.server.api.ODataResponse,
+	 * org.apache.olingo.server.api.uri.UriInfo)
+	 */
+	public void countEntityCollection(ODataRequest request, ODataResponse response, UriInfo uriInfo)
+			throws ODataApplicationException, SerializerException {
+
+		List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
+		UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) resourcePaths.get(0);
+		EdmEntitySet edmEntitySet = uriResourceEntitySet.getEntitySet();
+
+		long start = PipelineMetrics.parsed();
+		EntityProvider entityProvider = entityProviderRegistry.getByEntitySetName(edmEntitySet.getName());
+		PipelineMetrics.record(Phase.LOOKUP, start);
+
+		if (entityProvider == null)
+			throw new ODataApplicationException("Entity set " + edmEntitySet.getName() + " not found.",
+					HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ENGLISH);
+
+		/* /$count is answered by the count query alone, no entity is fetched */
+		byte[] count = String.valueOf(entityProvider.getCount(uriInfo)).getBytes(StandardCharsets.UTF_8);
+
+		response.setContent(new ByteArrayInputStream(count));
+		response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+		response.setHeader(HttpHeader.CONTENT_TYPE, ContentType.TEXT_PLAIN.toContentTypeString());
+	}
+
+	private void close(EntitySet entitySet) {
+
+		if (entitySet instanceof Closeable) {
+			try {
+				((Closeable) entitySet).close();
+			} catch (IOException e) {
+				logger.debug(e.getLocalizedMessage());
+			}
+		}
+	}
+
 	/**
 	 * Helper method for providing some sample data.
 	 *
 	 * @param edmEntitySet
 	 *            for which the data is requested
-	 * @return data of requested entity set
+	 * @return data of requested entity set, one page at a time
 	 * @throws IllegalAccessException
 	 * @throws IllegalArgumentException
 	 */
-	private EntitySet getData(UriInfo uriInfo) throws IllegalArgumentException, IllegalAccessException {
+	private EntitySet getData(ODataRequest request, ODataResponse response, UriInfo uriInfo)
+			throws IllegalArgumentException, IllegalAccessException, ODataApplicationException {
 
 		List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
 		UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) resourcePaths.get(0); 
@@ -142,20 +227,21 @@ public class GenericEntityCollectionProcessor implements EntityCollectionProcess
 
 		EntitySet entitySet = null;
 
-		/** Get the client EntityProvider beans to process the entities - and process the getEntityType and getEntitySet methods **/
-		Map<String, EntityProvider> entityProviders = ctx.getBeansOfType(EntityProvider.class);
+		/** Resolve the client EntityProvider bean for the requested entity set through the registry **/
+		long start = PipelineMetrics.parsed();
+		EntityProvider entityProvider = entityProviderRegistry.getByEntitySetName(edmEntitySet.getName());
+		PipelineMetrics.record(Phase.LOOKUP, start);
 
-		for (String entity : entityProviders.keySet()) {
+		if (entityProvider != null) {
 
-			EntityProvider entityProvider = entityProviders.get(entity);
+			PageRequest pageRequest = PageRequest.of(request, uriInfo, entityProvider.getMaxPageSize());
+			entitySet = entityProvider.getEntitySet(uriInfo, pageRequest);
 
-			if (entityProvider.getEntityType().getName()
-
-					.equals(edmEntitySet.getEntityType().getName())) {
-				entitySet = entityProvider.getEntitySet(uriInfo);
-				break;
-			}
+			if (pageRequest.isPreferenceApplied())
+				response.setHeader(PageRequest.PREFERENCE_APPLIED,
+						PageRequest.MAX_PAGE_SIZE_PREFERENCE + "=" + pageRequest.getPageSize());
 		}
+
 		return entitySet;
 	}
 
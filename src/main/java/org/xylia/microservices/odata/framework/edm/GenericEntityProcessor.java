@@ -18,19 +18,23 @@
  */
 package org.xylia.microservices.odata.framework.edm;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 import org.apache.olingo.commons.api.data.ContextURL;
+import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.EntitySet;
+import org.apache.olingo.commons.api.data.Property;
 import org.apache.olingo.commons.api.edm.EdmEntitySet;
 import org.apache.olingo.commons.api.edm.EdmEntityType;
 import org.apache.olingo.commons.api.format.ContentType;
 import org.apache.olingo.commons.api.format.ODataFormat;
 import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
 import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.commons.core.data.EntitySetImpl;
 import org.apache.olingo.server.api.OData;
 import org.apache.olingo.server.api.ODataApplicationException;
 import org.apache.olingo.server.api.ODataRequest;
@@ -44,12 +48,18 @@ import org.apache.olingo.server.api.serializer.SerializerException;
 import org.apache.olingo.server.api.uri.UriInfo;
 import org.apache.olingo.server.api.uri.UriResource;
 import org.apache.olingo.server.api.uri.UriResourceEntitySet;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistry;
+import org.xylia.microservices.odata.framework.util.EntityPayload;
+import org.xylia.microservices.odata.framework.util.EntityTag;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics.Phase;
 
 /**
  * @author Rajesh Iyer 
@@ -59,7 +69,7 @@ import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
 public class GenericEntityProcessor implements EntityProcessor {
 
 	@Autowired
-	private ApplicationContext ctx;
+	private EntityProviderRegistry entityProviderRegistry;
 
 	private OData odata;
 
@@ -88,7 +98,23 @@ public class GenericEntityProcessor implements EntityProcessor {
 		UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) resourcePaths.get(0);
 		EdmEntitySet edmEntitySet = uriResourceEntitySet.getEntitySet();
 
-		EntitySet entitySet = getEntity(uriInfo);
+		EntityProvider entityProvider = getEntityProvider(edmEntitySet);
+		EntitySet entitySet = getEntity(entityProvider, uriInfo);
+		PipelineMetrics.rows(entitySet.getEntities().size());
+
+		/* the entity tag is known before serializing, a matching If-None-Match skips it */
+		String eTag = !entitySet.getEntities().isEmpty() ? entitySet.getEntities().get(0).getETag() : null;
+		if (EntityTag.notModified(request, response, eTag, entityProvider.getCacheControl()))
+			return;
+
+		/* a $select read carries the selected properties only */
+		response.setContent(serialize(edmEntitySet, entitySet, uriInfo.getSelectOption(), responseFormat));
+		response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+		response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
+	}
+
+	private InputStream serialize(EdmEntitySet edmEntitySet, EntitySet entitySet, SelectOption selectOption,
+			ContentType responseFormat) throws SerializerException {
 
 		ODataFormat format = ODataFormat.fromContentType(responseFormat);
 		ODataSerializer serializer = odata.createSerializer(format);
@@ -97,64 +123,143 @@ public class GenericEntityProcessor implements EntityProcessor {
 		ContextURL contextUrl = ContextURL.with().entitySet(edmEntitySet).build();
 
 		EntityCollectionSerializerOptions opts = EntityCollectionSerializerOptions.with().contextURL(contextUrl)
-				.build();
-		InputStream serializedContent = serializer.entityCollection(edmEntityType, entitySet, opts);
+				.select(selectOption).build();
 
-		response.setContent(serializedContent);
-		response.setStatusCode(HttpStatusCode.OK.getStatusCode());
-		response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
+		long start = PipelineMetrics.start();
+		InputStream serializedContent = serializer.entityCollection(edmEntityType, entitySet, opts);
+		PipelineMetrics.record(Phase.SERIALIZE, start);
+		return serializedContent;
 	}
 
-	private EntitySet getEntity(UriInfo uriInfo) {
+	/*
+	 * Reads the entity addressed by the request. A key that does not parse
+	 * as the key property is answered with a 400, an entity class that
+	 * cannot be read with a 500.
+	 */
+	private EntitySet getEntity(EntityProvider entityProvider, UriInfo uriInfo) throws ODataApplicationException {
 
-		List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
-		UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) resourcePaths.get(0);
+		try {
+			return entityProvider.getEntity(uriInfo);
+		} catch (IllegalArgumentException e) {
+			logger.debug("Invalid entity key: " + e.getLocalizedMessage());
+			throw new ODataApplicationException("Invalid entity key: " + e.getLocalizedMessage(),
+					HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+		} catch (IllegalAccessException e) {
+			logger.error("Entity of " + entityProvider.getEntitySetName() + " could not be read", e);
+			throw new ODataApplicationException("Entity could not be read.",
+					HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+		}
+	}
 
-		EdmEntitySet edmEntitySet = uriResourceEntitySet.getEntitySet();
+	/*
+	 * Creates the entity of the request body, or all entities of a bulk
+	 * write whose body is a collection. The entities of a bulk write, like
+	 * those of a change set, are inserted through JDBC batches.
+	 */
+	@Override
+	@Transactional(rollbackFor = ODataApplicationException.class)
+	public void createEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType requestFormat,
+			ContentType responseFormat) throws ODataApplicationException, DeserializerException, SerializerException {
+
+		EdmEntitySet edmEntitySet = getEdmEntitySet(uriInfo);
+		EntityProvider entityProvider = getEntityProvider(edmEntitySet);
 
-		EntitySet entitySet = null;
+		EntityPayload payload = readPayload(request, requestFormat);
+		List<Entity> created = entityProvider.createEntities(payload.getRows());
 
-		Map<String, EntityProvider> entityProviders = ctx.getBeansOfType(EntityProvider.class);
+		EntitySet entitySet = new EntitySetImpl();
+		entitySet.getEntities().addAll(created);
 
-		for (String entity : entityProviders.keySet()) {
+		if (!payload.isCollection()) {
 
-			EntityProvider entityProvider = entityProviders.get(entity);
-			if (entityProvider.getEntityType().getName()
+			Entity entity = created.get(0);
+			if (entity.getETag() != null)
+				response.setHeader(HttpHeader.ETAG, entity.getETag());
 
-					.equals(edmEntitySet.getEntityType().getName())) {
-				try {
-					entitySet = entityProvider.getEntity(uriInfo);
-				} catch (IllegalArgumentException | IllegalAccessException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-				break;
-			}
+			String location = location(request, edmEntitySet, entity);
+			if (location != null)
+				response.setHeader(HttpHeader.LOCATION, location);
 		}
-		return entitySet;
+
+		response.setContent(serialize(edmEntitySet, entitySet, null, responseFormat));
+		response.setStatusCode(HttpStatusCode.CREATED.getStatusCode());
+		response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
 	}
 
 	@Override
-	public void createEntity(ODataRequest arg0, ODataResponse arg1, UriInfo arg2, ContentType arg3, ContentType arg4)
-			throws ODataApplicationException, DeserializerException, SerializerException {
+	@Transactional(rollbackFor = ODataApplicationException.class)
+	public void deleteEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo)
+			throws ODataApplicationException {
 
-		throw new ODataApplicationException("create entity is not supported yet.",
-				HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		getEntityProvider(getEdmEntitySet(uriInfo)).deleteEntity(uriInfo, request.getHeaders(HttpHeader.IF_MATCH));
+		response.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
 	}
 
+	/*
+	 * Updates the entity with the properties of the request body, PATCH
+	 * merges them into the entity and PUT replaces it.
+	 */
 	@Override
-	public void deleteEntity(ODataRequest arg0, ODataResponse arg1, UriInfo arg2) throws ODataApplicationException {
+	@Transactional(rollbackFor = ODataApplicationException.class)
+	public void updateEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType requestFormat,
+			ContentType responseFormat) throws ODataApplicationException, DeserializerException, SerializerException {
+
+		EntityProvider entityProvider = getEntityProvider(getEdmEntitySet(uriInfo));
 
-		throw new ODataApplicationException("delete entity is not supported yet.",
-				HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		EntityPayload payload = readPayload(request, requestFormat);
+		if (payload.isCollection())
+			throw new ODataApplicationException("An update takes a single entity.",
+					HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+
+		entityProvider.updateEntity(uriInfo, payload.getRows().get(0), request.getMethod() == HttpMethod.PUT,
+				request.getHeaders(HttpHeader.IF_MATCH));
+		response.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
 	}
 
-	@Override
-	public void updateEntity(ODataRequest arg0, ODataResponse arg1, UriInfo arg2, ContentType arg3, ContentType arg4)
-			throws ODataApplicationException, DeserializerException, SerializerException {
+	private EdmEntitySet getEdmEntitySet(UriInfo uriInfo) {
+		return ((UriResourceEntitySet) uriInfo.getUriResourceParts().get(0)).getEntitySet();
+	}
+
+	private EntityProvider getEntityProvider(EdmEntitySet edmEntitySet) throws ODataApplicationException {
+
+		long start = PipelineMetrics.parsed();
+		EntityProvider entityProvider = entityProviderRegistry.getByEntitySetName(edmEntitySet.getName());
+		PipelineMetrics.record(Phase.LOOKUP, start);
+		if (entityProvider == null)
+			throw new ODataApplicationException("Entity set " + edmEntitySet.getName() + " not found.",
+					HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ENGLISH);
+		return entityProvider;
+	}
+
+	private EntityPayload readPayload(ODataRequest request, ContentType requestFormat)
+			throws ODataApplicationException {
+
+		if (requestFormat != null
+				&& !requestFormat.toContentTypeString().toLowerCase(Locale.ENGLISH).contains("json"))
+			throw new ODataApplicationException("Only JSON request bodies are supported.",
+					HttpStatusCode.UNSUPPORTED_MEDIA_TYPE.getStatusCode(), Locale.ENGLISH);
+
+		try {
+			return EntityPayload.read(request.getBody());
+		} catch (IllegalArgumentException | IOException e) {
+			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(),
+					Locale.ENGLISH);
+		}
+	}
+
+	/*
+	 * Gets the canonical URL of a created entity, null if its key is not
+	 * known.
+	 */
+	private String location(ODataRequest request, EdmEntitySet edmEntitySet, Entity entity) {
+
+		List<String> keyNames = edmEntitySet.getEntityType().getKeyPredicateNames();
+		Property key = keyNames.isEmpty() ? null : entity.getProperty(keyNames.get(0));
+		if (key == null || key.getValue() == null)
+			return null;
 
-		throw new ODataApplicationException("update entity is not supported yet.",
-				HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		String base = request.getRawBaseUri();
+		return base + (base.endsWith("/") ? "" : "/") + edmEntitySet.getName() + "(" + key.getValue() + ")";
 	}
 
 }
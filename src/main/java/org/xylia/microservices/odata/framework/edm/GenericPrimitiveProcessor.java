@@ -18,18 +18,22 @@
  */
 package org.xylia.microservices.odata.framework.edm;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 import org.apache.olingo.commons.api.data.ContextURL;
-import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.EntitySet;
 import org.apache.olingo.commons.api.data.Property;
 import org.apache.olingo.commons.api.edm.EdmEntitySet;
 import org.apache.olingo.commons.api.edm.EdmEntityType;
 import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
 import org.apache.olingo.commons.api.edm.EdmProperty;
 import org.apache.olingo.commons.api.format.ContentType;
 import org.apache.olingo.commons.api.format.ODataFormat;
@@ -42,6 +46,7 @@ import org.apache.olingo.server.api.ODataResponse;
 import org.apache.olingo.server.api.ServiceMetadata;
 import org.apache.olingo.server.api.deserializer.DeserializerException;
 import org.apache.olingo.server.api.processor.PrimitiveProcessor;
+import org.apache.olingo.server.api.processor.PrimitiveValueProcessor;
 import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
 import org.apache.olingo.server.api.serializer.ODataSerializer;
 import org.apache.olingo.server.api.serializer.PrimitiveSerializerOptions;
@@ -54,19 +59,23 @@ import org.apache.olingo.server.api.uri.UriResourceProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistry;
+import org.xylia.microservices.odata.framework.util.EntityPayload;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics.Phase;
 
 /**
  * @author Rajesh Iyer 
  * Generic PrimitiveProcessor implementation class
  */
 @Component
-public class GenericPrimitiveProcessor implements PrimitiveProcessor {
+public class GenericPrimitiveProcessor implements PrimitiveProcessor, PrimitiveValueProcessor {
 
 	@Autowired
-	private ApplicationContext ctx;
+	private EntityProviderRegistry entityProviderRegistry;
 
 	private OData odata;
 
@@ -102,11 +111,8 @@ public class GenericPrimitiveProcessor implements PrimitiveProcessor {
 
 		logger.debug("The property name being requested:" + edmPropertyName);
 
-		EntitySet entitySet = getEntity(uriInfo);
-		Entity entity = entitySet.getEntities().get(0);
-
-		// 2.2. retrieve the property data from the entity
-		Property property = entity.getProperty(edmPropertyName);
+		// 2.2. retrieve the property data, only its column is read
+		Property property = getProperty(uriInfo, edmPropertyName);
 
 		ODataFormat format = ODataFormat.fromContentType(responseFormat);
 		ODataSerializer serializer = odata.createSerializer(format);
@@ -118,7 +124,9 @@ public class GenericPrimitiveProcessor implements PrimitiveProcessor {
 		PrimitiveSerializerOptions options = PrimitiveSerializerOptions.with().contextURL(contextUrl).build();
 		// 3.2. serialize
 
+		long start = PipelineMetrics.start();
 		InputStream serializedContent = serializer.primitive(edmPropertyType, property, options);
+		PipelineMetrics.record(Phase.SERIALIZE, start);
 
 		// 4. configure the response object
 		response.setContent(serializedContent);
@@ -130,7 +138,51 @@ public class GenericPrimitiveProcessor implements PrimitiveProcessor {
 		response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
 	}
 
-	private EntitySet getEntity(UriInfo uriInfo) {
+	/*
+	 * Writes the raw value of a property for /$value, as text/plain.
+	 */
+	@Override
+	public void readPrimitiveValue(ODataRequest request, ODataResponse response, UriInfo uriInfo,
+			ContentType responseFormat) throws ODataApplicationException, SerializerException {
+
+		List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
+
+		/* the last segment is $value, the property is the one before it */
+		UriResourceProperty uriProperty = null;
+		for (UriResource resourcePath : resourcePaths) {
+			if (resourcePath instanceof UriResourceProperty)
+				uriProperty = (UriResourceProperty) resourcePath;
+		}
+		EdmProperty edmProperty = uriProperty.getProperty();
+		EdmPrimitiveType edmPropertyType = (EdmPrimitiveType) edmProperty.getType();
+
+		Property property = getProperty(uriInfo, edmProperty.getName());
+
+		if (property == null || property.getValue() == null) {
+			response.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
+			return;
+		}
+
+		String value;
+		try {
+			value = edmPropertyType.valueToString(property.getValue(), edmProperty.isNullable(),
+					edmProperty.getMaxLength(), edmProperty.getPrecision(), edmProperty.getScale(),
+					edmProperty.isUnicode());
+		} catch (EdmPrimitiveTypeException e) {
+			throw new ODataApplicationException("Wrong value for property " + edmProperty.getName() + ".",
+					HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+		}
+
+		response.setContent(new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8)));
+		response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+		response.setHeader(HttpHeader.CONTENT_TYPE, ContentType.TEXT_PLAIN.toContentTypeString());
+	}
+
+	/*
+	 * Reads the property of the entity addressed by the request with a
+	 * projection of its column alone.
+	 */
+	private Property getProperty(UriInfo uriInfo, String edmPropertyName) throws ODataApplicationException {
 
 		List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
 		UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) resourcePaths.get(0);
@@ -139,24 +191,24 @@ public class GenericPrimitiveProcessor implements PrimitiveProcessor {
 
 		EntitySet entitySet = null;
 
-		Map<String, EntityProvider> entityProviders = ctx.getBeansOfType(EntityProvider.class);
-
-		for (String entity : entityProviders.keySet()) {
-
-			EntityProvider entityProvider = entityProviders.get(entity);
-			if (entityProvider.getEntityType().getName()
+		long start = PipelineMetrics.parsed();
+		EntityProvider entityProvider = entityProviderRegistry.getByEntitySetName(edmEntitySet.getName());
+		PipelineMetrics.record(Phase.LOOKUP, start);
 
-					.equals(edmEntitySet.getEntityType().getName())) {
-				try {
-					entitySet = entityProvider.getEntity(uriInfo);
-				} catch (IllegalArgumentException | IllegalAccessException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-				break;
+		if (entityProvider != null) {
+			try {
+				entitySet = entityProvider.getEntity(uriInfo, new String[] { edmPropertyName });
+			} catch (IllegalArgumentException | IllegalAccessException e) {
+				logger.debug(e.getLocalizedMessage());
 			}
 		}
-		return entitySet;
+
+		if (entitySet == null || entitySet.getEntities().isEmpty())
+			throw new ODataApplicationException("Entity not found.", HttpStatusCode.NOT_FOUND.getStatusCode(),
+					Locale.ENGLISH);
+
+		PipelineMetrics.rows(1);
+		return entitySet.getEntities().get(0).getProperty(edmPropertyName);
 	}
 
 	@Override
@@ -166,12 +218,48 @@ public class GenericPrimitiveProcessor implements PrimitiveProcessor {
 				HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
 	}
 
+	/*
+	 * Updates a single property of an entity from a {"value": ...} request
+	 * body.
+	 */
 	@Override
-	public void updatePrimitive(ODataRequest arg0, ODataResponse arg1, UriInfo arg2, ContentType arg3, ContentType arg4)
+	@Transactional(rollbackFor = ODataApplicationException.class)
+	public void updatePrimitive(ODataRequest request, ODataResponse response, UriInfo uriInfo,
+			ContentType requestFormat, ContentType responseFormat)
 			throws ODataApplicationException, DeserializerException, SerializerException {
 
-		throw new ODataApplicationException("Primitive property update is not supported yet.",
-				HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
+		UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) resourcePaths.get(0);
+		EdmEntitySet edmEntitySet = uriResourceEntitySet.getEntitySet();
+
+		UriResourceProperty uriProperty = (UriResourceProperty) resourcePaths.get(resourcePaths.size() - 1);
+		String edmPropertyName = uriProperty.getProperty().getName();
+
+		EntityProvider entityProvider = entityProviderRegistry.getByEntitySetName(edmEntitySet.getName());
+		if (entityProvider == null)
+			throw new ODataApplicationException("Entity set " + edmEntitySet.getName() + " not found.",
+					HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ENGLISH);
+
+		if (requestFormat != null
+				&& !requestFormat.toContentTypeString().toLowerCase(Locale.ENGLISH).contains("json"))
+			throw new ODataApplicationException("Only JSON request bodies are supported.",
+					HttpStatusCode.UNSUPPORTED_MEDIA_TYPE.getStatusCode(), Locale.ENGLISH);
+
+		Map<String, Object> values;
+		try {
+			EntityPayload payload = EntityPayload.read(request.getBody());
+			Map<String, Object> row = payload.getRows().get(0);
+			if (payload.isCollection() || !row.containsKey("value"))
+				throw new IllegalArgumentException("A property update takes a single value.");
+
+			values = Collections.singletonMap(edmPropertyName, row.get("value"));
+		} catch (IllegalArgumentException | IOException e) {
+			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(),
+					Locale.ENGLISH);
+		}
+
+		entityProvider.updateEntity(uriInfo, values, false, request.getHeaders(HttpHeader.IF_MATCH));
+		response.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
 	}
 
 }
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.edm.provider.EdmProvider;
+import org.apache.olingo.server.api.edmx.EdmxReference;
+import org.apache.olingo.server.api.processor.Processor;
+import org.apache.olingo.server.core.ODataHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistry;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistryRefreshedEvent;
+
+/**
+ * @author Rajesh Iyer
+ *
+ * Holds the OData instance and the ServiceMetadata built from the
+ * GenericEdmProvider. Both are built once per EntityProviderRegistry version
+ * and swapped atomically whenever the registry is refreshed, so that requests
+ * never rebuild the EDM.
+ */
+@Component
+public class ServiceMetadataHolder implements ApplicationListener<EntityProviderRegistryRefreshedEvent> {
+
+	private static final Logger logger = LoggerFactory.getLogger(ServiceMetadataHolder.class);
+
+	@Autowired
+	private EntityProviderRegistry entityProviderRegistry;
+
+	@Autowired
+	private EdmProvider edmProvider;
+
+	private final AtomicReference<Snapshot> current = new AtomicReference<Snapshot>();
+
+	@Override
+	public void onApplicationEvent(EntityProviderRegistryRefreshedEvent event) {
+		refresh();
+	}
+
+	/**
+	 * Rebuilds the service metadata if the registry has changed since the last
+	 * build.
+	 */
+	public synchronized void refresh() {
+
+		long version = entityProviderRegistry.getVersion();
+
+		Snapshot snapshot = current.get();
+		if (snapshot != null && snapshot.version == version)
+			return;
+
+		current.set(build(version));
+	}
+
+	/**
+	 * Gets the registry version the current service metadata was built from.
+	 */
+	public long getVersion() {
+		return snapshot().version;
+	}
+
+	/**
+	 * Creates a handler bound to the shared OData and ServiceMetadata
+	 * instances. The ODataHandler keeps per request state (the parsed UriInfo),
+	 * so it is not shared between requests, but creating one is only a matter
+	 * of registering the processors.
+	 */
+	public ODataHandler createHandler(Processor... processors) {
+
+		Snapshot snapshot = current.get();
+		if (snapshot == null) {
+			refresh();
+			snapshot = current.get();
+		}
+
+		ODataHandler handler = new ODataHandler(snapshot.odata, snapshot.serviceMetadata);
+		for (Processor processor : processors) {
+			handler.register(processor);
+		}
+		return handler;
+	}
+
+	public OData getOData() {
+		return snapshot().odata;
+	}
+
+	public ServiceMetadata getServiceMetadata() {
+		return snapshot().serviceMetadata;
+	}
+
+	private Snapshot snapshot() {
+
+		Snapshot snapshot = current.get();
+		if (snapshot == null) {
+			refresh();
+			snapshot = current.get();
+		}
+		return snapshot;
+	}
+
+	private Snapshot build(long version) {
+
+		long start = System.nanoTime();
+
+		OData odata = OData.newInstance();
+		ServiceMetadata serviceMetadata = odata.createServiceMetadata(edmProvider, new ArrayList<EdmxReference>());
+
+		/* load the complete EDM up front so the lazy Edm caches are warm */
+		serviceMetadata.getEdm().getSchemas();
+
+		logger.debug("Built service metadata for registry version " + version + " in "
+				+ (System.nanoTime() - start) / 1000000 + "ms");
+
+		return new Snapshot(odata, serviceMetadata, version);
+	}
+
+	private static final class Snapshot {
+
+		private final OData odata;
+
+		private final ServiceMetadata serviceMetadata;
+
+		private final long version;
+
+		private Snapshot(OData odata, ServiceMetadata serviceMetadata, long version) {
+			this.odata = odata;
+			this.serviceMetadata = serviceMetadata;
+			this.version = version;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.descriptor;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.xylia.microservices.odata.framework.edm.types.ColumnFacets;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * A mapped field of an entity in a generated EntityDescriptor: its name,
+ * type, JPA role and @Column facets, read and written through accessors
+ * compiled against the entity class.
+ */
+
+public final class EntityColumn {
+
+	/* the field has a @Column and is a property of the entity type */
+	public static final int COLUMN = 1;
+
+	public static final int ID = 2;
+
+	public static final int GENERATED_ID = 4;
+
+	public static final int VERSION = 8;
+
+	/* the column holds no NULL: the @Id, a primitive or a non nullable @Column */
+	public static final int NOT_NULL = 16;
+
+	private final String name;
+
+	private final Class<?> type;
+
+	private final int flags;
+
+	private final ColumnFacets facets;
+
+	private final Function<Object, Object> getter;
+
+	private final BiConsumer<Object, Object> setter;
+
+	public EntityColumn(String name, Class<?> type, int flags, ColumnFacets facets, Function<Object, Object> getter,
+			BiConsumer<Object, Object> setter) {
+		this.name = name;
+		this.type = type;
+		this.flags = flags;
+		this.facets = facets;
+		this.getter = getter;
+		this.setter = setter;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Class<?> getType() {
+		return type;
+	}
+
+	public boolean isColumn() {
+		return (flags & COLUMN) != 0;
+	}
+
+	public boolean isId() {
+		return (flags & ID) != 0;
+	}
+
+	public boolean isGeneratedId() {
+		return (flags & GENERATED_ID) != 0;
+	}
+
+	public boolean isVersion() {
+		return (flags & VERSION) != 0;
+	}
+
+	public boolean isNullable() {
+		return (flags & NOT_NULL) == 0;
+	}
+
+	public ColumnFacets getFacets() {
+		return facets;
+	}
+
+	public Function<Object, Object> getGetter() {
+		return getter;
+	}
+
+	/*
+	 * Gets the setter of the field, null if the entity class has no
+	 * accessible one.
+	 */
+	public BiConsumer<Object, Object> getSetter() {
+		return setter;
+	}
+}
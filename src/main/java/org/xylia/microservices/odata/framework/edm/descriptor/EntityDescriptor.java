@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.descriptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.olingo.server.api.edm.provider.Property;
+import org.xylia.microservices.odata.framework.edm.types.PropertyCodecs;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Compile time description of an @Entity class, generated by the
+ * EntityDescriptorProcessor for the classes marked with @ODataEntity. It
+ * holds what is otherwise found by reflection over the fields of the class:
+ * the entity set and type names, the mapped fields in declaration order and
+ * their accessors. Generated descriptors are listed as services of this
+ * class and loaded through EntityDescriptors.
+ */
+
+public abstract class EntityDescriptor {
+
+	private final Class<?> entityClass;
+
+	private final String entitySetName;
+
+	private final String entityName;
+
+	private final boolean registered;
+
+	private final Supplier<Object> factory;
+
+	private final List<EntityColumn> columns;
+
+	protected EntityDescriptor(Class<?> entityClass, String entitySetName, String entityName, boolean registered,
+			Supplier<Object> factory, EntityColumn... columns) {
+		this.entityClass = entityClass;
+		this.entitySetName = entitySetName;
+		this.entityName = entityName;
+		this.registered = registered;
+		this.factory = factory;
+		this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	public String getEntitySetName() {
+		return entitySetName;
+	}
+
+	public String getEntityName() {
+		return entityName;
+	}
+
+	/*
+	 * Checks whether the entity is served by a DescriptorEntityProvider.
+	 */
+	public boolean isRegistered() {
+		return registered;
+	}
+
+	/*
+	 * Gets the factory of new entities, null if the class has no accessible
+	 * no-arg constructor.
+	 */
+	public Supplier<Object> getFactory() {
+		return factory;
+	}
+
+	/*
+	 * Gets the @Id, @Version and @Column fields in declaration order.
+	 */
+	public List<EntityColumn> getColumns() {
+		return columns;
+	}
+
+	/*
+	 * Gets the @Id field, null if the class has none.
+	 */
+	public EntityColumn getId() {
+
+		for (EntityColumn column : columns) {
+			if (column.isId())
+				return column;
+		}
+		return null;
+	}
+
+	/*
+	 * Creates the EDM properties of the @Column fields.
+	 */
+	public List<Property> getProperties() {
+
+		List<Property> properties = new ArrayList<Property>();
+		for (EntityColumn column : columns) {
+			if (column.isColumn())
+				properties.add(PropertyCodecs.shared().property(column.getName(), column.getType(),
+						column.getFacets()));
+		}
+		return properties;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + entityClass.getName() + "]";
+	}
+}
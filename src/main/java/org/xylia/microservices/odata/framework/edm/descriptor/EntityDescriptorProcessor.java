@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.descriptor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.persistence.Column;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Version;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Generates an EntityDescriptor for every class marked with @ODataEntity,
+ * named after the class with an _EntityDescriptor suffix, and lists the
+ * descriptors as services of EntityDescriptor. The accessors of a column
+ * are compiled lambdas over its field when the field is not private,
+ * otherwise over its getter and setter. A class with a column that has
+ * neither an accessible field nor a getter gets no descriptor, with a
+ * warning, and is mapped by reflection at runtime.
+ *
+ * The processor is found through its service entry on the compile class
+ * path of the applications that depend on the framework.
+ */
+
+@SupportedAnnotationTypes("org.xylia.microservices.odata.framework.edm.descriptor.ODataEntity")
+public class EntityDescriptorProcessor extends AbstractProcessor {
+
+	static final String SERVICES = "META-INF/services/" + EntityDescriptor.class.getName();
+
+	private static final String SUFFIX = "_EntityDescriptor";
+
+	private final Set<String> descriptors = new TreeSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+
+		for (Element element : roundEnv.getElementsAnnotatedWith(ODataEntity.class)) {
+
+			if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)
+					|| element.getModifiers().contains(Modifier.PRIVATE)
+					|| (((TypeElement) element).getNestingKind() == NestingKind.MEMBER
+							&& !element.getModifiers().contains(Modifier.STATIC))) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"@ODataEntity must be placed on a concrete top level or static nested class", element);
+				continue;
+			}
+
+			try {
+				String descriptor = generate((TypeElement) element);
+				if (descriptor != null)
+					descriptors.add(descriptor);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Unable to generate the entity descriptor: " + e.getLocalizedMessage(), element);
+			}
+		}
+
+		if (roundEnv.processingOver() && !descriptors.isEmpty())
+			writeServices();
+
+		return true;
+	}
+
+	/*
+	 * Writes the descriptor of the entity class, returns its name or null if
+	 * the class cannot be described.
+	 */
+	private String generate(TypeElement entity) throws IOException {
+
+		ODataEntity annotation = entity.getAnnotation(ODataEntity.class);
+		String packageName = processingEnv.getElementUtils().getPackageOf(entity).getQualifiedName().toString();
+		String entityType = entity.getQualifiedName().toString();
+		String simpleName = entity.getSimpleName().toString();
+
+		List<String> columns = new ArrayList<String>();
+		List<ExecutableElement> methods = ElementFilter.methodsIn(entity.getEnclosedElements());
+
+		for (VariableElement field : ElementFilter.fieldsIn(entity.getEnclosedElements())) {
+
+			boolean id = field.getAnnotation(Id.class) != null;
+			boolean version = field.getAnnotation(Version.class) != null;
+			Column column = field.getAnnotation(Column.class);
+
+			if (field.getModifiers().contains(Modifier.STATIC) || (!id && !version && column == null))
+				continue;
+
+			String name = field.getSimpleName().toString();
+			TypeMirror type = processingEnv.getTypeUtils().erasure(field.asType());
+			String cast = cast(type);
+			boolean fieldAccess = !field.getModifiers().contains(Modifier.PRIVATE);
+
+			String getter = fieldAccess ? name : getter(methods, name, type);
+			if (getter == null) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+						"No accessible field or getter for " + name + ", " + simpleName
+								+ " is mapped by reflection",
+						field);
+				return null;
+			}
+
+			String setter = fieldAccess && !field.getModifiers().contains(Modifier.FINAL) ? name + " = "
+					: setter(methods, name, type);
+
+			StringBuilder flags = new StringBuilder();
+			flag(flags, column != null, "COLUMN");
+			flag(flags, id, "ID");
+			flag(flags, id && field.getAnnotation(GeneratedValue.class) != null, "GENERATED_ID");
+			flag(flags, version, "VERSION");
+			flag(flags, id || type.getKind().isPrimitive() || (column != null && !column.nullable()), "NOT_NULL");
+			if (flags.length() == 0)
+				flags.append('0');
+
+			columns.add("new EntityColumn(" + literal(name) + ", " + type + ".class, " + flags + ", "
+					+ (column == null ? "ColumnFacets.DEFAULT"
+							: "new ColumnFacets(" + column.length() + ", " + column.precision() + ", "
+									+ column.scale() + ", " + literal(column.columnDefinition()) + ")")
+					+ ",\n\t\t\t\trow -> ((" + entityType + ") row)." + getter + ",\n\t\t\t\t"
+					+ (setter == null ? "null"
+							: "(row, value) -> ((" + entityType + ") row)." + setter
+									+ (setter.endsWith("= ") ? "(" + cast + ") value" : "((" + cast + ") value)"))
+					+ ")");
+		}
+
+		String descriptorName = binaryName(entity).replace('$', '_') + SUFFIX;
+		String descriptorSimpleName = descriptorName.substring(descriptorName.lastIndexOf('.') + 1);
+
+		String entitySetName = annotation.entitySetName().isEmpty() ? simpleName : annotation.entitySetName();
+		String entityName = annotation.entityName().isEmpty() ? simpleName : annotation.entityName();
+
+		JavaFileObject source = processingEnv.getFiler().createSourceFile(descriptorName, entity);
+		try (PrintWriter out = new PrintWriter(source.openWriter())) {
+
+			if (!packageName.isEmpty())
+				out.println("package " + packageName + ";");
+			out.println();
+			out.println("import javax.annotation.Generated;");
+			out.println();
+			out.println("import " + EntityColumn.class.getName() + ";");
+			out.println("import " + EntityDescriptor.class.getName() + ";");
+			out.println("import org.xylia.microservices.odata.framework.edm.types.ColumnFacets;");
+			out.println();
+			out.println("@Generated(\"" + getClass().getName() + "\")");
+			out.println("public final class " + descriptorSimpleName + " extends EntityDescriptor {");
+			out.println();
+			out.println("\tpublic " + descriptorSimpleName + "() {");
+			out.print("\t\tsuper(" + entityType + ".class, " + literal(entitySetName) + ", " + literal(entityName)
+					+ ", " + annotation.register() + ", "
+					+ (hasDefaultConstructor(entity) ? entityType + "::new" : "null"));
+			for (String column : columns)
+				out.print(",\n\t\t\t" + column);
+			out.println(");");
+			out.println("\t}");
+			out.println("}");
+		}
+		return descriptorName;
+	}
+
+	/*
+	 * Merges the descriptors of this compilation into the service entries of
+	 * a previous one, so that incremental builds keep them all.
+	 */
+	private void writeServices() {
+
+		Filer filer = processingEnv.getFiler();
+		Set<String> entries = new TreeSet<String>(descriptors);
+
+		try {
+			FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					if (!line.trim().isEmpty() && !line.startsWith("#"))
+						entries.add(line.trim());
+				}
+			}
+		} catch (IOException e) {
+			// no entries of a previous compilation
+		}
+
+		try {
+			FileObject services = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+			try (Writer writer = services.openWriter()) {
+				for (String entry : entries)
+					writer.write(entry + "\n");
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Unable to write " + SERVICES + ": " + e.getLocalizedMessage());
+		}
+		descriptors.clear();
+	}
+
+	private String getter(List<ExecutableElement> methods, String name, TypeMirror type) {
+
+		String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		List<String> candidates = type.getKind() == TypeKind.BOOLEAN ? Arrays.asList("is" + suffix, "get" + suffix)
+				: Collections.singletonList("get" + suffix);
+
+		for (String candidate : candidates) {
+			for (ExecutableElement method : methods) {
+				if (method.getSimpleName().contentEquals(candidate) && method.getParameters().isEmpty()
+						&& accessible(method) && processingEnv.getTypeUtils()
+								.isSameType(processingEnv.getTypeUtils().erasure(method.getReturnType()), type))
+					return candidate + "()";
+			}
+		}
+		return null;
+	}
+
+	private String setter(List<ExecutableElement> methods, String name, TypeMirror type) {
+
+		String candidate = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		for (ExecutableElement method : methods) {
+			if (method.getSimpleName().contentEquals(candidate) && method.getParameters().size() == 1
+					&& accessible(method) && processingEnv.getTypeUtils().isSameType(
+							processingEnv.getTypeUtils().erasure(method.getParameters().get(0).asType()), type))
+				return candidate;
+		}
+		return null;
+	}
+
+	private boolean hasDefaultConstructor(TypeElement entity) {
+
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(entity.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && accessible(constructor))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean accessible(Element element) {
+		return !element.getModifiers().contains(Modifier.PRIVATE);
+	}
+
+	/*
+	 * Gets the type a value is cast to before it is set, the wrapper of a
+	 * primitive type.
+	 */
+	private String cast(TypeMirror type) {
+
+		if (type.getKind().isPrimitive())
+			return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+		return type.toString();
+	}
+
+	private String binaryName(TypeElement entity) {
+
+		StringBuilder name = new StringBuilder(entity.getSimpleName());
+		Element enclosing = entity.getEnclosingElement();
+		while (!(enclosing instanceof PackageElement)) {
+			name.insert(0, enclosing.getSimpleName() + "$");
+			enclosing = enclosing.getEnclosingElement();
+		}
+
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(entity);
+		return packageElement.isUnnamed() ? name.toString() : packageElement.getQualifiedName() + "." + name;
+	}
+
+	private static void flag(StringBuilder flags, boolean set, String flag) {
+
+		if (!set)
+			return;
+		if (flags.length() > 0)
+			flags.append(" | ");
+		flags.append("EntityColumn.").append(flag);
+	}
+
+	private static String literal(String value) {
+
+		StringBuilder literal = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\')
+				literal.append('\\').append(c);
+			else if (c < 0x20)
+				literal.append(String.format("\\u%04x", (int) c));
+			else
+				literal.append(c);
+		}
+		return literal.append('"').toString();
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.descriptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.stereotype.Component;
+import org.xylia.microservices.odata.edm.framework.providers.entity.DescriptorEntityProvider;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Registers a DescriptorEntityProvider bean for every generated descriptor
+ * of a registered @ODataEntity, named after its entity set, so that the
+ * entity is served without a hand written provider. A bean of that name
+ * already defined by the application takes precedence.
+ */
+
+@Component
+public class EntityDescriptorRegistrar implements BeanDefinitionRegistryPostProcessor {
+
+	private static final Logger logger = LoggerFactory.getLogger(EntityDescriptorRegistrar.class);
+
+	@Override
+	public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+
+		int registered = 0;
+		for (EntityDescriptor descriptor : EntityDescriptors.getDescriptors()) {
+
+			String beanName = descriptor.getEntitySetName() + "EntityProvider";
+			if (!descriptor.isRegistered() || registry.containsBeanDefinition(beanName))
+				continue;
+
+			RootBeanDefinition provider = new RootBeanDefinition(DescriptorEntityProvider.class);
+			provider.getConstructorArgumentValues().addIndexedArgumentValue(0, descriptor);
+			registry.registerBeanDefinition(beanName, provider);
+			registered++;
+		}
+
+		logger.debug("Registered " + registered + " entity providers from generated descriptors");
+	}
+
+	@Override
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+	}
+}
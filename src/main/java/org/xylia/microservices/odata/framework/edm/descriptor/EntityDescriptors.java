@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.descriptor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * The generated EntityDescriptors of the class path, loaded once from the
+ * service entries the EntityDescriptorProcessor writes and indexed by
+ * entity class name. Entities without a descriptor are mapped by
+ * reflection as before.
+ */
+
+public final class EntityDescriptors {
+
+	private static final Logger logger = LoggerFactory.getLogger(EntityDescriptors.class);
+
+	private static volatile Map<String, EntityDescriptor> descriptors;
+
+	private EntityDescriptors() {
+	}
+
+	/*
+	 * Gets the descriptor of the named entity class, null if it has none.
+	 */
+	public static EntityDescriptor forName(String entityClassName) {
+		return descriptors().get(entityClassName);
+	}
+
+	public static EntityDescriptor forClass(Class<?> entityClass) {
+
+		EntityDescriptor descriptor = forName(entityClass.getName());
+		return descriptor != null && descriptor.getEntityClass() == entityClass ? descriptor : null;
+	}
+
+	public static Collection<EntityDescriptor> getDescriptors() {
+		return descriptors().values();
+	}
+
+	private static Map<String, EntityDescriptor> descriptors() {
+
+		Map<String, EntityDescriptor> loaded = descriptors;
+		if (loaded == null) {
+			synchronized (EntityDescriptors.class) {
+				if (descriptors == null)
+					descriptors = load();
+				loaded = descriptors;
+			}
+		}
+		return loaded;
+	}
+
+	private static Map<String, EntityDescriptor> load() {
+
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		if (classLoader == null)
+			classLoader = EntityDescriptors.class.getClassLoader();
+
+		Map<String, EntityDescriptor> loaded = new LinkedHashMap<String, EntityDescriptor>();
+		for (EntityDescriptor descriptor : ServiceLoader.load(EntityDescriptor.class, classLoader))
+			loaded.put(descriptor.getEntityClass().getName(), descriptor);
+
+		logger.debug("Loaded " + loaded.size() + " generated entity descriptors");
+		return Collections.unmodifiableMap(loaded);
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.paging;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.List;
+
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.queryoption.SkipOption;
+import org.apache.olingo.server.api.uri.queryoption.SkipTokenOption;
+import org.apache.olingo.server.api.uri.queryoption.TopOption;
+import org.xylia.microservices.odata.framework.persistence.criteria.KeysetToken;
+import org.xylia.microservices.odata.framework.persistence.criteria.SortKey;
+
+/**
+ * @author Rajesh Iyer
+ *
+ * Server driven paging for an entity set request. Combines $skip, $top, the
+ * $skiptoken of a previous page and the Prefer: odata.maxpagesize header
+ * with the maximum page size of the entity set into the window of rows to
+ * read, and builds the @odata.nextLink of the following page.
+ *
+ * The skip token holds the number of rows already returned and, when the
+ * sort order allows it, the sort key values of the last row returned. The
+ * following page is then read with a keyset seek from those values instead
+ * of an OFFSET, so deep pages cost the same as the first one. A token read
+ * from another sort order is followed by offset.
+ */
+public class PageRequest {
+
+	public static final String PREFER = "Prefer";
+
+	public static final String PREFERENCE_APPLIED = "Preference-Applied";
+
+	public static final String MAX_PAGE_SIZE_PREFERENCE = "odata.maxpagesize";
+
+	private static final String SKIP_TOKEN = "$skiptoken";
+
+	private static final String ENCODING = "UTF-8";
+
+	private final String rawRequestUri;
+
+	private final int skip;
+
+	private final int top;
+
+	private final int offset;
+
+	private final String keyset;
+
+	private final int pageSize;
+
+	private final boolean preferenceApplied;
+
+	private PageRequest(String rawRequestUri, int skip, int top, int offset, String keyset,
+			int pageSize, boolean preferenceApplied) {
+		this.rawRequestUri = rawRequestUri;
+		this.skip = skip;
+		this.top = top;
+		this.offset = offset;
+		this.keyset = keyset;
+		this.pageSize = pageSize;
+		this.preferenceApplied = preferenceApplied;
+	}
+
+	/**
+	 * Creates the page request for the given OData request.
+	 *
+	 * @param request
+	 *            the OData request, used for the Prefer header and the next
+	 *            link
+	 * @param uriInfo
+	 *            the parsed URI
+	 * @param maxPageSize
+	 *            the maximum page size of the entity set, 0 for no limit
+	 */
+	public static PageRequest of(ODataRequest request, UriInfo uriInfo, int maxPageSize) {
+
+		SkipOption skipOption = uriInfo.getSkipOption();
+		int skip = skipOption != null ? skipOption.getValue() : 0;
+
+		TopOption topOption = uriInfo.getTopOption();
+		int top = topOption != null ? topOption.getValue() : -1;
+
+		SkipTokenOption skipTokenOption = uriInfo.getSkipTokenOption();
+		String skipToken = skipTokenOption != null ? skipTokenOption.getValue() : null;
+
+		int offset = 0;
+		String keyset = null;
+
+		if (skipToken != null) {
+			int separator = skipToken.indexOf('.');
+			if (separator < 0) {
+				offset = parseOffset(skipToken);
+			} else {
+				offset = parseOffset(skipToken.substring(0, separator));
+				keyset = skipToken.substring(separator + 1);
+			}
+		}
+
+		int pageSize = maxPageSize;
+		boolean preferenceApplied = false;
+
+		int preferredPageSize = preferredPageSize(request);
+		if (preferredPageSize > 0 && (pageSize <= 0 || preferredPageSize < pageSize)) {
+			pageSize = preferredPageSize;
+			preferenceApplied = true;
+		}
+
+		return new PageRequest(request.getRawRequestUri(), skip, top, offset, keyset, pageSize,
+				preferenceApplied);
+	}
+
+	/**
+	 * Gets the position of the first row of this page when it is read by
+	 * offset. Pages read with a keyset seek start after the seek values
+	 * instead.
+	 */
+	public int getFirstResult() {
+		return skip + offset;
+	}
+
+	/**
+	 * Gets the values of the given sort keys of the last row of the previous
+	 * page, or null if this page is not read with a keyset seek. A skip token
+	 * of another sort order has no seek values.
+	 */
+	public List<Object> getSeekValues(List<SortKey> sortKeys) {
+		return keyset != null ? KeysetToken.decode(keyset, sortKeys) : null;
+	}
+
+	/**
+	 * Gets the number of rows of this page, -1 if the page is unbounded.
+	 */
+	public int getMaxResults() {
+
+		int remaining = top >= 0 ? Math.max(top - offset, 0) : -1;
+
+		if (pageSize <= 0)
+			return remaining;
+
+		return top >= 0 ? Math.min(remaining, pageSize) : pageSize;
+	}
+
+	/**
+	 * Gets the number of rows to read from the database. One more row than
+	 * the page is read to find out whether there is a following page.
+	 */
+	public int getFetchSize() {
+
+		int maxResults = getMaxResults();
+
+		if (!isPaged())
+			return maxResults;
+
+		return maxResults + 1;
+	}
+
+	/**
+	 * Checks whether the given number of fetched rows means there is a
+	 * following page.
+	 */
+	public boolean hasNextPage(int fetchedRows) {
+		return isPaged() && fetchedRows > getMaxResults();
+	}
+
+	/**
+	 * Builds the next link of the page following this one, read by offset.
+	 */
+	public URI getNextLink() {
+		return getNextLink(null, null);
+	}
+
+	/**
+	 * Builds the next link of the page following this one. When the values
+	 * of the sort keys of the last row of this page are given, the following
+	 * page is read with a keyset seek from them.
+	 */
+	public URI getNextLink(List<SortKey> sortKeys, List<Object> lastSortKeyValues) {
+
+		String skipToken = String.valueOf(offset + getMaxResults());
+
+		String keyset = lastSortKeyValues != null ? KeysetToken.encode(sortKeys, lastSortKeyValues) : null;
+		if (keyset != null)
+			skipToken += "." + keyset;
+
+		return nextLink(skipToken);
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public boolean isPreferenceApplied() {
+		return preferenceApplied;
+	}
+
+	/**
+	 * Checks whether this page can be followed by another one, which is the
+	 * case only if the page size, not $top, limits the rows of this page.
+	 */
+	public boolean isPaged() {
+		return pageSize > 0 && (top < 0 || top - offset > pageSize);
+	}
+
+	private URI nextLink(String skipToken) {
+
+		String uri = rawRequestUri;
+		String query = "";
+
+		int queryStart = uri.indexOf('?');
+		if (queryStart >= 0) {
+			query = uri.substring(queryStart + 1);
+			uri = uri.substring(0, queryStart);
+		}
+
+		StringBuilder next = new StringBuilder(uri).append('?');
+		for (String parameter : query.split("&")) {
+
+			if (parameter.isEmpty() || decode(parameter).startsWith(SKIP_TOKEN + "="))
+				continue;
+			next.append(parameter).append('&');
+		}
+		next.append(SKIP_TOKEN).append('=').append(encode(skipToken));
+
+		return URI.create(next.toString());
+	}
+
+	private static int parseOffset(String skipToken) {
+
+		try {
+			return Math.max(Integer.parseInt(skipToken), 0);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static int preferredPageSize(ODataRequest request) {
+
+		List<String> preferences = request.getHeaders(PREFER);
+		if (preferences == null)
+			return 0;
+
+		for (String header : preferences) {
+			for (String preference : header.split(",")) {
+
+				String[] nameValue = preference.trim().split("=", 2);
+				String name = nameValue[0].trim();
+
+				if (nameValue.length == 2 && (MAX_PAGE_SIZE_PREFERENCE.equalsIgnoreCase(name)
+						|| "maxpagesize".equalsIgnoreCase(name))) {
+					try {
+						return Integer.parseInt(nameValue[1].trim());
+					} catch (NumberFormatException e) {
+						return 0;
+					}
+				}
+			}
+		}
+		return 0;
+	}
+
+	private static String encode(String value) {
+
+		try {
+			return URLEncoder.encode(value, ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String decode(String value) {
+
+		try {
+			return URLDecoder.decode(value, ENCODING);
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return value;
+		}
+	}
+}
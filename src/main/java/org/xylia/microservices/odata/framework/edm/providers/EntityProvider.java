@@ -19,10 +19,16 @@
  */
 package org.xylia.microservices.odata.framework.edm.providers;
 
+import java.util.List;
+import java.util.Map;
+
+import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.EntitySet;
 import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.server.api.ODataApplicationException;
 import org.apache.olingo.server.api.edm.provider.EntityType;
 import org.apache.olingo.server.api.uri.UriInfo;
+import org.xylia.microservices.odata.framework.edm.paging.PageRequest;
 
 /**
  * @author Rajesh Iyer
@@ -34,14 +40,70 @@ public interface EntityProvider {
 
 	String getEntitySetName();
 
-	EntitySet getEntitySet(UriInfo uriInfo) throws IllegalArgumentException, IllegalAccessException;
+	EntitySet getEntitySet(UriInfo uriInfo, PageRequest pageRequest)
+			throws IllegalArgumentException, IllegalAccessException, ODataApplicationException;
 
 	EntitySet getEntity(UriInfo uriInfo) throws IllegalArgumentException, IllegalAccessException;
 
+	/**
+	 * Reads only the given properties of the entity addressed by the request.
+	 */
+	EntitySet getEntity(UriInfo uriInfo, String[] selections) throws IllegalArgumentException, IllegalAccessException;
+
+	/**
+	 * Counts the entities matching the $filter of the request.
+	 *
+	 * @return the number of entities
+	 */
+	long getCount(UriInfo uriInfo) throws ODataApplicationException;
+
 	/**
 	 * Gets the fully qualified name.
 	 *
 	 * @return the fully qualified name
 	 */
 	FullQualifiedName getFullyQualifiedName();
+
+	/**
+	 * Gets the maximum page size of the entity set, 0 for no server driven
+	 * paging.
+	 *
+	 * @return the maximum page size
+	 */
+	int getMaxPageSize();
+
+	/**
+	 * Gets how long serialized collection responses of the entity set are
+	 * cached, 0 for no response caching.
+	 *
+	 * @return the time to live in seconds
+	 */
+	long getResponseCacheTtl();
+
+	/**
+	 * Gets the Cache-Control header of reads of the entity set, empty for
+	 * none.
+	 *
+	 * @return the Cache-Control header value
+	 */
+	String getCacheControl();
+
+	/**
+	 * Creates entities from the property values of a write request.
+	 *
+	 * @return the created entities
+	 */
+	List<Entity> createEntities(List<Map<String, Object>> rows) throws ODataApplicationException;
+
+	/**
+	 * Updates the entity addressed by the request, replacing all its
+	 * properties when replace is set.
+	 */
+	void updateEntity(UriInfo uriInfo, Map<String, Object> values, boolean replace, List<String> ifMatch)
+			throws ODataApplicationException;
+
+	/**
+	 * Deletes the entity addressed by the request.
+	 */
+	void deleteEntity(UriInfo uriInfo, List<String> ifMatch) throws ODataApplicationException;
 }
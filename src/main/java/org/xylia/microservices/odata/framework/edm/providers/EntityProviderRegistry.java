@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.providers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.server.api.edm.provider.EntityType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import org.xylia.microservices.odata.framework.edm.types.PropertyCodec;
+import org.xylia.microservices.odata.framework.edm.types.PropertyCodecs;
+
+/**
+ * @author Rajesh Iyer
+ *
+ * Immutable index of the EntityProvider beans, rebuilt when the application
+ * context is refreshed. Providers are looked up by entity type name, entity
+ * set name or FullQualifiedName, and the EntityType of every provider is
+ * built once and cached here instead of on every lookup.
+ */
+@Component
+public class EntityProviderRegistry implements ApplicationListener<ContextRefreshedEvent> {
+
+	private static final Logger logger = LoggerFactory.getLogger(EntityProviderRegistry.class);
+
+	@Autowired
+	private ApplicationContext ctx;
+
+	private final AtomicLong versions = new AtomicLong();
+
+	private volatile Registrations registrations;
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		refresh();
+	}
+
+	/**
+	 * Rebuilds the registry when the EntityProvider beans of the context have
+	 * changed and publishes an EntityProviderRegistryRefreshedEvent.
+	 */
+	public void refresh() {
+
+		Registrations refreshed;
+
+		synchronized (this) {
+			Set<String> beanNames = new TreeSet<String>(Arrays.asList(ctx.getBeanNamesForType(EntityProvider.class)));
+			if (registrations != null && registrations.beanNames.equals(beanNames))
+				return;
+
+			refreshed = build(versions.incrementAndGet());
+			registrations = refreshed;
+		}
+		ctx.publishEvent(new EntityProviderRegistryRefreshedEvent(this, refreshed.version));
+	}
+
+	public long getVersion() {
+		return registrations().version;
+	}
+
+	public Collection<EntityProvider> getEntityProviders() {
+		return registrations().bySetName.values();
+	}
+
+	public List<EntityType> getEntityTypes() {
+		return registrations().entityTypes;
+	}
+
+	public EntityProvider getByEntitySetName(String entitySetName) {
+		return registrations().bySetName.get(entitySetName);
+	}
+
+	public EntityProvider getByEntityTypeName(String entityTypeName) {
+		return registrations().byTypeName.get(entityTypeName);
+	}
+
+	public EntityProvider getByFullQualifiedName(FullQualifiedName fullQualifiedName) {
+		return registrations().byFullQualifiedName.get(fullQualifiedName);
+	}
+
+	/**
+	 * Gets the cached EntityType for the given type name, or null if no
+	 * provider is registered for it.
+	 */
+	public EntityType getEntityType(String entityTypeName) {
+		return registrations().entityTypesByName.get(entityTypeName);
+	}
+
+	/**
+	 * Gets the cached EntityType of the given provider.
+	 */
+	public EntityType getEntityType(EntityProvider entityProvider) {
+		return registrations().entityTypesByProvider.get(entityProvider);
+	}
+
+	private Registrations registrations() {
+
+		Registrations current = registrations;
+		if (current == null) {
+			synchronized (this) {
+				if (registrations == null)
+					registrations = build(versions.incrementAndGet());
+				current = registrations;
+			}
+		}
+		return current;
+	}
+
+	private Registrations build(long version) {
+
+		/* codecs of the application are registered before the entity types are built */
+		for (PropertyCodec<?> propertyCodec : ctx.getBeansOfType(PropertyCodec.class).values())
+			PropertyCodecs.shared().register(propertyCodec);
+
+		Map<String, EntityProvider> entityProviders = ctx.getBeansOfType(EntityProvider.class);
+
+		Map<String, EntityProvider> bySetName = new LinkedHashMap<String, EntityProvider>();
+		Map<String, EntityProvider> byTypeName = new LinkedHashMap<String, EntityProvider>();
+		Map<FullQualifiedName, EntityProvider> byFullQualifiedName = new LinkedHashMap<FullQualifiedName, EntityProvider>();
+		Map<String, EntityType> entityTypesByName = new LinkedHashMap<String, EntityType>();
+		Map<EntityProvider, EntityType> entityTypesByProvider = new LinkedHashMap<EntityProvider, EntityType>();
+		List<EntityType> entityTypes = new ArrayList<EntityType>();
+		Set<String> beanNames = new TreeSet<String>();
+
+		for (Map.Entry<String, EntityProvider> entry : entityProviders.entrySet()) {
+
+			EntityProvider entityProvider = entry.getValue();
+
+			EntityType entityType = entityProvider.getEntityType();
+
+			bySetName.put(entityProvider.getEntitySetName(), entityProvider);
+			byTypeName.put(entityType.getName(), entityProvider);
+			byFullQualifiedName.put(entityProvider.getFullyQualifiedName(), entityProvider);
+			entityTypesByName.put(entityType.getName(), entityType);
+			entityTypesByProvider.put(entityProvider, entityType);
+			entityTypes.add(entityType);
+			beanNames.add(entry.getKey());
+		}
+
+		logger.debug("Registered " + entityTypes.size() + " entity providers, registry version " + version);
+
+		return new Registrations(version, beanNames, bySetName, byTypeName, byFullQualifiedName, entityTypesByName,
+				entityTypesByProvider, entityTypes);
+	}
+
+	private static final class Registrations {
+
+		private final long version;
+
+		private final Set<String> beanNames;
+
+		private final Map<String, EntityProvider> bySetName;
+
+		private final Map<String, EntityProvider> byTypeName;
+
+		private final Map<FullQualifiedName, EntityProvider> byFullQualifiedName;
+
+		private final Map<String, EntityType> entityTypesByName;
+
+		private final Map<EntityProvider, EntityType> entityTypesByProvider;
+
+		private final List<EntityType> entityTypes;
+
+		private Registrations(long version, Set<String> beanNames, Map<String, EntityProvider> bySetName,
+				Map<String, EntityProvider> byTypeName, Map<FullQualifiedName, EntityProvider> byFullQualifiedName,
+				Map<String, EntityType> entityTypesByName, Map<EntityProvider, EntityType> entityTypesByProvider,
+				List<EntityType> entityTypes) {
+			this.version = version;
+			this.beanNames = Collections.unmodifiableSet(beanNames);
+			this.bySetName = Collections.unmodifiableMap(bySetName);
+			this.byTypeName = Collections.unmodifiableMap(byTypeName);
+			this.byFullQualifiedName = Collections.unmodifiableMap(byFullQualifiedName);
+			this.entityTypesByName = Collections.unmodifiableMap(entityTypesByName);
+			this.entityTypesByProvider = Collections.unmodifiableMap(entityTypesByProvider);
+			this.entityTypes = Collections.unmodifiableList(entityTypes);
+		}
+	}
+}
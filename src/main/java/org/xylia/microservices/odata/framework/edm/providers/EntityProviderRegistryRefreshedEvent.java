@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.providers;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * @author Rajesh Iyer
+ *
+ * Published by the EntityProviderRegistry every time it is rebuilt.
+ */
+public class EntityProviderRegistryRefreshedEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long version;
+
+	public EntityProviderRegistryRefreshedEvent(EntityProviderRegistry source, long version) {
+		super(source);
+		this.version = version;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.edm.serializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.olingo.commons.api.Constants;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.format.ODataFormat;
+import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+import org.apache.olingo.server.core.serializer.utils.ContextURLBuilder;
+import org.apache.olingo.server.core.serializer.utils.ExpandSelectHelper;
+import org.xylia.microservices.odata.framework.edm.types.PropertyCodec;
+import org.xylia.microservices.odata.framework.edm.types.PropertyCodecs;
+import org.xylia.microservices.odata.framework.util.StreamingEntitySet;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Writes an entity collection as OData JSON straight from the rows of a
+ * StreamingEntitySet, without building an Entity with a Property per value.
+ * The output is the one of the Olingo JSON serializer: the same context URL,
+ * property order of the EdmEntityType, value formatting of the EDM primitive
+ * types and Jackson generator. Values whose Java type has a PropertyCodec of
+ * the EDM type of the property are written by the codec, others are
+ * formatted by the EDM primitive type. Only the JSON formats with minimal or
+ * no metadata are supported.
+ */
+
+public class DirectJsonSerializer {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory()
+			.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+	private static final Set<FullQualifiedName> NUMBERS = new HashSet<FullQualifiedName>(Arrays.asList(
+			EdmPrimitiveTypeKind.Byte.getFullQualifiedName(), EdmPrimitiveTypeKind.Decimal.getFullQualifiedName(),
+			EdmPrimitiveTypeKind.Double.getFullQualifiedName(), EdmPrimitiveTypeKind.Int16.getFullQualifiedName(),
+			EdmPrimitiveTypeKind.Int32.getFullQualifiedName(), EdmPrimitiveTypeKind.Int64.getFullQualifiedName(),
+			EdmPrimitiveTypeKind.SByte.getFullQualifiedName(), EdmPrimitiveTypeKind.Single.getFullQualifiedName()));
+
+	private final ODataFormat format;
+
+	public DirectJsonSerializer(ODataFormat format) {
+		this.format = format;
+	}
+
+	public static boolean supports(ODataFormat format) {
+		return format == ODataFormat.JSON || format == ODataFormat.JSON_NO_METADATA;
+	}
+
+	/*
+	 * Prepares the content of the entity collection. The rows are read, and
+	 * the entity set closed, when the content is written.
+	 */
+	public <T> StreamingContent entityCollection(EdmEntityType entityType, final StreamingEntitySet<T> entitySet,
+			EntityCollectionSerializerOptions options) throws SerializerException {
+
+		final String contextURL;
+		if (format == ODataFormat.JSON_NO_METADATA)
+			contextURL = null;
+		else if (options == null || options.getContextURL() == null)
+			throw new SerializerException("ContextURL null!", SerializerException.MessageKeys.NO_CONTEXT_URL);
+		else
+			contextURL = ContextURLBuilder.create(options.getContextURL()).toASCIIString();
+
+		final boolean count = options != null && options.getCount() != null && options.getCount().getValue()
+				&& entitySet.getCount() != null;
+
+		final List<Column> columns = columns(entityType, entitySet.getColumns(),
+				options == null ? null : options.getSelect());
+		final StreamingEntitySet.ColumnReader<T> columnReader = entitySet.getColumnReader();
+
+		return new StreamingContent(entitySet) {
+
+			@Override
+			protected void write(OutputStream out) throws IOException {
+
+				JsonGenerator json = JSON_FACTORY.createGenerator(out);
+
+				json.writeStartObject();
+				if (contextURL != null)
+					json.writeStringField(Constants.JSON_CONTEXT, contextURL);
+				if (count)
+					json.writeNumberField(Constants.JSON_COUNT, entitySet.getCount());
+
+				json.writeFieldName(Constants.VALUE);
+				json.writeStartArray();
+
+				Iterator<T> rows = entitySet.rows();
+				while (rows.hasNext()) {
+
+					T row = rows.next();
+
+					json.writeStartObject();
+					for (Column column : columns) {
+
+						json.writeFieldName(column.name);
+						column.write(column.index < 0 ? null : columnReader.read(row, column.index), json);
+					}
+					json.writeEndObject();
+				}
+				json.writeEndArray();
+
+				/* known once the rows are read */
+				if (entitySet.getNext() != null)
+					json.writeStringField(Constants.JSON_NEXT_LINK, entitySet.getNext().toASCIIString());
+
+				json.writeEndObject();
+				json.flush();
+			}
+		};
+	}
+
+	/*
+	 * Resolves the selected properties of the entity type, in the order of
+	 * the entity type, to the columns of the rows once per response.
+	 */
+	private static List<Column> columns(EdmEntityType entityType, String[] rowColumns, SelectOption select)
+			throws SerializerException {
+
+		boolean all = ExpandSelectHelper.isAll(select);
+		Set<String> selected = all ? null : ExpandSelectHelper.getSelectedPropertyNames(select.getSelectItems());
+
+		List<Column> columns = new ArrayList<Column>();
+		for (String propertyName : entityType.getPropertyNames()) {
+
+			if (!all && !selected.contains(propertyName))
+				continue;
+
+			EdmProperty edmProperty = entityType.getStructuralProperty(propertyName);
+			if (!edmProperty.isPrimitive())
+				throw new SerializerException("Property type not yet supported!",
+						SerializerException.MessageKeys.UNSUPPORTED_PROPERTY_TYPE, propertyName);
+
+			columns.add(new Column(edmProperty, Arrays.asList(rowColumns).indexOf(propertyName)));
+		}
+		return columns;
+	}
+
+	private static final class Column {
+
+		private final EdmProperty edmProperty;
+
+		private final String name;
+
+		private final EdmPrimitiveType type;
+
+		private final boolean number;
+
+		private final boolean bool;
+
+		private final int index;
+
+		/* the codec of the Java type of the last value, the values of a column are mostly of one type */
+		private Class<?> valueType;
+
+		private PropertyCodec<Object> codec;
+
+		private Column(EdmProperty edmProperty, int index) {
+			this.edmProperty = edmProperty;
+			this.name = edmProperty.getName();
+			this.type = (EdmPrimitiveType) edmProperty.getType();
+			this.number = NUMBERS.contains(type.getFullQualifiedName());
+			this.bool = EdmPrimitiveTypeKind.Boolean.getFullQualifiedName().equals(type.getFullQualifiedName());
+			this.index = index;
+		}
+
+		private void write(Object value, JsonGenerator json) throws IOException {
+
+			if (value == null) {
+				if (Boolean.FALSE.equals(edmProperty.isNullable()))
+					throw new IOException("Non-nullable property " + name + " not present");
+				json.writeNull();
+				return;
+			}
+
+			if (value.getClass() != valueType) {
+				valueType = value.getClass();
+				codec = PropertyCodecs.shared().forType(valueType);
+				if (codec != null && !codec.getKind().getFullQualifiedName().equals(type.getFullQualifiedName()))
+					codec = null;
+			}
+
+			if (codec != null) {
+				codec.write(value, json);
+				return;
+			}
+
+			String text;
+			try {
+				text = type.valueToString(value, edmProperty.isNullable(), edmProperty.getMaxLength(),
+						edmProperty.getPrecision(), edmProperty.getScale(), edmProperty.isUnicode());
+			} catch (EdmPrimitiveTypeException e) {
+				throw new IOException("Wrong value for property " + name, e);
+			}
+
+			if (text == null)
+				json.writeNull();
+			else if (bool)
+				json.writeBoolean(Boolean.parseBoolean(text));
+			else if (number)
+				json.writeNumber(text);
+			else
+				json.writeString(text);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.edm.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Response content that is produced while it is written. The controller
+ * writes it straight to the servlet output stream with writeTo; reading it
+ * as an InputStream instead produces the whole content into memory first.
+ * The resource the content is produced from is closed once it is written.
+ */
+
+public abstract class StreamingContent extends InputStream {
+
+	private final Closeable resource;
+
+	private boolean written;
+
+	private InputStream buffered;
+
+	protected StreamingContent(Closeable resource) {
+		this.resource = resource;
+	}
+
+	/*
+	 * Writes the content to the output stream, the content can be written
+	 * once.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+
+		if (written)
+			throw new IllegalStateException("Streamed content can only be written once");
+
+		written = true;
+		try {
+			write(out);
+		} finally {
+			resource.close();
+		}
+	}
+
+	protected abstract void write(OutputStream out) throws IOException;
+
+	@Override
+	public int read() throws IOException {
+		return buffered().read();
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		return buffered().read(b, off, len);
+	}
+
+	@Override
+	public void close() throws IOException {
+		resource.close();
+	}
+
+	private InputStream buffered() throws IOException {
+
+		if (buffered == null) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			writeTo(bytes);
+			buffered = new ByteArrayInputStream(bytes.toByteArray());
+		}
+		return buffered;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.types;
+
+import javax.persistence.Column;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * The attributes of a @Column the facets of an EDM property are declared
+ * from. Generated entity descriptors carry them as values, so that no
+ * annotation is read at runtime.
+ */
+
+public final class ColumnFacets {
+
+	/* the defaults of @Column */
+	public static final ColumnFacets DEFAULT = new ColumnFacets(255, 0, 0, "");
+
+	private final int length;
+
+	private final int precision;
+
+	private final int scale;
+
+	private final String columnDefinition;
+
+	public ColumnFacets(int length, int precision, int scale, String columnDefinition) {
+		this.length = length;
+		this.precision = precision;
+		this.scale = scale;
+		this.columnDefinition = columnDefinition;
+	}
+
+	public static ColumnFacets of(Column column) {
+
+		return column == null ? DEFAULT
+				: new ColumnFacets(column.length(), column.precision(), column.scale(), column.columnDefinition());
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	public String getColumnDefinition() {
+		return columnDefinition;
+	}
+
+	/*
+	 * Gets the length the column was declared with, null for the default
+	 * one or a length implied by a column definition.
+	 */
+	public Integer getExplicitLength() {
+		return length != DEFAULT.length && columnDefinition.isEmpty() ? length : null;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.types;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.Column;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.server.api.edm.provider.Property;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Maps the Java types of @Column fields to an EDM primitive type. A codec
+ * declares the EDM property of a field, with the facets of its @Column,
+ * writes values of its Java types straight to a JsonGenerator in the format
+ * of the Olingo JSON serializer, and converts request values to its Java
+ * type. Codecs are registered with PropertyCodecs.
+ */
+
+public abstract class PropertyCodec<T> {
+
+	private static final ThreadLocal<char[]> BUFFERS = new ThreadLocal<char[]>() {
+
+		@Override
+		protected char[] initialValue() {
+			return new char[64];
+		}
+	};
+
+	private final EdmPrimitiveTypeKind kind;
+
+	private final List<Class<?>> javaTypes;
+
+	protected PropertyCodec(EdmPrimitiveTypeKind kind, Class<?>... javaTypes) {
+		this.kind = kind;
+		this.javaTypes = Collections.unmodifiableList(Arrays.asList(javaTypes));
+	}
+
+	public EdmPrimitiveTypeKind getKind() {
+		return kind;
+	}
+
+	/*
+	 * Gets the Java types handled by the codec, primitive types included.
+	 */
+	public List<Class<?>> getJavaTypes() {
+		return javaTypes;
+	}
+
+	/*
+	 * Creates the EDM property of a field.
+	 */
+	public Property property(Field field) {
+		return property(field.getName(), ColumnFacets.of(field.getAnnotation(Column.class)));
+	}
+
+	/*
+	 * Creates the EDM property of a column with the given facets.
+	 */
+	public Property property(String name, ColumnFacets column) {
+
+		Property property = new Property().setName(name).setType(kind.getFullQualifiedName());
+		facets(property, column);
+		return property;
+	}
+
+	/*
+	 * Sets the facets of the EDM property from the @Column of its field.
+	 */
+	protected void facets(Property property, ColumnFacets column) {
+	}
+
+	/*
+	 * Writes a non null value of one of the Java types of the codec.
+	 */
+	public abstract void write(T value, JsonGenerator json) throws IOException;
+
+	/*
+	 * Converts a request value, a String, Number, Boolean or date, to the
+	 * Java type of the codec. Values that cannot be converted raise an
+	 * IllegalArgumentException or ArithmeticException.
+	 */
+	public abstract T read(Object value);
+
+	/*
+	 * Gets the value of an integral request value, without an intermediate
+	 * BigDecimal for the boxed integral types.
+	 */
+	protected static long longValue(Object value) {
+
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+			return ((Number) value).longValue();
+		return decimalValue(value).longValueExact();
+	}
+
+	protected static BigDecimal decimalValue(Object value) {
+		return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+	}
+
+	/*
+	 * Gets a per thread buffer for codecs that format their values into
+	 * characters before writing them.
+	 */
+	protected static char[] buffer() {
+		return BUFFERS.get();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + kind.getFullQualifiedName() + "]";
+	}
+}
@@ -0,0 +1,446 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.types;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.Column;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.server.api.edm.provider.Property;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Registry of the PropertyCodecs by Java type. The standard registry maps
+ * the common JPA column types: the integral types to Int16, Int32, Int64 and
+ * SByte, the floating point types to Single and Double, BigDecimal and
+ * BigInteger to Decimal, Boolean, String, UUID to Guid, byte[] to Binary and
+ * the java.sql and java.util date types to Date, TimeOfDay and
+ * DateTimeOffset. Fields of other types are declared as Edm.String.
+ */
+
+public final class PropertyCodecs {
+
+	private static final PropertyCodecs SHARED = standard();
+
+	private final ConcurrentMap<Class<?>, PropertyCodec<?>> codecs = new ConcurrentHashMap<Class<?>, PropertyCodec<?>>();
+
+	/* the codecs found for subclasses of the registered types */
+	private final ConcurrentMap<Class<?>, PropertyCodec<?>> resolved = new ConcurrentHashMap<Class<?>, PropertyCodec<?>>();
+
+	public static PropertyCodecs shared() {
+		return SHARED;
+	}
+
+	/*
+	 * Creates a registry of the standard codecs.
+	 */
+	public static PropertyCodecs standard() {
+
+		PropertyCodecs registry = new PropertyCodecs();
+		registry.register(new BooleanCodec());
+		registry.register(new SByteCodec());
+		registry.register(new Int16Codec());
+		registry.register(new Int32Codec());
+		registry.register(new Int64Codec());
+		registry.register(new SingleCodec());
+		registry.register(new DoubleCodec());
+		registry.register(new DecimalCodec());
+		registry.register(new IntegerDecimalCodec());
+		registry.register(new StringCodec());
+		registry.register(new GuidCodec());
+		registry.register(new BinaryCodec());
+		registry.register(TemporalCodecs.date());
+		registry.register(TemporalCodecs.timeOfDay());
+		registry.register(TemporalCodecs.timestamp());
+		registry.register(TemporalCodecs.dateTime());
+		registry.register(TemporalCodecs.calendar());
+		return registry;
+	}
+
+	/*
+	 * Registers a codec for its Java types, replacing the codecs registered
+	 * for them before.
+	 */
+	public void register(PropertyCodec<?> codec) {
+
+		for (Class<?> javaType : codec.getJavaTypes())
+			codecs.put(javaType, codec);
+		resolved.clear();
+	}
+
+	/*
+	 * Gets the codec of a Java type, or of its closest registered superclass,
+	 * null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public PropertyCodec<Object> forType(Class<?> javaType) {
+
+		PropertyCodec<?> codec = codecs.get(javaType);
+		if (codec == null)
+			codec = resolved.get(javaType);
+		if (codec != null)
+			return (PropertyCodec<Object>) codec;
+
+		for (Class<?> type = javaType.getSuperclass(); type != null && type != Object.class; type = type
+				.getSuperclass()) {
+
+			codec = codecs.get(type);
+			if (codec != null) {
+				resolved.put(javaType, codec);
+				return (PropertyCodec<Object>) codec;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Creates the EDM property of a @Column field.
+	 */
+	public Property property(Field field) {
+
+		return property(field.getName(), field.getType(), ColumnFacets.of(field.getAnnotation(Column.class)));
+	}
+
+	/*
+	 * Creates the EDM property of a column of the given Java type.
+	 */
+	public Property property(String name, Class<?> javaType, ColumnFacets column) {
+
+		PropertyCodec<Object> codec = forType(javaType);
+		if (codec != null)
+			return codec.property(name, column);
+
+		return new Property().setName(name).setType(EdmPrimitiveTypeKind.String.getFullQualifiedName());
+	}
+
+	private static final class BooleanCodec extends PropertyCodec<Boolean> {
+
+		private BooleanCodec() {
+			super(EdmPrimitiveTypeKind.Boolean, Boolean.class, boolean.class);
+		}
+
+		@Override
+		public void write(Boolean value, JsonGenerator json) throws IOException {
+			json.writeBoolean(value.booleanValue());
+		}
+
+		@Override
+		public Boolean read(Object value) {
+			return value instanceof Boolean ? (Boolean) value : Boolean.valueOf(value.toString());
+		}
+	}
+
+	private static final class SByteCodec extends PropertyCodec<Byte> {
+
+		private SByteCodec() {
+			super(EdmPrimitiveTypeKind.SByte, Byte.class, byte.class);
+		}
+
+		@Override
+		public void write(Byte value, JsonGenerator json) throws IOException {
+			json.writeNumber(value.intValue());
+		}
+
+		@Override
+		public Byte read(Object value) {
+
+			long number = longValue(value);
+			if ((byte) number != number)
+				throw new ArithmeticException("Overflow");
+			return (byte) number;
+		}
+	}
+
+	private static final class Int16Codec extends PropertyCodec<Short> {
+
+		private Int16Codec() {
+			super(EdmPrimitiveTypeKind.Int16, Short.class, short.class);
+		}
+
+		@Override
+		public void write(Short value, JsonGenerator json) throws IOException {
+			json.writeNumber(value.shortValue());
+		}
+
+		@Override
+		public Short read(Object value) {
+
+			long number = longValue(value);
+			if ((short) number != number)
+				throw new ArithmeticException("Overflow");
+			return (short) number;
+		}
+	}
+
+	private static final class Int32Codec extends PropertyCodec<Integer> {
+
+		private Int32Codec() {
+			super(EdmPrimitiveTypeKind.Int32, Integer.class, int.class);
+		}
+
+		@Override
+		public void write(Integer value, JsonGenerator json) throws IOException {
+			json.writeNumber(value.intValue());
+		}
+
+		@Override
+		public Integer read(Object value) {
+
+			long number = longValue(value);
+			if ((int) number != number)
+				throw new ArithmeticException("Overflow");
+			return (int) number;
+		}
+	}
+
+	private static final class Int64Codec extends PropertyCodec<Long> {
+
+		private Int64Codec() {
+			super(EdmPrimitiveTypeKind.Int64, Long.class, long.class);
+		}
+
+		@Override
+		public void write(Long value, JsonGenerator json) throws IOException {
+			json.writeNumber(value.longValue());
+		}
+
+		@Override
+		public Long read(Object value) {
+			return longValue(value);
+		}
+	}
+
+	/*
+	 * OData JSON writes the special floating point values as the strings
+	 * NaN, INF and -INF.
+	 */
+	private static final class SingleCodec extends PropertyCodec<Float> {
+
+		private SingleCodec() {
+			super(EdmPrimitiveTypeKind.Single, Float.class, float.class);
+		}
+
+		@Override
+		public void write(Float value, JsonGenerator json) throws IOException {
+
+			float number = value.floatValue();
+			if (Float.isNaN(number) || Float.isInfinite(number))
+				json.writeString(special(number));
+			else
+				json.writeNumber(number);
+		}
+
+		@Override
+		public Float read(Object value) {
+			return value instanceof Number ? ((Number) value).floatValue() : (float) parse(value.toString());
+		}
+	}
+
+	private static final class DoubleCodec extends PropertyCodec<Double> {
+
+		private DoubleCodec() {
+			super(EdmPrimitiveTypeKind.Double, Double.class, double.class);
+		}
+
+		@Override
+		public void write(Double value, JsonGenerator json) throws IOException {
+
+			double number = value.doubleValue();
+			if (Double.isNaN(number) || Double.isInfinite(number))
+				json.writeString(special(number));
+			else
+				json.writeNumber(number);
+		}
+
+		@Override
+		public Double read(Object value) {
+			return value instanceof Number ? ((Number) value).doubleValue() : parse(value.toString());
+		}
+	}
+
+	private static String special(double number) {
+		return Double.isNaN(number) ? "NaN" : number > 0 ? "INF" : "-INF";
+	}
+
+	private static double parse(String text) {
+
+		if ("INF".equals(text))
+			return Double.POSITIVE_INFINITY;
+		if ("-INF".equals(text))
+			return Double.NEGATIVE_INFINITY;
+		return Double.parseDouble(text);
+	}
+
+	/*
+	 * Declares the precision and scale of the @Column, written as plain
+	 * numbers like the Olingo serializer does.
+	 */
+	private static final class DecimalCodec extends PropertyCodec<BigDecimal> {
+
+		private DecimalCodec() {
+			super(EdmPrimitiveTypeKind.Decimal, BigDecimal.class);
+		}
+
+		@Override
+		protected void facets(Property property, ColumnFacets column) {
+
+			if (column.getPrecision() > 0)
+				property.setPrecision(column.getPrecision()).setScale(column.getScale());
+		}
+
+		@Override
+		public void write(BigDecimal value, JsonGenerator json) throws IOException {
+			json.writeNumber(value.toPlainString());
+		}
+
+		@Override
+		public BigDecimal read(Object value) {
+			return decimalValue(value);
+		}
+	}
+
+	private static final class IntegerDecimalCodec extends PropertyCodec<BigInteger> {
+
+		private IntegerDecimalCodec() {
+			super(EdmPrimitiveTypeKind.Decimal, BigInteger.class);
+		}
+
+		@Override
+		protected void facets(Property property, ColumnFacets column) {
+
+			if (column.getPrecision() > 0)
+				property.setPrecision(column.getPrecision()).setScale(0);
+		}
+
+		@Override
+		public void write(BigInteger value, JsonGenerator json) throws IOException {
+			json.writeNumber(value);
+		}
+
+		@Override
+		public BigInteger read(Object value) {
+			return value instanceof BigInteger ? (BigInteger) value : decimalValue(value).toBigIntegerExact();
+		}
+	}
+
+	private static final class StringCodec extends PropertyCodec<String> {
+
+		private StringCodec() {
+			super(EdmPrimitiveTypeKind.String, String.class);
+		}
+
+		@Override
+		protected void facets(Property property, ColumnFacets column) {
+			property.setMaxLength(column.getExplicitLength());
+		}
+
+		@Override
+		public void write(String value, JsonGenerator json) throws IOException {
+			json.writeString(value);
+		}
+
+		@Override
+		public String read(Object value) {
+			return value.toString();
+		}
+	}
+
+	/*
+	 * Writes the canonical lower case form of a UUID without creating its
+	 * String.
+	 */
+	private static final class GuidCodec extends PropertyCodec<UUID> {
+
+		private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+		private GuidCodec() {
+			super(EdmPrimitiveTypeKind.Guid, UUID.class);
+		}
+
+		@Override
+		public void write(UUID value, JsonGenerator json) throws IOException {
+
+			char[] buffer = buffer();
+			hex(buffer, 0, value.getMostSignificantBits() >>> 32, 8);
+			buffer[8] = '-';
+			hex(buffer, 9, value.getMostSignificantBits() >>> 16, 4);
+			buffer[13] = '-';
+			hex(buffer, 14, value.getMostSignificantBits(), 4);
+			buffer[18] = '-';
+			hex(buffer, 19, value.getLeastSignificantBits() >>> 48, 4);
+			buffer[23] = '-';
+			hex(buffer, 24, value.getLeastSignificantBits(), 12);
+			json.writeString(buffer, 0, 36);
+		}
+
+		private static void hex(char[] buffer, int offset, long bits, int digits) {
+
+			for (int i = offset + digits - 1; i >= offset; i--) {
+				buffer[i] = HEX[(int) (bits & 0xF)];
+				bits >>>= 4;
+			}
+		}
+
+		@Override
+		public UUID read(Object value) {
+			return UUID.fromString(value.toString());
+		}
+	}
+
+	/*
+	 * Writes the URL safe base64 encoding of OData JSON, straight from the
+	 * bytes.
+	 */
+	private static final class BinaryCodec extends PropertyCodec<byte[]> {
+
+		private BinaryCodec() {
+			super(EdmPrimitiveTypeKind.Binary, byte[].class);
+		}
+
+		@Override
+		protected void facets(Property property, ColumnFacets column) {
+			property.setMaxLength(column.getExplicitLength());
+		}
+
+		@Override
+		public void write(byte[] value, JsonGenerator json) throws IOException {
+			json.writeBinary(Base64Variants.MODIFIED_FOR_URL, value, 0, value.length);
+		}
+
+		@Override
+		public byte[] read(Object value) {
+
+			String text = value.toString();
+			return text.indexOf('+') >= 0 || text.indexOf('/') >= 0 ? Base64.getDecoder().decode(text)
+					: Base64.getUrlDecoder().decode(text);
+		}
+	}
+}
@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.types;
+
+import java.io.IOException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.server.api.edm.provider.Property;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Codecs of the date and time types. Values are formatted from their epoch
+ * milliseconds into a per thread buffer, without a Calendar per value, in
+ * UTC like the Olingo serializer formats a java.util.Date. Fractional
+ * seconds are written without trailing zeros, so the Precision facet of a
+ * property is the one of its Java type: 9 for a Timestamp, 3 otherwise.
+ */
+
+final class TemporalCodecs {
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+
+	private TemporalCodecs() {
+	}
+
+	static PropertyCodec<?> date() {
+
+		return new TemporalCodec<java.sql.Date>(EdmPrimitiveTypeKind.Date, null, java.sql.Date.class) {
+
+			@Override
+			public void write(java.sql.Date value, JsonGenerator json) throws IOException {
+
+				char[] buffer = buffer();
+				json.writeString(buffer, 0, date(buffer, 0, Math.floorDiv(value.getTime(), MILLIS_PER_DAY)));
+			}
+
+			@Override
+			public java.sql.Date read(Object value) {
+
+				if (value instanceof Calendar)
+					return new java.sql.Date(((Calendar) value).getTimeInMillis());
+				if (value instanceof Date)
+					return new java.sql.Date(((Date) value).getTime());
+				return java.sql.Date.valueOf(value.toString());
+			}
+		};
+	}
+
+	static PropertyCodec<?> timeOfDay() {
+
+		return new TemporalCodec<Time>(EdmPrimitiveTypeKind.TimeOfDay, 3, Time.class) {
+
+			@Override
+			public void write(Time value, JsonGenerator json) throws IOException {
+
+				char[] buffer = buffer();
+				long millis = Math.floorMod(value.getTime(), MILLIS_PER_DAY);
+				int end = time(buffer, 0, millis / 1000);
+				json.writeString(buffer, 0, fraction(buffer, end, (int) (millis % 1000), 3));
+			}
+
+			@Override
+			public Time read(Object value) {
+
+				if (value instanceof Date)
+					return new Time(((Date) value).getTime());
+				try {
+					return Time.valueOf(LocalTime.parse(value.toString()));
+				} catch (DateTimeParseException e) {
+					throw new IllegalArgumentException(e.getMessage(), e);
+				}
+			}
+		};
+	}
+
+	static PropertyCodec<?> timestamp() {
+
+		return new TemporalCodec<Timestamp>(EdmPrimitiveTypeKind.DateTimeOffset, 9, Timestamp.class) {
+
+			@Override
+			public void write(Timestamp value, JsonGenerator json) throws IOException {
+
+				char[] buffer = buffer();
+				int end = dateTime(buffer, Math.floorDiv(value.getTime(), 1000));
+				end = fraction(buffer, end, value.getNanos(), 9);
+				buffer[end++] = 'Z';
+				json.writeString(buffer, 0, end);
+			}
+
+			@Override
+			public Timestamp read(Object value) {
+
+				if (value instanceof Calendar)
+					return new Timestamp(((Calendar) value).getTimeInMillis());
+				if (value instanceof Date)
+					return new Timestamp(((Date) value).getTime());
+
+				OffsetDateTime dateTime = parse(value);
+				return dateTime != null ? Timestamp.from(dateTime.toInstant()) : Timestamp.valueOf(value.toString());
+			}
+		};
+	}
+
+	static PropertyCodec<?> dateTime() {
+
+		return new TemporalCodec<Date>(EdmPrimitiveTypeKind.DateTimeOffset, 3, Date.class) {
+
+			@Override
+			public void write(Date value, JsonGenerator json) throws IOException {
+
+				char[] buffer = buffer();
+				int end = dateTime(buffer, Math.floorDiv(value.getTime(), 1000));
+				end = fraction(buffer, end, (int) Math.floorMod(value.getTime(), 1000), 3);
+				buffer[end++] = 'Z';
+				json.writeString(buffer, 0, end);
+			}
+
+			@Override
+			public Date read(Object value) {
+
+				if (value instanceof Calendar)
+					return ((Calendar) value).getTime();
+
+				OffsetDateTime dateTime = parse(value);
+				if (dateTime == null)
+					throw new IllegalArgumentException("Invalid DateTimeOffset " + value);
+				return Date.from(dateTime.toInstant());
+			}
+		};
+	}
+
+	/*
+	 * Calendars are written in their own zone, with its offset.
+	 */
+	static PropertyCodec<?> calendar() {
+
+		return new TemporalCodec<Calendar>(EdmPrimitiveTypeKind.DateTimeOffset, 3, Calendar.class) {
+
+			@Override
+			public void write(Calendar value, JsonGenerator json) throws IOException {
+
+				int offset = (value.get(Calendar.ZONE_OFFSET) + value.get(Calendar.DST_OFFSET)) / 60000;
+				long millis = value.getTimeInMillis() + offset * 60000L;
+
+				char[] buffer = buffer();
+				int end = dateTime(buffer, Math.floorDiv(millis, 1000));
+				end = fraction(buffer, end, (int) Math.floorMod(millis, 1000), 3);
+				if (offset == 0) {
+					buffer[end++] = 'Z';
+				} else {
+					buffer[end++] = offset < 0 ? '-' : '+';
+					end = twoDigits(buffer, end, Math.abs(offset) / 60);
+					buffer[end++] = ':';
+					end = twoDigits(buffer, end, Math.abs(offset) % 60);
+				}
+				json.writeString(buffer, 0, end);
+			}
+
+			@Override
+			public Calendar read(Object value) {
+
+				if (value instanceof Date) {
+					Calendar calendar = Calendar.getInstance();
+					calendar.setTime((Date) value);
+					return calendar;
+				}
+
+				OffsetDateTime dateTime = parse(value);
+				if (dateTime == null)
+					throw new IllegalArgumentException("Invalid DateTimeOffset " + value);
+				return GregorianCalendar.from(dateTime.toZonedDateTime());
+			}
+		};
+	}
+
+	private static OffsetDateTime parse(Object value) {
+
+		try {
+			return OffsetDateTime.parse(value.toString());
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * Writes the date and time of the epoch second, returns the end offset.
+	 */
+	private static int dateTime(char[] buffer, long epochSecond) {
+
+		int end = date(buffer, 0, Math.floorDiv(epochSecond, 86400));
+		buffer[end++] = 'T';
+		return time(buffer, end, Math.floorMod(epochSecond, 86400));
+	}
+
+	/*
+	 * Writes the yyyy-MM-dd of the epoch day, from the civil calendar
+	 * algorithm of Howard Hinnant.
+	 */
+	private static int date(char[] buffer, int offset, long epochDay) {
+
+		long days = epochDay + 719468;
+		long era = (days >= 0 ? days : days - 146096) / 146097;
+		long dayOfEra = days - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long shiftedMonth = (5 * dayOfYear + 2) / 153;
+
+		int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+		int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		int end = offset;
+		if (year >= 0 && year <= 9999) {
+			end = twoDigits(buffer, end, (int) year / 100);
+			end = twoDigits(buffer, end, (int) year % 100);
+		} else {
+			String text = Long.toString(year);
+			text.getChars(0, text.length(), buffer, end);
+			end += text.length();
+		}
+		buffer[end++] = '-';
+		end = twoDigits(buffer, end, month);
+		buffer[end++] = '-';
+		return twoDigits(buffer, end, day);
+	}
+
+	/*
+	 * Writes the HH:mm:ss of the second of the day.
+	 */
+	private static int time(char[] buffer, int offset, long secondOfDay) {
+
+		int end = twoDigits(buffer, offset, (int) (secondOfDay / 3600));
+		buffer[end++] = ':';
+		end = twoDigits(buffer, end, (int) (secondOfDay / 60 % 60));
+		buffer[end++] = ':';
+		return twoDigits(buffer, end, (int) (secondOfDay % 60));
+	}
+
+	/*
+	 * Writes the fractional seconds of the given number of digits without
+	 * their trailing zeros, nothing for whole seconds.
+	 */
+	private static int fraction(char[] buffer, int offset, int fraction, int digits) {
+
+		if (fraction == 0)
+			return offset;
+
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			digits--;
+		}
+
+		buffer[offset] = '.';
+		for (int i = offset + digits; i > offset; i--) {
+			buffer[i] = (char) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+		return offset + digits + 1;
+	}
+
+	private static int twoDigits(char[] buffer, int offset, int value) {
+
+		buffer[offset] = (char) ('0' + value / 10);
+		buffer[offset + 1] = (char) ('0' + value % 10);
+		return offset + 2;
+	}
+
+	/*
+	 * Declares the Precision facet of the temporal types with fractional
+	 * seconds.
+	 */
+	private abstract static class TemporalCodec<T> extends PropertyCodec<T> {
+
+		private final Integer precision;
+
+		private TemporalCodec(EdmPrimitiveTypeKind kind, Integer precision, Class<?>... javaTypes) {
+			super(kind, javaTypes);
+			this.precision = precision;
+		}
+
+		@Override
+		public Property property(String name, ColumnFacets column) {
+			return super.property(name, column).setPrecision(precision);
+		}
+	}
+}
@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.criteria;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.apache.olingo.commons.api.edm.EdmEnumType;
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriInfoResource;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitor;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Translates an OData $filter expression tree into a JPA Criteria predicate
+ * over the given root, so the filter runs in SQL. Literals become query
+ * parameters, converted to the Java type of the attribute they are compared
+ * with, and are bound to the query by bind(). The source of every
+ * parameter is kept, so that a query created from the text the criteria
+ * query rendered to can be bound from the literals of another request.
+ * Anything that has no Criteria equivalent fails with 501 Not Implemented
+ * instead of being evaluated in memory.
+ */
+
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public class FilterExpressionVisitor implements ExpressionVisitor<Object> {
+
+	private final CriteriaBuilder cb;
+
+	private final Root<?> root;
+
+	private final Map<ParameterExpression<?>, Object> parameters = new LinkedHashMap<ParameterExpression<?>, Object>();
+
+	private final List<QueryParameter> sources = new ArrayList<QueryParameter>();
+
+	/* the number of literals visited, literals are numbered across the expressions of a query */
+	private int literals;
+
+	public FilterExpressionVisitor(CriteriaBuilder cb, Root<?> root) {
+		this.cb = cb;
+		this.root = root;
+	}
+
+	/*
+	 * Translates the filter expression into a predicate.
+	 */
+	public Predicate toPredicate(org.apache.olingo.server.api.uri.queryoption.expression.Expression filter)
+			throws ODataApplicationException {
+
+		Object result;
+		try {
+			result = filter.accept(this);
+		} catch (ExpressionVisitException e) {
+			throw new ODataApplicationException("Invalid $filter expression: " + e.getLocalizedMessage(),
+					HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+		}
+
+		Expression<?> expression = expression(result);
+		if (expression instanceof Predicate)
+			return (Predicate) expression;
+
+		if (Boolean.class.equals(expression.getJavaType()) || boolean.class.equals(expression.getJavaType()))
+			return cb.isTrue((Expression<Boolean>) expression);
+
+		throw new ODataApplicationException("The $filter expression does not evaluate to a boolean",
+				HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+	}
+
+	/*
+	 * Translates a computed expression, such as an $orderby item, into a
+	 * Criteria expression.
+	 */
+	public Expression<?> toExpression(org.apache.olingo.server.api.uri.queryoption.expression.Expression expression)
+			throws ODataApplicationException {
+
+		try {
+			return expression(expression.accept(this));
+		} catch (ExpressionVisitException e) {
+			throw new ODataApplicationException("Invalid expression: " + e.getLocalizedMessage(),
+					HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+		}
+	}
+
+	/*
+	 * Creates a query parameter for the keyset seek value of the given
+	 * index, bound by bind().
+	 */
+	public <T> ParameterExpression<T> seekParameter(int index, T value) {
+		return parameter((Class<T>) value.getClass(), value, QueryParameter.seek(index));
+	}
+
+	/*
+	 * Binds the literal values of the filter to the query.
+	 */
+	public <T> TypedQuery<T> bind(TypedQuery<T> query) {
+
+		for (Map.Entry<ParameterExpression<?>, Object> parameter : parameters.entrySet()) {
+			query.setParameter((ParameterExpression) parameter.getKey(), parameter.getValue());
+		}
+		return query;
+	}
+
+	public Map<ParameterExpression<?>, Object> getParameters() {
+		return parameters;
+	}
+
+	/*
+	 * Gets the sources of the parameters, in the order they were created.
+	 */
+	public List<QueryParameter> getSources() {
+		return sources;
+	}
+
+	@Override
+	public Object visitBinaryOperator(BinaryOperatorKind operator, Object left, Object right)
+			throws ExpressionVisitException, ODataApplicationException {
+
+		switch (operator) {
+		case AND:
+			return cb.and(predicate(left), predicate(right));
+		case OR:
+			return cb.or(predicate(left), predicate(right));
+		case EQ:
+			if (isNullLiteral(right))
+				return cb.isNull(expression(left));
+			if (isNullLiteral(left))
+				return cb.isNull(expression(right));
+			return cb.equal(operand(left, right), operand(right, left));
+		case NE:
+			if (isNullLiteral(right))
+				return cb.isNotNull(expression(left));
+			if (isNullLiteral(left))
+				return cb.isNotNull(expression(right));
+			return cb.notEqual(operand(left, right), operand(right, left));
+		case GT:
+			return cb.greaterThan((Expression<Comparable>) operand(left, right),
+					(Expression<Comparable>) operand(right, left));
+		case GE:
+			return cb.greaterThanOrEqualTo((Expression<Comparable>) operand(left, right),
+					(Expression<Comparable>) operand(right, left));
+		case LT:
+			return cb.lessThan((Expression<Comparable>) operand(left, right),
+					(Expression<Comparable>) operand(right, left));
+		case LE:
+			return cb.lessThanOrEqualTo((Expression<Comparable>) operand(left, right),
+					(Expression<Comparable>) operand(right, left));
+		case ADD:
+			return cb.sum((Expression<Number>) operand(left, right), (Expression<Number>) operand(right, left));
+		case SUB:
+			return cb.diff((Expression<Number>) operand(left, right), (Expression<Number>) operand(right, left));
+		case MUL:
+			return cb.prod((Expression<Number>) operand(left, right), (Expression<Number>) operand(right, left));
+		case DIV:
+			return cb.quot((Expression<Number>) operand(left, right), (Expression<Number>) operand(right, left));
+		case MOD:
+			return cb.mod((Expression<Integer>) operand(left, right), (Expression<Integer>) operand(right, left));
+		default:
+			throw notImplemented("Binary operator " + operator);
+		}
+	}
+
+	@Override
+	public Object visitUnaryOperator(UnaryOperatorKind operator, Object operand)
+			throws ExpressionVisitException, ODataApplicationException {
+
+		switch (operator) {
+		case NOT:
+			return cb.not(predicate(operand));
+		case MINUS:
+			return cb.neg((Expression<Number>) expression(operand));
+		default:
+			throw notImplemented("Unary operator " + operator);
+		}
+	}
+
+	@Override
+	public Object visitMethodCall(MethodKind methodCall, List<Object> parameters)
+			throws ExpressionVisitException, ODataApplicationException {
+
+		switch (methodCall) {
+		case CONTAINS:
+			return like(parameters.get(0), parameters.get(1), true, true);
+		case STARTSWITH:
+			return like(parameters.get(0), parameters.get(1), false, true);
+		case ENDSWITH:
+			return like(parameters.get(0), parameters.get(1), true, false);
+		case TOLOWER:
+			return cb.lower(string(parameters.get(0)));
+		case TOUPPER:
+			return cb.upper(string(parameters.get(0)));
+		case TRIM:
+			return cb.trim(string(parameters.get(0)));
+		case LENGTH:
+			return cb.length(string(parameters.get(0)));
+		case CONCAT:
+			return cb.concat(string(parameters.get(0)), string(parameters.get(1)));
+		case INDEXOF:
+			/* OData positions are zero based, SQL positions one based */
+			return cb.diff(cb.locate(string(parameters.get(0)), string(parameters.get(1))), 1);
+		case SUBSTRING:
+			Expression<Integer> from = cb.sum((Expression<Integer>) operand(parameters.get(1), Integer.class), 1);
+			if (parameters.size() > 2)
+				return cb.substring(string(parameters.get(0)), from,
+						(Expression<Integer>) operand(parameters.get(2), Integer.class));
+			return cb.substring(string(parameters.get(0)), from);
+		case YEAR:
+		case MONTH:
+		case DAY:
+		case HOUR:
+		case MINUTE:
+		case SECOND:
+			return cb.function(methodCall.name().toLowerCase(Locale.ENGLISH), Integer.class,
+					expression(parameters.get(0)));
+		case NOW:
+			return cb.currentTimestamp();
+		case ROUND:
+		case FLOOR:
+		case CEILING:
+			return cb.function(methodCall.name().toLowerCase(Locale.ENGLISH), Number.class,
+					expression(parameters.get(0)));
+		default:
+			throw notImplemented("Method " + methodCall);
+		}
+	}
+
+	@Override
+	public Object visitLiteral(String literal) throws ExpressionVisitException, ODataApplicationException {
+		return FilterLiteral.of(literal, literals++);
+	}
+
+	@Override
+	public Object visitMember(UriInfoResource member) throws ExpressionVisitException, ODataApplicationException {
+
+		List<UriResource> resourceParts = member.getUriResourceParts();
+
+		if (resourceParts.size() == 1 && resourceParts.get(0) instanceof UriResourcePrimitiveProperty) {
+			UriResourcePrimitiveProperty property = (UriResourcePrimitiveProperty) resourceParts.get(0);
+			return root.get(property.getProperty().getName());
+		}
+
+		throw notImplemented("Member " + resourceParts);
+	}
+
+	@Override
+	public Object visitAlias(String aliasName) throws ExpressionVisitException, ODataApplicationException {
+		throw notImplemented("Alias " + aliasName);
+	}
+
+	@Override
+	public Object visitTypeLiteral(EdmType type) throws ExpressionVisitException, ODataApplicationException {
+		throw notImplemented("Type literal " + type.getName());
+	}
+
+	@Override
+	public Object visitLambdaExpression(String lambdaFunction, String lambdaVariable,
+			org.apache.olingo.server.api.uri.queryoption.expression.Expression expression)
+			throws ExpressionVisitException, ODataApplicationException {
+		throw notImplemented("Lambda expression " + lambdaFunction);
+	}
+
+	@Override
+	public Object visitLambdaReference(String variableName)
+			throws ExpressionVisitException, ODataApplicationException {
+		throw notImplemented("Lambda reference " + variableName);
+	}
+
+	@Override
+	public Object visitEnum(EdmEnumType type, List<String> enumValues)
+			throws ExpressionVisitException, ODataApplicationException {
+		throw notImplemented("Enum " + type.getName());
+	}
+
+	private Predicate like(Object value, Object pattern, boolean leading, boolean trailing)
+			throws ODataApplicationException {
+
+		if (pattern instanceof FilterLiteral) {
+
+			FilterLiteral literal = (FilterLiteral) pattern;
+			return cb.like(string(value),
+					parameter(String.class, QueryParameter.likePattern(literal, leading, trailing),
+							QueryParameter.like(literal.getIndex(), leading, trailing)),
+					QueryParameter.LIKE_ESCAPE);
+		}
+
+		Expression<String> likePattern = string(pattern);
+		if (leading)
+			likePattern = cb.concat("%", likePattern);
+		if (trailing)
+			likePattern = cb.concat(likePattern, "%");
+
+		return cb.like(string(value), likePattern);
+	}
+
+	private Predicate predicate(Object operand) throws ODataApplicationException {
+
+		Expression<?> expression = expression(operand);
+		if (expression instanceof Predicate)
+			return (Predicate) expression;
+
+		return cb.isTrue((Expression<Boolean>) expression);
+	}
+
+	private Expression<String> string(Object operand) throws ODataApplicationException {
+		return (Expression<String>) operand(operand, String.class);
+	}
+
+	/*
+	 * Gets the operand as an expression, typed after the other operand of the
+	 * binary operation when the operand is a literal.
+	 */
+	private Expression<?> operand(Object operand, Object other) throws ODataApplicationException {
+
+		if (operand instanceof FilterLiteral && other instanceof Expression)
+			return operand(operand, ((Expression<?>) other).getJavaType());
+
+		return expression(operand);
+	}
+
+	private Expression<?> operand(Object operand, Class<?> type) throws ODataApplicationException {
+
+		if (operand instanceof FilterLiteral) {
+			FilterLiteral literal = (FilterLiteral) operand;
+			Class<?> valueType = type != null && type != Object.class ? type : null;
+			Object value = valueType != null ? literal.getValue(valueType) : literal.getValue();
+			Class<?> parameterType = value == null ? type : value.getClass();
+			return parameter(parameterType, value, QueryParameter.literal(literal.getIndex(), valueType));
+		}
+		return expression(operand);
+	}
+
+	private Expression<?> expression(Object operand) throws ODataApplicationException {
+
+		if (operand instanceof FilterLiteral) {
+			FilterLiteral literal = (FilterLiteral) operand;
+			Object value = literal.getValue();
+			if (value == null)
+				return cb.nullLiteral(Object.class);
+			return parameter(value.getClass(), value, QueryParameter.literal(literal.getIndex(), null));
+		}
+		if (operand instanceof Expression)
+			return (Expression<?>) operand;
+
+		throw notImplemented("Operand " + operand);
+	}
+
+	private <T> ParameterExpression<T> parameter(Class<T> type, Object value, QueryParameter source) {
+
+		ParameterExpression<T> parameter = cb.parameter(type, QueryParameter.name(parameters.size()));
+		parameters.put(parameter, value);
+		sources.add(source);
+		return parameter;
+	}
+
+	private boolean isNullLiteral(Object operand) {
+		return operand instanceof FilterLiteral && ((FilterLiteral) operand).isNull();
+	}
+
+	private ODataApplicationException notImplemented(String what) {
+		return new ODataApplicationException(what + " is not supported in $filter",
+				HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+	}
+}
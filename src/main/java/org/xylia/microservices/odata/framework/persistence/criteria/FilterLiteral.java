@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.criteria;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Converts the literals of a $filter expression into Java values, either
+ * by their own OData syntax or coerced to the Java type of the entity
+ * attribute they are compared with. A literal knows its index among the
+ * literals of the expressions of a query, in the order they are visited.
+ */
+
+public final class FilterLiteral {
+
+	private final String text;
+
+	private final int index;
+
+	private FilterLiteral(String text, int index) {
+		this.text = text;
+		this.index = index;
+	}
+
+	public static FilterLiteral of(String text) {
+		return new FilterLiteral(text, -1);
+	}
+
+	public static FilterLiteral of(String text, int index) {
+		return new FilterLiteral(text, index);
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public boolean isNull() {
+		return "null".equals(text);
+	}
+
+	public boolean isString() {
+		return text.length() >= 2 && text.charAt(0) == '\'' && text.charAt(text.length() - 1) == '\'';
+	}
+
+	/*
+	 * Gets the value of the literal by its own syntax.
+	 */
+	public Object getValue() throws ODataApplicationException {
+
+		if (isNull())
+			return null;
+
+		if (isString())
+			return unquote();
+
+		if ("true".equals(text) || "false".equals(text))
+			return Boolean.valueOf(text);
+
+		try {
+			if (text.matches("-?\\d+"))
+				return Long.valueOf(text);
+
+			if (text.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?"))
+				return new BigDecimal(text);
+
+			if (text.matches("\\d{4}-\\d{2}-\\d{2}"))
+				return java.sql.Date.valueOf(text);
+
+			if (text.matches("\\d{4}-\\d{2}-\\d{2}T.*"))
+				return Timestamp.from(OffsetDateTime.parse(text).toInstant());
+
+		} catch (RuntimeException e) {
+			throw invalid(e);
+		}
+
+		throw new ODataApplicationException("The literal " + text + " is not supported in $filter",
+				HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+	}
+
+	/*
+	 * Gets the value of the literal converted to the given attribute type.
+	 */
+	public Object getValue(Class<?> type) throws ODataApplicationException {
+
+		if (isNull())
+			return null;
+
+		String value = isString() ? unquote() : text;
+
+		try {
+			if (type == String.class)
+				return value;
+			if (type == Integer.class || type == int.class)
+				return Integer.valueOf(value);
+			if (type == Long.class || type == long.class)
+				return Long.valueOf(value);
+			if (type == Short.class || type == short.class)
+				return Short.valueOf(value);
+			if (type == Byte.class || type == byte.class)
+				return Byte.valueOf(value);
+			if (type == Double.class || type == double.class)
+				return Double.valueOf(value);
+			if (type == Float.class || type == float.class)
+				return Float.valueOf(value);
+			if (type == BigDecimal.class)
+				return new BigDecimal(value);
+			if (type == BigInteger.class)
+				return new BigInteger(value);
+			if (type == Boolean.class || type == boolean.class)
+				return Boolean.valueOf(value);
+			if (type == UUID.class)
+				return UUID.fromString(value);
+			if (type == java.sql.Date.class)
+				return java.sql.Date.valueOf(value.length() > 10 ? value.substring(0, 10) : value);
+			if (type == LocalDate.class)
+				return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value);
+			if (type == Timestamp.class || type == java.util.Date.class)
+				return value.length() == 10 ? new Timestamp(java.sql.Date.valueOf(value).getTime())
+						: Timestamp.from(OffsetDateTime.parse(value).toInstant());
+			if (type.isEnum())
+				return enumValue(type, value);
+
+		} catch (RuntimeException e) {
+			throw invalid(e);
+		}
+
+		return getValue();
+	}
+
+	private String unquote() {
+		return text.substring(1, text.length() - 1).replace("''", "'");
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object enumValue(Class<?> type, String value) {
+		return Enum.valueOf((Class<? extends Enum>) type, value);
+	}
+
+	private ODataApplicationException invalid(RuntimeException e) {
+		return new ODataApplicationException("Invalid literal " + text + " in $filter: " + e.getLocalizedMessage(),
+				HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.criteria;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.olingo.commons.api.edm.EdmEnumType;
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriInfoResource;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceProperty;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitor;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Renders the shape of an OData expression: its operators, methods and
+ * members, with every literal replaced by a placeholder of the literal type.
+ * Expressions of the same shape translate into the same query text and only
+ * differ in the parameter values bound to it. The literals are collected in
+ * the order they are visited, the order in which the FilterExpressionVisitor
+ * turns them into parameters, so that the parameters of a cached query text
+ * are bound from them without translating the expression.
+ */
+
+public class FilterShape implements ExpressionVisitor<String> {
+
+	private final List<FilterLiteral> literals;
+
+	private FilterShape(List<FilterLiteral> literals) {
+		this.literals = literals;
+	}
+
+	/*
+	 * Gets the shape of the expression, or null if it cannot be rendered.
+	 */
+	public static String of(Expression expression) {
+		return of(expression, new ArrayList<FilterLiteral>());
+	}
+
+	/*
+	 * Gets the shape of the expression, or null if it cannot be rendered,
+	 * adding its literals to the given ones.
+	 */
+	public static String of(Expression expression, List<FilterLiteral> literals) {
+
+		if (expression == null)
+			return "";
+
+		try {
+			return expression.accept(new FilterShape(literals));
+		} catch (ExpressionVisitException | ODataApplicationException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String visitBinaryOperator(BinaryOperatorKind operator, String left, String right) {
+		return "(" + left + " " + operator + " " + right + ")";
+	}
+
+	@Override
+	public String visitUnaryOperator(UnaryOperatorKind operator, String operand) {
+		return operator + "(" + operand + ")";
+	}
+
+	@Override
+	public String visitMethodCall(MethodKind methodCall, List<String> parameters) {
+
+		StringBuilder shape = new StringBuilder(methodCall.name()).append('(');
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i > 0)
+				shape.append(',');
+			shape.append(parameters.get(i));
+		}
+		return shape.append(')').toString();
+	}
+
+	@Override
+	public String visitLiteral(String literal) {
+
+		FilterLiteral filterLiteral = FilterLiteral.of(literal, literals.size());
+		literals.add(filterLiteral);
+
+		try {
+			Object value = filterLiteral.getValue();
+			return value == null ? "null" : "?" + value.getClass().getSimpleName();
+		} catch (ODataApplicationException e) {
+			/* rejected by the FilterExpressionVisitor */
+			return "?";
+		}
+	}
+
+	@Override
+	public String visitMember(UriInfoResource member) {
+
+		StringBuilder shape = new StringBuilder();
+		for (UriResource resourcePart : member.getUriResourceParts()) {
+			shape.append('/').append(resourcePart instanceof UriResourceProperty
+					? ((UriResourceProperty) resourcePart).getProperty().getName() : resourcePart.toString());
+		}
+		return shape.toString();
+	}
+
+	@Override
+	public String visitAlias(String aliasName) {
+		return "@" + aliasName;
+	}
+
+	@Override
+	public String visitTypeLiteral(EdmType type) {
+		return type.getName();
+	}
+
+	@Override
+	public String visitLambdaExpression(String lambdaFunction, String lambdaVariable, Expression expression)
+			throws ExpressionVisitException, ODataApplicationException {
+		return lambdaFunction + "(" + lambdaVariable + ":" + expression.accept(this) + ")";
+	}
+
+	@Override
+	public String visitLambdaReference(String variableName) {
+		return variableName;
+	}
+
+	@Override
+	public String visitEnum(EdmEnumType type, List<String> enumValues) {
+		return type.getName() + enumValues;
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.criteria;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Encodes the sort key values of the last row of a page into a URL safe
+ * token, and decodes them again when the following page is requested. Every
+ * value is written as a type tag, its length and its text, so the values
+ * come back with the Java type of the attribute they were read from. The
+ * values are preceded by a hash of the attributes and directions of the
+ * sort order, so that a token is only applied to the sort order it was read
+ * from.
+ */
+
+public final class KeysetToken {
+
+	private KeysetToken() {
+	}
+
+	private static final char ORDER = 'o';
+
+	/*
+	 * Encodes the values of the sort keys, or returns null if a value has no
+	 * token representation.
+	 */
+	public static String encode(List<SortKey> sortKeys, List<Object> values) {
+
+		String order = order(sortKeys);
+		StringBuilder token = new StringBuilder();
+		token.append(ORDER).append(order.length()).append(':').append(order);
+
+		for (Object value : values) {
+
+			char tag = tag(value);
+			if (tag == 0)
+				return null;
+
+			String text = text(value);
+			token.append(tag).append(text.length()).append(':').append(text);
+		}
+
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * Decodes the values of the token for the given sort keys, or returns
+	 * null if the token is not valid or was read from another sort order.
+	 */
+	public static List<Object> decode(String token, List<SortKey> sortKeys) {
+
+		try {
+			String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			List<Object> values = new ArrayList<Object>();
+			String order = null;
+
+			int position = 0;
+			while (position < decoded.length()) {
+
+				char tag = decoded.charAt(position);
+				int separator = decoded.indexOf(':', position);
+				int length = Integer.parseInt(decoded.substring(position + 1, separator));
+				String text = decoded.substring(separator + 1, separator + 1 + length);
+
+				if (position == 0 && tag == ORDER)
+					order = text;
+				else
+					values.add(value(tag, text));
+				position = separator + 1 + length;
+			}
+
+			if (!order(sortKeys).equals(order) || values.size() != sortKeys.size())
+				return null;
+			return values;
+
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * Hashes the attributes and directions of the sort keys.
+	 */
+	private static String order(List<SortKey> sortKeys) {
+
+		StringBuilder order = new StringBuilder();
+		for (SortKey sortKey : sortKeys)
+			order.append(sortKey).append(',');
+
+		CRC32 crc = new CRC32();
+		crc.update(order.toString().getBytes(StandardCharsets.UTF_8));
+		return Long.toHexString(crc.getValue());
+	}
+
+	private static char tag(Object value) {
+
+		if (value instanceof String)
+			return 's';
+		if (value instanceof Integer)
+			return 'i';
+		if (value instanceof Long)
+			return 'l';
+		if (value instanceof Short)
+			return 'h';
+		if (value instanceof Byte)
+			return 'y';
+		if (value instanceof Double)
+			return 'd';
+		if (value instanceof Float)
+			return 'f';
+		if (value instanceof BigDecimal)
+			return 'm';
+		if (value instanceof BigInteger)
+			return 'g';
+		if (value instanceof Boolean)
+			return 'b';
+		if (value instanceof UUID)
+			return 'u';
+		if (value instanceof java.sql.Date)
+			return 'D';
+		if (value instanceof Timestamp)
+			return 'T';
+		if (value instanceof Date)
+			return 'U';
+		return 0;
+	}
+
+	private static String text(Object value) {
+
+		if (value instanceof Timestamp)
+			return Math.floorDiv(((Timestamp) value).getTime(), 1000) + "." + ((Timestamp) value).getNanos();
+		if (value instanceof Date && !(value instanceof java.sql.Date))
+			return String.valueOf(((Date) value).getTime());
+		return value.toString();
+	}
+
+	private static Object value(char tag, String text) {
+
+		switch (tag) {
+		case 's':
+			return text;
+		case 'i':
+			return Integer.valueOf(text);
+		case 'l':
+			return Long.valueOf(text);
+		case 'h':
+			return Short.valueOf(text);
+		case 'y':
+			return Byte.valueOf(text);
+		case 'd':
+			return Double.valueOf(text);
+		case 'f':
+			return Float.valueOf(text);
+		case 'm':
+			return new BigDecimal(text);
+		case 'g':
+			return new BigInteger(text);
+		case 'b':
+			return Boolean.valueOf(text);
+		case 'u':
+			return UUID.fromString(text);
+		case 'D':
+			return java.sql.Date.valueOf(text);
+		case 'T':
+			int dot = text.indexOf('.');
+			Timestamp timestamp = new Timestamp(Long.parseLong(text.substring(0, dot)) * 1000);
+			timestamp.setNanos(Integer.parseInt(text.substring(dot + 1)));
+			return timestamp;
+		case 'U':
+			return new Date(Long.parseLong(text));
+		default:
+			throw new IllegalArgumentException("Unknown keyset value tag " + tag);
+		}
+	}
+}
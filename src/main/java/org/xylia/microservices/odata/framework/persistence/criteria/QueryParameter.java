@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.persistence.criteria;
+
+import java.util.List;
+
+import org.apache.olingo.server.api.ODataApplicationException;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Where the value of a query parameter comes from: a literal of the $filter
+ * or $orderby expressions, converted to the Java type of the attribute it is
+ * compared with, a LIKE pattern built from a literal, or a keyset seek
+ * value. A cached query text keeps the sources of its parameters, so that a
+ * query of a known shape is bound from the literals of the request without
+ * translating its expressions again.
+ */
+
+public final class QueryParameter {
+
+	static final char LIKE_ESCAPE = '\\';
+
+	private enum Source {
+		LITERAL, LIKE, SEEK
+	}
+
+	private final Source source;
+
+	private final int index;
+
+	private final Class<?> type;
+
+	private final boolean leading;
+
+	private final boolean trailing;
+
+	private QueryParameter(Source source, int index, Class<?> type, boolean leading, boolean trailing) {
+		this.source = source;
+		this.index = index;
+		this.type = type;
+		this.leading = leading;
+		this.trailing = trailing;
+	}
+
+	/*
+	 * The literal of the given index converted to the type, or taken by its
+	 * own syntax when the type is null.
+	 */
+	public static QueryParameter literal(int index, Class<?> type) {
+		return new QueryParameter(Source.LITERAL, index, type, false, false);
+	}
+
+	/*
+	 * The LIKE pattern matching the text of the literal of the given index.
+	 */
+	public static QueryParameter like(int index, boolean leading, boolean trailing) {
+		return new QueryParameter(Source.LIKE, index, String.class, leading, trailing);
+	}
+
+	/*
+	 * The keyset seek value of the given index.
+	 */
+	public static QueryParameter seek(int index) {
+		return new QueryParameter(Source.SEEK, index, null, false, false);
+	}
+
+	/*
+	 * Gets the name of the parameter at the given position of a query,
+	 * parameters are named in creation order so that queries of the same
+	 * shape render to the same text.
+	 */
+	public static String name(int position) {
+		return "p" + position;
+	}
+
+	/*
+	 * Gets the value of the parameter from the literals of the expressions,
+	 * in the order they are visited, and the seek values of the query.
+	 */
+	public Object value(List<FilterLiteral> literals, List<Object> seekValues) throws ODataApplicationException {
+
+		switch (source) {
+		case SEEK:
+			return seekValues.get(index);
+		case LIKE:
+			return likePattern(literals.get(index), leading, trailing);
+		default:
+			return type != null ? literals.get(index).getValue(type) : literals.get(index).getValue();
+		}
+	}
+
+	/*
+	 * Builds the LIKE pattern of the text of the literal, escaping the LIKE
+	 * wildcards it contains.
+	 */
+	static String likePattern(FilterLiteral literal, boolean leading, boolean trailing)
+			throws ODataApplicationException {
+
+		String text = String.valueOf(literal.getValue(String.class));
+		String escaped = text.replace(String.valueOf(LIKE_ESCAPE), "" + LIKE_ESCAPE + LIKE_ESCAPE)
+				.replace("%", LIKE_ESCAPE + "%").replace("_", LIKE_ESCAPE + "_");
+
+		return (leading ? "%" : "") + escaped + (trailing ? "%" : "");
+	}
+}
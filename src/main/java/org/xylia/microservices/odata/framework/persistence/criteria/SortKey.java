@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.criteria;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * One key of the sort order of an entity query, taken from $orderby. A key
+ * is either a plain entity attribute or a computed expression. Only sort
+ * orders made of attributes that hold no NULL can be used for keyset (seek)
+ * pagination: a NULL sort key fails every comparison of the seek predicate,
+ * so its rows would be missing from the following pages.
+ */
+
+public final class SortKey {
+
+	private final String attribute;
+
+	private final Expression expression;
+
+	private final boolean descending;
+
+	private final boolean nullable;
+
+	private SortKey(String attribute, Expression expression, boolean descending, boolean nullable) {
+		this.attribute = attribute;
+		this.expression = expression;
+		this.descending = descending;
+		this.nullable = nullable;
+	}
+
+	public static SortKey attribute(String attribute, boolean descending, boolean nullable) {
+		return new SortKey(attribute, null, descending, nullable);
+	}
+
+	public static SortKey expression(Expression expression, boolean descending) {
+		return new SortKey(null, expression, descending, true);
+	}
+
+	/*
+	 * Builds the sort keys of the $orderby option, followed by the @Id
+	 * attribute as tiebreak so that the order is total and stable. The
+	 * nullable test tells the attributes that may hold NULL.
+	 */
+	public static List<SortKey> of(OrderByOption orderByOption, String idAttribute, Predicate<String> nullable) {
+
+		List<SortKey> sortKeys = new ArrayList<SortKey>();
+		boolean idSorted = false;
+
+		if (orderByOption != null) {
+			for (OrderByItem item : orderByOption.getOrders()) {
+
+				String attribute = attributeName(item.getExpression());
+				if (attribute != null) {
+					sortKeys.add(attribute(attribute, item.isDescending(),
+							!attribute.equals(idAttribute) && nullable.test(attribute)));
+					idSorted |= attribute.equals(idAttribute);
+				} else {
+					sortKeys.add(expression(item.getExpression(), item.isDescending()));
+				}
+			}
+		}
+
+		if (idAttribute != null && !idSorted)
+			sortKeys.add(attribute(idAttribute, false, false));
+
+		return Collections.unmodifiableList(sortKeys);
+	}
+
+	/*
+	 * Checks whether the position of a row in the sort order can be
+	 * described by the values of its sort keys, which requires attribute
+	 * keys that hold no NULL.
+	 */
+	public static boolean isSeekable(List<SortKey> sortKeys) {
+
+		if (sortKeys == null || sortKeys.isEmpty())
+			return false;
+
+		for (SortKey sortKey : sortKeys) {
+			if (sortKey.attribute == null || sortKey.nullable)
+				return false;
+		}
+		return true;
+	}
+
+	public String getAttribute() {
+		return attribute;
+	}
+
+	public Expression getExpression() {
+		return expression;
+	}
+
+	public boolean isDescending() {
+		return descending;
+	}
+
+	public boolean isNullable() {
+		return nullable;
+	}
+
+	private static String attributeName(Expression expression) {
+
+		if (!(expression instanceof Member))
+			return null;
+
+		List<UriResource> resourceParts = ((Member) expression).getResourcePath().getUriResourceParts();
+		if (resourceParts.size() == 1 && resourceParts.get(0) instanceof UriResourcePrimitiveProperty)
+			return ((UriResourcePrimitiveProperty) resourceParts.get(0)).getProperty().getName();
+
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return (attribute != null ? attribute : String.valueOf(expression)) + (descending ? " desc" : " asc");
+	}
+}
@@ -20,20 +20,57 @@
 
 package org.xylia.microservices.odata.framework.persistence.repository;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.persistence.Table;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
 import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.IdentityGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.xylia.microservices.odata.framework.persistence.criteria.FilterExpressionVisitor;
+import org.xylia.microservices.odata.framework.persistence.criteria.FilterLiteral;
+import org.xylia.microservices.odata.framework.persistence.criteria.SortKey;
+import org.xylia.microservices.odata.framework.util.EntityRowWriter;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics.Phase;
 
 import com.google.common.collect.Lists;
 
@@ -48,24 +85,107 @@ public class CoreEntityRepositoryProcessorImpl {
 	@PersistenceContext
 	private EntityManager em;
 
+	@Autowired
+	private QueryTemplateCache queryTemplates;
+
 	private static final Logger logger = LoggerFactory.getLogger(CoreEntityRepositoryProcessorImpl.class);
 
+	private static final String QUERY_TIMEOUT = "javax.persistence.query.timeout";
+
+	/* the estimate queries by database product name, ? is the table name */
+	private static final Map<String, String> ESTIMATE_QUERIES = new LinkedHashMap<String, String>();
+
+	static {
+		ESTIMATE_QUERIES.put("PostgreSQL", "select cast(reltuples as bigint) from pg_class where relname = ?");
+		ESTIMATE_QUERIES.put("MySQL",
+				"select table_rows from information_schema.tables where table_schema = database() and table_name = ?");
+		ESTIMATE_QUERIES.put("MariaDB",
+				"select table_rows from information_schema.tables where table_schema = database() and table_name = ?");
+		ESTIMATE_QUERIES.put("H2",
+				"select row_count_estimate from information_schema.tables where upper(table_name) = upper(?)");
+		ESTIMATE_QUERIES.put("Oracle", "select num_rows from user_tables where table_name = upper(?)");
+	}
+
+	/* overrides the estimate query of the database, empty to choose it by product name */
+	@Value("${odata.count.estimate-query:}")
+	private String estimateQuery;
+
+	/* the estimate query of the database, empty if it has none, null until resolved */
+	private volatile String resolvedEstimateQuery;
+
+	@Value("${odata.write.batch-size:50}")
+	private int writeBatchSize;
+
+	/* the queries of async requests time out with their request, see RequestExecutor */
+	@Value("${odata.async.enabled:false}")
+	private boolean async;
+
+	@Value("${odata.async.timeout:60000}")
+	private long asyncTimeout;
+
+	/* whether the inserts of an entity class can be sent in JDBC batches */
+	private final ConcurrentMap<Class<?>, Boolean> insertBatching = new ConcurrentHashMap<Class<?>, Boolean>();
+
 	/*
-	 * Find all objects for the given entity
+	 * Find all objects for the given entity, within the window of the query
 	 */
 	@SuppressWarnings("unchecked")
-	public List<?> findAll(String fullQualifiedEntityName) {
+	public List<?> findAll(EntityQuery entityQuery) throws ODataApplicationException {
 
 		try {
 
-			CriteriaBuilder cb = em.getCriteriaBuilder();
-			CriteriaQuery<?> cq = cb.createQuery(Class.forName(fullQualifiedEntityName));
+			if (entityQuery.getMaxResults() == 0)
+				return Collections.emptyList();
+
+			Class<?> entityClass = queryTemplates.getEntityClass(entityQuery.getEntityName());
+
+			TypedQuery<?> allQuery = createQuery("all", entityClass, entityClass, entityQuery,
+					(cb, criteria, root) -> criteria.select(root));
+			return execute(() -> window(allQuery, entityQuery).getResultList());
+
+		} catch (ClassNotFoundException ce) {
+			logger.debug(ce.getLocalizedMessage());
+		}
+		return null;
+	}
+
+	/*
+	 * Scroll the objects of the given entity, or the selected attributes when
+	 * the query has selections, within the window of the query. The rows are
+	 * read from a forward only cursor with the given JDBC fetch size instead
+	 * of being materialized in a list. Rows of several selected attributes
+	 * are read as Object[].
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public <T> EntityCursor<T> scroll(EntityQuery entityQuery, int fetchSize, int clearInterval)
+			throws ODataApplicationException {
+
+		try {
 
-			@SuppressWarnings("rawtypes")
-			Root entityRoot = cq.from(Class.forName(fullQualifiedEntityName));
-			CriteriaQuery<?> all = cq.select(entityRoot);
-			TypedQuery<?> allQuery = em.createQuery(all);
-			return allQuery.getResultList();
+			String[] selections = entityQuery.getSelections();
+			boolean multiselect = selections != null && selections.length > 1;
+			Class<?> resultClass = multiselect ? Object[].class : Object.class;
+
+			TypedQuery<?> query = window(createQuery("scroll", resultClass,
+					queryTemplates.getEntityClass(entityQuery.getEntityName()), entityQuery, (cb, criteria, root) -> {
+
+						if (selections == null)
+							criteria.select(root);
+						else if (selections.length == 1)
+							criteria.select(root.get(selections[0]));
+						else {
+
+							List<Path<?>> paths = Lists.newArrayList();
+							for (String selection : selections)
+								paths.add(root.get(selection));
+							criteria.multiselect(paths.toArray(new Path[paths.size()]));
+						}
+					}), entityQuery);
+
+			ScrollableResults results = execute(() -> query.unwrap(Query.class).setFetchSize(fetchSize)
+					.setReadOnly(true).scroll(ScrollMode.FORWARD_ONLY));
+
+			return new EntityCursor<T>(results, em, multiselect, clearInterval);
 
 		} catch (ClassNotFoundException ce) {
 			logger.debug(ce.getLocalizedMessage());
@@ -73,18 +193,156 @@ public class CoreEntityRepositoryProcessorImpl {
 		return null;
 	}
 
-	public List<?> findById(String fullQualifiedEntityName, int id) {
+	/*
+	 * Count the objects of the given entity matching the $filter of the query
+	 */
+	@SuppressWarnings("unchecked")
+	public long count(EntityQuery entityQuery) throws ODataApplicationException {
 
 		try {
+
+			TypedQuery<Long> query = createQuery("count", Long.class,
+					queryTemplates.getEntityClass(entityQuery.getEntityName()), entityQuery,
+					(cb, criteria, root) -> criteria.select(cb.count(root)));
+			return execute(query::getSingleResult);
+
+		} catch (ClassNotFoundException ce) {
+			logger.debug(ce.getLocalizedMessage());
+		}
+		return 0;
+	}
+
+	/*
+	 * Estimate the number of objects of the given entity from the planner
+	 * statistics of the database, returns null if there is no estimate. The
+	 * estimate query runs on the connection the request already holds, within
+	 * a savepoint, so that it takes no second pooled connection and a failing
+	 * one leaves the transaction of the request usable.
+	 */
+	public Long estimateCount(String fullQualifiedEntityName) {
+
+		if ("".equals(resolvedEstimateQuery))
+			return null;
+
+		try {
+
+			String table = tableName(queryTemplates.getEntityClass(fullQualifiedEntityName));
+			String sql = estimateQuery();
+			if (sql.isEmpty())
+				return null;
+
+			int timeout = (int) (queryTimeout() / 1000L);
+			Long estimate = execute(() -> em.unwrap(Session.class)
+					.doReturningWork(connection -> estimate(connection, sql, table, timeout)));
+			if (estimate != null && estimate >= 0)
+				return estimate;
+
+		} catch (ClassNotFoundException | PersistenceException | HibernateException e) {
+			logger.debug(e.getLocalizedMessage());
+		}
+		return null;
+	}
+
+	/*
+	 * Runs the estimate query. Within a transaction it is enclosed in a
+	 * savepoint that a failure rolls back to, as some databases abort the
+	 * whole transaction on a failed statement.
+	 */
+	private static Long estimate(Connection connection, String sql, String table, int timeout) {
+
+		Savepoint savepoint = null;
+		try {
+			if (!connection.getAutoCommit())
+				savepoint = connection.setSavepoint();
+
+			Long estimate = null;
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				statement.setQueryTimeout(timeout);
+				statement.setString(1, table);
+				try (ResultSet rs = statement.executeQuery()) {
+					if (rs.next() && rs.getObject(1) != null)
+						estimate = rs.getLong(1);
+				}
+			}
+
+			release(connection, savepoint);
+			return estimate;
+
+		} catch (SQLException e) {
+			logger.debug(e.getLocalizedMessage());
+			if (savepoint != null) {
+				try {
+					connection.rollback(savepoint);
+				} catch (SQLException re) {
+					logger.debug(re.getLocalizedMessage());
+				}
+			}
+			return null;
+		}
+	}
+
+	private static void release(Connection connection, Savepoint savepoint) {
+
+		if (savepoint == null)
+			return;
+		try {
+			connection.releaseSavepoint(savepoint);
+		} catch (SQLException e) {
+			/* not every driver releases savepoints, they end with the transaction */
+			logger.debug(e.getLocalizedMessage());
+		}
+	}
+
+	/*
+	 * Resolves the estimate query, the configured one or the one known for
+	 * the database product. Databases without one are counted exactly.
+	 */
+	private String estimateQuery() {
+
+		String query = resolvedEstimateQuery;
+		if (query != null)
+			return query;
+
+		if (!estimateQuery.isEmpty()) {
+			query = estimateQuery;
+		} else {
+			String product = em.unwrap(Session.class)
+					.doReturningWork(connection -> connection.getMetaData().getDatabaseProductName());
+
+			query = "";
+			for (Map.Entry<String, String> entry : ESTIMATE_QUERIES.entrySet()) {
+				if (product != null && product.startsWith(entry.getKey()))
+					query = entry.getValue();
+			}
+			if (query.isEmpty())
+				logger.info("No count estimate for " + product + ", estimated counts are exact");
+		}
+
+		resolvedEstimateQuery = query;
+		return query;
+	}
+
+	/*
+	 * Find the objects of the given entity with the given @Id, which is
+	 * converted to the type of the @Id field.
+	 *
+	 * @throws IllegalArgumentException if the id does not convert
+	 */
+	public List<?> findById(String fullQualifiedEntityName, Object id) {
+
+		try {
+			Class<?> entityClass = queryTemplates.getEntityClass(fullQualifiedEntityName);
+			EntityRowWriter writer = EntityRowWriter.forClass(entityClass);
+
 			CriteriaBuilder cb = em.getCriteriaBuilder();
-			CriteriaQuery<?> criteria = cb.createQuery(Class.forName(fullQualifiedEntityName));
+			CriteriaQuery<?> criteria = cb.createQuery(entityClass);
 
 			Root entityRoot;
-			entityRoot = criteria.from(Class.forName(fullQualifiedEntityName));
+			entityRoot = criteria.from(entityClass);
 			criteria.select(entityRoot);
-			criteria.where(cb.equal(entityRoot.get("id"), id));
+			criteria.where(cb.equal(entityRoot.get(writer.getIdColumn()), writer.toId(id)));
 
-			return em.createQuery(criteria).getResultList();
+			return execute(timed(em.createQuery(criteria))::getResultList);
 
 		} catch (ClassNotFoundException ce) {
 			logger.debug(ce.getLocalizedMessage());
@@ -92,19 +350,162 @@ public class CoreEntityRepositoryProcessorImpl {
 		return null;
 	}
 
+	/*
+	 * Find the selected attributes of the object of the given entity with the
+	 * given @Id, only those columns are fetched. Returns null if there is no
+	 * such object.
+	 */
+	public Object[] findByIdWithSelections(String fullQualifiedEntityName, Object id, String[] selections)
+			throws ClassNotFoundException {
+
+		Class<?> entityClass = queryTemplates.getEntityClass(fullQualifiedEntityName);
+		EntityRowWriter writer = EntityRowWriter.forClass(entityClass);
+
+		CriteriaBuilder cb = em.getCriteriaBuilder();
+		CriteriaQuery<Object[]> criteria = cb.createQuery(Object[].class);
+		Root<?> entityRoot = criteria.from(entityClass);
+
+		List<Path<?>> paths = Lists.newArrayList();
+		for (String selection : selections)
+			paths.add(entityRoot.get(selection));
+
+		criteria.multiselect(paths.toArray(new Path[paths.size()]));
+		criteria.where(cb.equal(entityRoot.get(writer.getIdColumn()), writer.toId(id)));
+
+		List<Object[]> rows = execute(timed(em.createQuery(criteria)).setMaxResults(1)::getResultList);
+		if (rows.isEmpty())
+			return null;
+
+		/* a single selection may come back as the bare value */
+		Object row = rows.get(0);
+		return row instanceof Object[] ? (Object[]) row : new Object[] { row };
+	}
+
+	/*
+	 * Find the object of the given entity by its @Id, null if there is none
+	 */
+	public Object find(String fullQualifiedEntityName, Object id) throws ClassNotFoundException {
+
+		Class<?> entityClass = queryTemplates.getEntityClass(fullQualifiedEntityName);
+		Object key = EntityRowWriter.forClass(entityClass).toId(id);
+		return execute(() -> em.find(entityClass, key));
+	}
+
+	/*
+	 * Persist new objects of the given entity from the property values of a
+	 * request. The inserts are sent as JDBC batches when the persistence
+	 * context is flushed, which happens at commit or every write batch size
+	 * writes. An IDENTITY @Id is only known once its row is inserted, so
+	 * Hibernate inserts such objects one by one as they are persisted.
+	 */
+	public List<Object> create(String fullQualifiedEntityName, List<Map<String, Object>> rows)
+			throws ClassNotFoundException {
+
+		EntityRowWriter writer = EntityRowWriter.forClass(queryTemplates.getEntityClass(fullQualifiedEntityName));
+		insertBatching.computeIfAbsent(writer.getEntityClass(), this::batchesInserts);
+
+		List<Object> created = new ArrayList<Object>(rows.size());
+		for (Map<String, Object> values : rows) {
+
+			/* a generated @Id is assigned by the database, never by the request */
+			if (writer.isGeneratedId() && values.containsKey(writer.getIdColumn())) {
+				values = new LinkedHashMap<String, Object>(values);
+				values.remove(writer.getIdColumn());
+			}
+
+			Object entity = writer.newInstance();
+			writer.write(entity, values, false);
+			em.persist(entity);
+			created.add(entity);
+
+			flushIfFull(entity);
+		}
+		return created;
+	}
+
+	/*
+	 * Update a managed object from the property values of a request, all
+	 * columns not given are set to null when the update replaces the object
+	 */
+	public void update(Object entity, Map<String, Object> values, boolean replace) {
+
+		EntityRowWriter.forClass(entity.getClass()).write(entity, values, replace);
+		flushIfFull(entity);
+	}
+
+	public void delete(Object entity) {
+
+		em.remove(entity);
+		flushIfFull(entity);
+	}
+
+	/*
+	 * Count a write of the current transaction and flush once a write batch
+	 * of them is pending, so that their statements go out as one JDBC batch.
+	 * Only the written objects are detached after the flush, they keep their
+	 * values and generated ids; objects that were only read stay managed.
+	 */
 	@SuppressWarnings("unchecked")
-	public List<Object> findWithSelection(String fullQualifiedEntityName, String selection) {
+	private void flushIfFull(Object entity) {
+
+		if (!TransactionSynchronizationManager.isSynchronizationActive())
+			return;
+
+		List<Object> pending = (List<Object>) TransactionSynchronizationManager.getResource(this);
+		if (pending == null) {
+			pending = new ArrayList<Object>(writeBatchSize);
+			TransactionSynchronizationManager.bindResource(this, pending);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(CoreEntityRepositoryProcessorImpl.this);
+				}
+			});
+		}
 
-		try {
+		pending.add(entity);
+		if (pending.size() < writeBatchSize)
+			return;
 
-			CriteriaBuilder cb = em.getCriteriaBuilder();
-			CriteriaQuery<Object> query = cb.createQuery(Object.class);
+		em.flush();
+		for (Object written : pending) {
+			if (em.contains(written))
+				em.detach(written);
+		}
+		pending.clear();
+	}
 
-			@SuppressWarnings("rawtypes")
-			Root notesRoot = query.from(Class.forName(fullQualifiedEntityName));
+	/*
+	 * Check whether Hibernate can batch the inserts of the entity class, which
+	 * it cannot for an IDENTITY @Id.
+	 */
+	private boolean batchesInserts(Class<?> entityClass) {
+
+		SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) em.unwrap(Session.class)
+				.getSessionFactory();
+		IdentifierGenerator generator = sessionFactory.getEntityPersister(entityClass.getName())
+				.getIdentifierGenerator();
+		if (!(generator instanceof IdentityGenerator))
+			return true;
+
+		logger.warn("The @Id of " + entityClass.getName()
+				+ " is an IDENTITY column, its inserts are sent one by one rather than in JDBC batches");
+		return false;
+	}
 
-			query.select(notesRoot.get(selection));
-			return em.createQuery(query).getResultList();
+	@SuppressWarnings("unchecked")
+	public List<Object> findWithSelection(EntityQuery entityQuery) throws ODataApplicationException {
+
+		try {
+
+			if (entityQuery.getMaxResults() == 0)
+				return Collections.emptyList();
+
+			String selection = entityQuery.getSelections()[0];
+			TypedQuery<Object> selectionQuery = window(createQuery("selection", Object.class,
+					queryTemplates.getEntityClass(entityQuery.getEntityName()), entityQuery,
+					(cb, criteria, root) -> criteria.select(root.get(selection))), entityQuery);
+			return execute(selectionQuery::getResultList);
 
 		} catch (ClassNotFoundException ce) {
 			logger.debug(ce.getLocalizedMessage());
@@ -112,27 +513,31 @@ public class CoreEntityRepositoryProcessorImpl {
 		return null;
 	}
 
-	public List<Object[]> findWithSelections(String fullQualifiedEntityName, String[] selections) {
+	@SuppressWarnings("unchecked")
+	public List<Object[]> findWithSelections(EntityQuery entityQuery) throws ODataApplicationException {
 
 		try {
 
-			CriteriaBuilder cb = em.getCriteriaBuilder();
-			CriteriaQuery<Object[]> criteria = cb.createQuery(Object[].class);
+			if (entityQuery.getMaxResults() == 0)
+				return Collections.emptyList();
 
-			@SuppressWarnings("rawtypes")
-			Root notesRoot = criteria.from(Class.forName(fullQualifiedEntityName));
+			String[] selections = entityQuery.getSelections();
 
-			List<Path<?>> predicates = Lists.newArrayList();
+			TypedQuery<Object[]> selectionsQuery = window(createQuery("selections", Object[].class,
+					queryTemplates.getEntityClass(entityQuery.getEntityName()), entityQuery, (cb, criteria, root) -> {
 
-			for (int i = 0; i < selections.length; i++) {
+						List<Path<?>> predicates = Lists.newArrayList();
 
-				logger.debug("Selection made:" + selections[i]);
-				Path<Object> predicate = notesRoot.get(selections[i]);
-				predicates.add(predicate);
-			}
+						for (int i = 0; i < selections.length; i++) {
+
+							logger.debug("Selection made:" + selections[i]);
+							Path<Object> predicate = root.get(selections[i]);
+							predicates.add(predicate);
+						}
 
-			criteria.select(cb.array(predicates.toArray(new Path[predicates.size()])));
-			return em.createQuery(criteria).getResultList();
+						criteria.select(cb.array(predicates.toArray(new Path[predicates.size()])));
+					}), entityQuery);
+			return execute(selectionsQuery::getResultList);
 
 		} catch (ClassNotFoundException ce) {
 			logger.debug(ce.getLocalizedMessage());
@@ -140,4 +545,169 @@ public class CoreEntityRepositoryProcessorImpl {
 		return null;
 	}
 
+	/*
+	 * Creates the query to run for the entity query. Once a query of the
+	 * same shape has been created, the query is created from the text the
+	 * criteria query rendered to and its parameters are bound from the
+	 * literals of the request, so no criteria query is built. Otherwise the
+	 * projection is selected from the entity root, and the criteria query is
+	 * restricted and ordered.
+	 */
+	private <T> TypedQuery<T> createQuery(String kind, Class<T> resultClass, Class<?> entityClass,
+			EntityQuery entityQuery, Projection projection) throws ODataApplicationException {
+
+		List<FilterLiteral> literals = new ArrayList<FilterLiteral>();
+		String shape = QueryTemplateCache.getShape(kind, entityQuery, literals);
+		QueryTemplate template = shape != null ? queryTemplates.getTemplate(shape) : null;
+
+		if (template != null && template.isCacheable())
+			return template.bind(timed(em.createQuery(template.getQueryString(), resultClass)), literals,
+					entityQuery.getSeekValues());
+
+		CriteriaBuilder cb = em.getCriteriaBuilder();
+		CriteriaQuery<T> criteria = cb.createQuery(resultClass);
+		Root<?> root = criteria.from(entityClass);
+		projection.select(cb, criteria, root);
+
+		FilterExpressionVisitor filter = restrict(cb, criteria, root, entityQuery);
+
+		TypedQuery<T> query = em.createQuery(criteria);
+		if (shape != null && template == null)
+			queryTemplates.putQuery(shape, query, filter);
+
+		return filter.bind(timed(query));
+	}
+
+	/*
+	 * Applies the timeout of async requests to the query, so that a query
+	 * still running when its request times out is cancelled by the driver
+	 * and gives its connection back. Scrolled queries keep the timeout, as
+	 * they are unwrapped from the same query.
+	 */
+	private <T> TypedQuery<T> timed(TypedQuery<T> query) {
+
+		int timeout = queryTimeout();
+		if (timeout > 0)
+			query.setHint(QUERY_TIMEOUT, timeout);
+		return query;
+	}
+
+	/*
+	 * Gets the query timeout in milliseconds, at least a second as JDBC counts
+	 * it in seconds, or 0 for none when requests are not async.
+	 */
+	private int queryTimeout() {
+		return async && asyncTimeout > 0 ? (int) Math.min(Math.max(asyncTimeout, 1000L), Integer.MAX_VALUE) : 0;
+	}
+
+	/*
+	 * Selects the result of a criteria query from its entity root.
+	 */
+	@SuppressWarnings("rawtypes")
+	private interface Projection {
+
+		void select(CriteriaBuilder cb, CriteriaQuery criteria, Root root);
+	}
+
+	/*
+	 * Translates the $filter, the keyset seek position and the sort order of
+	 * the entity query into the where and order by clauses of the criteria,
+	 * returning the visitor holding the query parameters
+	 */
+	private FilterExpressionVisitor restrict(CriteriaBuilder cb, CriteriaQuery<?> criteria, Root<?> root,
+			EntityQuery entityQuery) throws ODataApplicationException {
+
+		FilterExpressionVisitor filter = new FilterExpressionVisitor(cb, root);
+		List<Predicate> restrictions = new ArrayList<Predicate>();
+
+		if (entityQuery.getFilterOption() != null)
+			restrictions.add(filter.toPredicate(entityQuery.getFilterOption().getExpression()));
+
+		List<SortKey> sortKeys = entityQuery.getSortKeys();
+		if (entityQuery.getSeekValues() != null)
+			restrictions.add(seek(cb, root, sortKeys, entityQuery.getSeekValues(), filter));
+
+		if (!restrictions.isEmpty())
+			criteria.where(restrictions.toArray(new Predicate[restrictions.size()]));
+
+		if (sortKeys != null && !sortKeys.isEmpty()) {
+
+			List<Order> orders = new ArrayList<Order>();
+			for (SortKey sortKey : sortKeys) {
+
+				Expression<?> expression = sortKey.getAttribute() != null ? root.get(sortKey.getAttribute())
+						: filter.toExpression(sortKey.getExpression());
+				orders.add(sortKey.isDescending() ? cb.desc(expression) : cb.asc(expression));
+			}
+			criteria.orderBy(orders);
+		}
+		return filter;
+	}
+
+	/*
+	 * Builds the keyset predicate selecting the rows after the given sort key
+	 * values: (k1 > v1) or (k1 = v1 and k2 > v2) or ..., with the comparison
+	 * reversed for descending keys. The database can answer this from an
+	 * index on the sort keys, so the cost of a page does not depend on its
+	 * position in the entity set.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Predicate seek(CriteriaBuilder cb, Root<?> root, List<SortKey> sortKeys, List<Object> values,
+			FilterExpressionVisitor filter) {
+
+		List<Predicate> alternatives = new ArrayList<Predicate>();
+		List<Predicate> equalities = new ArrayList<Predicate>();
+
+		for (int i = 0; i < sortKeys.size(); i++) {
+
+			SortKey sortKey = sortKeys.get(i);
+			Expression<Comparable> path = root.get(sortKey.getAttribute());
+			Expression<Comparable> value = (Expression) filter.seekParameter(i, values.get(i));
+
+			List<Predicate> alternative = new ArrayList<Predicate>(equalities);
+			alternative.add(sortKey.isDescending() ? cb.lessThan(path, value) : cb.greaterThan(path, value));
+			alternatives.add(cb.and(alternative.toArray(new Predicate[alternative.size()])));
+
+			equalities.add(cb.equal(path, value));
+		}
+		return cb.or(alternatives.toArray(new Predicate[alternatives.size()]));
+	}
+
+	/*
+	 * Runs a query, adding its time to the query phase of the request.
+	 */
+	private static <T> T execute(Supplier<T> query) {
+
+		long start = PipelineMetrics.start();
+		try {
+			return query.get();
+		} finally {
+			PipelineMetrics.record(Phase.QUERY, start);
+		}
+	}
+
+	private static String tableName(Class<?> entityClass) {
+
+		Table table = entityClass.getAnnotation(Table.class);
+		if (table != null && !table.name().isEmpty())
+			return table.name();
+
+		/* the default physical naming strategy of Spring Boot */
+		return entityClass.getSimpleName().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase(Locale.ENGLISH);
+	}
+
+	/*
+	 * Pushes the row window of the entity query down to the database
+	 */
+	private <T> TypedQuery<T> window(TypedQuery<T> query, EntityQuery entityQuery) {
+
+		if (entityQuery.getFirstResult() > 0)
+			query.setFirstResult(entityQuery.getFirstResult());
+
+		if (entityQuery.getMaxResults() > 0)
+			query.setMaxResults(entityQuery.getMaxResults());
+
+		return query;
+	}
+
 }
\ No newline at end of file
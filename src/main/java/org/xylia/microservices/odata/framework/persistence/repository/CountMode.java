@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.repository;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * How an entity set answers $count. EXACT runs a COUNT query every time,
+ * CACHED keeps the result of the COUNT query for a time to live, and
+ * ESTIMATED answers unfiltered counts from the planner statistics of the
+ * database, falling back to CACHED for filtered counts and for databases
+ * without an estimate query.
+ */
+
+public enum CountMode {
+
+	EXACT, CACHED, ESTIMATED
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Per entity set read-through cache of mapped entities keyed by primary
+ * key. Each entity set has its own size and time to live bound; eviction is
+ * frequency aware (Caffeine's W-TinyLFU), so a scan of rarely read keys does
+ * not flush the frequently read ones. Entries are dropped when the entity is
+ * written through the framework. Hit ratio, eviction and load time of every
+ * entity set are published with the actuator metrics.
+ */
+
+@Component
+public class EntityCache implements PublicMetrics {
+
+	private final ConcurrentMap<String, Cache<Object, Entity>> caches = new ConcurrentHashMap<String, Cache<Object, Entity>>();
+
+	/*
+	 * Gets the entity with the given key, loading it on a miss. Keys the
+	 * loader finds no entity for are not cached.
+	 */
+	public Entity get(String entitySetName, Object key, long maximumSize, long ttlSeconds,
+			Function<Object, Entity> loader) {
+		return cache(entitySetName, maximumSize, ttlSeconds).get(key, loader);
+	}
+
+	/*
+	 * Drops the cached entity with the given key.
+	 */
+	public void invalidate(String entitySetName, Object key) {
+
+		Cache<Object, Entity> cache = caches.get(entitySetName);
+		if (cache != null)
+			cache.invalidate(key);
+	}
+
+	/*
+	 * Drops the cached entities of the entity set.
+	 */
+	public void invalidateAll(String entitySetName) {
+
+		Cache<Object, Entity> cache = caches.get(entitySetName);
+		if (cache != null)
+			cache.invalidateAll();
+	}
+
+	public CacheStats getStats(String entitySetName) {
+
+		Cache<Object, Entity> cache = caches.get(entitySetName);
+		return cache != null ? cache.stats() : null;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		for (Map.Entry<String, Cache<Object, Entity>> cache : caches.entrySet()) {
+
+			String prefix = "odata.entity-cache." + cache.getKey();
+			CacheStats stats = cache.getValue().stats();
+
+			metrics.add(new Metric<Long>(prefix + ".size", cache.getValue().estimatedSize()));
+			metrics.add(new Metric<Long>(prefix + ".hit", stats.hitCount()));
+			metrics.add(new Metric<Long>(prefix + ".miss", stats.missCount()));
+			metrics.add(new Metric<Double>(prefix + ".hit-ratio", stats.hitRate()));
+			metrics.add(new Metric<Long>(prefix + ".eviction", stats.evictionCount()));
+			metrics.add(new Metric<Double>(prefix + ".load-time-ms", stats.averageLoadPenalty() / 1000000d));
+		}
+		return metrics;
+	}
+
+	private Cache<Object, Entity> cache(String entitySetName, long maximumSize, long ttlSeconds) {
+
+		Cache<Object, Entity> cache = caches.get(entitySetName);
+		if (cache == null) {
+			cache = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+					.recordStats().build();
+			Cache<Object, Entity> existing = caches.putIfAbsent(entitySetName, cache);
+			if (existing != null)
+				cache = existing;
+		}
+		return cache;
+	}
+}
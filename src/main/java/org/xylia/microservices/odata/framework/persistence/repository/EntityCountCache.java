@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.repository;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Per entity set cache of $count results, keyed by the $filter text. Each
+ * entity set has its own time to live, and its entries are dropped when the
+ * entity set is written through the framework.
+ */
+
+@Component
+public class EntityCountCache {
+
+	@Value("${odata.count.cache-size:1000}")
+	private long maximumSize;
+
+	private final ConcurrentMap<String, Cache<String, Long>> caches = new ConcurrentHashMap<String, Cache<String, Long>>();
+
+	/*
+	 * Gets the cached count, or null if it is not cached or has expired.
+	 */
+	public Long get(String entitySetName, String filter, long ttlSeconds) {
+		return cache(entitySetName, ttlSeconds).getIfPresent(filter == null ? "" : filter);
+	}
+
+	public void put(String entitySetName, String filter, long ttlSeconds, long count) {
+		cache(entitySetName, ttlSeconds).put(filter == null ? "" : filter, count);
+	}
+
+	/*
+	 * Drops the cached counts of the entity set.
+	 */
+	public void invalidate(String entitySetName) {
+
+		Cache<String, Long> cache = caches.get(entitySetName);
+		if (cache != null)
+			cache.invalidateAll();
+	}
+
+	private Cache<String, Long> cache(String entitySetName, long ttlSeconds) {
+
+		Cache<String, Long> cache = caches.get(entitySetName);
+		if (cache == null) {
+			cache = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+					.build();
+			Cache<String, Long> existing = caches.putIfAbsent(entitySetName, cache);
+			if (existing != null)
+				cache = existing;
+		}
+		return cache;
+	}
+}
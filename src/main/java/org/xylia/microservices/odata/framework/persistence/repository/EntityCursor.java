@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.repository;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.ScrollableResults;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Forward only iterator over the rows of a scrolled query. Rows are read
+ * from the JDBC result set as they are iterated, and the persistence context
+ * is cleared every clear interval rows so that the entities read so far can
+ * be garbage collected. The cursor has to be iterated and closed within the
+ * transaction it was opened in.
+ */
+
+public class EntityCursor<T> implements Iterator<T>, Closeable {
+
+	private final ScrollableResults results;
+
+	private final EntityManager em;
+
+	private final boolean array;
+
+	private final int clearInterval;
+
+	private Boolean ahead;
+
+	private long rows;
+
+	private boolean closed;
+
+	EntityCursor(ScrollableResults results, EntityManager em, boolean array, int clearInterval) {
+		this.results = results;
+		this.em = em;
+		this.array = array;
+		this.clearInterval = clearInterval;
+	}
+
+	@Override
+	public boolean hasNext() {
+
+		if (closed)
+			return false;
+
+		if (ahead == null) {
+
+			/* detach the rows handed out so far before reading the next one */
+			if (clearInterval > 0 && rows > 0 && rows % clearInterval == 0)
+				em.clear();
+
+			ahead = results.next();
+		}
+		return ahead;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T next() {
+
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		ahead = null;
+		rows++;
+
+		return (T) (array ? results.get() : results.get(0));
+	}
+
+	/*
+	 * Gets the number of rows read so far.
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	@Override
+	public void close() {
+
+		if (!closed) {
+			closed = true;
+			results.close();
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.repository;
+
+import java.util.List;
+
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.xylia.microservices.odata.framework.persistence.criteria.SortKey;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Describes a query against a single entity: the entity class, the optional
+ * projection, the $filter, the sort order and the window of rows to read.
+ * The filter is translated into the where clause, the sort keys into the
+ * order by clause, and the window is pushed down to the database either as
+ * a keyset seek position or through setFirstResult/setMaxResults.
+ */
+
+public class EntityQuery {
+
+	private String entityName;
+
+	private String[] selections;
+
+	private FilterOption filterOption;
+
+	private List<SortKey> sortKeys;
+
+	private List<Object> seekValues;
+
+	private int firstResult;
+
+	private int maxResults = -1;
+
+	public String getEntityName() {
+		return entityName;
+	}
+
+	public EntityQuery setEntityName(String entityName) {
+		this.entityName = entityName;
+		return this;
+	}
+
+	public String[] getSelections() {
+		return selections;
+	}
+
+	public EntityQuery setSelections(String[] selections) {
+		this.selections = selections;
+		return this;
+	}
+
+	public FilterOption getFilterOption() {
+		return filterOption;
+	}
+
+	public EntityQuery setFilterOption(FilterOption filterOption) {
+		this.filterOption = filterOption;
+		return this;
+	}
+
+	public List<SortKey> getSortKeys() {
+		return sortKeys;
+	}
+
+	public EntityQuery setSortKeys(List<SortKey> sortKeys) {
+		this.sortKeys = sortKeys;
+		return this;
+	}
+
+	/*
+	 * Sort key values of the last row already read; only rows after them in
+	 * the sort order are returned.
+	 */
+	public List<Object> getSeekValues() {
+		return seekValues;
+	}
+
+	public EntityQuery setSeekValues(List<Object> seekValues) {
+		this.seekValues = seekValues;
+		return this;
+	}
+
+	public int getFirstResult() {
+		return firstResult;
+	}
+
+	public EntityQuery setFirstResult(int firstResult) {
+		this.firstResult = firstResult;
+		return this;
+	}
+
+	/*
+	 * Maximum number of rows to read, -1 reads all rows.
+	 */
+	public int getMaxResults() {
+		return maxResults;
+	}
+
+	public EntityQuery setMaxResults(int maxResults) {
+		this.maxResults = maxResults;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "EntityQuery [entityName=" + entityName + ", selections="
+				+ (selections == null ? null : String.join(",", selections)) + ", filter="
+				+ (filterOption == null ? null : filterOption.getText()) + ", sortKeys=" + sortKeys + ", seekValues="
+				+ seekValues + ", firstResult=" + firstResult
+				+ ", maxResults=" + maxResults + "]";
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.repository;
+
+import java.util.Map;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.stereotype.Component;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Turns on Hibernate JDBC statement batching for the entity manager
+ * factory, with the odata.write.batch-size the repository flushes writes
+ * at. Inserts and updates are ordered by entity so that consecutive
+ * statements can share a batch. Properties the application sets itself
+ * are left as they are.
+ */
+
+@Component
+public class JdbcBatchingConfigurer implements BeanPostProcessor, EnvironmentAware {
+
+	private Environment environment;
+
+	@Override
+	public void setEnvironment(Environment environment) {
+		this.environment = environment;
+	}
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+
+		if (bean instanceof LocalContainerEntityManagerFactoryBean) {
+
+			Map<String, Object> properties = ((LocalContainerEntityManagerFactoryBean) bean).getJpaPropertyMap();
+			properties.putIfAbsent("hibernate.jdbc.batch_size", environment.getProperty("odata.write.batch-size", "50"));
+			properties.putIfAbsent("hibernate.order_inserts", "true");
+			properties.putIfAbsent("hibernate.order_updates", "true");
+			properties.putIfAbsent("hibernate.jdbc.batch_versioned_data", "true");
+		}
+		return bean;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		return bean;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.persistence.repository;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.TypedQuery;
+
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.xylia.microservices.odata.framework.persistence.criteria.FilterLiteral;
+import org.xylia.microservices.odata.framework.persistence.criteria.QueryParameter;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * The text a criteria query of a shape rendered to, with the sources of its
+ * parameters. A template without text marks a shape whose queries cannot be
+ * created from text.
+ */
+
+final class QueryTemplate {
+
+	static final QueryTemplate NOT_CACHEABLE = new QueryTemplate(null, Collections.<QueryParameter> emptyList());
+
+	private final String queryString;
+
+	private final List<QueryParameter> parameters;
+
+	QueryTemplate(String queryString, List<QueryParameter> parameters) {
+		this.queryString = queryString;
+		this.parameters = parameters;
+	}
+
+	boolean isCacheable() {
+		return queryString != null;
+	}
+
+	String getQueryString() {
+		return queryString;
+	}
+
+	/*
+	 * Binds the parameters of a query created from the text, from the
+	 * literals of the expressions of the request and its seek values.
+	 */
+	<T> TypedQuery<T> bind(TypedQuery<T> query, List<FilterLiteral> literals, List<Object> seekValues)
+			throws ODataApplicationException {
+
+		for (int i = 0; i < parameters.size(); i++) {
+			query.setParameter(QueryParameter.name(i), parameters.get(i).value(literals, seekValues));
+		}
+		return query;
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.persistence.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.TypedQuery;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.xylia.microservices.odata.framework.persistence.criteria.FilterExpressionVisitor;
+import org.xylia.microservices.odata.framework.persistence.criteria.FilterLiteral;
+import org.xylia.microservices.odata.framework.persistence.criteria.FilterShape;
+import org.xylia.microservices.odata.framework.persistence.criteria.QueryParameter;
+import org.xylia.microservices.odata.framework.persistence.criteria.SortKey;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Bounded caches of the resolved entity classes and of the query text the
+ * criteria queries of the repository render to. Query texts are keyed by
+ * the shape of the query: the kind of query, the entity, the projection,
+ * the shape of the $filter, the sort order and whether it seeks. A query of
+ * a known shape is created from the cached text and its parameters are
+ * bound from the literals of the request, skipping the construction and
+ * rendering of the criteria query. A cache size of 0 turns the query text
+ * cache off, so every query is built through the criteria API. The hit and
+ * miss counts are published with the actuator metrics.
+ */
+
+@Component
+public class QueryTemplateCache implements PublicMetrics {
+
+	@Value("${odata.query.cache-size:1000}")
+	private long maximumSize;
+
+	private Cache<String, Class<?>> entityClasses;
+
+	private Cache<String, QueryTemplate> queryStrings;
+
+	@PostConstruct
+	public void init() {
+		entityClasses = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+		queryStrings = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+	}
+
+	/*
+	 * Resolves the entity class of the fully qualified entity name.
+	 */
+	public Class<?> getEntityClass(String fullQualifiedEntityName) throws ClassNotFoundException {
+
+		Class<?> entityClass = entityClasses.getIfPresent(fullQualifiedEntityName);
+		if (entityClass == null) {
+			entityClass = Class.forName(fullQualifiedEntityName);
+			entityClasses.put(fullQualifiedEntityName, entityClass);
+		}
+		return entityClass;
+	}
+
+	/*
+	 * Gets the shape of the query, or null if it has none and is not cached.
+	 * The literals of the $filter and $orderby expressions are added to the
+	 * given ones, in the order the criteria query turns them into
+	 * parameters.
+	 */
+	public static String getShape(String kind, EntityQuery entityQuery, List<FilterLiteral> literals) {
+
+		String filterShape = FilterShape.of(
+				entityQuery.getFilterOption() != null ? entityQuery.getFilterOption().getExpression() : null,
+				literals);
+		if (filterShape == null)
+			return null;
+
+		StringBuilder shape = new StringBuilder(kind).append('|').append(entityQuery.getEntityName()).append('|');
+		if (entityQuery.getSelections() != null)
+			shape.append(String.join(",", entityQuery.getSelections()));
+		shape.append('|').append(filterShape).append('|');
+
+		if (entityQuery.getSortKeys() != null) {
+			for (SortKey sortKey : entityQuery.getSortKeys()) {
+
+				String key = sortKey.getAttribute() != null ? sortKey.getAttribute()
+						: FilterShape.of(sortKey.getExpression(), literals);
+				if (key == null)
+					return null;
+				shape.append(key).append(sortKey.isDescending() ? " desc," : " asc,");
+			}
+		}
+		return shape.append('|').append(entityQuery.getSeekValues() != null ? "seek" : "").toString();
+	}
+
+	/*
+	 * Gets the cached query template of the shape, null if it is not known
+	 * yet.
+	 */
+	QueryTemplate getTemplate(String shape) {
+		return maximumSize > 0 ? queryStrings.getIfPresent(shape) : null;
+	}
+
+	/*
+	 * Caches the text the criteria query of the shape rendered to. The text
+	 * is only reused if every parameter of the query is one of the named
+	 * filter parameters; literals the criteria API binds implicitly cannot be
+	 * bound to a query created from text.
+	 */
+	public void putQuery(String shape, TypedQuery<?> query, FilterExpressionVisitor filter) {
+
+		if (maximumSize <= 0)
+			return;
+
+		org.hibernate.Query hibernateQuery = query.unwrap(org.hibernate.Query.class);
+
+		Set<String> names = new HashSet<String>();
+		filter.getParameters().keySet().forEach(parameter -> names.add(parameter.getName()));
+
+		boolean cacheable = names.equals(new HashSet<String>(Arrays.asList(hibernateQuery.getNamedParameters())));
+		queryStrings.put(shape, cacheable
+				? new QueryTemplate(hibernateQuery.getQueryString(), new ArrayList<QueryParameter>(filter.getSources()))
+				: QueryTemplate.NOT_CACHEABLE);
+	}
+
+	public CacheStats getEntityClassStats() {
+		return entityClasses.stats();
+	}
+
+	public CacheStats getQueryStringStats() {
+		return queryStrings.stats();
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		addMetrics(metrics, "odata.query.cache.classes", getEntityClassStats(), entityClasses.estimatedSize());
+		addMetrics(metrics, "odata.query.cache.queries", getQueryStringStats(), queryStrings.estimatedSize());
+		return metrics;
+	}
+
+	private static void addMetrics(List<Metric<?>> metrics, String prefix, CacheStats stats, long size) {
+
+		metrics.add(new Metric<Long>(prefix + ".size", size));
+		metrics.add(new Metric<Long>(prefix + ".hit", stats.hitCount()));
+		metrics.add(new Metric<Long>(prefix + ".miss", stats.missCount()));
+		metrics.add(new Metric<Double>(prefix + ".hit-ratio", stats.hitRate()));
+		metrics.add(new Metric<Long>(prefix + ".eviction", stats.evictionCount()));
+	}
+}
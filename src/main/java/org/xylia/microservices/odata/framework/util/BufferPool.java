@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Bounded pool of fixed size byte buffers used to copy serialized OData
+ * content to the servlet output stream without allocating per request.
+ */
+
+public class BufferPool {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	public static final int DEFAULT_POOL_SIZE = 256;
+
+	private static final BufferPool SHARED = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_POOL_SIZE);
+
+	private final int bufferSize;
+
+	private final BlockingQueue<byte[]> buffers;
+
+	public BufferPool(int bufferSize, int poolSize) {
+		this.bufferSize = bufferSize;
+		this.buffers = new ArrayBlockingQueue<byte[]>(poolSize);
+	}
+
+	public static BufferPool shared() {
+		return SHARED;
+	}
+
+	public byte[] acquire() {
+
+		byte[] buffer = buffers.poll();
+		return buffer != null ? buffer : new byte[bufferSize];
+	}
+
+	public void release(byte[] buffer) {
+
+		/* buffers beyond the pool capacity are left to the garbage collector */
+		if (buffer != null && buffer.length == bufferSize)
+			buffers.offer(buffer);
+	}
+
+	/*
+	 * Copies the content to the output stream through a pooled buffer and
+	 * returns the number of bytes written.
+	 */
+	public long copy(InputStream in, OutputStream out) throws IOException {
+
+		byte[] buffer = acquire();
+		long count = 0;
+
+		try {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+				count += read;
+			}
+		} finally {
+			release(buffer);
+		}
+		return count;
+	}
+}
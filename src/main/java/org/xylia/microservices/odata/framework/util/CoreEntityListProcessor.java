@@ -20,11 +20,8 @@
 
 package org.xylia.microservices.odata.framework.util;
 
-import java.lang.reflect.Field;
 import java.util.List;
 
-import javax.persistence.Column;
-
 import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.ValueType;
 import org.apache.olingo.commons.core.data.EntityImpl;
@@ -32,6 +29,7 @@ import org.apache.olingo.commons.core.data.PropertyImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xylia.microservices.odata.edm.framework.providers.entity.BaseEntityProviderProcessorImpl;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics.Phase;
 
 /*
  * @author Rajesh Iyer
@@ -44,49 +42,103 @@ public class CoreEntityListProcessor {
 	public static void buildEntities(List<Entity> entityList, List<Object> entities)
 			throws IllegalArgumentException, IllegalAccessException {
 
+		EntityRowMapper mapper = null;
+
+		long start = PipelineMetrics.start();
 		for (Object note : entities) {
 
-			EntityImpl entityRowImpl = new EntityImpl();
+			/* the mapper is generated once per entity class and reused for every row */
+			if (mapper == null || mapper.getEntityClass() != note.getClass())
+				mapper = EntityRowMapper.forClass(note.getClass());
+
+			entityList.add(buildEntity(note, mapper));
+		}
+		PipelineMetrics.record(Phase.MAPPING, start);
+	}
+
+	public static Entity buildEntity(Object note) {
 
-			for (Field field : note.getClass().getDeclaredFields()) {
+		long start = PipelineMetrics.start();
+		Entity entity = buildEntity(note, EntityRowMapper.forClass(note.getClass()));
+		PipelineMetrics.record(Phase.MAPPING, start);
+		return entity;
+	}
+
+	/*
+	 * Builds a single entity carrying its strong entity tag.
+	 */
+	public static Entity buildTaggedEntity(Object note) {
+
+		EntityImpl entityRowImpl = (EntityImpl) buildEntity(note);
+		entityRowImpl.setETag(EntityTag.of(note));
+		return entityRowImpl;
+	}
+
+	private static Entity buildEntity(Object note, EntityRowMapper mapper) {
 
-				field.setAccessible(true); // Additional line
-				Column column = field.getAnnotation(Column.class);
+		EntityImpl entityRowImpl = new EntityImpl();
 
-				if (column != null) {
+		for (int i = 0; i < mapper.getColumnCount(); i++) {
 
-					entityRowImpl
-							.addProperty(new PropertyImpl(null, field.getName(), ValueType.PRIMITIVE, field.get(note)));
-				}
-			}
-			entityList.add(entityRowImpl);
+			entityRowImpl.addProperty(
+					new PropertyImpl(null, mapper.getColumnName(i), ValueType.PRIMITIVE, mapper.getValue(note, i)));
 		}
+		return entityRowImpl;
 	}
 
 	public static void buildPrimitive(List<Entity> entityList, List<Object[]> entities, String[] selections)
 			throws IllegalArgumentException, IllegalAccessException {
 
+		long start = PipelineMetrics.start();
 		for (Object[] entityValues : entities) {
+			entityList.add(primitive(entityValues, selections));
+		}
+		PipelineMetrics.record(Phase.MAPPING, start);
+	}
+
+	public static Entity buildPrimitive(Object[] entityValues, String[] selections) {
+
+		long start = PipelineMetrics.start();
+		Entity entity = primitive(entityValues, selections);
+		PipelineMetrics.record(Phase.MAPPING, start);
+		return entity;
+	}
+
+	private static Entity primitive(Object[] entityValues, String[] selections) {
 
-			EntityImpl entityRowImpl = new EntityImpl();
+		EntityImpl entityRowImpl = new EntityImpl();
 
-			for (int i = 0; i < entityValues.length; i++) {
+		/* only the selected columns, the row may also carry the sort keys of the query */
+		for (int i = 0; i < selections.length; i++) {
 
-				entityRowImpl.addProperty(new PropertyImpl(null, selections[i], ValueType.PRIMITIVE, entityValues[i]));
-			}
-			entityList.add(entityRowImpl);
+			entityRowImpl.addProperty(new PropertyImpl(null, selections[i], ValueType.PRIMITIVE, entityValues[i]));
 		}
+		return entityRowImpl;
 	}
 
 	public static void buildSinglePrimitive(List<Entity> entityList, List<Object> entities, String selection)
 			throws IllegalArgumentException, IllegalAccessException {
 
+		long start = PipelineMetrics.start();
 		for (Object entityValue : entities) {
-
-			EntityImpl entityRowImpl = new EntityImpl();
-			entityRowImpl.addProperty(new PropertyImpl(null, selection, ValueType.PRIMITIVE, entityValue));
-			entityList.add(entityRowImpl);
+			entityList.add(singlePrimitive(entityValue, selection));
 		}
+		PipelineMetrics.record(Phase.MAPPING, start);
+	}
+
+	public static Entity buildSinglePrimitive(Object entityValue, String selection) {
+
+		long start = PipelineMetrics.start();
+		Entity entity = singlePrimitive(entityValue, selection);
+		PipelineMetrics.record(Phase.MAPPING, start);
+		return entity;
+	}
+
+	private static Entity singlePrimitive(Object entityValue, String selection) {
+
+		EntityImpl entityRowImpl = new EntityImpl();
+		entityRowImpl.addProperty(new PropertyImpl(null, selection, ValueType.PRIMITIVE, entityValue));
+		return entityRowImpl;
 	}
 
 }
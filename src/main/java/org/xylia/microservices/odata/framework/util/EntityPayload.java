@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * The property values of a JSON write request. The body is a single entity
+ * object, or for bulk writes an array of entity objects or an object with
+ * a "value" array. Instance annotations such as @odata.type are skipped.
+ */
+
+public final class EntityPayload {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final List<Map<String, Object>> rows;
+
+	private final boolean collection;
+
+	private EntityPayload(List<Map<String, Object>> rows, boolean collection) {
+		this.rows = rows;
+		this.collection = collection;
+	}
+
+	/*
+	 * Reads the request body.
+	 *
+	 * @throws IllegalArgumentException if the body is not a JSON entity or
+	 *             collection of entities
+	 */
+	public static EntityPayload read(InputStream body) throws IOException {
+
+		JsonNode root;
+		try {
+			root = MAPPER.readTree(body);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Malformed JSON request body", e);
+		}
+
+		if (root == null || !root.isContainerNode())
+			throw new IllegalArgumentException("The request body is not a JSON object");
+
+		JsonNode value = root.isObject() ? root.get("value") : root;
+		if (value == null || !value.isArray())
+			return new EntityPayload(Collections.singletonList(values(root)), false);
+
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(value.size());
+		for (JsonNode entity : value)
+			rows.add(values(entity));
+		return new EntityPayload(rows, true);
+	}
+
+	public List<Map<String, Object>> getRows() {
+		return rows;
+	}
+
+	public boolean isCollection() {
+		return collection;
+	}
+
+	private static Map<String, Object> values(JsonNode entity) {
+
+		if (!entity.isObject())
+			throw new IllegalArgumentException("An entity in the request body is not a JSON object");
+
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+		for (Iterator<Map.Entry<String, JsonNode>> fields = entity.fields(); fields.hasNext();) {
+
+			Map.Entry<String, JsonNode> field = fields.next();
+			if (field.getKey().indexOf('@') >= 0)
+				continue;
+
+			values.put(field.getKey(), value(field.getKey(), field.getValue()));
+		}
+		return values;
+	}
+
+	private static Object value(String name, JsonNode node) {
+
+		if (node.isNull())
+			return null;
+		if (node.isNumber())
+			return node.decimalValue();
+		if (node.isBoolean())
+			return node.booleanValue();
+		if (node.isTextual())
+			return node.textValue();
+
+		throw new IllegalArgumentException("Property " + name + " is not a primitive value");
+	}
+}
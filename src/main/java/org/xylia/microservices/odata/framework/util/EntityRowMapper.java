@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.util;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import javax.persistence.Column;
+import javax.persistence.Id;
+import javax.persistence.Version;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xylia.microservices.odata.framework.edm.descriptor.EntityColumn;
+import org.xylia.microservices.odata.framework.edm.descriptor.EntityDescriptor;
+import org.xylia.microservices.odata.framework.edm.descriptor.EntityDescriptors;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Precomputed column accessors for an @Entity class. The @Column fields of
+ * the class are resolved once, and every column is read through a generated
+ * accessor: a LambdaMetafactory function over the public getter when there
+ * is one, otherwise a MethodHandle over the field. Mappers are cached per
+ * class, so mapping a row is only a loop over plain accessor calls. Classes
+ * with a generated EntityDescriptor use its compiled accessors instead.
+ */
+
+public final class EntityRowMapper {
+
+	private static final Logger logger = LoggerFactory.getLogger(EntityRowMapper.class);
+
+	private static final ConcurrentMap<Class<?>, EntityRowMapper> MAPPERS = new ConcurrentHashMap<Class<?>, EntityRowMapper>();
+
+	private final Class<?> entityClass;
+
+	private final String[] columnNames;
+
+	private final Class<?>[] columnTypes;
+
+	private final Function<Object, Object>[] accessors;
+
+	private final boolean[] nullable;
+
+	private final String idColumn;
+
+	private final Function<Object, Object> idAccessor;
+
+	private final String versionColumn;
+
+	private final Function<Object, Object> versionAccessor;
+
+	private EntityRowMapper(Class<?> entityClass, String[] columnNames, Class<?>[] columnTypes,
+			Function<Object, Object>[] accessors, boolean[] nullable, String idColumn,
+			Function<Object, Object> idAccessor, String versionColumn, Function<Object, Object> versionAccessor) {
+		this.entityClass = entityClass;
+		this.columnNames = columnNames;
+		this.columnTypes = columnTypes;
+		this.accessors = accessors;
+		this.nullable = nullable;
+		this.idColumn = idColumn;
+		this.idAccessor = idAccessor;
+		this.versionColumn = versionColumn;
+		this.versionAccessor = versionAccessor;
+	}
+
+	/*
+	 * Gets the cached mapper for the given entity class, generating it on
+	 * first use.
+	 */
+	public static EntityRowMapper forClass(Class<?> entityClass) {
+
+		EntityRowMapper mapper = MAPPERS.get(entityClass);
+		if (mapper == null) {
+			mapper = create(entityClass);
+			EntityRowMapper existing = MAPPERS.putIfAbsent(entityClass, mapper);
+			if (existing != null)
+				mapper = existing;
+		}
+		return mapper;
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	public String getColumnName(int index) {
+		return columnNames[index];
+	}
+
+	public Class<?> getColumnType(int index) {
+		return columnTypes[index];
+	}
+
+	public List<String> getColumnNames() {
+		return Collections.unmodifiableList(Arrays.asList(columnNames));
+	}
+
+	/*
+	 * Gets the name of the @Id field, or null if the class has none.
+	 */
+	public String getIdColumn() {
+		return idColumn;
+	}
+
+	/*
+	 * Gets the index of the named column, or -1 if it is not mapped.
+	 */
+	public int indexOf(String columnName) {
+
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i].equals(columnName))
+				return i;
+		}
+		return -1;
+	}
+
+	public Object getValue(Object row, int index) {
+		return accessors[index].apply(row);
+	}
+
+	public Object getId(Object row) {
+		return idAccessor != null ? idAccessor.apply(row) : null;
+	}
+
+	/*
+	 * Checks whether the class has a @Version field.
+	 */
+	public boolean hasVersion() {
+		return versionAccessor != null;
+	}
+
+	/*
+	 * Gets the name of the @Version field, or null if the class has none.
+	 */
+	public String getVersionColumn() {
+		return versionColumn;
+	}
+
+	/*
+	 * Reads the @Version field of the row, null if the class has none.
+	 */
+	public Object getVersion(Object row) {
+		return versionAccessor != null ? versionAccessor.apply(row) : null;
+	}
+
+	/*
+	 * Checks whether the named attribute, a column or the @Id field, can be
+	 * read by this mapper.
+	 */
+	public boolean hasAttribute(String attribute) {
+		return indexOf(attribute) >= 0 || (idColumn != null && idColumn.equals(attribute));
+	}
+
+	/*
+	 * Checks whether the named attribute may hold NULL. The @Id, primitive
+	 * fields and columns declared with nullable = false do not; an attribute
+	 * that is not mapped is taken as nullable.
+	 */
+	public boolean isNullable(String attribute) {
+
+		if (idColumn != null && idColumn.equals(attribute))
+			return false;
+
+		int index = indexOf(attribute);
+		return index < 0 || nullable[index];
+	}
+
+	/*
+	 * Reads the named attribute, a column or the @Id field, of the row.
+	 */
+	public Object getAttributeValue(Object row, String attribute) {
+
+		int index = indexOf(attribute);
+		if (index >= 0)
+			return accessors[index].apply(row);
+
+		if (idColumn != null && idColumn.equals(attribute))
+			return idAccessor.apply(row);
+
+		throw new IllegalArgumentException("Attribute " + attribute + " is not mapped for " + entityClass.getName());
+	}
+
+	/*
+	 * Creates the mapper from the generated descriptor of the class, or by
+	 * reflection over its fields when it has none.
+	 */
+	private static EntityRowMapper create(Class<?> entityClass) {
+
+		EntityDescriptor descriptor = EntityDescriptors.forClass(entityClass);
+		if (descriptor != null)
+			return create(descriptor);
+
+		List<String> names = new ArrayList<String>();
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		List<Function<Object, Object>> accessors = new ArrayList<Function<Object, Object>>();
+		List<Boolean> nullable = new ArrayList<Boolean>();
+		String idColumn = null;
+		Function<Object, Object> idAccessor = null;
+		String versionColumn = null;
+		Function<Object, Object> versionAccessor = null;
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		for (Field field : entityClass.getDeclaredFields()) {
+
+			if (field.getAnnotation(Id.class) != null) {
+				idColumn = field.getName();
+				idAccessor = accessor(lookup, entityClass, field);
+			}
+
+			if (field.getAnnotation(Version.class) != null) {
+				versionColumn = field.getName();
+				versionAccessor = accessor(lookup, entityClass, field);
+			}
+
+			Column column = field.getAnnotation(Column.class);
+			if (column == null)
+				continue;
+
+			names.add(field.getName());
+			types.add(field.getType());
+			accessors.add(accessor(lookup, entityClass, field));
+			nullable.add(!field.getType().isPrimitive() && column.nullable());
+		}
+
+		@SuppressWarnings("unchecked")
+		Function<Object, Object>[] accessorArray = accessors.toArray(new Function[accessors.size()]);
+
+		logger.debug("Generated row mapper for " + entityClass.getName() + " with " + names.size() + " columns");
+
+		return new EntityRowMapper(entityClass, names.toArray(new String[names.size()]),
+				types.toArray(new Class<?>[types.size()]), accessorArray, toArray(nullable), idColumn, idAccessor,
+				versionColumn, versionAccessor);
+	}
+
+	private static EntityRowMapper create(EntityDescriptor descriptor) {
+
+		List<String> names = new ArrayList<String>();
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		List<Function<Object, Object>> accessors = new ArrayList<Function<Object, Object>>();
+		List<Boolean> nullable = new ArrayList<Boolean>();
+		EntityColumn id = null;
+		EntityColumn version = null;
+
+		for (EntityColumn column : descriptor.getColumns()) {
+
+			if (column.isId())
+				id = column;
+			if (column.isVersion())
+				version = column;
+
+			if (column.isColumn()) {
+				names.add(column.getName());
+				types.add(column.getType());
+				accessors.add(column.getGetter());
+				nullable.add(column.isNullable());
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		Function<Object, Object>[] accessorArray = accessors.toArray(new Function[accessors.size()]);
+
+		return new EntityRowMapper(descriptor.getEntityClass(), names.toArray(new String[names.size()]),
+				types.toArray(new Class<?>[types.size()]), accessorArray, toArray(nullable),
+				id != null ? id.getName() : null, id != null ? id.getGetter() : null,
+				version != null ? version.getName() : null, version != null ? version.getGetter() : null);
+	}
+
+	private static boolean[] toArray(List<Boolean> values) {
+
+		boolean[] array = new boolean[values.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = values.get(i);
+		return array;
+	}
+
+	private static Function<Object, Object> accessor(MethodHandles.Lookup lookup, Class<?> entityClass, Field field) {
+
+		Method getter = findGetter(entityClass, field);
+
+		if (getter != null) {
+			try {
+				MethodHandle handle = lookup.unreflect(getter);
+				CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+						MethodType.methodType(Object.class, Object.class), handle, handle.type().wrap());
+
+				@SuppressWarnings("unchecked")
+				Function<Object, Object> function = (Function<Object, Object>) site.getTarget().invokeExact();
+				return function;
+
+			} catch (Throwable e) {
+				logger.debug("Falling back to field access for " + field.getName() + ": " + e.getLocalizedMessage());
+			}
+		}
+
+		try {
+			field.setAccessible(true);
+			final MethodHandle handle = lookup.unreflectGetter(field)
+					.asType(MethodType.methodType(Object.class, Object.class));
+
+			return new Function<Object, Object>() {
+				@Override
+				public Object apply(Object row) {
+					try {
+						return handle.invokeExact(row);
+					} catch (Throwable e) {
+						throw new IllegalStateException("Unable to read column " + field.getName(), e);
+					}
+				}
+			};
+
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unable to access column " + field.getName(), e);
+		}
+	}
+
+	private static Method findGetter(Class<?> entityClass, Field field) {
+
+		String suffix = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+		String[] candidates = field.getType() == boolean.class ? new String[] { "is" + suffix, "get" + suffix }
+				: new String[] { "get" + suffix };
+
+		for (String candidate : candidates) {
+			try {
+				Method method = entityClass.getMethod(candidate);
+				if (method.getReturnType() == field.getType() && Modifier.isPublic(entityClass.getModifiers()))
+					return method;
+			} catch (NoSuchMethodException e) {
+				// no such getter, try the next candidate
+			}
+		}
+		return null;
+	}
+}
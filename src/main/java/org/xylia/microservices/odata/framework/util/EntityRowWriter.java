@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import javax.persistence.Column;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import org.xylia.microservices.odata.framework.edm.descriptor.EntityColumn;
+import org.xylia.microservices.odata.framework.edm.descriptor.EntityDescriptor;
+import org.xylia.microservices.odata.framework.edm.descriptor.EntityDescriptors;
+import org.xylia.microservices.odata.framework.edm.types.PropertyCodec;
+import org.xylia.microservices.odata.framework.edm.types.PropertyCodecs;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Precomputed column mutators for an @Entity class, the write side of the
+ * EntityRowMapper. The @Column and @Id fields are resolved once into field
+ * setter MethodHandles, and property values of a request are converted to
+ * the field types as they are set. Writers are cached per class.
+ */
+
+public final class EntityRowWriter {
+
+	private static final ConcurrentMap<Class<?>, EntityRowWriter> WRITERS = new ConcurrentHashMap<Class<?>, EntityRowWriter>();
+
+	private final Class<?> entityClass;
+
+	private final Map<String, Class<?>> types;
+
+	private final Map<String, BiConsumer<Object, Object>> setters;
+
+	private final Supplier<Object> factory;
+
+	private final String idColumn;
+
+	private final boolean generatedId;
+
+	private EntityRowWriter(Class<?> entityClass, Map<String, Class<?>> types,
+			Map<String, BiConsumer<Object, Object>> setters, Supplier<Object> factory, String idColumn,
+			boolean generatedId) {
+		this.entityClass = entityClass;
+		this.types = types;
+		this.setters = setters;
+		this.factory = factory;
+		this.idColumn = idColumn;
+		this.generatedId = generatedId;
+	}
+
+	/*
+	 * Gets the cached writer for the given entity class, generating it on
+	 * first use.
+	 */
+	public static EntityRowWriter forClass(Class<?> entityClass) {
+
+		EntityRowWriter writer = WRITERS.get(entityClass);
+		if (writer == null) {
+			writer = create(entityClass);
+			EntityRowWriter existing = WRITERS.putIfAbsent(entityClass, writer);
+			if (existing != null)
+				writer = existing;
+		}
+		return writer;
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	public String getIdColumn() {
+		return idColumn;
+	}
+
+	/*
+	 * Checks whether the @Id of the entity is generated by the database. An
+	 * IDENTITY @Id is generated by the insert itself, which keeps Hibernate
+	 * from sending the inserts of the entity in JDBC batches.
+	 */
+	public boolean isGeneratedId() {
+		return generatedId;
+	}
+
+	public boolean hasAttribute(String attribute) {
+		return setters.containsKey(attribute);
+	}
+
+	public Object newInstance() {
+
+		if (factory != null)
+			return factory.get();
+
+		try {
+			return entityClass.newInstance();
+		} catch (InstantiationException | IllegalAccessException e) {
+			throw new IllegalStateException("Unable to instantiate " + entityClass.getName(), e);
+		}
+	}
+
+	/*
+	 * Converts a key predicate value to the type of the @Id field.
+	 */
+	public Object toId(Object key) {
+		return convert(key, types.get(idColumn), idColumn);
+	}
+
+	/*
+	 * Sets the values onto the row. A replacing write sets the columns that
+	 * are not given to null, as PUT calls for; the @Id is never replaced.
+	 *
+	 * @throws IllegalArgumentException if a value is not mapped or cannot be
+	 *             converted
+	 */
+	public void write(Object row, Map<String, Object> values, boolean replace) {
+
+		for (String attribute : values.keySet()) {
+			if (!hasAttribute(attribute))
+				throw new IllegalArgumentException(
+						"Property " + attribute + " is not mapped for " + entityClass.getSimpleName());
+		}
+
+		for (Map.Entry<String, BiConsumer<Object, Object>> setter : setters.entrySet()) {
+
+			String attribute = setter.getKey();
+			if (values.containsKey(attribute))
+				set(row, attribute, values.get(attribute));
+			else if (replace && !attribute.equals(idColumn) && !types.get(attribute).isPrimitive())
+				set(row, attribute, null);
+		}
+	}
+
+	public void setAttributeValue(Object row, String attribute, Object value) {
+
+		if (!hasAttribute(attribute))
+			throw new IllegalArgumentException(
+					"Property " + attribute + " is not mapped for " + entityClass.getSimpleName());
+		set(row, attribute, value);
+	}
+
+	private void set(Object row, String attribute, Object value) {
+
+		Object converted = convert(value, types.get(attribute), attribute);
+		if (converted == null && types.get(attribute).isPrimitive())
+			throw new IllegalArgumentException("Property " + attribute + " cannot be null");
+
+		setters.get(attribute).accept(row, converted);
+	}
+
+	/*
+	 * Converts a request value, a String, Number, Boolean or Calendar, to the
+	 * type of a field through the PropertyCodec of the type.
+	 */
+	private static Object convert(Object value, Class<?> type, String attribute) {
+
+		if (value == null || type.isInstance(value))
+			return value;
+
+		PropertyCodec<Object> codec = PropertyCodecs.shared().forType(type);
+		if (codec == null)
+			throw new IllegalArgumentException("Property " + attribute + " of type " + type.getSimpleName()
+					+ " cannot be written from " + value.getClass().getSimpleName());
+
+		try {
+			return codec.read(value);
+		} catch (ArithmeticException | IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid value " + value + " for property " + attribute, e);
+		}
+	}
+
+	/*
+	 * Creates the writer from the generated descriptor of the class, or by
+	 * reflection over its fields when it has none or a mapped field has no
+	 * setter in it.
+	 */
+	private static EntityRowWriter create(Class<?> entityClass) {
+
+		EntityDescriptor descriptor = EntityDescriptors.forClass(entityClass);
+		if (descriptor != null) {
+			EntityRowWriter writer = create(descriptor);
+			if (writer != null)
+				return writer;
+		}
+
+		Map<String, Class<?>> types = new LinkedHashMap<String, Class<?>>();
+		Map<String, BiConsumer<Object, Object>> setters = new LinkedHashMap<String, BiConsumer<Object, Object>>();
+		String idColumn = null;
+		boolean generatedId = false;
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		for (Field field : entityClass.getDeclaredFields()) {
+
+			boolean id = field.getAnnotation(Id.class) != null;
+			if (id) {
+				idColumn = field.getName();
+				generatedId = field.getAnnotation(GeneratedValue.class) != null;
+			}
+
+			if (!id && field.getAnnotation(Column.class) == null)
+				continue;
+
+			try {
+				field.setAccessible(true);
+				setters.put(field.getName(), setter(field.getName(), lookup.unreflectSetter(field)
+						.asType(MethodType.methodType(void.class, Object.class, Object.class))));
+				types.put(field.getName(), field.getType());
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Unable to access column " + field.getName(), e);
+			}
+		}
+
+		return new EntityRowWriter(entityClass, types, setters, null, idColumn, generatedId);
+	}
+
+	private static EntityRowWriter create(EntityDescriptor descriptor) {
+
+		Map<String, Class<?>> types = new LinkedHashMap<String, Class<?>>();
+		Map<String, BiConsumer<Object, Object>> setters = new LinkedHashMap<String, BiConsumer<Object, Object>>();
+		String idColumn = null;
+		boolean generatedId = false;
+
+		for (EntityColumn column : descriptor.getColumns()) {
+
+			if (column.isId()) {
+				idColumn = column.getName();
+				generatedId = column.isGeneratedId();
+			}
+
+			if (!column.isId() && !column.isColumn())
+				continue;
+
+			if (column.getSetter() == null)
+				return null;
+
+			setters.put(column.getName(), column.getSetter());
+			types.put(column.getName(), column.getType());
+		}
+
+		return new EntityRowWriter(descriptor.getEntityClass(), types, setters, descriptor.getFactory(), idColumn,
+				generatedId);
+	}
+
+	private static BiConsumer<Object, Object> setter(String attribute, MethodHandle handle) {
+
+		return (row, value) -> {
+			try {
+				handle.invokeExact(row, value);
+			} catch (Throwable e) {
+				throw new IllegalStateException("Unable to write column " + attribute, e);
+			}
+		};
+	}
+}
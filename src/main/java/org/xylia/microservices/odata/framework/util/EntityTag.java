@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.util;
+
+import java.util.List;
+
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Builds entity tags from the rows of a response. A row is represented by
+ * its @Id and @Version values when the entity has a @Version field, and by
+ * all its mapped values otherwise. The values are folded into a 64 bit
+ * FNV-1a hash one row at a time, so the tag of a collection is computed in
+ * a single pass without holding any other state.
+ */
+
+public final class EntityTag {
+
+	public static final String CACHE_CONTROL = "Cache-Control";
+
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long PRIME = 0x100000001b3L;
+
+	private long hash = OFFSET_BASIS;
+
+	/*
+	 * Gets the strong entity tag of a single entity row.
+	 */
+	public static String of(Object row) {
+		return new EntityTag().updateEntity(row).toStrong();
+	}
+
+	public EntityTag update(Object value) {
+
+		if (value == null) {
+			mix(0);
+		} else {
+			String text = value.toString();
+			for (int i = 0; i < text.length(); i++)
+				mix(text.charAt(i));
+		}
+
+		/* value separator, so that ("ab", "c") and ("a", "bc") differ */
+		mix(0x1f);
+		return this;
+	}
+
+	/*
+	 * Adds an entity row, by its @Id and @Version when it has a @Version field.
+	 */
+	public EntityTag updateEntity(Object row) {
+
+		EntityRowMapper mapper = EntityRowMapper.forClass(row.getClass());
+
+		if (mapper.hasVersion())
+			return updateVersion(mapper.getId(row), mapper.getVersion(row));
+
+		for (int i = 0; i < mapper.getColumnCount(); i++)
+			update(mapper.getValue(row, i));
+
+		mix(0x1e);
+		return this;
+	}
+
+	/*
+	 * Adds an entity row by its @Id and @Version values, the tag of an entity
+	 * with a @Version field is the same whether the row was read whole or as
+	 * a projection.
+	 */
+	public EntityTag updateVersion(Object id, Object version) {
+
+		update(id);
+		update(version);
+		mix(0x1e);
+		return this;
+	}
+
+	/*
+	 * Adds a row of selected values.
+	 */
+	public EntityTag updateRow(Object[] values) {
+
+		for (Object value : values)
+			update(value);
+
+		mix(0x1e);
+		return this;
+	}
+
+	/*
+	 * Adds the bytes of a serialized document.
+	 */
+	public EntityTag updateBytes(byte[] bytes) {
+
+		for (byte b : bytes)
+			mix(b & 0xff);
+		return this;
+	}
+
+	public String toStrong() {
+		return "\"" + Long.toHexString(hash) + "\"";
+	}
+
+	public String toWeak() {
+		return "W/" + toStrong();
+	}
+
+	/*
+	 * Checks whether one of the If-None-Match values matches the entity tag,
+	 * with the weak comparison If-None-Match calls for.
+	 */
+	public static boolean matches(List<String> ifNoneMatch, String eTag) {
+
+		if (ifNoneMatch == null || eTag == null)
+			return false;
+
+		String opaque = opaque(eTag);
+		for (String header : ifNoneMatch) {
+			for (String candidate : header.split(",")) {
+
+				candidate = candidate.trim();
+				if ("*".equals(candidate) || opaque.equals(opaque(candidate)))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Sets the ETag and Cache-Control headers of a read, and answers it with
+	 * 304 Not Modified when the If-None-Match header of the request matches
+	 * the entity tag. Returns true if the response is complete and the
+	 * content must not be serialized.
+	 */
+	public static boolean notModified(ODataRequest request, ODataResponse response, String eTag,
+			String cacheControl) {
+
+		if (cacheControl != null && !cacheControl.isEmpty())
+			response.setHeader(CACHE_CONTROL, cacheControl);
+
+		if (eTag == null)
+			return false;
+
+		response.setHeader(HttpHeader.ETAG, eTag);
+
+		if (!matches(request.getHeaders(HttpHeader.IF_NONE_MATCH), eTag))
+			return false;
+
+		response.setStatusCode(HttpStatusCode.NOT_MODIFIED.getStatusCode());
+		return true;
+	}
+
+	private static String opaque(String eTag) {
+		return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+	}
+
+	private void mix(int value) {
+		hash ^= value;
+		hash *= PRIME;
+	}
+}
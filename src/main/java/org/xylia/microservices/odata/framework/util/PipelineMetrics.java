@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.util;
+
+import java.io.Closeable;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.olingo.server.api.ODataRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistry;
+
+import com.codahale.metrics.MetricRegistry;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Latency of the phases of the OData pipeline, per entity set and HTTP
+ * method. A scope is opened on the thread a request is processed on, the
+ * phases add their time to it and it is recorded once the request is
+ * written, as one timer sample per phase:
+ *
+ *   odata.<phase>.<entity set>.<method>    timer, nanoseconds
+ *   odata.request.<entity set>.<method>    timer, nanoseconds
+ *   odata.rows.<entity set>.<method>       counter
+ *   odata.bytes.<entity set>.<method>      counter
+ *   odata.errors.<entity set>.<method>     counter
+ *   odata.compression.<entity set>.<method>        timer, CPU nanoseconds
+ *   odata.compression.ratio.<entity set>.<method>  histogram, percent
+ *
+ * The timers of the Dropwizard registry are exported by the actuator metrics
+ * endpoint with their rates and percentiles. Parsing is the time from the
+ * start of the handler to the processor, including the dispatch of Olingo.
+ * Streamed responses fetch and map their rows while they are written, so
+ * for those the write phase includes the fetch and the mapping.
+ */
+
+@Component
+public class PipelineMetrics {
+
+	public enum Phase {
+		PARSE, LOOKUP, QUERY, MAPPING, SERIALIZE, WRITE
+	}
+
+	private static final ThreadLocal<Scope> current = new ThreadLocal<Scope>();
+
+	private static final Phase[] PHASES = Phase.values();
+
+	@Autowired
+	private MetricRegistry metricRegistry;
+
+	@Autowired
+	private EntityProviderRegistry entityProviderRegistry;
+
+	@Value("${odata.metrics.enabled:true}")
+	private boolean enabled;
+
+	/*
+	 * Opens the scope of a request on the current thread, the scope of an
+	 * enclosing request is restored when it is closed.
+	 */
+	public Scope begin(ODataRequest request) {
+
+		Scope scope = new Scope(enabled ? tag(request) : null);
+		if (scope.tag != null)
+			current.set(scope);
+		return scope;
+	}
+
+	/*
+	 * Gets the start of a measurement, 0 when no request is measured on the
+	 * current thread.
+	 */
+	public static long start() {
+		return current.get() != null ? System.nanoTime() : 0L;
+	}
+
+	/*
+	 * Adds the time since start to the phase of the current request.
+	 */
+	public static void record(Phase phase, long start) {
+
+		Scope scope = current.get();
+		if (scope != null && start != 0L)
+			scope.add(phase, System.nanoTime() - start);
+	}
+
+	/*
+	 * Records the parse phase when a processor is reached and gets the start
+	 * of the next measurement.
+	 */
+	public static long parsed() {
+
+		Scope scope = current.get();
+		if (scope == null)
+			return 0L;
+
+		long now = System.nanoTime();
+		if (scope.nanos[Phase.PARSE.ordinal()] == 0L)
+			scope.add(Phase.PARSE, now - scope.started);
+		return now;
+	}
+
+	public static void rows(long rows) {
+
+		Scope scope = current.get();
+		if (scope != null)
+			scope.rows += rows;
+	}
+
+	/*
+	 * Records the write phase and the bytes written.
+	 */
+	public static void written(long start, long bytes) {
+
+		Scope scope = current.get();
+		if (scope != null) {
+			record(Phase.WRITE, start);
+			scope.bytes += bytes;
+		}
+	}
+
+	/*
+	 * Records the compression of a body of the given size, the ratio is the
+	 * size of the compressed body in percent of the body.
+	 */
+	public static void compressed(long bytes, long compressedBytes, long cpuNanos) {
+
+		Scope scope = current.get();
+		if (scope != null && bytes > 0L) {
+			scope.compressionNanos += Math.max(cpuNanos, 1L);
+			scope.compressionRatio = compressedBytes * 100L / bytes;
+		}
+	}
+
+	public static void status(int status) {
+
+		Scope scope = current.get();
+		if (scope != null)
+			scope.status = status;
+	}
+
+	/*
+	 * Tags the metrics of a request with its entity set and method. Only
+	 * entity sets of the registry are named, so that unknown paths do not
+	 * add metrics.
+	 */
+	private String tag(ODataRequest request) {
+
+		String path = request.getRawODataPath() == null ? "" : request.getRawODataPath();
+		path = path.startsWith("/") ? path.substring(1) : path;
+
+		int end = 0;
+		while (end < path.length() && "(/?".indexOf(path.charAt(end)) < 0)
+			end++;
+		String segment = path.substring(0, end);
+
+		String entitySet;
+		if (segment.isEmpty())
+			entitySet = "service";
+		else if (segment.equals("$metadata") || segment.equals("$batch"))
+			entitySet = segment.substring(1);
+		else if (entityProviderRegistry.getByEntitySetName(segment) != null)
+			entitySet = segment;
+		else
+			entitySet = "other";
+
+		return entitySet + "." + request.getMethod();
+	}
+
+	public final class Scope implements Closeable {
+
+		private final String tag;
+
+		private final Scope previous = current.get();
+
+		private final long started = System.nanoTime();
+
+		private final long[] nanos = new long[PHASES.length];
+
+		private long rows;
+
+		private long bytes;
+
+		private int status;
+
+		private long compressionNanos;
+
+		private long compressionRatio;
+
+		private Scope(String tag) {
+			this.tag = tag;
+		}
+
+		private void add(Phase phase, long elapsed) {
+			nanos[phase.ordinal()] += Math.max(elapsed, 1L);
+		}
+
+		/*
+		 * Records the request, a request that failed before its response was
+		 * written counts as an error.
+		 */
+		@Override
+		public void close() {
+
+			if (tag == null)
+				return;
+
+			if (previous != null)
+				current.set(previous);
+			else
+				current.remove();
+
+			for (Phase phase : PHASES) {
+				if (nanos[phase.ordinal()] > 0L)
+					metricRegistry.timer("odata." + phase.name().toLowerCase(Locale.ENGLISH) + "." + tag)
+							.update(nanos[phase.ordinal()], TimeUnit.NANOSECONDS);
+			}
+			metricRegistry.timer("odata.request." + tag).update(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+
+			if (rows > 0L)
+				metricRegistry.counter("odata.rows." + tag).inc(rows);
+			if (bytes > 0L)
+				metricRegistry.counter("odata.bytes." + tag).inc(bytes);
+			if (compressionNanos > 0L) {
+				metricRegistry.timer("odata.compression." + tag).update(compressionNanos, TimeUnit.NANOSECONDS);
+				metricRegistry.histogram("odata.compression.ratio." + tag).update(compressionRatio);
+			}
+			if (status == 0 || status >= 400)
+				metricRegistry.counter("odata.errors." + tag).inc();
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.xylia.microservices.odata.framework.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.core.data.EntitySetImpl;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Entity set whose entities are built one row at a time while the serializer
+ * iterates them, so that neither the rows nor the entities of the whole set
+ * are held in memory. The entities can be iterated once. When more rows
+ * remain after the last entity of the page, the next link is built from the
+ * last row; the serializer writes the next link after the entities.
+ *
+ * When the columns of the rows are given, a serializer can also write the
+ * rows directly, without building entities.
+ */
+
+public class StreamingEntitySet<T> extends EntitySetImpl implements Closeable {
+
+	private final Iterator<T> rows;
+
+	private final Function<T, Entity> builder;
+
+	private final int limit;
+
+	private final Function<T, URI> nextLink;
+
+	private String[] columns;
+
+	private ColumnReader<T> columnReader;
+
+	private boolean iterated;
+
+	private boolean closed;
+
+	/*
+	 * Streams at most limit entities from the rows, -1 for all of them. The
+	 * rows are closed once iterated if they are Closeable.
+	 */
+	public StreamingEntitySet(Iterator<T> rows, Function<T, Entity> builder, int limit, Function<T, URI> nextLink) {
+		this.rows = rows;
+		this.builder = builder;
+		this.limit = limit;
+		this.nextLink = nextLink;
+	}
+
+	/*
+	 * Names the columns of the rows, in the order the column reader reads
+	 * them.
+	 */
+	public void setColumns(String[] columns, ColumnReader<T> columnReader) {
+		this.columns = columns;
+		this.columnReader = columnReader;
+	}
+
+	public String[] getColumns() {
+		return columns;
+	}
+
+	public ColumnReader<T> getColumnReader() {
+		return columnReader;
+	}
+
+	/*
+	 * Checks whether the rows can be written without building entities.
+	 */
+	public boolean hasColumns() {
+		return columns != null && columnReader != null;
+	}
+
+	/*
+	 * Iterates the rows of the page, the rows can be iterated once either
+	 * through this method or as entities.
+	 */
+	public Iterator<T> rows() {
+
+		if (iterated)
+			throw new IllegalStateException("Streamed rows can only be iterated once");
+
+		iterated = true;
+		return new RowIterator();
+	}
+
+	@Override
+	public List<Entity> getEntities() {
+
+		return new AbstractList<Entity>() {
+
+			@Override
+			public Iterator<Entity> iterator() {
+
+				final Iterator<T> rows = rows();
+
+				return new Iterator<Entity>() {
+
+					@Override
+					public boolean hasNext() {
+						return rows.hasNext();
+					}
+
+					@Override
+					public Entity next() {
+						return builder.apply(rows.next());
+					}
+				};
+			}
+
+			@Override
+			public Entity get(int index) {
+				throw new UnsupportedOperationException("Streamed entities can only be iterated");
+			}
+
+			@Override
+			public int size() {
+				throw new UnsupportedOperationException("Streamed entities can only be iterated");
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		if (!closed) {
+			closed = true;
+			if (rows instanceof Closeable)
+				((Closeable) rows).close();
+		}
+	}
+
+	private final class RowIterator implements Iterator<T> {
+
+		private int streamed;
+
+		private T last;
+
+		@Override
+		public boolean hasNext() {
+
+			if (closed)
+				return false;
+
+			if (limit >= 0 && streamed >= limit) {
+				finish(rows.hasNext());
+				return false;
+			}
+
+			if (!rows.hasNext()) {
+				finish(false);
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public T next() {
+
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			last = rows.next();
+			streamed++;
+			PipelineMetrics.rows(1);
+			return last;
+		}
+
+		private void finish(boolean more) {
+
+			if (more && last != null && nextLink != null)
+				setNext(nextLink.apply(last));
+
+			try {
+				close();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/*
+	 * Reads the value of a column from a row.
+	 */
+	public interface ColumnReader<T> {
+
+		Object read(T row, int column);
+	}
+}
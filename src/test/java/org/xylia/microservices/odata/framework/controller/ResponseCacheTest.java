@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProvider;
+import org.xylia.microservices.odata.framework.edm.providers.EntityProviderRegistry;
+import org.xylia.microservices.odata.framework.edm.serializer.StreamingContent;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Canonical keys of collection reads, and which responses are cached: small
+ * bodies are, streamed content, bodies past the entry limit and responses
+ * read before a write of their entity set are written through.
+ */
+
+public class ResponseCacheTest {
+
+	private static final int MAX_ENTRY_BYTES = 64;
+
+	private ResponseCache responseCache;
+
+	@Before
+	public void createCache() {
+
+		EntityProvider entityProvider = mock(EntityProvider.class);
+		when(entityProvider.getResponseCacheTtl()).thenReturn(60L);
+
+		EntityProviderRegistry entityProviderRegistry = mock(EntityProviderRegistry.class);
+		when(entityProviderRegistry.getByEntitySetName("Products")).thenReturn(entityProvider);
+
+		responseCache = new ResponseCache();
+		ReflectionTestUtils.setField(responseCache, "entityProviderRegistry", entityProviderRegistry);
+		ReflectionTestUtils.setField(responseCache, "maximumBytes", 4096L);
+		ReflectionTestUtils.setField(responseCache, "maximumEntryBytes", MAX_ENTRY_BYTES);
+		responseCache.init();
+	}
+
+	@Test
+	public void keysReorderedAndEncodedOptionsAlike() {
+
+		ResponseCache.Key key = key("$top=10&$select=name,id&$filter=price%20gt%205", "application/json");
+
+		assertEquals(key, key("$filter=price gt 5&$select=id,name&$top=10", "application/json"));
+		assertEquals(key, key("%24select=id,%20name&%24top=10&$filter=price%20gt%205", "application/json"));
+		assertEquals(key, key("$select=id%2Cname&$filter=price gt 5&&$top=10", "application/json"));
+	}
+
+	@Test
+	public void keysOtherRequestsApart() {
+
+		ResponseCache.Key key = key("$filter=name eq 'a+b'&$top=10", "application/json");
+
+		assertNotEquals(key, key("$filter=name eq 'a b'&$top=10", "application/json"));
+		assertNotEquals(key, key("$filter=name eq 'a+b'&$top=11", "application/json"));
+		assertNotEquals(key, key("$filter=name eq 'a+b'&$top=10", "application/xml"));
+	}
+
+	@Test
+	public void keysOnlyCachedEntitySets() {
+
+		assertNull(key("Orders", "$top=10", "application/json"));
+		assertNull(key("Products(1)", "", "application/json"));
+		assertNotNull(key("Products/$count", "", "application/json"));
+	}
+
+	@Test
+	public void cachesSmallBodies() throws IOException {
+
+		ResponseCache.Key key = key("$top=10", "application/json");
+		byte[] body = body(MAX_ENTRY_BYTES);
+
+		assertArrayEquals(body, content(responseCache.put(key, response(body))));
+		assertArrayEquals(body, content(responseCache.get(key)));
+	}
+
+	@Test
+	public void writesLargeBodiesThrough() throws IOException {
+
+		ResponseCache.Key key = key("$top=10", "application/json");
+		byte[] body = body(MAX_ENTRY_BYTES * 3 + 1);
+
+		assertArrayEquals(body, content(responseCache.put(key, response(body))));
+		assertNull(responseCache.get(key));
+	}
+
+	@Test
+	public void writesStreamedContentThrough() throws IOException {
+
+		ResponseCache.Key key = key("$top=10", "application/json");
+		ODataResponse response = new ODataResponse();
+		response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+		response.setContent(new StreamingContent(() -> {
+		}) {
+
+			@Override
+			protected void write(OutputStream out) throws IOException {
+				out.write(body(1));
+			}
+		});
+
+		assertSame(response, responseCache.put(key, response));
+		assertNull(responseCache.get(key));
+	}
+
+	@Test
+	public void skipsResponsesReadBeforeAWrite() throws IOException {
+
+		ResponseCache.Key key = key("$top=10", "application/json");
+		responseCache.invalidate("Products");
+
+		responseCache.put(key, response(body(1)));
+		assertNull(responseCache.get(key));
+
+		ResponseCache.Key current = key("$top=10", "application/json");
+		responseCache.put(current, response(body(1)));
+		assertNotNull(responseCache.get(current));
+	}
+
+	private ResponseCache.Key key(String query, String accept) {
+		return key("Products", query, accept);
+	}
+
+	private ResponseCache.Key key(String path, String query, String accept) {
+
+		ODataRequest request = mock(ODataRequest.class);
+		when(request.getRawBaseUri()).thenReturn("http://localhost/odata");
+		when(request.getRawODataPath()).thenReturn("/" + path);
+		when(request.getRawQueryPath()).thenReturn(query);
+		when(request.getHeaders(HttpHeader.ACCEPT)).thenReturn(Arrays.asList(accept));
+		return responseCache.key(request);
+	}
+
+	private static ODataResponse response(byte[] body) {
+
+		ODataResponse response = new ODataResponse();
+		response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+		response.setContent(new ByteArrayInputStream(body));
+		return response;
+	}
+
+	private static byte[] body(int length) {
+
+		byte[] body = new byte[length];
+		for (int i = 0; i < length; i++)
+			body[i] = (byte) ('a' + i % 26);
+		return body;
+	}
+
+	private static byte[] content(ODataResponse response) throws IOException {
+		return StreamUtils.copyToByteArray(response.getContent());
+	}
+}
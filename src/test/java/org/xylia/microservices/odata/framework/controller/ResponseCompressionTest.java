@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Negotiation of the encoding by the quality values of Accept-Encoding, and
+ * compressed bodies that decode to what was written, gzip trailer included.
+ */
+
+public class ResponseCompressionTest {
+
+	private static final int MIN_SIZE = 64;
+
+	private ResponseCompression responseCompression;
+
+	@Before
+	public void createCompression() {
+
+		responseCompression = new ResponseCompression();
+		ReflectionTestUtils.setField(responseCompression, "enabled", true);
+		ReflectionTestUtils.setField(responseCompression, "minSize", MIN_SIZE);
+		ReflectionTestUtils.setField(responseCompression, "level", 6);
+	}
+
+	@Test
+	public void prefersGzipWhenEquallyAcceptable() {
+
+		assertEquals("gzip", negotiate("gzip, deflate"));
+		assertEquals("gzip", negotiate("deflate;q=0.8, gzip;q=0.8"));
+		assertEquals("gzip", negotiate("x-gzip"));
+		assertEquals("gzip", negotiate("*"));
+	}
+
+	@Test
+	public void choosesTheHigherQuality() {
+
+		assertEquals("deflate", negotiate("gzip;q=0.5, deflate"));
+		assertEquals("deflate", negotiate("GZIP; q=0.1, Deflate; q=0.9"));
+		assertEquals("gzip", negotiate("deflate;q=0.2, *;q=0.5"));
+	}
+
+	@Test
+	public void excludesCodingsOfQualityZero() {
+
+		assertNull(negotiate("gzip;q=0"));
+		assertNull(negotiate("gzip;q=0, deflate;q=0.0"));
+		assertEquals("deflate", negotiate("*, gzip;q=0"));
+		assertNull(negotiate("*;q=0"));
+		assertNull(negotiate("identity"));
+		assertNull(negotiate("gzip;q=high"));
+		assertNull(ResponseCompression.negotiate(null));
+	}
+
+	@Test
+	public void readsEveryAcceptEncodingHeader() {
+		assertEquals("deflate", ResponseCompression.negotiate(Arrays.asList("gzip;q=0.3", "deflate;q=0.6")));
+	}
+
+	@Test
+	public void gzipBodyDecodesWithItsTrailer() throws IOException {
+
+		byte[] body = body(200000);
+		MockHttpServletResponse resp = write("gzip", body);
+
+		assertEquals("gzip", resp.getHeader("Content-Encoding"));
+
+		/* GZIPInputStream checks the CRC and size of the trailer at the end of the stream */
+		assertArrayEquals(body, decode(new GZIPInputStream(new ByteArrayInputStream(resp.getContentAsByteArray()))));
+	}
+
+	@Test
+	public void deflateBodyDecodes() throws IOException {
+
+		byte[] body = body(20000);
+		MockHttpServletResponse resp = write("deflate", body);
+
+		assertEquals("deflate", resp.getHeader("Content-Encoding"));
+		assertArrayEquals(body,
+				decode(new InflaterInputStream(new ByteArrayInputStream(resp.getContentAsByteArray()))));
+	}
+
+	@Test
+	public void smallBodyIsSentAsItIs() throws IOException {
+
+		byte[] body = body(MIN_SIZE);
+		MockHttpServletResponse resp = write("gzip", body);
+
+		assertNull(resp.getHeader("Content-Encoding"));
+		assertArrayEquals(body, resp.getContentAsByteArray());
+	}
+
+	private static String negotiate(String acceptEncoding) {
+		return ResponseCompression.negotiate(Collections.singletonList(acceptEncoding));
+	}
+
+	/*
+	 * Writes the body in chunks that do not line up with the minimum size or
+	 * the buffers of the compressor.
+	 */
+	private MockHttpServletResponse write(String encoding, byte[] body) throws IOException {
+
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		try (ResponseCompression.CompressingOutputStream out = responseCompression.compress(resp, encoding)) {
+
+			out.write(body[0]);
+			for (int off = 1; off < body.length; off += 1000)
+				out.write(body, off, Math.min(1000, body.length - off));
+			out.finish();
+		}
+		return resp;
+	}
+
+	private static byte[] decode(InputStream in) throws IOException {
+
+		try (InputStream decoded = in) {
+			return StreamUtils.copyToByteArray(decoded);
+		}
+	}
+
+	/*
+	 * A body of JSON like text with random values, so that it compresses but
+	 * not to nothing.
+	 */
+	private static byte[] body(int length) {
+
+		Random random = new Random(42);
+		StringBuilder text = new StringBuilder(length + 64);
+		while (text.length() < length)
+			text.append("{\"id\":").append(random.nextInt(100000)).append(",\"name\":\"")
+					.append(Long.toString(random.nextLong(), 36)).append("\"},");
+
+		return Arrays.copyOf(text.toString().getBytes(StandardCharsets.UTF_8), length);
+	}
+}
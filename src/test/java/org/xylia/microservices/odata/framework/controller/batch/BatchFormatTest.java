@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.server.api.ODataRequest;
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Parsing of multipart/mixed and JSON batch requests into parts, change
+ * sets included, and the choice of the format by Content-Type.
+ */
+
+public class BatchFormatTest {
+
+	private static final String BASE_URI = "http://localhost/odata";
+
+	@Test
+	public void choosesTheFormatByContentType() {
+
+		assertTrue(BatchFormat.of(batch("multipart/mixed; boundary=\"batch_1\"")) instanceof MultipartBatchFormat);
+		assertTrue(BatchFormat.of(batch("application/json;odata.metadata=minimal")) instanceof JsonBatchFormat);
+		assertNull(BatchFormat.of(batch("multipart/mixed")));
+		assertNull(BatchFormat.of(batch("text/plain")));
+	}
+
+	@Test
+	public void parsesMultipartRequestsAndChangeSets() throws IOException {
+
+		String body = "--batch_1\r\n"
+				+ "Content-Type: application/http\r\n"
+				+ "Content-Transfer-Encoding: binary\r\n"
+				+ "\r\n"
+				+ "GET Products?$top=2 HTTP/1.1\r\n"
+				+ "Accept: application/json\r\n"
+				+ "\r\n"
+				+ "\r\n"
+				+ "--batch_1\r\n"
+				+ "Content-Type: multipart/mixed; boundary=changeset_1\r\n"
+				+ "\r\n"
+				+ "--changeset_1\r\n"
+				+ "Content-Type: application/http\r\n"
+				+ "Content-ID: 1\r\n"
+				+ "\r\n"
+				+ "POST Products HTTP/1.1\r\n"
+				+ "Content-Type: application/json\r\n"
+				+ "\r\n"
+				+ "{\"name\":\"a\"}\r\n"
+				+ "--changeset_1\r\n"
+				+ "Content-Type: application/http\r\n"
+				+ "Content-ID: 2\r\n"
+				+ "\r\n"
+				+ "PATCH $1 HTTP/1.1\r\n"
+				+ "Content-Type: application/json\r\n"
+				+ "\r\n"
+				+ "{\"name\":\"b\"}\r\n"
+				+ "--changeset_1--\r\n"
+				+ "\r\n"
+				+ "--batch_1--\r\n";
+
+		List<BatchPart> parts = new MultipartBatchFormat("batch_1").parse(body.getBytes(StandardCharsets.ISO_8859_1));
+		assertEquals(3, parts.size());
+
+		BatchPart read = parts.get(0);
+		assertFalse(read.isChangeSet());
+		assertEquals(HttpMethod.GET, read.getMethod());
+
+		ODataRequest request = read.createRequest(batch(null), null);
+		assertEquals("/Products", request.getRawODataPath());
+		assertEquals("$top=2", request.getRawQueryPath());
+		assertEquals("application/json", BatchFormat.header(request, HttpHeader.ACCEPT));
+
+		BatchPart create = parts.get(1);
+		assertEquals("1", create.getContentId());
+		assertEquals("changeset1", create.getAtomicityGroup());
+		assertEquals(HttpMethod.POST, create.getMethod());
+		assertEquals("{\"name\":\"a\"}", body(create, null));
+
+		BatchPart update = parts.get(2);
+		assertEquals(create.getAtomicityGroup(), update.getAtomicityGroup());
+		assertEquals(HttpMethod.PATCH, update.getMethod());
+
+		Map<String, String> locations = Collections.singletonMap("1", BASE_URI + "/Products(7)");
+		assertEquals("/Products(7)", update.createRequest(batch(null), locations).getRawODataPath());
+		assertEquals("{\"name\":\"b\"}", body(update, locations));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMultipartWithoutCloseDelimiter() {
+
+		String body = "--batch_1\r\nContent-Type: application/http\r\n\r\nGET Products HTTP/1.1\r\n\r\n";
+		new MultipartBatchFormat("batch_1").parse(body.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	public void parsesJsonRequestsAndAtomicityGroups() throws IOException {
+
+		String body = "{\"requests\":["
+				+ "{\"id\":\"r1\",\"method\":\"get\",\"url\":\"/odata/Products?$top=2\"},"
+				+ "{\"id\":\"r2\",\"atomicityGroup\":\"g1\",\"method\":\"POST\",\"url\":\"Products\","
+				+ "\"body\":{\"name\":\"a\"}},"
+				+ "{\"id\":\"r3\",\"atomicityGroup\":\"g1\",\"method\":\"POST\",\"url\":\"Notes\","
+				+ "\"headers\":{\"Content-Type\":\"text/plain\"},\"body\":\"text\"}]}";
+
+		List<BatchPart> parts = new JsonBatchFormat().parse(body.getBytes(StandardCharsets.UTF_8));
+		assertEquals(3, parts.size());
+
+		BatchPart read = parts.get(0);
+		assertEquals("r1", read.getContentId());
+		assertFalse(read.isChangeSet());
+		assertEquals(HttpMethod.GET, read.getMethod());
+		assertEquals("/Products", read.createRequest(batch(null), null).getRawODataPath());
+
+		BatchPart json = parts.get(1);
+		assertEquals("g1", json.getAtomicityGroup());
+		assertEquals("{\"name\":\"a\"}", body(json, null));
+		assertEquals("application/json",
+				BatchFormat.header(json.createRequest(batch(null), null), HttpHeader.CONTENT_TYPE));
+
+		BatchPart text = parts.get(2);
+		assertEquals("g1", text.getAtomicityGroup());
+		assertEquals("text", body(text, null));
+		assertEquals("text/plain",
+				BatchFormat.header(text.createRequest(batch(null), null), HttpHeader.CONTENT_TYPE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsJsonWithoutRequestsArray() {
+		new JsonBatchFormat().parse("{\"responses\":[]}".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsJsonRequestWithoutUrl() {
+		new JsonBatchFormat().parse("{\"requests\":[{\"method\":\"GET\"}]}".getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String body(BatchPart part, Map<String, String> locations) throws IOException {
+		return StreamUtils.copyToString(part.createRequest(batch(null), locations).getBody(), StandardCharsets.UTF_8);
+	}
+
+	private static ODataRequest batch(String contentType) {
+
+		ODataRequest request = new ODataRequest();
+		request.setMethod(HttpMethod.POST);
+		request.setRawBaseUri(BASE_URI);
+		request.setRawODataPath("/" + BatchFormat.BATCH_PATH);
+		if (contentType != null)
+			request.addHeader(HttpHeader.CONTENT_TYPE, Collections.singletonList(contentType));
+		return request;
+	}
+}
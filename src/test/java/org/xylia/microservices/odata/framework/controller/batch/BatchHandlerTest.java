@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.controller.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.core.ODataHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.xylia.microservices.odata.framework.util.PipelineMetrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Responses of change sets and reads of a JSON batch: a change set with a
+ * failed request, or one that fails to commit, is rolled back and answered
+ * with the failed part alone, a failed read only fails its own part.
+ */
+
+public class BatchHandlerTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final String CHANGE_SET = "{\"id\":\"r1\",\"atomicityGroup\":\"g1\",\"method\":\"POST\","
+			+ "\"url\":\"Products\",\"body\":{\"name\":\"a\"}},"
+			+ "{\"id\":\"r2\",\"atomicityGroup\":\"g1\",\"method\":\"POST\",\"url\":\"%s\",\"body\":{\"name\":\"b\"}}";
+
+	private PlatformTransactionManager transactionManager;
+
+	private SimpleTransactionStatus readStatus;
+
+	private SimpleTransactionStatus writeStatus;
+
+	private BatchHandler batchHandler;
+
+	private ODataHandler odataHandler;
+
+	@Before
+	public void createHandler() {
+
+		readStatus = new SimpleTransactionStatus();
+		writeStatus = new SimpleTransactionStatus();
+
+		transactionManager = mock(PlatformTransactionManager.class);
+		when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenAnswer(invocation -> {
+			TransactionDefinition definition = (TransactionDefinition) invocation.getArguments()[0];
+			return definition.isReadOnly() ? readStatus : writeStatus;
+		});
+
+		/* Products accepts creates, Broken rejects them */
+		odataHandler = mock(ODataHandler.class);
+		when(odataHandler.process(any(ODataRequest.class))).thenAnswer(invocation -> {
+			ODataRequest request = (ODataRequest) invocation.getArguments()[0];
+			ODataResponse response = new ODataResponse();
+			if (request.getRawODataPath().startsWith("/Broken")) {
+				response.setStatusCode(HttpStatusCode.BAD_REQUEST.getStatusCode());
+			} else if (request.getMethod() == HttpMethod.POST) {
+				response.setStatusCode(HttpStatusCode.CREATED.getStatusCode());
+				response.setHeader(HttpHeader.LOCATION, request.getRawBaseUri() + "/Products(1)");
+			} else {
+				response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+			}
+			return response;
+		});
+
+		batchHandler = new BatchHandler();
+		ReflectionTestUtils.setField(batchHandler, "threads", 2);
+		ReflectionTestUtils.setField(batchHandler, "queueSize", 4);
+		ReflectionTestUtils.setField(batchHandler, "pipelineMetrics", new PipelineMetrics());
+		batchHandler.setTransactionManager(transactionManager);
+		batchHandler.init();
+	}
+
+	@After
+	public void shutdown() {
+		batchHandler.shutdown();
+	}
+
+	@Test
+	public void answersEveryPartOfACommittedChangeSet() throws IOException {
+
+		JsonNode responses = process(String.format(CHANGE_SET, "Products"));
+
+		assertEquals(2, responses.size());
+		assertEquals(201, responses.get(0).get("status").asInt());
+		assertEquals(201, responses.get(1).get("status").asInt());
+		assertFalse(writeStatus.isRollbackOnly());
+	}
+
+	@Test
+	public void rollsBackAChangeSetWithAFailedRequest() throws IOException {
+
+		JsonNode responses = process(String.format(CHANGE_SET, "Broken"));
+
+		assertEquals(1, responses.size());
+		assertEquals("r2", responses.get(0).get("id").asText());
+		assertFalse(responses.get(0).has("atomicityGroup"));
+		assertEquals(400, responses.get(0).get("status").asInt());
+		assertTrue(writeStatus.isRollbackOnly());
+	}
+
+	@Test
+	public void answersAChangeSetFailingToCommitWithTheFailedPart() throws IOException {
+
+		doThrow(new DataIntegrityViolationException("unique constraint violated")).when(transactionManager)
+				.commit(writeStatus);
+
+		JsonNode responses = process("{\"id\":\"r0\",\"method\":\"GET\",\"url\":\"Products\"},"
+				+ String.format(CHANGE_SET, "Products"));
+
+		assertEquals(2, responses.size());
+		assertEquals(200, responses.get(0).get("status").asInt());
+		assertEquals("r2", responses.get(1).get("id").asText());
+		assertEquals(500, responses.get(1).get("status").asInt());
+		assertEquals("unique constraint violated", responses.get(1).get("body").asText());
+	}
+
+	@Test
+	public void answersAReadFailingToCommitWithItsPartOnly() throws IOException {
+
+		doThrow(new DataAccessResourceFailureException("connection lost")).when(transactionManager)
+				.commit(readStatus);
+
+		JsonNode responses = process("{\"id\":\"r0\",\"method\":\"GET\",\"url\":\"Products\"},"
+				+ String.format(CHANGE_SET, "Products"));
+
+		assertEquals(3, responses.size());
+		assertEquals(500, responses.get(0).get("status").asInt());
+		assertEquals(201, responses.get(1).get("status").asInt());
+		assertEquals(201, responses.get(2).get("status").asInt());
+	}
+
+	private JsonNode process(String requests) throws IOException {
+
+		ODataRequest request = new ODataRequest();
+		request.setMethod(HttpMethod.POST);
+		request.setRawBaseUri("http://localhost/odata");
+		request.setRawODataPath("/" + BatchFormat.BATCH_PATH);
+		request.addHeader(HttpHeader.CONTENT_TYPE, Collections.singletonList("application/json"));
+		request.setBody(new ByteArrayInputStream(
+				("{\"requests\":[" + requests + "]}").getBytes(StandardCharsets.UTF_8)));
+
+		ODataResponse response = batchHandler.process(request, () -> odataHandler);
+		assertEquals(200, response.getStatusCode());
+
+		return MAPPER.readTree(BatchFormat.read(response.getContent())).get("responses");
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.edm.serializer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import org.apache.olingo.commons.api.ODataException;
+import org.apache.olingo.commons.api.data.ContextURL;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.format.ODataFormat;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.edm.provider.EdmProvider;
+import org.apache.olingo.server.api.edm.provider.EntityContainer;
+import org.apache.olingo.server.api.edm.provider.EntityContainerInfo;
+import org.apache.olingo.server.api.edm.provider.EntitySet;
+import org.apache.olingo.server.api.edm.provider.EntityType;
+import org.apache.olingo.server.api.edm.provider.Property;
+import org.apache.olingo.server.api.edm.provider.PropertyRef;
+import org.apache.olingo.server.api.edm.provider.Schema;
+import org.apache.olingo.server.api.edmx.EdmxReference;
+import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
+import org.apache.olingo.server.core.uri.queryoption.CountOptionImpl;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+import org.xylia.microservices.odata.framework.edm.types.ColumnFacets;
+import org.xylia.microservices.odata.framework.edm.types.PropertyCodecs;
+import org.xylia.microservices.odata.framework.util.CoreEntityListProcessor;
+import org.xylia.microservices.odata.framework.util.StreamingEntitySet;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Writes the same rows through the Olingo JSON serializer, from entities,
+ * and through the DirectJsonSerializer, from the rows, and checks that both
+ * produce the same bytes.
+ */
+
+public class DirectJsonSerializerTest {
+
+	private static final String NAMESPACE = "org.xylia.test";
+
+	private static final FullQualifiedName CONTAINER = new FullQualifiedName(NAMESPACE, "Container");
+
+	private static final FullQualifiedName ROW = new FullQualifiedName(NAMESPACE, "Row");
+
+	private static final String[] COLUMNS = { "id", "name", "flag", "small", "total", "ratio", "amount", "guid",
+			"data", "day", "time", "stamp", "updated" };
+
+	private static final Class<?>[] TYPES = { Integer.class, String.class, Boolean.class, Short.class, Long.class,
+			Double.class, BigDecimal.class, UUID.class, byte[].class, Date.class, Time.class, Timestamp.class,
+			java.util.Date.class };
+
+	private static TimeZone defaultTimeZone;
+
+	private static OData odata;
+
+	private static EdmEntitySet edmEntitySet;
+
+	@BeforeClass
+	public static void createEdm() {
+
+		/* java.sql.Date and Time are civil values, read by the JDBC driver in the default time zone */
+		defaultTimeZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+
+		odata = OData.newInstance();
+		edmEntitySet = odata.createServiceMetadata(new RowEdmProvider(), new ArrayList<EdmxReference>()).getEdm()
+				.getEntityContainer(CONTAINER).getEntitySet("Rows");
+	}
+
+	@AfterClass
+	public static void restoreTimeZone() {
+		TimeZone.setDefault(defaultTimeZone);
+	}
+
+	@Test
+	public void writesValuesOfAllCodecs() throws Exception {
+
+		assertSameJson(ODataFormat.JSON, rows(), -1, false);
+		assertSameJson(ODataFormat.JSON_NO_METADATA, rows(), -1, false);
+	}
+
+	@Test
+	public void writesNullValues() throws Exception {
+
+		Object[] row = new Object[COLUMNS.length];
+		row[0] = 3;
+
+		assertSameJson(ODataFormat.JSON, Collections.singletonList(row), -1, false);
+		assertSameJson(ODataFormat.JSON_NO_METADATA, Collections.singletonList(row), -1, false);
+	}
+
+	@Test
+	public void writesCountAndNextLink() throws Exception {
+
+		assertSameJson(ODataFormat.JSON, rows(), 1, true);
+		assertSameJson(ODataFormat.JSON_NO_METADATA, rows(), 1, true);
+	}
+
+	@Test
+	public void writesEmptyCollection() throws Exception {
+
+		assertSameJson(ODataFormat.JSON, Collections.<Object[]> emptyList(), -1, true);
+	}
+
+	private static void assertSameJson(ODataFormat format, List<Object[]> rows, int limit, boolean count)
+			throws Exception {
+
+		EntityCollectionSerializerOptions options = EntityCollectionSerializerOptions.with()
+				.contextURL(ContextURL.with().entitySet(edmEntitySet).build())
+				.count(count ? new CountOptionImpl().setValue(true) : null).build();
+
+		byte[] olingo = StreamUtils.copyToByteArray(odata.createSerializer(format)
+				.entityCollection(edmEntitySet.getEntityType(), entitySet(rows, limit, count), options));
+
+		ByteArrayOutputStream direct = new ByteArrayOutputStream();
+		new DirectJsonSerializer(format)
+				.entityCollection(edmEntitySet.getEntityType(), entitySet(rows, limit, count), options)
+				.writeTo(direct);
+
+		assertEquals(new String(olingo, StandardCharsets.UTF_8),
+				new String(direct.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	private static StreamingEntitySet<Object[]> entitySet(List<Object[]> rows, int limit, boolean count) {
+
+		StreamingEntitySet<Object[]> entitySet = new StreamingEntitySet<Object[]>(rows.iterator(),
+				row -> CoreEntityListProcessor.buildPrimitive(row, COLUMNS), limit,
+				last -> URI.create("Rows?$skiptoken=" + last[0]));
+		entitySet.setColumns(COLUMNS, (row, column) -> row[column]);
+		if (count)
+			entitySet.setCount(rows.size());
+		return entitySet;
+	}
+
+	private static List<Object[]> rows() {
+
+		Timestamp stamp = new Timestamp(1476785106123L);
+		stamp.setNanos(123456789);
+
+		return Arrays.asList(
+				new Object[] { 1, "plain", true, (short) -7, 9007199254740993L, 0.25, new BigDecimal("1234.50"),
+						UUID.fromString("0f8fad5b-d9cb-469f-a165-70867728950e"), new byte[] { 0, -1, 62, 63, 127 },
+						Date.valueOf("2016-10-18"), Time.valueOf("07:05:06"), stamp,
+						new java.util.Date(1476785106123L) },
+				new Object[] { 2, "quoted \"ü€\" \\ \n", false, Short.MAX_VALUE, -1L, 1.0E-10,
+						new BigDecimal("-0.01"), new UUID(0L, 0L), new byte[0], Date.valueOf("1899-12-31"),
+						Time.valueOf("00:00:00"), new Timestamp(0L), new java.util.Date(-1L) });
+	}
+
+	/*
+	 * The entity type of the rows, with the properties built by the
+	 * property codecs as for an entity class.
+	 */
+	private static final class RowEdmProvider extends EdmProvider {
+
+		@Override
+		public EntityType getEntityType(FullQualifiedName entityTypeName) throws ODataException {
+
+			if (!ROW.equals(entityTypeName))
+				return null;
+
+			List<Property> properties = new ArrayList<Property>();
+			for (int i = 0; i < COLUMNS.length; i++) {
+
+				ColumnFacets facets = TYPES[i] == BigDecimal.class ? new ColumnFacets(10, 10, 2, "")
+						: ColumnFacets.DEFAULT;
+				properties.add(PropertyCodecs.shared().property(COLUMNS[i], TYPES[i], facets));
+			}
+
+			PropertyRef key = new PropertyRef();
+			key.setPropertyName("id");
+
+			EntityType entityType = new EntityType();
+			entityType.setName(ROW.getName());
+			entityType.setProperties(properties);
+			entityType.setKey(Arrays.asList(key));
+			return entityType;
+		}
+
+		@Override
+		public EntitySet getEntitySet(FullQualifiedName entityContainer, String entitySetName)
+				throws ODataException {
+
+			if (!"Rows".equals(entitySetName))
+				return null;
+
+			EntitySet entitySet = new EntitySet();
+			entitySet.setName(entitySetName);
+			entitySet.setType(ROW);
+			return entitySet;
+		}
+
+		@Override
+		public EntityContainer getEntityContainer() throws ODataException {
+
+			EntityContainer entityContainer = new EntityContainer();
+			entityContainer.setName(CONTAINER.getName());
+			entityContainer.setEntitySets(Arrays.asList(getEntitySet(CONTAINER, "Rows")));
+			return entityContainer;
+		}
+
+		@Override
+		public EntityContainerInfo getEntityContainerInfo(FullQualifiedName entityContainerName)
+				throws ODataException {
+
+			if (entityContainerName != null && !CONTAINER.equals(entityContainerName))
+				return null;
+
+			EntityContainerInfo entityContainerInfo = new EntityContainerInfo();
+			entityContainerInfo.setContainerName(CONTAINER);
+			return entityContainerInfo;
+		}
+
+		@Override
+		public List<Schema> getSchemas() throws ODataException {
+
+			Schema schema = new Schema();
+			schema.setNamespace(NAMESPACE);
+			schema.setEntityTypes(Arrays.asList(getEntityType(ROW)));
+			schema.setEntityContainer(getEntityContainer());
+			return Arrays.asList(schema);
+		}
+	}
+}
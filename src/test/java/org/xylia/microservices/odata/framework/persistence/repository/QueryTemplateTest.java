@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.persistence.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriInfoResource;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitor;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+import org.junit.Before;
+import org.junit.Test;
+import org.xylia.microservices.odata.framework.persistence.criteria.FilterExpressionVisitor;
+import org.xylia.microservices.odata.framework.persistence.criteria.FilterLiteral;
+import org.xylia.microservices.odata.framework.persistence.criteria.FilterShape;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Translates a $filter once through the FilterExpressionVisitor, keeps the
+ * sources of its parameters as a QueryTemplate, and binds the template from
+ * the literals of other expressions of the same shape. The values bound to
+ * the positional parameters must be those the visitor would have bound.
+ */
+
+public class QueryTemplateTest {
+
+	private CriteriaBuilder cb;
+
+	private Root<?> root;
+
+	@Before
+	public void createRoot() {
+
+		cb = mock(CriteriaBuilder.class, RETURNS_MOCKS);
+		root = mock(Root.class);
+
+		attribute("price", Integer.class);
+		attribute("name", String.class);
+		attribute("total", Long.class);
+	}
+
+	@Test
+	public void bindsLiteralsOfTheSameShape() throws Exception {
+
+		QueryTemplate template = translate(filter(10, "ab"), Arrays.<Object> asList(5, 7L));
+
+		List<FilterLiteral> literals = new ArrayList<FilterLiteral>();
+		assertEquals(FilterShape.of(filter(10, "ab")), FilterShape.of(filter(20, "c%d_"), literals));
+
+		TypedQuery<Object> query = query();
+		template.bind(query, literals, Arrays.<Object> asList(9, 11L));
+
+		verify(query).setParameter("p0", 20);
+		verify(query).setParameter("p1", "c\\%d\\_%");
+		verify(query).setParameter("p2", 40L);
+		verify(query).setParameter("p3", 9);
+		verify(query).setParameter("p4", 11L);
+		verifyNoMoreInteractions(query);
+	}
+
+	@Test
+	public void bindsTheValuesOfTheVisitor() throws Exception {
+
+		List<Object> seekValues = Arrays.<Object> asList(5, 7L);
+		FilterExpressionVisitor visitor = visit(filter(10, "ab"), seekValues);
+		QueryTemplate template = new QueryTemplate("", new ArrayList<>(visitor.getSources()));
+
+		List<FilterLiteral> literals = new ArrayList<FilterLiteral>();
+		FilterShape.of(filter(10, "ab"), literals);
+
+		TypedQuery<Object> query = query();
+		template.bind(query, literals, seekValues);
+
+		int position = 0;
+		for (Object value : visitor.getParameters().values())
+			verify(query).setParameter("p" + position++, value);
+		verifyNoMoreInteractions(query);
+	}
+
+	@Test
+	public void separatesShapesOfOtherLiteralTypes() {
+
+		Expression number = binary(BinaryOperatorKind.EQ, member("name"), literal("10"));
+		Expression text = binary(BinaryOperatorKind.EQ, member("name"), literal("'10'"));
+		Expression none = binary(BinaryOperatorKind.EQ, member("name"), literal("null"));
+
+		assertNotEquals(FilterShape.of(number), FilterShape.of(text));
+		assertNotEquals(FilterShape.of(text), FilterShape.of(none));
+	}
+
+	/*
+	 * price gt <price> and startswith(name,'<prefix>') and total le <price> + 20
+	 */
+	private static Expression filter(int price, String prefix) {
+
+		return binary(BinaryOperatorKind.AND,
+				binary(BinaryOperatorKind.AND,
+						binary(BinaryOperatorKind.GT, member("price"), literal(String.valueOf(price))),
+						method(MethodKind.STARTSWITH, member("name"), literal("'" + prefix + "'"))),
+				binary(BinaryOperatorKind.LE, member("total"), literal(String.valueOf(price + 20))));
+	}
+
+	private QueryTemplate translate(Expression filter, List<Object> seekValues) throws ODataApplicationException {
+		return new QueryTemplate("", new ArrayList<>(visit(filter, seekValues).getSources()));
+	}
+
+	private FilterExpressionVisitor visit(Expression filter, List<Object> seekValues)
+			throws ODataApplicationException {
+
+		FilterExpressionVisitor visitor = new FilterExpressionVisitor(cb, root);
+		visitor.toPredicate(filter);
+		for (int i = 0; i < seekValues.size(); i++)
+			visitor.seekParameter(i, seekValues.get(i));
+		return visitor;
+	}
+
+	private void attribute(String name, Class<?> type) {
+
+		Path<?> path = mock(Path.class);
+		doReturn(type).when(path).getJavaType();
+		doReturn(path).when(root).get(name);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static TypedQuery<Object> query() {
+		return mock(TypedQuery.class);
+	}
+
+	private static Expression literal(String text) {
+
+		return new Expression() {
+
+			@Override
+			public <T> T accept(ExpressionVisitor<T> visitor)
+					throws ExpressionVisitException, ODataApplicationException {
+				return visitor.visitLiteral(text);
+			}
+		};
+	}
+
+	private static Expression member(String name) {
+
+		EdmProperty property = mock(EdmProperty.class);
+		when(property.getName()).thenReturn(name);
+
+		UriResourcePrimitiveProperty resourcePart = mock(UriResourcePrimitiveProperty.class);
+		when(resourcePart.getProperty()).thenReturn(property);
+
+		UriInfoResource member = mock(UriInfoResource.class);
+		doReturn(Collections.singletonList(resourcePart)).when(member).getUriResourceParts();
+
+		return new Expression() {
+
+			@Override
+			public <T> T accept(ExpressionVisitor<T> visitor)
+					throws ExpressionVisitException, ODataApplicationException {
+				return visitor.visitMember(member);
+			}
+		};
+	}
+
+	private static Expression binary(BinaryOperatorKind operator, Expression left, Expression right) {
+
+		return new Expression() {
+
+			@Override
+			public <T> T accept(ExpressionVisitor<T> visitor)
+					throws ExpressionVisitException, ODataApplicationException {
+				return visitor.visitBinaryOperator(operator, left.accept(visitor), right.accept(visitor));
+			}
+		};
+	}
+
+	private static Expression method(MethodKind methodCall, Expression... parameters) {
+
+		return new Expression() {
+
+			@Override
+			public <T> T accept(ExpressionVisitor<T> visitor)
+					throws ExpressionVisitException, ODataApplicationException {
+
+				List<T> values = new ArrayList<T>();
+				for (Expression parameter : parameters)
+					values.add(parameter.accept(visitor));
+				return visitor.visitMethodCall(methodCall, values);
+			}
+		};
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Id;
+
+import org.junit.Test;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * Conversion of key predicate texts to the type of the @Id, for keys that
+ * do not fit an int.
+ */
+
+public class EntityRowWriterTest {
+
+	static class LongKeyed {
+
+		@Id
+		private Long id;
+
+		@Column
+		private String name;
+	}
+
+	static class StringKeyed {
+
+		@Id
+		private String code;
+	}
+
+	static class GuidKeyed {
+
+		@Id
+		private UUID id;
+	}
+
+	@Test
+	public void convertsKeysAboveIntRange() {
+
+		EntityRowWriter writer = EntityRowWriter.forClass(LongKeyed.class);
+		assertEquals("id", writer.getIdColumn());
+		assertEquals(4294967296L, writer.toId("4294967296"));
+	}
+
+	@Test
+	public void keepsStringKeys() {
+
+		EntityRowWriter writer = EntityRowWriter.forClass(StringKeyed.class);
+		assertEquals("code", writer.getIdColumn());
+		assertEquals("a-1", writer.toId("a-1"));
+	}
+
+	@Test
+	public void convertsGuidKeys() {
+
+		UUID id = UUID.randomUUID();
+		assertEquals(id, EntityRowWriter.forClass(GuidKeyed.class).toId(id.toString()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsKeysOfAnotherType() {
+		EntityRowWriter.forClass(LongKeyed.class).toId("a-1");
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.xylia.microservices.odata.framework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.junit.Test;
+
+/*
+ * @author Rajesh Iyer
+ *
+ * If-None-Match matching of entity tags: the weak comparison, the wildcard
+ * and lists of tags in one or more header values.
+ */
+
+public class EntityTagTest {
+
+	private static final String TAG = "\"5f1e\"";
+
+	@Test
+	public void matchesWeakly() {
+
+		assertTrue(EntityTag.matches(Arrays.asList(TAG), TAG));
+		assertTrue(EntityTag.matches(Arrays.asList("W/" + TAG), TAG));
+		assertTrue(EntityTag.matches(Arrays.asList(TAG), "W/" + TAG));
+		assertTrue(EntityTag.matches(Arrays.asList("W/" + TAG), "W/" + TAG));
+
+		assertFalse(EntityTag.matches(Arrays.asList("\"5f1f\""), TAG));
+		assertFalse(EntityTag.matches(Arrays.asList("W/\"5f1f\""), "W/" + TAG));
+		assertFalse(EntityTag.matches(Arrays.asList("5f1e"), TAG));
+	}
+
+	@Test
+	public void matchesWildcard() {
+
+		assertTrue(EntityTag.matches(Arrays.asList("*"), TAG));
+		assertTrue(EntityTag.matches(Arrays.asList(" * "), "W/" + TAG));
+		assertFalse(EntityTag.matches(Arrays.asList("*"), null));
+	}
+
+	@Test
+	public void matchesListedTags() {
+
+		assertTrue(EntityTag.matches(Arrays.asList("\"1\", W/\"2\"," + TAG), TAG));
+		assertTrue(EntityTag.matches(Arrays.asList("\"1\",\"2\"", " W/" + TAG + " "), TAG));
+		assertFalse(EntityTag.matches(Arrays.asList("\"1\", \"2\"", "W/\"3\""), TAG));
+	}
+
+	@Test
+	public void matchesNothingWithoutHeader() {
+
+		assertFalse(EntityTag.matches(null, TAG));
+		assertFalse(EntityTag.matches(Collections.<String> emptyList(), TAG));
+		assertFalse(EntityTag.matches(Arrays.asList(""), TAG));
+	}
+
+	@Test
+	public void answersMatchingReadsNotModified() {
+
+		ODataRequest request = mock(ODataRequest.class);
+		when(request.getHeaders(HttpHeader.IF_NONE_MATCH)).thenReturn(Arrays.asList("\"1\", W/" + TAG));
+
+		ODataResponse response = new ODataResponse();
+		assertTrue(EntityTag.notModified(request, response, TAG, "max-age=60"));
+		assertEquals(HttpStatusCode.NOT_MODIFIED.getStatusCode(), response.getStatusCode());
+		assertEquals(TAG, response.getHeaders().get(HttpHeader.ETAG));
+		assertEquals("max-age=60", response.getHeaders().get(EntityTag.CACHE_CONTROL));
+
+		when(request.getHeaders(HttpHeader.IF_NONE_MATCH)).thenReturn(Arrays.asList("\"1\""));
+		assertFalse(EntityTag.notModified(request, new ODataResponse(), TAG, null));
+	}
+
+	@Test
+	public void separatesValues() {
+
+		assertNotEquals(new EntityTag().update("ab").update("c").toStrong(),
+				new EntityTag().update("a").update("bc").toStrong());
+		assertEquals("W/" + new EntityTag().update("a").toStrong(), new EntityTag().update("a").toWeak());
+	}
+}